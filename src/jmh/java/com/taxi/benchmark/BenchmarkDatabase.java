@@ -0,0 +1,257 @@
+package com.taxi.benchmark;
+
+import com.taxi.entity.Car;
+import com.taxi.entity.Driver;
+import com.taxi.entity.MedicalCheck;
+import com.taxi.entity.User;
+import com.taxi.repository.SearchIndex;
+import com.taxi.service.DashboardMetrics;
+import com.taxi.util.HibernateUtil;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+/**
+ * Встроенная БД для бенчмарков: H2 в режиме совместимости с PostgreSQL, генератор заказов
+ * и генератор документов поиска (водители, автомобили, медосмотры).
+ * Подключение задается системными свойствами hibernate.* до первого обращения к HibernateUtil,
+ * так что hibernate.cfg.xml и настоящая taxi_db не затрагиваются.
+ *
+ * Данные детерминированы (фиксированное зерно), поэтому прогоны разных дней сравнимы
+ */
+final class BenchmarkDatabase {
+
+    static final int DRIVERS = 200;
+    static final int HISTORY_DAYS = 365;
+
+    private static final String URL = "jdbc:h2:mem:taxi_bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+            + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+    private static final int COMMIT_EVERY = 10_000;
+
+    private static final String INSERT_ORDER = "INSERT INTO orders (operator_id, driver_id, car_id, "
+            + "customer_name, customer_phone, pickup_address, destination_address, pickup_lat, pickup_lon, "
+            + "order_time, completion_time, distance_km, price, status, version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String[] STREETS = {"Тверская", "Арбат", "Ленинский пр.", "Профсоюзная",
+            "Мясницкая", "Пятницкая", "Садовая-Кудринская", "Новый Арбат"};
+    private static final String[] LAST_NAMES = {"Иванов", "Петров", "Сидоров", "Смирнов", "Кузнецов",
+            "Попов", "Васильев", "Соколов", "Михайлов", "Новиков", "Федоров", "Морозов", "Волков",
+            "Алексеев", "Лебедев", "Семенов", "Егоров", "Павлов", "Козлов", "Степанов"};
+    private static final String[] FIRST_NAMES = {"Иван", "Петр", "Олег", "Сергей", "Андрей", "Дмитрий",
+            "Алексей", "Николай", "Михаил", "Владимир"};
+    private static final String[] CHECK_NOTES = {"Давление в норме", "Повышенное давление", "Жалоб нет",
+            "Пульс учащенный", "Запах алкоголя", "Температура 37.2", "Усталость", "Без замечаний"};
+    private static final String[] MODELS = {"Solaris", "Rio", "Polo", "Logan", "Octavia", "Camry", "Vesta", "Granta"};
+    private static final String PLATE_LETTERS = "АВЕКМНОРСТУХ";
+
+    private static User operator;
+    private static long[] driverIds;
+    private static long[] carIds;
+    private static int populatedOrders = -1;
+    private static int searchDocuments = -1;
+
+    static {
+        System.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        System.setProperty("hibernate.connection.url", URL);
+        System.setProperty("hibernate.connection.username", "sa");
+        System.setProperty("hibernate.connection.password", "");
+        System.setProperty("hibernate.hbm2ddl.auto", "create");
+        System.setProperty("taxi.pool.leak_detection_ms", "0");
+    }
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Готовит БД ровно с заданным числом заказов. Повторный вызов с тем же числом ничего не делает,
+     * с другим - перегенерирует заказы (нужно при запуске без форков, -f 0)
+     */
+    static synchronized void populate(int orders) {
+        if (populatedOrders == orders) {
+            return;
+        }
+        if (operator == null) {
+            createReferenceData();
+        }
+
+        long start = System.nanoTime();
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("TRUNCATE TABLE orders");
+                }
+                try (PreparedStatement insert = connection.prepareStatement(INSERT_ORDER)) {
+                    Random random = new Random(42);
+                    LocalDateTime now = LocalDateTime.now();
+                    for (int i = 1; i <= orders; i++) {
+                        bindOrder(insert, random, now);
+                        insert.addBatch();
+                        if (i % COMMIT_EVERY == 0) {
+                            insert.executeBatch();
+                            connection.commit();
+                        }
+                    }
+                    insert.executeBatch();
+                }
+            });
+            tx.commit();
+        }
+        populatedOrders = orders;
+
+        DashboardMetrics.getInstance().rebuild();
+        System.out.printf("БД бенчмарка: %,d заказов за %d мс%n",
+                orders, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Документы поиска: 40% водителей, 20% автомобилей, 40% медосмотров этих водителей у одного
+     * врача, затем полная перестройка SearchIndex. Удалить водителей с медосмотрами дороже,
+     * чем пересоздать JVM, поэтому объем задается один раз - каждое значение @Param в своем форке
+     */
+    static synchronized void populateSearch(int documents) {
+        if (searchDocuments == documents) {
+            return;
+        }
+        if (searchDocuments >= 0) {
+            throw new IllegalStateException("Документы поиска уже созданы: " + searchDocuments
+                    + ", запрошено " + documents + " (запуск без форков, -f 0, не поддерживается)");
+        }
+
+        long start = System.nanoTime();
+        int drivers = documents * 2 / 5;
+        int cars = documents / 5;
+        int checks = documents - drivers - cars;
+        Random random = new Random(42);
+        try (StatelessSession session = HibernateUtil.getSessionFactory().openStatelessSession()) {
+            Transaction tx = session.beginTransaction();
+            User doctor = new User("Петрова Анна Сергеевна", "bench_doctor", "bench", "DOCTOR", null);
+            session.insert(doctor);
+
+            Driver[] inserted = new Driver[drivers];
+            for (int i = 0; i < drivers; i++) {
+                inserted[i] = new Driver(
+                        LAST_NAMES[random.nextInt(LAST_NAMES.length)] + " " + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                        String.format("%02d%c%c %06d", random.nextInt(100), plateLetter(random), plateLetter(random), i),
+                        String.format("+7 (9%02d) %03d-%02d-%02d", random.nextInt(100), random.nextInt(1000),
+                                random.nextInt(100), random.nextInt(100)));
+                session.insert(inserted[i]);
+            }
+            for (int i = 0; i < cars; i++) {
+                session.insert(new Car("Brand" + random.nextInt(10), MODELS[random.nextInt(MODELS.length)],
+                        String.format("%c%03d%c%c%d", plateLetter(random), i % 1000, plateLetter(random),
+                                plateLetter(random), 100 + i / 1000),
+                        String.format("SRCH%013d", i)));
+            }
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = 0; i < checks; i++) {
+                MedicalCheck check = new MedicalCheck();
+                check.setDriver(inserted[random.nextInt(drivers)]);
+                check.setDoctor(doctor);
+                check.setIsPassed(random.nextBoolean());
+                check.setNotes(CHECK_NOTES[random.nextInt(CHECK_NOTES.length)]);
+                check.setCheckDate(now.minusMinutes(i));
+                session.insert(check);
+            }
+            tx.commit();
+        }
+        searchDocuments = documents;
+
+        SearchIndex.getInstance().rebuild();
+        System.out.printf("БД бенчмарка: %,d документов поиска за %d мс%n",
+                documents, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    static User getOperator() {
+        return operator;
+    }
+
+    static long getDriverId(int index) {
+        return driverIds[index % driverIds.length];
+    }
+
+    static long getCarId(int index) {
+        return carIds[index % carIds.length];
+    }
+
+    private static void createReferenceData() {
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            User user = new User("Оператор бенчмарка", "bench_operator", "bench", "OPERATOR", null);
+            session.persist(user);
+
+            driverIds = new long[DRIVERS];
+            carIds = new long[DRIVERS];
+            for (int i = 0; i < DRIVERS; i++) {
+                Driver driver = new Driver("Водитель " + (i + 1), String.format("77 %08d", i),
+                        String.format("+7 900 %07d", i));
+                Car car = new Car("Škoda", i % 2 == 0 ? "Octavia" : "Rapid",
+                        String.format("А%03dАА777", i), String.format("XW8ZZZ%011d", i));
+                session.persist(driver);
+                session.persist(car);
+                driverIds[i] = driver.getId();
+                carIds[i] = car.getId();
+            }
+            tx.commit();
+            operator = user;
+        }
+    }
+
+    private static char plateLetter(Random random) {
+        return PLATE_LETTERS.charAt(random.nextInt(PLATE_LETTERS.length()));
+    }
+
+    /**
+     * Один заказ: 80% завершенных за последний год, 8% отмененных, остальное - активные за последние часы
+     */
+    private static void bindOrder(PreparedStatement insert, Random random, LocalDateTime now) throws SQLException {
+        int roll = random.nextInt(100);
+        String status = roll < 80 ? "COMPLETED"
+                : roll < 88 ? "CANCELLED"
+                : roll < 92 ? "NEW"
+                : roll < 96 ? "ASSIGNED" : "IN_PROGRESS";
+        boolean active = roll >= 88;
+
+        LocalDateTime orderTime = active
+                ? now.minusMinutes(random.nextInt(180))
+                : now.minusSeconds(random.nextInt(HISTORY_DAYS * 86_400));
+        int driver = random.nextInt(DRIVERS);
+        boolean hasDriver = !"NEW".equals(status) && !("CANCELLED".equals(status) && random.nextBoolean());
+        double distance = 2 + random.nextDouble() * 28;
+
+        insert.setLong(1, operator.getId());
+        if (hasDriver) {
+            insert.setLong(2, driverIds[driver]);
+            insert.setLong(3, carIds[driver]);
+        } else {
+            insert.setNull(2, Types.BIGINT);
+            insert.setNull(3, Types.BIGINT);
+        }
+        insert.setString(4, "Клиент " + random.nextInt(50_000));
+        insert.setString(5, String.format("+7 9%02d %07d", random.nextInt(100), random.nextInt(10_000_000)));
+        insert.setString(6, STREETS[random.nextInt(STREETS.length)] + ", " + (1 + random.nextInt(150)));
+        insert.setString(7, STREETS[random.nextInt(STREETS.length)] + ", " + (1 + random.nextInt(150)));
+        insert.setDouble(8, 55.66 + random.nextDouble() * 0.18);
+        insert.setDouble(9, 37.46 + random.nextDouble() * 0.32);
+        insert.setTimestamp(10, Timestamp.valueOf(orderTime));
+        if ("COMPLETED".equals(status)) {
+            insert.setTimestamp(11, Timestamp.valueOf(orderTime.plusMinutes(10 + random.nextInt(50))));
+            insert.setDouble(12, Math.round(distance * 10) / 10.0);
+            insert.setDouble(13, Math.round(150 + distance * 25));
+        } else {
+            insert.setNull(11, Types.TIMESTAMP);
+            insert.setNull(12, Types.DOUBLE);
+            insert.setNull(13, Types.DOUBLE);
+        }
+        insert.setString(14, status);
+    }
+}
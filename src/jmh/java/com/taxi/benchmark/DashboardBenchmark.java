@@ -0,0 +1,72 @@
+package com.taxi.benchmark;
+
+import com.taxi.service.DashboardMetrics;
+import com.taxi.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статистика панели диспетчера: чтение всех счетчиков OrderService (из памяти),
+ * полный пересчет DashboardMetrics агрегирующим запросом и счетчики по водителю из БД.
+ *
+ * Запуск: mvn -P jmh compile exec:exec -Djmh.args="DashboardBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx3g", "-Dtaxi.log.level=WARN"})
+public class DashboardBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int orders;
+
+    private OrderService orderService;
+    private long driverId;
+
+    @Setup
+    public void setUp() {
+        BenchmarkDatabase.populate(orders);
+        orderService = new OrderService();
+        driverId = BenchmarkDatabase.getDriverId(7);
+    }
+
+    /**
+     * Все показатели, которые выводит панель при каждом открытии
+     */
+    @Benchmark
+    public void dashboardCounters(Blackhole blackhole) {
+        blackhole.consume(orderService.getTotalOrders());
+        blackhole.consume(orderService.getCompletedOrdersCount());
+        blackhole.consume(orderService.getActiveOrdersCount());
+        blackhole.consume(orderService.getTotalRevenue());
+        blackhole.consume(orderService.getTodayOrdersCount());
+        blackhole.consume(orderService.getCompletedTodayCount());
+        blackhole.consume(orderService.getTodayRevenue());
+        blackhole.consume(orderService.getAverageOrderTimeToday());
+    }
+
+    @Benchmark
+    public void rebuildFromDatabase() {
+        DashboardMetrics.getInstance().rebuild();
+    }
+
+    @Benchmark
+    public void driverCounters(Blackhole blackhole) {
+        blackhole.consume(orderService.getTotalOrdersForDriver(driverId));
+        blackhole.consume(orderService.getCompletedOrdersForDriver(driverId));
+    }
+}
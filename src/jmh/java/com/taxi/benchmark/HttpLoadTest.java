@@ -0,0 +1,144 @@
+package com.taxi.benchmark;
+
+import com.taxi.util.JettyLauncher;
+import com.taxi.util.LatencyHistogram;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.VirtualThreads;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочная проверка режимов выполнения запросов: пул платформенных потоков против
+ * виртуальных потоков. Сервер собирается тем же JettyLauncher.createServer, запрос
+ * имитирует синхронный вызов БД (поток блокируется на заданное время), клиенты - как
+ * при пересменке: много одновременных пользователей, каждый шлет запросы подряд.
+ *
+ * Не JMH-бенчмарк (нагрузку дает HTTP-клиент, а не вызов метода), но лежит рядом с ними
+ * и собирается тем же профилем jmh. Запуск:
+ *   mvn -q -P jmh compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/classes:$(cat target/cp.txt) com.taxi.benchmark.HttpLoadTest [клиентов] [секунд] [мс на запрос]
+ * По умолчанию 1000 клиентов, 10 секунд, 50 мс. Режим virtual требует Java 21+,
+ * на более старой Java он пропускается
+ */
+public class HttpLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long workMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        System.out.printf("Клиентов: %d, замер: %d с, блокирующая работа: %d мс на запрос, пул: %s потоков%n",
+                clients, seconds, workMillis, System.getProperty("taxi.http.max_threads", "200"));
+
+        run("platform", clients, seconds, workMillis);
+        if (VirtualThreads.areSupported()) {
+            run("virtual", clients, seconds, workMillis);
+        } else {
+            System.out.println("virtual: пропущено, Java " + Runtime.version().feature() + " (нужна 21+)");
+        }
+    }
+
+    private static void run(String threads, int clients, int seconds, long workMillis) throws Exception {
+        Server server = JettyLauncher.createServer(0, threads);
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new BlockingServlet(workMillis)), "/work");
+        server.setHandler(context);
+        server.start();
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/work")).build();
+        try {
+            // Прогрев: соединения, JIT, потоки пула
+            load(client, request, clients, Math.max(2, seconds / 3), new LatencyHistogram());
+
+            LatencyHistogram latency = new LatencyHistogram();
+            Result result = load(client, request, clients, seconds, latency);
+            double[] quantiles = latency.quantileSeconds(0.5, 0.99);
+            System.out.printf("%-9s %,10.0f запросов/с   p50 %6.1f мс   p99 %7.1f мс   ошибок %d%n",
+                    threads, result.completed / (double) seconds, quantiles[0] * 1000, quantiles[1] * 1000,
+                    result.errors);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Каждый клиент отправляет следующий запрос сразу по получении ответа, пока не выйдет время
+     */
+    private static Result load(HttpClient client, HttpRequest request, int clients, int seconds,
+                               LatencyHistogram latency) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch finished = new CountDownLatch(clients);
+
+        for (int i = 0; i < clients; i++) {
+            new Object() {
+                void next() {
+                    if (System.nanoTime() >= deadline) {
+                        finished.countDown();
+                        return;
+                    }
+                    long started = System.nanoTime();
+                    client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                            .whenComplete((response, error) -> {
+                                if (error != null || response.statusCode() != 200) {
+                                    errors.incrementAndGet();
+                                } else if (System.nanoTime() < deadline) {
+                                    completed.incrementAndGet();
+                                    latency.recordSince(started);
+                                }
+                                next();
+                            });
+                }
+            }.next();
+        }
+        finished.await();
+        return new Result(completed.get(), errors.get());
+    }
+
+    private static class Result {
+        final long completed;
+        final long errors;
+
+        Result(long completed, long errors) {
+            this.completed = completed;
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * Имитация обработчика с синхронным запросом к БД
+     */
+    private static class BlockingServlet extends HttpServlet {
+        private final long workMillis;
+
+        BlockingServlet(long workMillis) {
+            this.workMillis = workMillis;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            try {
+                Thread.sleep(workMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            resp.setContentType("text/plain");
+            resp.getWriter().write("ok");
+        }
+    }
+}
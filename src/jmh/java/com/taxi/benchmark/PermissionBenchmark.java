@@ -0,0 +1,61 @@
+package com.taxi.benchmark;
+
+import com.taxi.entity.User;
+import com.taxi.permission.PagePermission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверки доступа к страницам: одна проверка и полный перебор "роль x страница",
+ * как при построении меню
+ *
+ * Запуск: mvn -P jmh compile exec:exec -Djmh.args="PermissionBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionBenchmark {
+
+    private static final String[] ROLES = {"ADMIN", "OPERATOR", "DRIVER", "DOCTOR", "MECHANIC", "GUEST"};
+    private static final PagePermission.Page[] PAGES = PagePermission.Page.values();
+
+    private User[] users;
+    private User operator;
+
+    @Setup
+    public void setUp() {
+        users = new User[ROLES.length];
+        for (int i = 0; i < ROLES.length; i++) {
+            users[i] = new User(ROLES[i], ROLES[i].toLowerCase(), "secret", ROLES[i], null);
+        }
+        operator = users[1];
+    }
+
+    @Benchmark
+    public PagePermission.AccessLevel singleCheck() {
+        return PagePermission.getAccessLevel(operator, PagePermission.Page.ORDERS);
+    }
+
+    @Benchmark
+    public void allRolesAllPages(Blackhole blackhole) {
+        for (User user : users) {
+            for (PagePermission.Page page : PAGES) {
+                blackhole.consume(PagePermission.getAccessLevel(user, page));
+            }
+        }
+    }
+}
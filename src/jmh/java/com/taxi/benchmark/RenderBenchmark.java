@@ -0,0 +1,141 @@
+package com.taxi.benchmark;
+
+import com.taxi.controller.OrderServlet;
+import com.taxi.entity.User;
+import com.taxi.util.HtmlUtil;
+import com.taxi.util.PageBuffer;
+import com.taxi.util.PageOutput;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Генерация HTML: общие стили, каркас страницы (шапка, меню по роли, подвал)
+ * и полная страница списка заказов через OrderServlet с чтением из БД.
+ * Вывод кодируется в UTF-8, как в контейнере, и уходит в никуда.
+ *
+ * fullPageLayout - прежний путь: таблица на 50 строк в StringBuilder и печать через PrintWriter,
+ * fullPageLayoutPreEncoded - та же таблица в PageBuffer и запись байтами через PageOutput.
+ * Контент собирается внутри замера. Выделение памяти на страницу видно с профилировщиком gc:
+ * mvn -P jmh compile exec:exec -Djmh.args="RenderBenchmark.fullPage -prof gc"
+ *
+ * Запуск: mvn -P jmh compile exec:exec -Djmh.args="RenderBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx3g", "-Dtaxi.log.level=WARN"})
+public class RenderBenchmark {
+
+    private static final PageBuffer.Fragment[] TABLE = PageBuffer.Fragment.split(
+            "<table class='data-table'><tbody>{}</tbody></table>");
+    private static final PageBuffer.Fragment[] ROW = PageBuffer.Fragment.split(
+            "<tr><td>{}</td><td>{}</td><td>NEW</td><td>450.0 ₽</td></tr>");
+
+    /**
+     * Только рендеринг, без БД
+     */
+    @State(Scope.Thread)
+    public static class Layout {
+        HttpServletRequest request;
+        HttpServletResponse response;
+        PrintWriter out;
+        // Значения строк, как будто прочитанные из БД
+        String[] addresses;
+
+        @Setup
+        public void setUp() {
+            User operator = new User("Оператор", "operator", "secret", "OPERATOR", null);
+            request = ServletStubs.request("/orders", operator, Map.of());
+            response = ServletStubs.response();
+            out = ServletStubs.discardingWriter();
+
+            // Таблица на 50 строк - как у страницы списка по умолчанию
+            addresses = new String[50];
+            for (int i = 0; i < addresses.length; i++) {
+                addresses[i] = "Тверская, " + i;
+            }
+        }
+    }
+
+    /**
+     * Сервлет списка заказов поверх БД бенчмарка
+     */
+    @State(Scope.Thread)
+    public static class OrderList {
+        @Param({"100000"})
+        public int orders;
+
+        @Param({"active", "all"})
+        public String filter;
+
+        OrderServlet servlet;
+        HttpServletRequest request;
+        HttpServletResponse response;
+
+        @Setup
+        public void setUp() {
+            BenchmarkDatabase.populate(orders);
+            servlet = new OrderServlet();
+            request = ServletStubs.request("/orders", BenchmarkDatabase.getOperator(), Map.of("filter", filter));
+            response = ServletStubs.response();
+        }
+    }
+
+    @Benchmark
+    public String commonStyles() {
+        return HtmlUtil.getCommonStyles();
+    }
+
+    /**
+     * Как сервлеты писали раньше: контент в StringBuilder, content.toString() и печать в writer ответа
+     */
+    @Benchmark
+    public void fullPageLayout(Layout layout) {
+        StringBuilder content = new StringBuilder("<table class='data-table'><tbody>");
+        for (int i = 0; i < layout.addresses.length; i++) {
+            content.append("<tr><td>").append(i).append("</td><td>").append(HtmlUtil.escape(layout.addresses[i]))
+                    .append("</td><td>NEW</td><td>450.0 ₽</td></tr>");
+        }
+        content.append("</tbody></table>");
+        HtmlUtil.renderFullPage(layout.out, layout.request, "Заказы", "orders", content.toString());
+        layout.out.flush();
+    }
+
+    /**
+     * Контент сразу в PageBuffer: строки из готовых кусков и экранированных значений
+     */
+    @Benchmark
+    public void fullPageLayoutPreEncoded(Layout layout) {
+        try (PageBuffer content = PageBuffer.acquire()) {
+            content.append(TABLE[0]);
+            for (int i = 0; i < layout.addresses.length; i++) {
+                content.append(ROW[0]).append(i).append(ROW[1]).appendEscaped(layout.addresses[i]).append(ROW[2]);
+            }
+            content.append(TABLE[1]);
+            HtmlUtil.renderFullPage(new PageOutput(layout.response), layout.request, "Заказы", "orders", content);
+        }
+    }
+
+    @Benchmark
+    public void orderListPage(OrderList state) throws ServletException, IOException {
+        state.servlet.service(state.request, state.response);
+    }
+}
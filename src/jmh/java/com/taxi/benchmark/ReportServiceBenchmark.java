@@ -0,0 +1,75 @@
+package com.taxi.benchmark;
+
+import com.taxi.service.ReportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отчет по доходам на 10 тыс., 100 тыс. и 1 млн заказов: выгрузка строк за месяц, за весь год,
+ * по одному водителю и сводка одним агрегирующим запросом.
+ *
+ * Запуск: mvn -P jmh compile exec:exec -Djmh.args="ReportServiceBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx3g", "-Dtaxi.log.level=WARN"})
+public class ReportServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int orders;
+
+    private ReportService reportService;
+    private LocalDate today;
+    private LocalDate monthAgo;
+    private long driverId;
+
+    @Setup
+    public void setUp() {
+        BenchmarkDatabase.populate(orders);
+        reportService = new ReportService();
+        today = LocalDate.now();
+        monthAgo = today.minusDays(30);
+        driverId = BenchmarkDatabase.getDriverId(7);
+    }
+
+    @Benchmark
+    public List<ReportService.IncomeReportRecord> incomeRecordsLastMonth() {
+        return reportService.getIncomeReportRecords(monthAgo, today, null, null);
+    }
+
+    @Benchmark
+    public List<ReportService.IncomeReportRecord> incomeRecordsWholeHistory() {
+        return reportService.getIncomeReportRecords(null, null, null, null);
+    }
+
+    @Benchmark
+    public List<ReportService.IncomeReportRecord> incomeRecordsOneDriver() {
+        return reportService.getIncomeReportRecords(null, null, driverId, null);
+    }
+
+    @Benchmark
+    public ReportService.ReportSummary summaryLastMonth() {
+        return reportService.getReportSummary(monthAgo, today, null, null);
+    }
+
+    @Benchmark
+    public ReportService.ReportSummary summaryWholeHistory() {
+        return reportService.getReportSummary(null, null, null, null);
+    }
+}
@@ -0,0 +1,62 @@
+package com.taxi.benchmark;
+
+import com.taxi.repository.SearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полнотекстовый поиск SearchIndex: первая страница (20 лучших) по всем типам и по одному типу.
+ * "давление" - узкий запрос (только примечания медосмотров); "петр" и "ов" встречаются почти
+ * в каждом документе (фамилии водителей, ФИО врача), "ов ан" - два таких слова сразу.
+ * Цель - меньше 10 мс на 100 тыс. документов.
+ *
+ * Запуск: mvn -P jmh compile exec:exec -Djmh.args="SearchIndexBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx3g", "-Dtaxi.log.level=WARN"})
+public class SearchIndexBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"100000"})
+    public int documents;
+
+    @Param({"давление", "петр", "ов", "ов ан"})
+    public String query;
+
+    // ALL или имя SearchIndex.Type
+    @Param({"ALL", "DRIVER", "MEDICAL_CHECK"})
+    public String scope;
+
+    private SearchIndex index;
+    private Set<SearchIndex.Type> types;
+
+    @Setup
+    public void setUp() {
+        BenchmarkDatabase.populateSearch(documents);
+        index = SearchIndex.getInstance();
+        types = "ALL".equals(scope) ? EnumSet.allOf(SearchIndex.Type.class) : EnumSet.of(SearchIndex.Type.valueOf(scope));
+    }
+
+    @Benchmark
+    public SearchIndex.Page firstPage() {
+        return index.search(query, types, 0, PAGE_SIZE);
+    }
+}
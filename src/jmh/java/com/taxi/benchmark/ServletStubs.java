@@ -0,0 +1,116 @@
+package com.taxi.benchmark;
+
+import com.taxi.entity.User;
+import com.taxi.util.SessionPrincipal;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Заглушки запроса, сессии и ответа для вызова сервлетов и HtmlUtil без контейнера.
+ * Нереализованные методы возвращают null/0/false; ответ пишется в никуда
+ */
+final class ServletStubs {
+
+    private ServletStubs() {
+    }
+
+    static HttpServletRequest request(String uri, User user, Map<String, String> parameters) {
+        SessionPrincipal principal = user != null ? SessionPrincipal.of(user) : null;
+        HttpSession session = proxy(HttpSession.class, (name, args) ->
+                "getAttribute".equals(name) && SessionPrincipal.ATTRIBUTE.equals(args[0]) ? principal : null);
+
+        return proxy(HttpServletRequest.class, (name, args) -> {
+            switch (name) {
+                case "getMethod":
+                    return "GET";
+                case "getRequestURI":
+                case "getServletPath":
+                    return uri;
+                case "getContextPath":
+                    return "";
+                case "getProtocol":
+                    return "HTTP/1.1";
+                case "getSession":
+                    return session;
+                case "getParameter":
+                    return parameters.get((String) args[0]);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Ответ, который, как и контейнер, кодирует текст writer'а в UTF-8, но никуда его не отправляет.
+     * Writer и поток байтов общие на все вызовы - ответ можно использовать повторно
+     */
+    static HttpServletResponse response() {
+        PrintWriter writer = discardingWriter();
+        ServletOutputStream stream = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+            }
+        };
+        return proxy(HttpServletResponse.class, (name, args) -> {
+            switch (name) {
+                case "getWriter":
+                    return writer;
+                case "getOutputStream":
+                    return stream;
+                case "getCharacterEncoding":
+                    return "UTF-8";
+                default:
+                    return null;
+            }
+        });
+    }
+
+    static PrintWriter discardingWriter() {
+        return new PrintWriter(new OutputStreamWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            Object result = handler.invoke(method.getName(), args);
+            if (result != null || !method.getReturnType().isPrimitive()) {
+                return result;
+            }
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class) {
+                return false;
+            }
+            if (returnType == long.class) {
+                return 0L;
+            }
+            return returnType == void.class ? null : 0;
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package com.taxi.dispatch;
+
+import com.taxi.entity.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выбор водителя без БД: кандидаты, разбросанные по городу, и заказы со случайными точками подачи.
+ * Одиночный выбор - в одном потоке и во всех ядрах; выбор с резервом и "поездкой" водителя,
+ * как при реальном назначении; пакетное назначение жадно и оптимально.
+ * Лежит в пакете dispatch, так как работает с внутренним API движка.
+ *
+ * Запуск: mvn -P jmh compile exec:exec -Djmh.args="DispatchBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Dtaxi.log.level=WARN")
+public class DispatchBenchmark {
+
+    // Город примерно 40 x 40 км
+    private static final double CENTER_LAT = 55.75;
+    private static final double CENTER_LON = 37.62;
+    private static final double SPREAD_DEGREES = 0.18;
+    // Пакет заказов "на выходе со стадиона": все точки подачи в радиусе 1.5 км
+    private static final int BATCH_ORDERS = 150;
+
+    @Param({"10000"})
+    public int drivers;
+
+    private DispatchEngine engine;
+    private List<Order> batch;
+
+    @Setup
+    public void setUp() {
+        engine = new DispatchEngine(null, null);
+        Random random = new Random(42);
+        for (long driverId = 1; driverId <= drivers; driverId++) {
+            engine.addCandidate(new DispatchCandidate(driverId, driverId, driverId, randomIdleSince(random)));
+            engine.updateDriverLocation(driverId, randomLatitude(random), randomLongitude(random));
+        }
+
+        random = new Random(7);
+        batch = new ArrayList<>();
+        for (long id = 1; id <= BATCH_ORDERS; id++) {
+            Order order = new Order();
+            order.setId(id);
+            order.setStatus("NEW");
+            order.setPickupLatitude(CENTER_LAT + (random.nextDouble() - 0.5) * 0.027);
+            order.setPickupLongitude(CENTER_LON + (random.nextDouble() - 0.5) * 0.048);
+            batch.add(order);
+        }
+    }
+
+    /**
+     * Номер заказа для резерва - свой у каждого потока
+     */
+    @State(Scope.Thread)
+    public static class OrderSequence {
+        long next;
+    }
+
+    @Benchmark
+    public DispatchEngine.ScoredCandidate select() {
+        return selectRandom();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public DispatchEngine.ScoredCandidate selectAllCores() {
+        return selectRandom();
+    }
+
+    /**
+     * Выбор, резерв, перемещение водителя в точку назначения и возврат в набор
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean selectReserveMoveAllCores(OrderSequence sequence) {
+        DispatchEngine.ScoredCandidate best = selectRandom();
+        if (best == null) {
+            return false;
+        }
+        DispatchCandidate candidate = best.candidate;
+        long driverId = candidate.getDriverId();
+        long orderId = ++sequence.next;
+        if (!engine.reserve(driverId, orderId)) {
+            return false;
+        }
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            engine.removeCandidate(driverId);
+            engine.updateDriverLocation(driverId, randomLatitude(random), randomLongitude(random));
+            // Простой новый, но из того же распределения, чтобы не менять характер поиска
+            engine.addCandidate(new DispatchCandidate(driverId, candidate.getWaybillId(),
+                    candidate.getCarId(), randomIdleSince(random)));
+            return true;
+        } finally {
+            engine.release(driverId, orderId);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<Order, DispatchEngine.ScoredCandidate> batchGreedy() {
+        return engine.matchGreedy(batch, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<Order, DispatchEngine.ScoredCandidate> batchOptimal() {
+        return engine.matchOptimal(batch, System.currentTimeMillis());
+    }
+
+    private DispatchEngine.ScoredCandidate selectRandom() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return engine.selectCandidate(randomLatitude(random), randomLongitude(random),
+                System.currentTimeMillis(), Collections.<Long>emptySet());
+    }
+
+    private static long randomIdleSince(Random random) {
+        return System.currentTimeMillis() - random.nextInt(60) * 60_000L;
+    }
+
+    private static double randomLatitude(Random random) {
+        return CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+    }
+
+    private static double randomLongitude(Random random) {
+        return CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES * 1.8;
+    }
+}
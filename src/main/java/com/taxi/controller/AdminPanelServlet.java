@@ -2,6 +2,7 @@ package com.taxi.controller;
 
 import com.taxi.entity.User;
 import com.taxi.service.*;
+import com.taxi.util.HibernateUtil;
 import com.taxi.util.HtmlUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -9,6 +10,9 @@ import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import com.taxi.entity.Driver;
+import com.taxi.util.AuthUtil;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -29,7 +33,7 @@ public class AdminPanelServlet extends HttpServlet {
             throws ServletException, IOException {
 
         // Проверка авторизации и роли
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -59,10 +63,8 @@ public class AdminPanelServlet extends HttpServlet {
         long totalUsers = userService.getTotalUsers();
         long totalDrivers = driverService.getAllDrivers().size();
         long totalCars = carService.getAllCars().size();
-        long totalOrders = orderService.getAllOrders().size();
-        long completedOrders = orderService.getAllOrders().stream()
-                .filter(o -> "COMPLETED".equals(o.getStatus()))
-                .count();
+        long totalOrders = orderService.getTotalOrders();
+        long completedOrders = orderService.getCompletedOrdersCount();
 
         // === БЛОК 1: СТАТИСТИКА СИСТЕМЫ ===
         content.append("<div class='card'>")
@@ -113,6 +115,9 @@ public class AdminPanelServlet extends HttpServlet {
         content.append("</div>") // Закрываем stats-grid
                 .append("</div>");
 
+        // === БЛОК 1.1: КЭШ ВТОРОГО УРОВНЯ ===
+        appendCacheStatistics(content);
+
         // === БЛОК 2: ВЫГРУЗКА ОТЧЕТА ПО ДОХОДАМ (отдельная карточка) ===
         content.append("<div class='card' style='margin-top: 30px; border-left: 4px solid #4caf50;'>")
                 .append("<h2 style='color: #fff; margin-bottom: 20px; display: flex; align-items: center; gap: 10px;'>")
@@ -254,4 +259,44 @@ public class AdminPanelServlet extends HttpServlet {
 
         return content.toString();
     }
-}
\ No newline at end of file
+
+    private void appendCacheStatistics(StringBuilder content) {
+        Statistics statistics;
+        try {
+            statistics = HibernateUtil.getStatistics();
+        } catch (Throwable e) {
+            return;
+        }
+
+        content.append("<div class='card'>")
+                .append("<h3 style='color: #fff; margin-bottom: 25px; border-bottom: 1px solid #333; padding-bottom: 10px;'> Кэш справочных данных</h3>")
+                .append("<table class='data-table'>")
+                .append("<thead><tr><th>Регион</th><th>Попадания</th><th>Промахи</th><th>Записи в кэш</th><th>Элементов</th><th>Hit ratio</th></tr></thead>")
+                .append("<tbody>");
+
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStats = statistics.getDomainDataRegionStatistics(region);
+            if (regionStats == null) {
+                continue;
+            }
+            appendCacheRow(content, region, regionStats.getHitCount(), regionStats.getMissCount(),
+                    regionStats.getPutCount(), regionStats.getElementCountInMemory());
+        }
+        appendCacheRow(content, "Кэш запросов", statistics.getQueryCacheHitCount(),
+                statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount(), -1);
+
+        content.append("</tbody></table></div>");
+    }
+
+    private void appendCacheRow(StringBuilder content, String region, long hits, long misses, long puts, long elements) {
+        long total = hits + misses;
+        content.append("<tr>")
+                .append("<td>").append(region).append("</td>")
+                .append("<td>").append(hits).append("</td>")
+                .append("<td>").append(misses).append("</td>")
+                .append("<td>").append(puts).append("</td>")
+                .append("<td>").append(elements >= 0 ? String.valueOf(elements) : "—").append("</td>")
+                .append("<td>").append(total > 0 ? String.format("%.1f%%", hits * 100.0 / total) : "—").append("</td>")
+                .append("</tr>");
+    }
+}
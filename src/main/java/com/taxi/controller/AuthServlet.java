@@ -2,6 +2,8 @@ package com.taxi.controller;
 
 import com.taxi.entity.User;
 import com.taxi.service.UserService;
+import com.taxi.util.SessionPrincipal;
+import com.taxi.util.StaticAssets;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -56,9 +58,10 @@ public class AuthServlet extends HttpServlet {
         User user = userService.authenticate(login, password);
 
         if (user != null && user.getIsActive()) {
-            // Создаем сессию
+            // Создаем сессию. В ней только данные входа, не сущность с паролем:
+            // сессия хранится в общей таблице и читается другими узлами
             HttpSession session = req.getSession();
-            session.setAttribute("user", user);
+            session.setAttribute(SessionPrincipal.ATTRIBUTE, SessionPrincipal.of(user));
             session.setAttribute("userRole", user.getUserType());
 
             // Перенаправляем на панель по роли
@@ -126,120 +129,7 @@ public class AuthServlet extends HttpServlet {
         out.println("<head>");
         out.println("    <title>Такси-сервис | Вход</title>");
         out.println("    <meta charset='UTF-8'>");
-        out.println("    <style>");
-        out.println("        * { margin: 0; padding: 0; box-sizing: border-box; }");
-        out.println("        body { ");
-        out.println("            font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; ");
-        out.println("            background: linear-gradient(135deg, #0a0a0a 0%, #1a1a1a 100%); ");
-        out.println("            min-height: 100vh; ");
-        out.println("            display: flex; ");
-        out.println("            align-items: center; ");
-        out.println("            justify-content: center; ");
-        out.println("            padding: 20px; ");
-        out.println("        }");
-        out.println("        .login-container { ");
-        out.println("            width: 100%; ");
-        out.println("            max-width: 400px; ");
-        out.println("            background: rgba(30, 30, 30, 0.95); ");
-        out.println("            border-radius: 20px; ");
-        out.println("            padding: 40px; ");
-        out.println("            box-shadow: 0 15px 35px rgba(0, 0, 0, 0.5); ");
-        out.println("            border: 1px solid rgba(255, 255, 255, 0.1); ");
-        out.println("            backdrop-filter: blur(10px); ");
-        out.println("        }");
-        out.println("        .logo { ");
-        out.println("            text-align: center; ");
-        out.println("            margin-bottom: 30px; ");
-        out.println("        }");
-        out.println("        .logo h1 { ");
-        out.println("            color: #ffffff; ");
-        out.println("            font-size: 28px; ");
-        out.println("            font-weight: 300; ");
-        out.println("            letter-spacing: 1px; ");
-        out.println("        }");
-        out.println("        .logo p { ");
-        out.println("            color: #888; ");
-        out.println("            font-size: 14px; ");
-        out.println("            margin-top: 5px; ");
-        out.println("        }");
-        out.println("        .form-group { ");
-        out.println("            margin-bottom: 20px; ");
-        out.println("        }");
-        out.println("        .form-group label { ");
-        out.println("            display: block; ");
-        out.println("            color: #aaa; ");
-        out.println("            margin-bottom: 8px; ");
-        out.println("            font-size: 14px; ");
-        out.println("        }");
-        out.println("        .form-group input { ");
-        out.println("            width: 100%; ");
-        out.println("            padding: 12px 15px; ");
-        out.println("            background: rgba(255, 255, 255, 0.05); ");
-        out.println("            border: 1px solid #444; ");
-        out.println("            border-radius: 8px; ");
-        out.println("            color: #fff; ");
-        out.println("            font-size: 16px; ");
-        out.println("            transition: all 0.3s ease; ");
-        out.println("        }");
-        out.println("        .form-group input:focus { ");
-        out.println("            outline: none; ");
-        out.println("            border-color: #666; ");
-        out.println("            background: rgba(255, 255, 255, 0.1); ");
-        out.println("        }");
-        out.println("        .btn { ");
-        out.println("            width: 100%; ");
-        out.println("            padding: 14px; ");
-        out.println("            background: linear-gradient(135deg, #2196f3 0%, #1976d2 100%); ");
-        out.println("            color: white; ");
-        out.println("            border: none; ");
-        out.println("            border-radius: 8px; ");
-        out.println("            font-size: 16px; ");
-        out.println("            font-weight: 500; ");
-        out.println("            cursor: pointer; ");
-        out.println("            transition: all 0.3s ease; ");
-        out.println("        }");
-        out.println("        .btn:hover { ");
-        out.println("            background: linear-gradient(135deg, #1976d2 0%, #0d47a1 100%); ");
-        out.println("            transform: translateY(-2px); ");
-        out.println("            box-shadow: 0 5px 15px rgba(33, 150, 243, 0.3); ");
-        out.println("        }");
-        out.println("        .message { ");
-        out.println("            padding: 12px; ");
-        out.println("            margin: 20px 0; ");
-        out.println("            border-radius: 8px; ");
-        out.println("            text-align: center; ");
-        out.println("            font-size: 14px; ");
-        out.println("        }");
-        out.println("        .success { ");
-        out.println("            background: rgba(46, 125, 50, 0.2); ");
-        out.println("            color: #81c784; ");
-        out.println("            border: 1px solid #2e7d32; ");
-        out.println("        }");
-        out.println("        .error { ");
-        out.println("            background: rgba(211, 47, 47, 0.2); ");
-        out.println("            color: #e57373; ");
-        out.println("            border: 1px solid #d32f2f; ");
-        out.println("        }");
-        out.println("        .links { ");
-        out.println("            text-align: center; ");
-        out.println("            margin-top: 20px; ");
-        out.println("        }");
-        out.println("        .links a { ");
-        out.println("            color: #64b5f6; ");
-        out.println("            text-decoration: none; ");
-        out.println("            font-size: 14px; ");
-        out.println("        }");
-        out.println("        .links a:hover { ");
-        out.println("            text-decoration: underline; ");
-        out.println("        }");
-        out.println("        .register-link { ");
-        out.println("            display: block; ");
-        out.println("            text-align: center; ");
-        out.println("            margin-top: 15px; ");
-        out.println("            color: #888; ");
-        out.println("            font-size: 14px; ");
-        out.println("        }");
-        out.println("    </style>");
+        out.println("    <link rel='stylesheet' href='" + StaticAssets.url("/css/auth.css") + "'>");
         out.println("</head>");
         out.println("<body>");
         out.println("    <div class='login-container'>");
@@ -2,20 +2,28 @@ package com.taxi.controller;
 
 import com.taxi.entity.User;
 import com.taxi.entity.Car;
+import com.taxi.repository.SearchIndex;
 import com.taxi.service.CarService;
+import com.taxi.service.SearchService;
 import com.taxi.util.HtmlUtil;
+import com.taxi.util.AuthUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.EnumSet;
 import java.util.List;
 
 @WebServlet("/cars/*")
 public class CarServlet extends BaseServlet {
+    private static final Logger log = LoggerFactory.getLogger(CarServlet.class);
     private CarService carService = new CarService();
+    private SearchService searchService = new SearchService();
     private HttpServletRequest currentRequest;
 
 
@@ -24,7 +32,7 @@ public class CarServlet extends BaseServlet {
             throws ServletException, IOException {
         this.currentRequest = req;
 
-        User currentUser = (User) req.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(req);
         if (currentUser == null) {
             resp.sendRedirect("/login");
             return;
@@ -107,12 +115,11 @@ public class CarServlet extends BaseServlet {
         content.append("<p class='page-subtitle'>Управление автопарком такси</p>");
         content.append("</div>");
 
-        // Получаем все автомобили
-        List<Car> cars = carService.getAllCars();
-
         // Фильтруем если нужно
         String filter = req.getParameter("filter");
-        List<Car> filteredCars = cars;
+        String search = req.getParameter("search");
+        SearchService.SearchResults found = null;
+        List<Car> filteredCars;
 
         // Показываем сообщения об успехе/ошибке
         String success = req.getParameter("success");
@@ -139,7 +146,13 @@ public class CarServlet extends BaseServlet {
         }
 
         // Фильтрация и сообщения
-        if ("active".equals(filter)) {
+        if (search != null && !search.isBlank()) {
+            // Поиск по номеру, VIN, марке и модели - постранично, лучшие совпадения первыми
+            found = searchService.search(search, EnumSet.of(SearchIndex.Type.CAR),
+                    SearchService.parsePage(req.getParameter("page")), SearchService.DEFAULT_PAGE_SIZE);
+            filteredCars = found.getCars();
+            content.append("<div class='alert alert-info'>Найдено автомобилей: ").append(found.getTotal()).append("</div>");
+        } else if ("active".equals(filter)) {
             filteredCars = carService.getActiveCars();
             content.append("<div class='alert alert-success'>Показаны только активные автомобили</div>");
         } else if ("repair".equals(filter)) {
@@ -148,6 +161,8 @@ public class CarServlet extends BaseServlet {
         } else if ("available".equals(filter)) {
             filteredCars = carService.getAvailableCars();
             content.append("<div class='alert alert-info'>Показаны только доступные автомобили</div>");
+        } else {
+            filteredCars = carService.getAllCars();
         }
 
         // Кнопки действий
@@ -160,6 +175,7 @@ public class CarServlet extends BaseServlet {
         content.append("<a href='?filter=repair' class='btn btn-secondary'>В ремонте</a>");
         content.append("<a href='?' class='btn btn-secondary'>Все автомобили</a>");
         content.append("</div>");
+        content.append(HtmlUtil.generateSearchForm("/cars", search, "Номер, VIN, марка, модель..."));
 
         // Таблица автомобилей
         content.append("<div class='card mb-30'>");
@@ -256,6 +272,9 @@ public class CarServlet extends BaseServlet {
             content.append("</table>");
             content.append("</div>");
         }
+        if (found != null) {
+            content.append(HtmlUtil.generateSearchPager("/cars", search, found.getPage(), found.getPageCount()));
+        }
 
         content.append("</div>");
         content.append("</div>");
@@ -268,10 +287,10 @@ public class CarServlet extends BaseServlet {
         content.append("<div class='card-body'>");
         content.append("<div class='stats-grid'>");
 
-        long totalCars = carService.getAllCars().size();
-        long activeCars = carService.getActiveCars().size();
-        long availableCars = carService.getAvailableCars().size();
-        long carsInRepair = carService.getCarsInRepair().size();
+        long totalCars = carService.getTotalCars();
+        long activeCars = carService.getActiveCarsCount();
+        long availableCars = carService.getAvailableCarsCount();
+        long carsInRepair = carService.getCarsInRepairCount();
 
         content.append("<div class='stat-card'>");
         content.append("<div class='stat-icon'></div>");
@@ -422,7 +441,7 @@ public class CarServlet extends BaseServlet {
     protected void doPost(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
 
-        User currentUser = (User) req.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(req);
         if (currentUser == null) {
             resp.sendRedirect("/login");
             return;
@@ -453,7 +472,7 @@ public class CarServlet extends BaseServlet {
                     resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Неизвестное действие: " + path);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в doPost()", e);
             resp.sendRedirect("/cars?error=" + e.getMessage());
         }
     }
@@ -472,7 +491,7 @@ public class CarServlet extends BaseServlet {
             }
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в createCar()", e);
             resp.sendRedirect("/cars?error=" + e.getMessage());
         }
     }
@@ -492,7 +511,7 @@ public class CarServlet extends BaseServlet {
             resp.sendRedirect("/cars?success=updated");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в updateCar()", e);
             resp.sendRedirect("/cars?error=" + e.getMessage());
         }
     }
@@ -506,7 +525,7 @@ public class CarServlet extends BaseServlet {
                 resp.sendRedirect("/cars?error=Ошибка при удалении автомобиля");
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в deleteCar()", e);
             resp.sendRedirect("/cars?error=" + e.getMessage());
         }
     }
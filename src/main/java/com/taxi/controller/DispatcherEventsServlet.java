@@ -0,0 +1,104 @@
+package com.taxi.controller;
+
+import com.taxi.entity.User;
+import com.taxi.service.OrderEventHub;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Поток изменений для панели диспетчера (text/event-stream).
+ * Запрос переводится в асинхронный режим, и поток Jetty сразу освобождается:
+ * соединение остается открытым, а кадры в него пишет OrderEventHub.
+ *
+ * С какого события начать: заголовок Last-Event-ID (браузер шлет его сам при переподключении)
+ * или параметр since - номер события, на котором была отрисована страница
+ */
+public class DispatcherEventsServlet extends BaseServlet {
+    // Через сколько браузеру переподключаться после обрыва
+    private static final byte[] PREAMBLE = "retry: 3000\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OrderEventHub hub = OrderEventHub.getInstance();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+
+        User user = getCurrentUser(req);
+        if (user == null || !"OPERATOR".equals(user.getUserType())) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Доступ запрещен");
+            return;
+        }
+
+        long afterSeq = parseSeq(req.getHeader("Last-Event-ID"), parseSeq(req.getParameter("since"), hub.getLastSeq()));
+
+        resp.setContentType("text/event-stream; charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setHeader("X-Accel-Buffering", "no"); // прокси не должен копить поток
+
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0);
+        ServletOutputStream out = resp.getOutputStream();
+        out.write(PREAMBLE);
+        out.flush();
+
+        OrderEventHub.Subscriber subscriber = hub.subscribe(new OrderEventHub.Sink() {
+            @Override
+            public void write(List<byte[]> frames) throws IOException {
+                for (byte[] frame : frames) {
+                    out.write(frame);
+                }
+                out.flush();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    async.complete();
+                } catch (IllegalStateException e) {
+                    // Контейнер уже закрыл запрос сам
+                }
+            }
+        }, afterSeq);
+
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                hub.unsubscribe(subscriber);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                hub.unsubscribe(subscriber);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                hub.unsubscribe(subscriber);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    private static long parseSeq(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
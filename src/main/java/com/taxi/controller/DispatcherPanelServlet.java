@@ -4,9 +4,12 @@ import com.taxi.entity.Order;
 import com.taxi.entity.Driver;
 import com.taxi.entity.Car;
 import com.taxi.entity.User;
+import com.taxi.repository.OrderRepository;
 import com.taxi.service.OrderService;
 import com.taxi.service.DriverService;
 import com.taxi.service.CarService;
+import com.taxi.service.OrderEventHub;
+import com.taxi.util.StaticAssets;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -14,10 +17,27 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @WebServlet("/dispatcher")
 public class DispatcherPanelServlet extends BaseServlet {
+    private static final int ACTIVE_ORDERS_PAGE_SIZE = 25;
+
+    private static final Map<String, String[]> STATUS_BADGES = new LinkedHashMap<>();
+
+    static {
+        STATUS_BADGES.put("NEW", new String[]{"status-new", "Новый"});
+        STATUS_BADGES.put("ASSIGNED", new String[]{"status-accepted", "Назначен"});
+        STATUS_BADGES.put("ACCEPTED", new String[]{"status-accepted", "Назначен"});
+        STATUS_BADGES.put("IN_PROGRESS", new String[]{"status-in-progress", "В пути"});
+        STATUS_BADGES.put("ON_THE_WAY", new String[]{"status-on-way", "Едет к клиенту"});
+        STATUS_BADGES.put("PENDING", new String[]{"status-pending", "Ожидание"});
+    }
+
     private OrderService orderService = new OrderService();
     private DriverService driverService = new DriverService();
     private CarService carService = new CarService();
@@ -52,10 +72,15 @@ public class DispatcherPanelServlet extends BaseServlet {
         out.println("        <div class='card'>");
         out.println("            <h2 style='color: #fff; margin-bottom: 20px;'>Активные заказы</h2>");
 
-        // Получение активных заказов
-        List<Order> activeOrders = orderService.getDispatcherActiveOrders();
-
+        // Номер последнего события берем до чтения заказов: все, что изменится после, придет по SSE
+        long eventSeq = OrderEventHub.getInstance().getLastSeq();
+        boolean firstPage = req.getParameter("cursor") == null;
 
+        // Получение страницы активных заказов
+        OrderService.OrderPage page = orderService.getOrdersPage(
+                new OrderRepository.OrderFilter().statuses(OrderService.ACTIVE_STATUSES),
+                req.getParameter("cursor"), "prev".equals(req.getParameter("dir")), ACTIVE_ORDERS_PAGE_SIZE);
+        List<Order> activeOrders = page.getOrders();
 
         out.println("            <table>");
         out.println("                <thead>");
@@ -68,10 +93,11 @@ public class DispatcherPanelServlet extends BaseServlet {
         out.println("                        <th>Действия</th>");
         out.println("                    </tr>");
         out.println("                </thead>");
-        out.println("                <tbody>");
+        out.println("                <tbody id='active-orders' data-seq='" + eventSeq + "' data-first-page='" + firstPage
+                + "' data-statuses='" + statusBadgesJson() + "'>");
 
         if (activeOrders.isEmpty()) {
-            out.println("                <tr>");
+            out.println("                <tr class='empty-row'>");
             out.println("                    <td colspan='6' style='text-align: center; color: #888;'>");
             out.println("                        Нет активных заказов");
             out.println("                    </td>");
@@ -79,45 +105,15 @@ public class DispatcherPanelServlet extends BaseServlet {
         } else {
             for (Order order : activeOrders) {
                 String status = order.getStatus();
-                out.println("                <tr>");
+                out.println("                <tr data-order-id='" + order.getId() + "'>");
                 out.println("                    <td>" + order.getId() + "</td>");
                 out.println("                    <td>" + (order.getCustomerName() != null ? order.getCustomerName() : "Не указано") + "</td>");
                 out.println("                    <td>" + (order.getPickupAddress() != null ? order.getPickupAddress() : "Не указано") + "</td>");
                 out.println("                    <td>" + (order.getDriver() != null ? order.getDriver().getFullName() : "Не назначен") + "</td>");
                 out.println("                    <td>");
 
-                // Отображение статуса
-                String statusClass = "";
-                String statusText = "";
-                if (status != null) {
-                    switch (status.toUpperCase()) {
-                        case "NEW":
-                            statusClass = "status-new";
-                            statusText = "Новый";
-                            break;
-                        case "ASSIGNED":
-                        case "ACCEPTED":
-                            statusClass = "status-accepted";
-                            statusText = "Назначен";
-                            break;
-                        case "IN_PROGRESS":
-                            statusClass = "status-in-progress";
-                            statusText = "В пути";
-                            break;
-                        case "ON_THE_WAY":
-                            statusClass = "status-on-way";
-                            statusText = "Едет к клиенту";
-                            break;
-                        case "PENDING":
-                            statusClass = "status-pending";
-                            statusText = "Ожидание";
-                            break;
-                        default:
-                            statusClass = "status-default";
-                            statusText = status;
-                    }
-                }
-                out.println("                        <span class='status-badge " + statusClass + "'>" + statusText + "</span>");
+                String[] badge = statusBadge(status);
+                out.println("                        <span class='status-badge " + badge[0] + "'>" + badge[1] + "</span>");
 
                 out.println("                    </td>");
                 out.println("                    <td>");
@@ -134,6 +130,21 @@ public class DispatcherPanelServlet extends BaseServlet {
 
         out.println("                </tbody>");
         out.println("            </table>");
+
+        if (page.hasPrev() || page.hasNext()) {
+            out.println("            <div style='display: flex; justify-content: space-between; margin-top: 15px;'>");
+            if (page.hasPrev()) {
+                out.println("                <a href='/dispatcher?dir=prev&cursor=" +
+                        URLEncoder.encode(page.getPrevCursor(), StandardCharsets.UTF_8) + "' class='btn btn-secondary'>← Назад</a>");
+            } else {
+                out.println("                <span></span>");
+            }
+            if (page.hasNext()) {
+                out.println("                <a href='/dispatcher?dir=next&cursor=" +
+                        URLEncoder.encode(page.getNextCursor(), StandardCharsets.UTF_8) + "' class='btn btn-secondary'>Далее →</a>");
+            }
+            out.println("            </div>");
+        }
         out.println("        </div>");
 
         // Доступные водители и автомобили
@@ -188,17 +199,17 @@ public class DispatcherPanelServlet extends BaseServlet {
         double totalRevenue = orderService.getTodayRevenue();
 
         out.println("                <div style='text-align: center;'>");
-        out.println("                    <div style='font-size: 32px; color: #fff;'>" + todayOrders + "</div>");
+        out.println("                    <div id='stat-today-orders' style='font-size: 32px; color: #fff;'>" + todayOrders + "</div>");
         out.println("                    <div style='color: #888;'>Заказов сегодня</div>");
         out.println("                </div>");
 
         out.println("                <div style='text-align: center;'>");
-        out.println("                    <div style='font-size: 32px; color: #4caf50;'>" + completedToday + "</div>");
+        out.println("                    <div id='stat-completed-today' style='font-size: 32px; color: #4caf50;'>" + completedToday + "</div>");
         out.println("                    <div style='color: #888;'>Выполнено</div>");
         out.println("                </div>");
 
         out.println("                <div style='text-align: center;'>");
-        out.println("                    <div style='font-size: 32px; color: #2196f3;'>" + totalRevenue + " руб.</div>");
+        out.println("                    <div id='stat-today-revenue' style='font-size: 32px; color: #2196f3;'>" + totalRevenue + " руб.</div>");
         out.println("                    <div style='color: #888;'>Выручка</div>");
         out.println("                </div>");
 
@@ -232,6 +243,34 @@ public class DispatcherPanelServlet extends BaseServlet {
         out.println("}");
         out.println("</style>");
 
+        // Таблица и счетчики обновляются по событиям, без перезагрузки страницы
+        out.println("<script src='" + StaticAssets.url("/js/dispatcher.js") + "' defer></script>");
+
         renderFooter(out);
     }
+
+    /**
+     * Класс и подпись значка статуса
+     */
+    private static String[] statusBadge(String status) {
+        if (status == null) {
+            return new String[]{"", ""};
+        }
+        String[] badge = STATUS_BADGES.get(status.toUpperCase());
+        return badge != null ? badge : new String[]{"status-default", status};
+    }
+
+    /**
+     * Те же значки для скрипта панели: {"NEW":["status-new","Новый"],...}
+     */
+    private static String statusBadgesJson() {
+        StringBuilder json = new StringBuilder("{");
+        STATUS_BADGES.forEach((status, badge) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(status).append("\":[\"").append(badge[0]).append("\",\"").append(badge[1]).append("\"]");
+        });
+        return json.append('}').toString();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.taxi.controller;
+
+import com.taxi.dispatch.OfferDispatcher;
+import com.taxi.entity.Driver;
+import com.taxi.service.DriverService;
+import com.taxi.service.OrderService;
+import com.taxi.util.JsonUtil;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Канал предложений заказов для панели водителя (long-poll).
+ *
+ * GET ?current=id - id предложения, которое сейчас показано (0 - никакого). Если у водителя
+ * уже другое предложение, ответ приходит сразу; иначе запрос ждет изменения до POLL_TIMEOUT_MS
+ * без занятого потока Jetty и завершается 204 - клиент просто спрашивает снова.
+ * POST action=accept|decline, id - ответ водителя на предложение
+ */
+public class DriverOfferServlet extends BaseServlet {
+    // Меньше простоя соединения Jetty и типичных таймаутов прокси
+    private static final long POLL_TIMEOUT_MS = 25_000;
+    private static final String DRIVER_ID_ATTRIBUTE = "driverId";
+
+    private final OfferDispatcher offers = OfferDispatcher.getInstance();
+    private final OrderService orderService = new OrderService();
+    private final DriverService driverService = new DriverService();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+
+        Long driverId = getDriverId(req, resp);
+        if (driverId == null) {
+            return;
+        }
+        long shownId = parseId(req.getParameter("current"));
+        if (changed(driverId, shownId)) {
+            writeOffer(resp, offers.getOffer(driverId));
+            return;
+        }
+
+        AsyncContext async = req.startAsync();
+        async.setTimeout(POLL_TIMEOUT_MS);
+        AtomicBoolean done = new AtomicBoolean();
+        Runnable wakeUp = () -> {
+            if (done.compareAndSet(false, true)) {
+                try {
+                    writeOffer((HttpServletResponse) async.getResponse(), offers.getOffer(driverId));
+                } catch (IOException e) {
+                    // Водитель ушел со страницы
+                } finally {
+                    complete(async);
+                }
+            }
+        };
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                offers.removeListener(driverId, wakeUp);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                offers.removeListener(driverId, wakeUp);
+                if (done.compareAndSet(false, true)) {
+                    ((HttpServletResponse) event.getSuppliedResponse()).setStatus(HttpServletResponse.SC_NO_CONTENT);
+                    complete(async);
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                offers.removeListener(driverId, wakeUp);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        offers.addListener(driverId, wakeUp);
+        // Предложение могло смениться, пока слушатель не был добавлен
+        if (changed(driverId, shownId)) {
+            wakeUp.run();
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+
+        Long driverId = getDriverId(req, resp);
+        if (driverId == null) {
+            return;
+        }
+        long offerId = parseId(req.getParameter("id"));
+        String action = req.getParameter("action");
+
+        boolean ok;
+        String message;
+        if ("accept".equals(action)) {
+            OrderService.TransitionResult result = orderService.acceptOffer(driverId, offerId);
+            ok = result.isApplied();
+            message = ok ? "Заказ #" + result.getOrderId() + " назначен на вас" : result.getMessage();
+        } else if ("decline".equals(action)) {
+            ok = orderService.declineOffer(driverId, offerId);
+            message = ok ? "Вы отказались от заказа" : "Предложение уже недействительно";
+        } else {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Неизвестное действие");
+            return;
+        }
+
+        resp.setContentType("application/json; charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+        resp.getWriter().write("{\"ok\":" + ok + ",\"message\":" + JsonUtil.quote(message) + '}');
+    }
+
+    /**
+     * id водителя текущего пользователя; запоминается в сессии, чтобы каждый опрос не ходил в БД.
+     * null - ответ с ошибкой уже отправлен
+     */
+    private Long getDriverId(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!checkRole(req, "DRIVER")) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Доступ запрещен");
+            return null;
+        }
+        if (!OfferDispatcher.isEnabled()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Предложения заказов выключены");
+            return null;
+        }
+        HttpSession session = req.getSession();
+        Object cached = session.getAttribute(DRIVER_ID_ATTRIBUTE);
+        if (cached instanceof Long) {
+            return (Long) cached;
+        }
+        Driver driver = driverService.findByUserId(getCurrentUser(req).getId());
+        if (driver == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Водитель не найден");
+            return null;
+        }
+        session.setAttribute(DRIVER_ID_ATTRIBUTE, driver.getId());
+        return driver.getId();
+    }
+
+    private boolean changed(Long driverId, long shownId) {
+        OfferDispatcher.Offer offer = offers.getOffer(driverId);
+        return (offer != null ? offer.getId() : 0) != shownId;
+    }
+
+    private static void writeOffer(HttpServletResponse resp, OfferDispatcher.Offer offer) throws IOException {
+        String json;
+        if (offer == null) {
+            json = "{\"offer\":null}";
+        } else {
+            // Остаток времени, а не момент истечения: часы телефона и сервера могут расходиться
+            long expiresInMs = Math.max(0, offer.getExpiresAtMillis() - System.currentTimeMillis());
+            json = "{\"offer\":{\"id\":" + offer.getId()
+                    + ",\"orderId\":" + offer.getOrderId()
+                    + ",\"pickup\":" + JsonUtil.quote(offer.getPickupAddress())
+                    + ",\"destination\":" + JsonUtil.quote(offer.getDestinationAddress())
+                    + ",\"distanceKm\":" + (Double.isNaN(offer.getDistanceKm())
+                            ? "null" : String.format(Locale.ROOT, "%.1f", offer.getDistanceKm()))
+                    + ",\"note\":" + JsonUtil.quote(offer.getNote())
+                    + ",\"expiresInMs\":" + expiresInMs
+                    + "}}";
+        }
+        resp.setContentType("application/json; charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+        resp.getWriter().write(json);
+    }
+
+    private static void complete(AsyncContext async) {
+        try {
+            async.complete();
+        } catch (IllegalStateException e) {
+            // Запрос уже завершен контейнером
+        }
+    }
+
+    private static long parseId(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.taxi.controller;
 
+import com.taxi.dispatch.DispatchEngine;
+import com.taxi.dispatch.OfferDispatcher;
 import com.taxi.entity.Driver;
 import com.taxi.entity.Order;
 import com.taxi.entity.Waybill;
@@ -7,7 +9,9 @@ import com.taxi.entity.User;
 import com.taxi.service.DriverService;
 import com.taxi.service.OrderService;
 import com.taxi.service.WaybillService;
+import com.taxi.repository.FetchPlan;
 import com.taxi.repository.WaybillRepository;
+import com.taxi.util.StaticAssets;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -44,6 +48,22 @@ public class DriverPanelServlet extends BaseServlet {
 
         out.println("        <h1 class='page-title'>Моя панель водителя</h1>");
 
+        // Предложение заказа: карточку показывает и прячет driver-offers.js
+        if (OfferDispatcher.isEnabled() && driver != null) {
+            out.println("        <div class='card' id='order-offer' style='display: none; border: 2px solid #ff9800;'>");
+            out.println("            <h2 style='color: #fff; margin-bottom: 15px;'>Новый заказ <span id='offer-countdown' style='color: #ff9800;'></span></h2>");
+            out.println("            <p><strong>Откуда:</strong> <span id='offer-pickup'></span></p>");
+            out.println("            <p><strong>Куда:</strong> <span id='offer-destination'></span></p>");
+            out.println("            <p id='offer-distance' style='color: #aaa;'></p>");
+            out.println("            <p id='offer-note' style='color: #aaa;'></p>");
+            out.println("            <div style='margin-top: 15px; display: flex; gap: 10px;'>");
+            out.println("                <button type='button' class='btn' id='offer-accept'>Принять</button>");
+            out.println("                <button type='button' class='btn btn-secondary' id='offer-decline'>Отказаться</button>");
+            out.println("            </div>");
+            out.println("        </div>");
+            out.println("        <p id='offer-message' style='color: #aaa;'></p>");
+        }
+
         // Информация о водителе
         out.println("        <div class='card'>");
         out.println("            <h2 style='color: #fff; margin-bottom: 20px;'>Моя информация</h2>");
@@ -74,7 +94,7 @@ public class DriverPanelServlet extends BaseServlet {
 
         if (driver != null) {
             // Прямой вызов через репозиторий
-            Waybill activeWaybill = waybillRepository.findActiveByDriverId(driver.getId());
+            Waybill activeWaybill = waybillRepository.findActiveByDriverId(driver.getId(), FetchPlan.DETAIL);
 
             if (activeWaybill != null) {
                 out.println("            <div style='padding: 20px; background: rgba(255,255,255,0.05); border-radius: 10px;'>");
@@ -143,7 +163,7 @@ public class DriverPanelServlet extends BaseServlet {
                             .count();
                 }
 
-                List<Waybill> waybills = waybillRepository.findByDriverId(driver.getId());
+                List<Waybill> waybills = waybillRepository.findByDriverId(driver.getId(), FetchPlan.LIST);
                 if (waybills != null) {
                     totalWaybills = waybills.size();
                 }
@@ -177,6 +197,42 @@ public class DriverPanelServlet extends BaseServlet {
         out.println("            </div>");
         out.println("        </div>");
 
+        if (OfferDispatcher.isEnabled() && driver != null) {
+            out.println("<script src='" + StaticAssets.url("/js/driver-offers.js") + "' defer></script>");
+        }
+
         renderFooter(out);
     }
-}
\ No newline at end of file
+
+    /**
+     * Координаты водителя от приложения: POST latitude, longitude.
+     * Используются автоназначением для поиска ближайшего водителя
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+
+        if (!checkRole(req, "DRIVER")) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        Driver driver = driverService.findByUserId(getCurrentUser(req).getId());
+        if (driver == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Водитель не найден");
+            return;
+        }
+
+        try {
+            double latitude = Double.parseDouble(req.getParameter("latitude"));
+            double longitude = Double.parseDouble(req.getParameter("longitude"));
+            if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+                throw new NumberFormatException("координаты вне диапазона");
+            }
+            DispatchEngine.getInstance().updateDriverLocation(driver.getId(), latitude, longitude);
+            resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } catch (NumberFormatException | NullPointerException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Некорректные координаты");
+        }
+    }
+}
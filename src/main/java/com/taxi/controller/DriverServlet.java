@@ -3,23 +3,31 @@ package com.taxi.controller;
 import com.taxi.entity.Car;
 import com.taxi.entity.Driver;
 import com.taxi.entity.User;
+import com.taxi.repository.SearchIndex;
 import com.taxi.service.DriverService;
+import com.taxi.service.SearchService;
 import com.taxi.util.HtmlUtil;
+import com.taxi.util.AuthUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URLEncoder;
+import java.util.EnumSet;
 import java.util.List;
 
 @WebServlet("/drivers/*")
 public class DriverServlet extends HttpServlet {
 
+    private static final Logger log = LoggerFactory.getLogger(DriverServlet.class);
     private DriverService driverService = new DriverService();
+    private SearchService searchService = new SearchService();
     private HttpServletRequest currentRequest;
 
     @Override
@@ -29,7 +37,7 @@ public class DriverServlet extends HttpServlet {
         currentRequest = request;
 
         // Проверка прав
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -37,16 +45,10 @@ public class DriverServlet extends HttpServlet {
 
         String userRole = currentUser.getUserType();
 
-        // ДЕБАГ: выводим информацию о пользователе
-        System.out.println(" ДЕБАГ ДОСТУПА К /drivers ===");
-        System.out.println("Пользователь: " + currentUser.getLogin() + " (" + currentUser.getFullName() + ")");
-        System.out.println("Роль из БД: '" + userRole + "'");
-        System.out.println("isActive: " + currentUser.getIsActive());
-
         // Проверка доступа
         boolean hasAccess = "ADMIN".equals(userRole) || "MECHANIC".equals(userRole) || "DOCTOR".equals(userRole);
-        System.out.println("Доступ разрешен: " + hasAccess);
-//        System.out.println("=======================");
+        log.debug("Доступ к /drivers: {} ({}), роль '{}', разрешен: {}", currentUser.getLogin(),
+                currentUser.getFullName(), userRole, hasAccess);
 
         if (!hasAccess) {
             // Устанавливаем ContentType и выводим простую страницу ошибки
@@ -292,10 +294,22 @@ public class DriverServlet extends HttpServlet {
 
         // Получаем фильтр
         String filter = request.getParameter("filter");
-        List<Driver> drivers = driverService.getAllDrivers();
+        String search = request.getParameter("search");
+        SearchService.SearchResults found = null;
+        List<Driver> drivers;
+
+        // Поиск по ФИО, правам и телефону - постранично, лучшие совпадения первыми
+        if (search != null && !search.isBlank()) {
+            found = searchService.search(search, EnumSet.of(SearchIndex.Type.DRIVER),
+                    SearchService.parsePage(request.getParameter("page")), SearchService.DEFAULT_PAGE_SIZE);
+            drivers = found.getDrivers();
+            content.append("<div class='alert alert-info'>Найдено водителей: ").append(found.getTotal()).append("</div>");
+        } else {
+            drivers = driverService.getAllDrivers();
+        }
 
         // Применяем фильтр
-        if (filter != null) {
+        if (filter != null && found == null) {
             switch (filter) {
                 case "active":
                     drivers = drivers.stream().filter(Driver::getIsActive).toList();
@@ -333,11 +347,12 @@ public class DriverServlet extends HttpServlet {
         content.append("<a href='?filter=without-user' class='btn btn-secondary'> Без учетной записи</a>");
         content.append("<a href='?' class='btn btn-secondary'> Все водители</a>");
         content.append("</div>");
+        content.append(HtmlUtil.generateSearchForm("/drivers", search, "ФИО, права, телефон..."));
 
         // Таблица водителей
         content.append("<div class='card mb-30'>");
         content.append("<div class='card-header'>");
-        content.append("<h3 class='card-title'>Список водителей (всего: " + drivers.size() + ")</h3>");
+        content.append("<h3 class='card-title'>Список водителей (всего: " + (found != null ? found.getTotal() : drivers.size()) + ")</h3>");
         content.append("</div>");
         content.append("<div class='card-body'>");
 
@@ -421,6 +436,9 @@ public class DriverServlet extends HttpServlet {
             content.append("</table>");
             content.append("</div>");
         }
+        if (found != null) {
+            content.append(HtmlUtil.generateSearchPager("/drivers", search, found.getPage(), found.getPageCount()));
+        }
 
         content.append("</div>");
         content.append("</div>");
@@ -737,7 +755,7 @@ public class DriverServlet extends HttpServlet {
 
         currentRequest = request;
 
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -777,7 +795,7 @@ public class DriverServlet extends HttpServlet {
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Неизвестное действие: " + path);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в doPost()", e);
             response.sendRedirect("/drivers?error=" + e.getMessage());
         }
     }
@@ -813,7 +831,7 @@ public class DriverServlet extends HttpServlet {
             if (existingDriver != null) {
                 String errorMsg = "Водитель с номером прав '" + licenseNumber + "' уже существует (ID: " +
                         existingDriver.getId() + ", ФИО: " + existingDriver.getFullName() + ")";
-                System.out.println(" " + errorMsg);
+                log.warn("{}", errorMsg);
                 response.sendRedirect("/drivers?error=" + URLEncoder.encode(errorMsg, "UTF-8"));
                 return;
             }
@@ -824,8 +842,6 @@ public class DriverServlet extends HttpServlet {
             driver.setPhone(phone);
             driver.setIsActive(isActive);
 
-            System.out.println(" Создаем водителя: " + fullName + " (права: " + licenseNumber + ")");
-
             // Привязываем пользователя если выбран
             if (userIdParam != null && !userIdParam.isEmpty()) {
                 Long userId = Long.parseLong(userIdParam);
@@ -834,12 +850,11 @@ public class DriverServlet extends HttpServlet {
                 driverService.createDriver(driver);
             }
 
-            System.out.println(" Водитель успешно создан, перенаправляем на список");
+            log.info("Создан водитель: {} (права: {})", fullName, licenseNumber);
             response.sendRedirect("/drivers?success=created");
 
         } catch (Exception e) {
-            System.err.println(" Ошибка при создании водителя: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка при создании водителя", e);
             response.sendRedirect("/drivers?error=" + URLEncoder.encode("Ошибка при создании: " + e.getMessage(), "UTF-8"));
         }
     }
@@ -2,18 +2,28 @@ package com.taxi.controller;
 
 import com.taxi.service.ReportService;
 import com.taxi.entity.User;
-import com.taxi.entity.Order;
-import com.taxi.repository.OrderRepository;
+import com.taxi.util.AuthUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.util.List;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
 
 public class IncomeReportServlet extends HttpServlet {
 
+    private static final Logger log = LoggerFactory.getLogger(IncomeReportServlet.class);
+
+    // Размер буфера записи и частота промежуточной отправки данных клиенту
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
     private final ReportService reportService = new ReportService();
-    private final OrderRepository orderRepository = new OrderRepository();
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -25,7 +35,7 @@ public class IncomeReportServlet extends HttpServlet {
             return;
         }
 
-        User user = (User) session.getAttribute("user");
+        User user = AuthUtil.getCurrentUser(request);
         if (!"ADMIN".equals(user.getUserType())) {
             response.sendError(HttpServletResponse.SC_FORBIDDEN, "Доступ запрещен");
             return;
@@ -54,29 +64,66 @@ public class IncomeReportServlet extends HttpServlet {
             // Оставляем null
         }
 
-        // Получаем данные для CSV
-        List<ReportService.IncomeReportRecord> records = reportService.getIncomeReportRecords(
-                startDate, endDate, driverId, null
-        );
-
         // Настраиваем response для скачивания CSV
         String filename = "отчет_по_заказам_" + LocalDate.now() + ".csv";
         response.setContentType("text/csv; charset=UTF-8");
         response.setCharacterEncoding("UTF-8");
         response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
 
-        PrintWriter out = response.getWriter();
+        boolean gzip = acceptsGzip(request);
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.addHeader("Vary", "Accept-Encoding");
+
+        // Строки пишутся в поток по мере чтения курсора, весь отчет в памяти не собирается
+        CountingOutputStream counter = new CountingOutputStream(response.getOutputStream());
+        OutputStream body = gzip ? new GZIPOutputStream(counter, BUFFER_SIZE, true) : counter;
+        Writer out = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        long startedAt = System.currentTimeMillis();
+        long[] rows = {0};
 
-        // Записываем BOM для правильного отображения кириллицы в Excel
-        out.write('\uFEFF');
+        try {
+            // Записываем BOM для правильного отображения кириллицы в Excel
+            out.write('\uFEFF');
+
+            // Записываем заголовок с нужными столбцами
+            out.write("Дата завершения заказа;Водитель;Автомобиль;Гос. номер;Клиент;Телефон клиента;Откуда;Куда;Дистанция (км);Стоимость (руб)\n");
+
+            // Первый flush сразу отправляет заголовки ответа - скачивание начинается немедленно
+            out.flush();
+
+            // Записываем данные с разделителем точка с запятой
+            reportService.streamIncomeReportRecords(startDate, endDate, driverId, null, record -> {
+                try {
+                    out.write(formatCsvLine(record));
+                    out.write('\n');
+                    if (++rows[0] % FLUSH_EVERY_ROWS == 0) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            out.close();
+        } catch (UncheckedIOException e) {
+            // Клиент прервал скачивание - дальше писать некуда
+            log.info("Выгрузка отчета прервана после {} строк: {}", rows[0], e.getCause().getMessage());
+            return;
+        }
 
-        // Записываем заголовок с нужными столбцами
-        out.println("Дата завершения заказа;Водитель;Автомобиль;Гос. номер;Клиент;Телефон клиента;Откуда;Куда;Дистанция (км);Стоимость (руб)");
+        log.info("Отчет по доходам выгружен: строк={}, байт={}{}, время={} мс", rows[0], counter.getCount(),
+                gzip ? " (gzip)" : "", System.currentTimeMillis() - startedAt);
+    }
 
-        // Записываем данные с разделителем точка с запятой
-        for (ReportService.IncomeReportRecord record : records) {
-            out.println(formatCsvLine(record));
+    private boolean acceptsGzip(HttpServletRequest request) {
+        if ("false".equals(request.getParameter("gzip"))) {
+            return false;
         }
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
     }
 
     private String formatCsvLine(ReportService.IncomeReportRecord record) {
@@ -86,7 +133,7 @@ public class IncomeReportServlet extends HttpServlet {
         String dateStr = "";
         try {
             if (record.getDate() != null) {
-                dateStr = record.getDate().format(java.time.format.DateTimeFormatter.ofPattern("dd.MM.yyyy"));
+                dateStr = record.getDate().format(DATE_FORMATTER);
             }
         } catch (Exception e) {
             dateStr = "";
@@ -103,20 +150,16 @@ public class IncomeReportServlet extends HttpServlet {
         line.append(safeValue(record.getCarLicense(), "—")).append(";");
 
         // 5. Клиент
-        String customerName = getCustomerNameFromOrder(record.getOrderId());
-        line.append(safeValue(customerName, "—")).append(";");
+        line.append(safeValue(record.getCustomerName(), "—")).append(";");
 
         // 6. Телефон клиента
-        String customerPhone = getCustomerPhoneFromOrder(record.getOrderId());
-        line.append(safeValue(customerPhone, "—")).append(";");
+        line.append(safeValue(record.getCustomerPhone(), "—")).append(";");
 
         // 7. Откуда
-        String pickupAddress = getPickupAddressFromOrder(record.getOrderId());
-        line.append(safeValue(pickupAddress, "—")).append(";");
+        line.append(safeValue(record.getPickupAddress(), "—")).append(";");
 
         // 8. Куда
-        String destinationAddress = getDestinationAddressFromOrder(record.getOrderId());
-        line.append(safeValue(destinationAddress, "—")).append(";");
+        line.append(safeValue(record.getDestinationAddress(), "—")).append(";");
 
         // 9. Дистанция (км) - с запятой как десятичный разделитель
         line.append(String.format("%.2f", record.getDistance()).replace('.', ',')).append(";");
@@ -135,55 +178,30 @@ public class IncomeReportServlet extends HttpServlet {
         return value.replace(";", ",").replace("\"", "'").trim();
     }
 
-    private String getCustomerNameFromOrder(Long orderId) {
-        if (orderId == null) return null;
-        try {
-            Order order = orderRepository.findById(orderId);
-            if (order != null) {
-                return order.getCustomerName();
-            }
-        } catch (Exception e) {
-            // Игнорируем ошибки
+    /**
+     * Считает байты, реально отправленные клиенту (после сжатия)
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
         }
-        return null;
-    }
 
-    private String getCustomerPhoneFromOrder(Long orderId) {
-        if (orderId == null) return null;
-        try {
-            Order order = orderRepository.findById(orderId);
-            if (order != null) {
-                return order.getCustomerPhone();
-            }
-        } catch (Exception e) {
-            // Игнорируем ошибки
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
         }
-        return null;
-    }
 
-    private String getPickupAddressFromOrder(Long orderId) {
-        if (orderId == null) return null;
-        try {
-            Order order = orderRepository.findById(orderId);
-            if (order != null) {
-                return order.getPickupAddress();
-            }
-        } catch (Exception e) {
-            // Игнорируем ошибки
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
         }
-        return null;
-    }
 
-    private String getDestinationAddressFromOrder(Long orderId) {
-        if (orderId == null) return null;
-        try {
-            Order order = orderRepository.findById(orderId);
-            if (order != null) {
-                return order.getDestinationAddress();
-            }
-        } catch (Exception e) {
-            // Игнорируем ошибки
+        long getCount() {
+            return count;
         }
-        return null;
     }
-}
\ No newline at end of file
+}
@@ -102,11 +102,8 @@ public class MechanicPanelServlet extends BaseServlet {
         out.println("        <div class='card'>");
         out.println("            <h2 style='color: #fff; margin-bottom: 20px;'>Последние техосмотры</h2>");
 
-// Получаем все проверки и ограничиваем до 10 вручную
-        List<TechnicalInspection> allInspections = inspectionService.getAllTechnicalInspections();
-        List<TechnicalInspection> recentInspections = allInspections.stream()
-                .limit(10)
-                .toList();
+        // Только 10 последних - история техосмотров целиком не читается
+        List<TechnicalInspection> recentInspections = inspectionService.getRecentInspections(10);
 
         out.println("            <table>");
         out.println("                <thead>");
@@ -149,7 +146,7 @@ public class MechanicPanelServlet extends BaseServlet {
 
         try {
             // ИСПРАВЛЕНО: Получаем списки и берем их размер
-            List<Car> allCars = carService.getAllCars();
+            List<Car> allCars = cars;
             List<Car> availableCarsList = carService.getAvailableCars();
             List<Car> carsInRepairList = carService.getCarsInRepair();
 
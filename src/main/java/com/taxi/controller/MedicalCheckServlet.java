@@ -5,11 +5,14 @@ import com.taxi.entity.MedicalCheck;
 import com.taxi.entity.User;
 import com.taxi.service.MedicalCheckService;
 import com.taxi.util.HtmlUtil;
+import com.taxi.util.AuthUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -21,6 +24,7 @@ import java.util.List;
 @WebServlet("/medical-checks/*")
 public class MedicalCheckServlet extends HttpServlet {
 
+    private static final Logger log = LoggerFactory.getLogger(MedicalCheckServlet.class);
     private MedicalCheckService medicalCheckService = new MedicalCheckService();
     private DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
     private DateTimeFormatter dateOnlyFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
@@ -33,7 +37,7 @@ public class MedicalCheckServlet extends HttpServlet {
         currentRequest = request; // Сохраняем request
 
         // === ПРОВЕРКА АВТОРИЗАЦИИ И ПРАВ ===
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -330,71 +334,36 @@ public class MedicalCheckServlet extends HttpServlet {
     private List<MedicalCheck> getFilteredMedicalChecks(String driverFilter, String dateFilter,
                                                         String statusFilter, String shiftFilter,
                                                         String search) {
-        List<MedicalCheck> allChecks = medicalCheckService.getAllMedicalChecks();
-
-        return allChecks.stream()
-                .filter(check -> {
-                    // Фильтр по водителю
-                    if (driverFilter != null && !driverFilter.isEmpty()) {
-                        try {
-                            Long driverId = Long.parseLong(driverFilter);
-                            if (!check.getDriver().getId().equals(driverId)) {
-                                return false;
-                            }
-                        } catch (NumberFormatException e) {
-                            // Игнорируем неверный формат
-                        }
-                    }
-
-                    // Фильтр по дате
-                    if (dateFilter != null && !dateFilter.isEmpty()) {
-                        try {
-                            LocalDate filterDate = LocalDate.parse(dateFilter, dateOnlyFormatter);
-                            LocalDate checkDate = check.getCheckDate().toLocalDate();
-                            if (!checkDate.equals(filterDate)) {
-                                return false;
-                            }
-                        } catch (DateTimeParseException e) {
-                            // Игнорируем неверный формат даты
-                        }
-                    }
-
-                    // Фильтр по статусу
-                    if (statusFilter != null && !statusFilter.isEmpty()) {
-                        if ("passed".equals(statusFilter) && !check.getIsPassed()) {
-                            return false;
-                        }
-                        if ("failed".equals(statusFilter) && check.getIsPassed()) {
-                            return false;
-                        }
-                    }
-
-                    // Фильтр по смене
-                    if (shiftFilter != null && !shiftFilter.isEmpty()) {
-                        if ("yes".equals(shiftFilter) && !Boolean.TRUE.equals(check.getOpensShift())) {
-                            return false;
-                        }
-                        if ("no".equals(shiftFilter) && Boolean.TRUE.equals(check.getOpensShift())) {
-                            return false;
-                        }
-                    }
-
-                    // Поиск по тексту
-                    if (search != null && !search.isEmpty()) {
-                        String searchLower = search.toLowerCase();
-                        boolean matches = check.getDriver().getFullName().toLowerCase().contains(searchLower) ||
-                                check.getDoctor().getFullName().toLowerCase().contains(searchLower) ||
-                                (check.getNotes() != null && check.getNotes().toLowerCase().contains(searchLower)) ||
-                                check.getDriver().getLicenseNumber().toLowerCase().contains(searchLower);
-                        if (!matches) {
-                            return false;
-                        }
-                    }
-
-                    return true;
-                })
-                .sorted((c1, c2) -> c2.getCheckDate().compareTo(c1.getCheckDate())) // Сортировка по дате (новые сначала)
-                .toList();
+        // Фильтр по водителю
+        Long driverId = null;
+        if (driverFilter != null && !driverFilter.isEmpty()) {
+            try {
+                driverId = Long.parseLong(driverFilter);
+            } catch (NumberFormatException e) {
+                // Игнорируем неверный формат
+            }
+        }
+
+        // Фильтр по дате
+        LocalDate date = null;
+        if (dateFilter != null && !dateFilter.isEmpty()) {
+            try {
+                date = LocalDate.parse(dateFilter, dateOnlyFormatter);
+            } catch (DateTimeParseException e) {
+                // Игнорируем неверный формат даты
+            }
+        }
+
+        // Фильтр по статусу
+        Boolean passed = "passed".equals(statusFilter) ? Boolean.TRUE
+                : "failed".equals(statusFilter) ? Boolean.FALSE : null;
+
+        // Фильтр по смене
+        Boolean opensShift = "yes".equals(shiftFilter) ? Boolean.TRUE
+                : "no".equals(shiftFilter) ? Boolean.FALSE : null;
+
+        // Фильтры и поиск по тексту - в сервисе, сортировка по дате (новые сначала)
+        return medicalCheckService.getFilteredMedicalChecks(driverId, date, passed, opensShift, search);
     }
 
     private void showCreateForm(PrintWriter out, User currentUser) {
@@ -545,7 +514,7 @@ public class MedicalCheckServlet extends HttpServlet {
 
         currentRequest = request; // Сохраняем request
 
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -577,7 +546,7 @@ public class MedicalCheckServlet extends HttpServlet {
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Неизвестное действие: " + path);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в doPost()", e);
             response.sendRedirect("/medical-checks?error=" + e.getMessage());
         }
     }
@@ -599,7 +568,7 @@ public class MedicalCheckServlet extends HttpServlet {
             response.sendRedirect("/medical-checks?success=created");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в saveMedicalCheck()", e);
             response.sendRedirect("/medical-checks?error=" + e.getMessage());
         }
     }
@@ -615,7 +584,7 @@ public class MedicalCheckServlet extends HttpServlet {
             response.sendRedirect("/medical-checks?success=updated");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в updateMedicalCheck()", e);
             response.sendRedirect("/medical-checks?error=" + e.getMessage());
         }
     }
@@ -1,18 +1,62 @@
 package com.taxi.controller;
 
+import com.taxi.dispatch.OfferDispatcher;
 import com.taxi.entity.*;
+import com.taxi.repository.OrderRepository;
 import com.taxi.service.*;
 import com.taxi.util.HtmlUtil;
+import com.taxi.util.PageBuffer;
+import com.taxi.util.PageOutput;
+import com.taxi.util.AuthUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public class OrderServlet extends HttpServlet {
+    private static final Logger log = LoggerFactory.getLogger(OrderServlet.class);
+    private static final int ORDERS_PAGE_SIZE = 50;
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
+
+    // Строка таблицы заказов: куски разметки между значениями, закодированные один раз
+    private static final PageBuffer.Fragment[] ORDER_ROW = PageBuffer.Fragment.split(
+            "<tr><td>{}</td><td><div><strong>{}</strong></div><div><small>{}</small></div></td>"
+                    + "<td><small>{} → {}</small></td><td>");
+    private static final PageBuffer.Fragment[] ROW_DRIVER = PageBuffer.Fragment.split("<strong>{}</strong><br>");
+    private static final PageBuffer.Fragment[] ROW_CAR = PageBuffer.Fragment.split("<small> {}</small>");
+    private static final PageBuffer.Fragment[] ROW_STATUS = PageBuffer.Fragment.split(
+            "</td><td>{}</td><td>{}</td><td><div class='action-buttons-small'>"
+                    + "<a href='/orders/view?id={}' class='btn btn-sm' title='Просмотр'>Просмотр</a>");
+    private static final PageBuffer.Fragment[] ROW_ASSIGN = PageBuffer.Fragment.split(
+            "<a href='/orders/assign-driver?orderId={}' class='btn btn-sm btn-info' title='Назначить водителя'>Водитель</a>");
+    private static final PageBuffer.Fragment[] ROW_START = PageBuffer.Fragment.split(
+            "<a href='/orders/start?id={}' class='btn btn-sm btn-success' title='Начать выполнение'>Начать</a>");
+    private static final PageBuffer.Fragment[] ROW_COMPLETE = PageBuffer.Fragment.split(
+            "<a href='/orders/complete?id={}' class='btn btn-sm btn-warning' title='Завершить заказ'>Завершить</a>");
+    private static final PageBuffer.Fragment[] ROW_CANCEL = PageBuffer.Fragment.split(
+            "<a href='/orders/cancel?id={}' class='btn btn-sm btn-danger' title='Отменить заказ'>Отмена</a>");
+    private static final PageBuffer.Fragment ROW_END = PageBuffer.Fragment.of("</div></td></tr>");
+    private static final PageBuffer.Fragment NO_VALUE = PageBuffer.Fragment.of("—");
+    // Бейджи известных статусов
+    private static final Map<String, PageBuffer.Fragment> STATUS_BADGES = new HashMap<>();
+
+    static {
+        for (String status : List.of("NEW", "ASSIGNED", "IN_PROGRESS", "COMPLETED", "CANCELLED")) {
+            STATUS_BADGES.put(status, PageBuffer.Fragment.of(getStatusBadge(status)));
+        }
+    }
+
     private OrderService orderService;
     private DriverService driverService;
     private CarService carService;
@@ -32,11 +76,11 @@ public class OrderServlet extends HttpServlet {
             throws ServletException, IOException {
 
         response.setContentType("text/html;charset=UTF-8");
-        PrintWriter out = response.getWriter();
+        PrintWriter out = new PageOutput(response);
         this.currentRequest = request;
 
         // Проверяем авторизацию
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -126,7 +170,7 @@ public class OrderServlet extends HttpServlet {
         } catch (NumberFormatException e) {
             renderError(out, "Неверный формат ID заказа", request);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в doGet()", e);
             renderError(out, "Ошибка сервера: " + e.getMessage(), request);
         }
     }
@@ -138,298 +182,379 @@ public class OrderServlet extends HttpServlet {
         String userRole = currentUser.getUserType();
 
         // Формируем контент страницы
-        StringBuilder content = new StringBuilder();
-
-        // Заголовок и фильтры
-        content.append("<div class='mb-30'>");
-        content.append("<h1 class='page-title'>Заказы</h1>");
-        content.append("<p class='page-subtitle'>Управление заказами такси</p>");
-        content.append("</div>");
-
-        // Кнопки действий
-        content.append("<div class='action-buttons mb-30'>");
-        if (canCreateOrder(userRole)) {
-            content.append("<a href='/orders/new' class='btn btn-success'> Создать заказ</a>");
-        }
-
-        // Получаем текущий фильтр из параметра
-        String filter = request.getParameter("filter");
-        if (filter == null) {
-            filter = "active"; // По умолчанию показываем активные заказы
-        }
+        try (PageBuffer content = PageBuffer.acquire()) {
 
-        // Фильтры для оператора и админа
-        if ("OPERATOR".equals(userRole) || "ADMIN".equals(userRole)) {
-            content.append("<a href='?filter=active' class='btn btn-secondary");
-            if ("active".equals(filter)) content.append(" active");
-            content.append("'> Текущие заказы</a>");
+            // Заголовок и фильтры
+            content.appendRaw("<div class='mb-30'>");
+            content.appendRaw("<h1 class='page-title'>Заказы</h1>");
+            content.appendRaw("<p class='page-subtitle'>Управление заказами такси</p>");
+            content.appendRaw("</div>");
 
-            content.append("<a href='?filter=all' class='btn btn-secondary");
-            if ("all".equals(filter)) content.append(" active");
-            content.append("'> Все заказы</a>");
+            // Кнопки действий
+            content.appendRaw("<div class='action-buttons mb-30'>");
+            if (canCreateOrder(userRole)) {
+                content.appendRaw("<a href='/orders/new' class='btn btn-success'> Создать заказ</a>");
+            }
 
-            content.append("<a href='?filter=completed' class='btn btn-secondary");
-            if ("completed".equals(filter)) content.append(" active");
-            content.append("'> Завершенные</a>");
+            // Получаем текущий фильтр из параметра
+            String filter = request.getParameter("filter");
+            if (filter == null) {
+                filter = "active"; // По умолчанию показываем активные заказы
+            }
 
-            content.append("<a href='?filter=cancelled' class='btn btn-secondary");
-            if ("cancelled".equals(filter)) content.append(" active");
-            content.append("'> Отмененные</a>");
-        } else if ("DRIVER".equals(userRole)) {
-            // Фильтры для водителя
-            content.append("<a href='?filter=assigned' class='btn btn-secondary'> Ожидающие</a>");
-            content.append("<a href='?filter=in_progress' class='btn btn-secondary'> В работе</a>");
-            content.append("<a href='?filter=completed' class='btn btn-secondary'> Завершенные</a>");
-            content.append("<a href='?' class='btn btn-secondary'> Все мои заказы</a>");
-        }
-        content.append("</div>");
+            // Фильтры для оператора и админа
+            if ("OPERATOR".equals(userRole) || "ADMIN".equals(userRole)) {
+                content.appendRaw("<a href='?filter=active' class='btn btn-secondary");
+                if ("active".equals(filter)) content.appendRaw(" active");
+                content.appendRaw("'> Текущие заказы</a>");
+
+                content.appendRaw("<a href='?filter=all' class='btn btn-secondary");
+                if ("all".equals(filter)) content.appendRaw(" active");
+                content.appendRaw("'> Все заказы</a>");
+
+                content.appendRaw("<a href='?filter=completed' class='btn btn-secondary");
+                if ("completed".equals(filter)) content.appendRaw(" active");
+                content.appendRaw("'> Завершенные</a>");
+
+                content.appendRaw("<a href='?filter=cancelled' class='btn btn-secondary");
+                if ("cancelled".equals(filter)) content.appendRaw(" active");
+                content.appendRaw("'> Отмененные</a>");
+            } else if ("DRIVER".equals(userRole)) {
+                // Фильтры для водителя
+                content.appendRaw("<a href='?filter=assigned' class='btn btn-secondary'> Ожидающие</a>");
+                content.appendRaw("<a href='?filter=in_progress' class='btn btn-secondary'> В работе</a>");
+                content.appendRaw("<a href='?filter=completed' class='btn btn-secondary'> Завершенные</a>");
+                content.appendRaw("<a href='?' class='btn btn-secondary'> Все мои заказы</a>");
+            }
+            content.appendRaw("</div>");
 
+            if ("OPERATOR".equals(userRole) || "ADMIN".equals(userRole)) {
+                appendListFilterForm(content, request, filter);
+            }
 
-        // Получаем заказы в зависимости от роли и фильтра
-        List<Order> orders = getOrdersForUser(currentUser, request, filter);
+            // Действие над заказом не выполнено: его успел изменить кто-то другой
+            Long conflictOrderId = parseLongParam(request.getParameter("conflict"));
+            if (conflictOrderId != null) {
+                Order conflicted = orderService.getOrderById(conflictOrderId);
+                content.appendRaw("<div class='card fade-in'><div class='alert alert-danger'>");
+                content.appendRaw(" Заказ #").append(conflictOrderId).appendRaw(" уже изменен другим пользователем");
+                if (conflicted != null) {
+                    content.appendRaw(", текущий статус: ").appendRaw(getStatusBadge(conflicted.getStatus()));
+                }
+                content.appendRaw(". Действие не выполнено - проверьте заказ и повторите при необходимости.");
+                content.appendRaw("</div></div>");
+            }
 
-        // Таблица заказов
-        content.append("<div class='card'>");
-        content.append("<div class='card-header'>");
-        content.append("<h3 class='card-title'>Список заказов</h3>");
 
-        // Информация о текущем фильтре
-        String filterText = getFilterDisplayText(filter);
-        content.append("<span style='color: #888; font-size: 0.9em; margin-left: 15px;'>");
-        content.append(filterText);
-        content.append("</span>");
+            // Получаем страницу заказов в зависимости от роли и фильтра
+            OrderService.OrderPage page = getOrdersPageForUser(currentUser, request, filter);
+            List<Order> orders = page.getOrders();
 
-        content.append("</div>");
-        content.append("<div class='card-body'>");
+            // Таблица заказов
+            content.appendRaw("<div class='card'>");
+            content.appendRaw("<div class='card-header'>");
+            content.appendRaw("<h3 class='card-title'>Список заказов</h3>");
 
-        if (orders.isEmpty()) {
-            content.append("<div class='empty-state'>");
-            content.append("<div class='empty-icon'>-</div>");
-            content.append("<h3>Заказы не найдены</h3>");
-            content.append("<p>По выбранным фильтрам заказов нет</p>");
-            if (canCreateOrder(userRole) && ("active".equals(filter) || "new".equals(filter))) {
-                content.append("<a href='/orders/new' class='btn btn-success mt-20'>Создать новый заказ</a>");
-            }
-            content.append("</div>");
-        } else {
-            content.append("<div class='table-container'>");
-            content.append("<table>");
-            content.append("<thead>");
-            content.append("<tr>");
-            // УБИРАЕМ СТОЛБЕЦ ID
-            content.append("<th>Дата</th>");
-            content.append("<th>Клиент</th>");
-            content.append("<th>Маршрут</th>");
-            content.append("<th>Водитель/Авто</th>");
-            content.append("<th>Статус</th>");
-            content.append("<th>Стоимость</th>");
-            content.append("<th>Действия</th>");
-            content.append("</tr>");
-            content.append("</thead>");
-            content.append("<tbody>");
-
-            for (Order order : orders) {
-                content.append("<tr>");
-                // УБИРАЕМ ЯЧЕЙКУ С ID
-                content.append("<td>").append(formatDateTime(order.getOrderTime())).append("</td>");
-                content.append("<td>");
-                content.append("<div><strong>").append(order.getCustomerName() != null ? order.getCustomerName() : "—").append("</strong></div>");
-                content.append("<div><small>").append(order.getCustomerPhone() != null ? order.getCustomerPhone() : "—").append("</small></div>");
-                content.append("</td>");
-                content.append("<td>");
-                content.append("<small>").append(order.getPickupAddress()).append(" → ");
-                content.append(order.getDestinationAddress() != null ? order.getDestinationAddress() : "—").append("</small>");
-                content.append("</td>");
-
-                // Информация о водителе и авто
-                content.append("<td>");
-                if (order.getDriver() != null) {
-                    content.append("<strong>").append(order.getDriver().getFullName()).append("</strong><br>");
-                    if (order.getCar() != null) {
-                        content.append("<small> ").append(order.getCar().getLicensePlate()).append("</small>");
-                    } else if (order.getDriver().getCurrentCar() != null) {
-                        content.append("<small> ").append(order.getDriver().getCurrentCar().getLicensePlate()).append("</small>");
-                    }
-                } else {
-                    content.append("—");
-                }
-                content.append("</td>");
+            // Информация о текущем фильтре
+            String filterText = getFilterDisplayText(filter);
+            content.appendRaw("<span style='color: #888; font-size: 0.9em; margin-left: 15px;'>");
+            content.appendRaw(filterText);
+            content.appendRaw("</span>");
 
-                // Статус
-                content.append("<td>").append(getStatusBadge(order.getStatus())).append("</td>");
+            content.appendRaw("</div>");
+            content.appendRaw("<div class='card-body'>");
 
-                // Стоимость
-                content.append("<td>");
-                if (order.getPrice() != null) {
-                    content.append(String.format("%.2f ₽", order.getPrice()));
-                } else {
-                    content.append("—");
+            if (orders.isEmpty()) {
+                content.appendRaw("<div class='empty-state'>");
+                content.appendRaw("<div class='empty-icon'>-</div>");
+                content.appendRaw("<h3>Заказы не найдены</h3>");
+                content.appendRaw("<p>По выбранным фильтрам заказов нет</p>");
+                if (canCreateOrder(userRole) && ("active".equals(filter) || "new".equals(filter))) {
+                    content.appendRaw("<a href='/orders/new' class='btn btn-success mt-20'>Создать новый заказ</a>");
                 }
-                content.append("</td>");
-
-                // Кнопки действий
-                content.append("<td>");
-                content.append("<div class='action-buttons-small'>");
-                content.append("<a href='/orders/view?id=").append(order.getId()).append("' class='btn btn-sm' title='Просмотр'>Просмотр</a>");
-
-                // Проверяем права на действия для текущего пользователя
-                if (canPerformActionOnOrder(currentUser, order)) {
-                    if (order.canBeAssigned() && canAssignDriver(userRole)) {
-                        content.append("<a href='/orders/assign-driver?orderId=").append(order.getId())
-                                .append("' class='btn btn-sm btn-info' title='Назначить водителя'>Водитель</a>");
+                content.appendRaw("</div>");
+            } else {
+                content.appendRaw("<div class='table-container'>");
+                content.appendRaw("<table>");
+                content.appendRaw("<thead>");
+                content.appendRaw("<tr>");
+                // УБИРАЕМ СТОЛБЕЦ ID
+                content.appendRaw("<th>Дата</th>");
+                content.appendRaw("<th>Клиент</th>");
+                content.appendRaw("<th>Маршрут</th>");
+                content.appendRaw("<th>Водитель/Авто</th>");
+                content.appendRaw("<th>Статус</th>");
+                content.appendRaw("<th>Стоимость</th>");
+                content.appendRaw("<th>Действия</th>");
+                content.appendRaw("</tr>");
+                content.appendRaw("</thead>");
+                content.appendRaw("<tbody>");
+
+                for (Order order : orders) {
+                    content.append(ORDER_ROW[0]).appendRaw(formatDateTime(order.getOrderTime()))
+                            .append(ORDER_ROW[1]).appendEscaped(order.getCustomerName() != null ? order.getCustomerName() : "—")
+                            .append(ORDER_ROW[2]).appendEscaped(order.getCustomerPhone() != null ? order.getCustomerPhone() : "—")
+                            .append(ORDER_ROW[3]).appendEscaped(order.getPickupAddress())
+                            .append(ORDER_ROW[4]).appendEscaped(order.getDestinationAddress() != null ? order.getDestinationAddress() : "—")
+                            .append(ORDER_ROW[5]);
+
+                    // Информация о водителе и авто
+                    if (order.getDriver() != null) {
+                        content.append(ROW_DRIVER[0]).appendEscaped(order.getDriver().getFullName()).append(ROW_DRIVER[1]);
+                        if (order.getCar() != null) {
+                            content.append(ROW_CAR[0]).appendEscaped(order.getCar().getLicensePlate()).append(ROW_CAR[1]);
+                        } else if (order.getDriver().getCurrentCar() != null) {
+                            content.append(ROW_CAR[0]).appendEscaped(order.getDriver().getCurrentCar().getLicensePlate()).append(ROW_CAR[1]);
+                        }
+                    } else {
+                        content.append(NO_VALUE);
                     }
 
-                    if ("ASSIGNED".equals(order.getStatus()) && canStartOrder(currentUser, order)) {
-                        content.append("<a href='/orders/start?id=").append(order.getId())
-                                .append("' class='btn btn-sm btn-success' title='Начать выполнение'>Начать</a>");
+                    // Статус, стоимость и просмотр
+                    content.append(ROW_STATUS[0]);
+                    appendStatusBadge(content, order.getStatus());
+                    content.append(ROW_STATUS[1]);
+                    if (order.getPrice() != null) {
+                        content.appendRaw(String.format("%.2f ₽", order.getPrice()));
+                    } else {
+                        content.append(NO_VALUE);
                     }
-
-                    if (order.isInProgress() && canCompleteOrder(userRole, order, currentUser)) {
-                        content.append("<a href='/orders/complete?id=").append(order.getId())
-                                .append("' class='btn btn-sm btn-warning' title='Завершить заказ'>Завершить</a>");
+                    content.append(ROW_STATUS[2]).append(order.getId()).append(ROW_STATUS[3]);
+
+                    // Проверяем права на действия для текущего пользователя
+                    if (canPerformActionOnOrder(currentUser, order)) {
+                        if (order.canBeAssigned() && canAssignDriver(userRole)) {
+                            content.append(ROW_ASSIGN[0]).append(order.getId()).append(ROW_ASSIGN[1]);
+                        }
+
+                        if ("ASSIGNED".equals(order.getStatus()) && canStartOrder(currentUser, order)) {
+                            content.append(ROW_START[0]).append(order.getId()).append(ROW_START[1]);
+                        }
+
+                        if (order.isInProgress() && canCompleteOrder(userRole, order, currentUser)) {
+                            content.append(ROW_COMPLETE[0]).append(order.getId()).append(ROW_COMPLETE[1]);
+                        }
+
+                        if ((order.canBeAssigned() || "ASSIGNED".equals(order.getStatus()) || order.isInProgress())
+                                && canCancelOrder(userRole)) {
+                            content.append(ROW_CANCEL[0]).append(order.getId()).append(ROW_CANCEL[1]);
+                        }
                     }
 
-                    if ((order.canBeAssigned() || "ASSIGNED".equals(order.getStatus()) || order.isInProgress())
-                            && canCancelOrder(userRole)) {
-                        content.append("<a href='/orders/cancel?id=").append(order.getId())
-                                .append("' class='btn btn-sm btn-danger' title='Отменить заказ'>Отмена</a>");
-                    }
+                    content.append(ROW_END);
                 }
 
-                content.append("</div>");
-                content.append("</td>");
-                content.append("</tr>");
+                content.appendRaw("</tbody>");
+                content.appendRaw("</table>");
+                content.appendRaw("</div>");
+
+                // Сводная информация
+                content.appendRaw("<div class='mt-20' style='padding-top: 15px; border-top: 1px solid #333;'>");
+                content.appendRaw("<div style='color: #888; font-size: 0.9em;'>");
+                content.appendRaw("Показано на странице: ").append(orders.size()).appendRaw(" заказов");
+                if (!"all".equals(filter) && !"active".equals(filter)) {
+                    long activeCount = orders.stream().filter(o ->
+                            "NEW".equals(o.getStatus()) ||
+                                    "ASSIGNED".equals(o.getStatus()) ||
+                                    "IN_PROGRESS".equals(o.getStatus())
+                    ).count();
+                    content.appendRaw(" | Из них активных: ").append(activeCount);
+                }
+                content.appendRaw("</div>");
+                content.appendRaw("</div>");
             }
 
-            content.append("</tbody>");
-            content.append("</table>");
-            content.append("</div>");
-
-            // Сводная информация
-            content.append("<div class='mt-20' style='padding-top: 15px; border-top: 1px solid #333;'>");
-            content.append("<div style='color: #888; font-size: 0.9em;'>");
-            content.append("Показано: ").append(orders.size()).append(" заказов");
-            if (!"all".equals(filter) && !"active".equals(filter)) {
-                long activeCount = orders.stream().filter(o ->
-                        "NEW".equals(o.getStatus()) ||
-                                "ASSIGNED".equals(o.getStatus()) ||
-                                "IN_PROGRESS".equals(o.getStatus())
-                ).count();
-                content.append(" | Из них активных: ").append(activeCount);
+            appendPageNavigation(content, request, page);
+
+            content.appendRaw("</div>");
+            content.appendRaw("</div>");
+
+            // Статистика для оператора и админа
+            if ("OPERATOR".equals(userRole) || "ADMIN".equals(userRole)) {
+                content.appendRaw("<div class='card mb-30'>");
+                content.appendRaw("<div class='card-header'>");
+                content.appendRaw("<h3 class='card-title'> Статистика заказов</h3>");
+                content.appendRaw("</div>");
+                content.appendRaw("<div class='card-body'>");
+                content.appendRaw("<div class='stats-grid'>");
+
+                long totalOrders = orderService.getTotalOrders();
+                long activeOrders = orderService.getActiveOrdersCount();
+                long todayOrders = orderService.getTodayOrdersCount();
+                double totalRevenue = orderService.getTotalRevenue();
+
+                content.appendRaw("<div class='stat-card'>");
+                content.appendRaw("<div class='stat-icon'></div>");
+                content.appendRaw("<div class='stat-value'>").append(totalOrders).appendRaw("</div>");
+                content.appendRaw("<div class='stat-label'>Всего заказов</div>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='stat-card'>");
+                content.appendRaw("<div class='stat-icon'></div>");
+                content.appendRaw("<div class='stat-value'>").append(activeOrders).appendRaw("</div>");
+                content.appendRaw("<div class='stat-label'>Активных</div>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='stat-card'>");
+                content.appendRaw("<div class='stat-icon'></div>");
+                content.appendRaw("<div class='stat-value'>").append(todayOrders).appendRaw("</div>");
+                content.appendRaw("<div class='stat-label'>Сегодня</div>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='stat-card'>");
+                content.appendRaw("<div class='stat-icon'></div>");
+                content.appendRaw("<div class='stat-value'>").appendRaw(String.format("%.2f", totalRevenue)).appendRaw(" ₽</div>");
+                content.appendRaw("<div class='stat-label'>Общая выручка</div>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("</div></div></div>");
             }
-            content.append("</div>");
-            content.append("</div>");
-        }
-
 
-        content.append("</div>");
-        content.append("</div>");
-
-        // Статистика для оператора и админа
-        if ("OPERATOR".equals(userRole) || "ADMIN".equals(userRole)) {
-            content.append("<div class='card mb-30'>");
-            content.append("<div class='card-header'>");
-            content.append("<h3 class='card-title'> Статистика заказов</h3>");
-            content.append("</div>");
-            content.append("<div class='card-body'>");
-            content.append("<div class='stats-grid'>");
-
-            long totalOrders = orderService.getTotalOrders();
-            long activeOrders = orderService.getActiveOrdersCount();
-            long todayOrders = orderService.getTodayOrdersCount();
-            double totalRevenue = orderService.getTotalRevenue();
-
-            content.append("<div class='stat-card'>");
-            content.append("<div class='stat-icon'></div>");
-            content.append("<div class='stat-value'>").append(totalOrders).append("</div>");
-            content.append("<div class='stat-label'>Всего заказов</div>");
-            content.append("</div>");
-
-            content.append("<div class='stat-card'>");
-            content.append("<div class='stat-icon'></div>");
-            content.append("<div class='stat-value'>").append(activeOrders).append("</div>");
-            content.append("<div class='stat-label'>Активных</div>");
-            content.append("</div>");
-
-            content.append("<div class='stat-card'>");
-            content.append("<div class='stat-icon'></div>");
-            content.append("<div class='stat-value'>").append(todayOrders).append("</div>");
-            content.append("<div class='stat-label'>Сегодня</div>");
-            content.append("</div>");
-
-            content.append("<div class='stat-card'>");
-            content.append("<div class='stat-icon'></div>");
-            content.append("<div class='stat-value'>").append(String.format("%.2f", totalRevenue)).append(" ₽</div>");
-            content.append("<div class='stat-label'>Общая выручка</div>");
-            content.append("</div>");
-
-            content.append("</div></div></div>");
+            // Рендерим полную страницу
+            HtmlUtil.renderFullPage(out, request, "Заказы", "orders", content);
         }
-
-        // Рендерим полную страницу
-        HtmlUtil.renderFullPage(out, request, "Заказы", "orders", content.toString());
     }
 
     /**
-     * Получает список заказов для пользователя с учетом фильтров
+     * Получает страницу заказов для пользователя с учетом фильтров.
+     * Фильтрация и пагинация выполняются в БД
      */
-    private List<Order> getOrdersForUser(User user, HttpServletRequest request, String filter) {
+    private OrderService.OrderPage getOrdersPageForUser(User user, HttpServletRequest request, String filter) {
         String userRole = user.getUserType();
 
-        List<Order> orders;
+        OrderRepository.OrderFilter orderFilter = new OrderRepository.OrderFilter()
+                .statuses(getFilterStatuses(filter));
 
         if ("DRIVER".equals(userRole)) {
             // Водитель видит только свои заказы
             Driver driver = driverService.findDriverByUserId(user.getId());
-            if (driver != null) {
-                orders = orderService.getDriverOrders(driver.getId());
-            } else {
-                orders = List.of();
+            if (driver == null) {
+                return new OrderService.OrderPage(List.of(), false, false);
             }
+            orderFilter.driverId(driver.getId());
         } else if ("OPERATOR".equals(userRole) || "ADMIN".equals(userRole)) {
-            // Оператор и админ видят все заказы
-            orders = orderService.getAllOrders();
+            // Оператор и админ видят все заказы, с фильтром по водителю и дате
+            orderFilter.driverId(parseLongParam(request.getParameter("driverId")));
+            LocalDate startDate = parseDateParam(request.getParameter("startDate"));
+            LocalDate endDate = parseDateParam(request.getParameter("endDate"));
+            orderFilter.period(startDate != null ? startDate.atStartOfDay() : null,
+                    endDate != null ? endDate.plusDays(1).atStartOfDay() : null);
         } else {
             // Другие роли не должны иметь доступ
-            orders = List.of();
+            return new OrderService.OrderPage(List.of(), false, false);
         }
 
-        // Применяем фильтр
-        if (filter != null && !filter.isEmpty()) {
-            orders = applyFilter(orders, filter);
+        return orderService.getOrdersPage(orderFilter, request.getParameter("cursor"),
+                "prev".equals(request.getParameter("dir")), ORDERS_PAGE_SIZE);
+    }
+
+    /**
+     * Статусы, соответствующие фильтру списка (null - без ограничения)
+     */
+    private List<String> getFilterStatuses(String filter) {
+        if (filter == null) return OrderService.ACTIVE_STATUSES;
+
+        switch (filter) {
+            case "new": return List.of("NEW");
+            case "assigned": return List.of("ASSIGNED");
+            case "in_progress": return List.of("IN_PROGRESS");
+            case "completed": return List.of("COMPLETED");
+            case "cancelled": return List.of("CANCELLED");
+            case "all": return null;
+            case "active": // ПО УМОЛЧАНИЮ - все кроме завершенных и отмененных
+            default: return OrderService.ACTIVE_STATUSES;
         }
+    }
 
-        return orders;
+    /**
+     * Форма фильтра по водителю и периоду для оператора и админа
+     */
+    private void appendListFilterForm(PageBuffer content, HttpServletRequest request, String filter) {
+        String driverIdParam = request.getParameter("driverId");
+        // В форму попадают только разобранные значения, а не сырые параметры запроса
+        LocalDate startDate = parseDateParam(request.getParameter("startDate"));
+        LocalDate endDate = parseDateParam(request.getParameter("endDate"));
+
+        content.appendRaw("<div class='filter-form mb-30'>");
+        content.appendRaw("<form method='GET'>");
+        content.appendRaw("<input type='hidden' name='filter' value='").appendEscaped(filter.matches("[a-z_]+") ? filter : "active").appendRaw("'>");
+        content.appendRaw("<div class='form-row'>");
+        content.appendRaw("<div class='form-group'>");
+        content.appendRaw("<label for='driverId'>Водитель</label>");
+        content.appendRaw("<select id='driverId' name='driverId' class='form-control'>");
+        content.appendRaw("<option value=''>Все водители</option>");
+        for (Driver driver : driverService.getAllDrivers()) {
+            content.appendRaw("<option value='").append(driver.getId()).appendRaw("'");
+            if (driver.getId() != null && driver.getId().toString().equals(driverIdParam)) {
+                content.appendRaw(" selected");
+            }
+            content.appendRaw(">").appendEscaped(driver.getFullName() != null ? driver.getFullName() : "Водитель #" + driver.getId())
+                    .appendRaw("</option>");
+        }
+        content.appendRaw("</select>");
+        content.appendRaw("</div>");
+        content.appendRaw("<div class='form-group'>");
+        content.appendRaw("<label for='startDate'>С даты</label>");
+        content.appendRaw("<input type='date' id='startDate' name='startDate' class='form-control' value='")
+                .appendRaw(startDate != null ? startDate.toString() : "").appendRaw("'>");
+        content.appendRaw("</div>");
+        content.appendRaw("<div class='form-group'>");
+        content.appendRaw("<label for='endDate'>По дату</label>");
+        content.appendRaw("<input type='date' id='endDate' name='endDate' class='form-control' value='")
+                .appendRaw(endDate != null ? endDate.toString() : "").appendRaw("'>");
+        content.appendRaw("</div>");
+        content.appendRaw("</div>");
+        content.appendRaw("<button type='submit' class='btn btn-secondary'>Применить</button>");
+        content.appendRaw("</form>");
+        content.appendRaw("</div>");
     }
 
     /**
-     * Применяет фильтр к списку заказов
+     * Ссылки на предыдущую и следующую страницы с сохранением фильтров
      */
-    private List<Order> applyFilter(List<Order> orders, String filter) {
-        return orders.stream()
-                .filter(order -> {
-                    switch (filter) {
-                        case "new":
-                            return "NEW".equals(order.getStatus());
-                        case "assigned":
-                            return "ASSIGNED".equals(order.getStatus());
-                        case "in_progress":
-                            return "IN_PROGRESS".equals(order.getStatus());
-                        case "completed":
-                            return "COMPLETED".equals(order.getStatus());
-                        case "cancelled":
-                            return "CANCELLED".equals(order.getStatus());
-                        case "active": // ПО УМОЛЧАНИЮ - все кроме завершенных и отмененных
-                            return !"COMPLETED".equals(order.getStatus()) &&
-                                    !"CANCELLED".equals(order.getStatus());
-                        case "all":
-                            return true;
-                        default:
-                            return true;
-                    }
-                })
-                .sorted((o1, o2) -> o2.getOrderTime().compareTo(o1.getOrderTime()))
-                .collect(Collectors.toList());
+    private void appendPageNavigation(PageBuffer content, HttpServletRequest request, OrderService.OrderPage page) {
+        if (!page.hasPrev() && !page.hasNext()) {
+            return;
+        }
+
+        StringBuilder params = new StringBuilder();
+        for (String name : new String[]{"filter", "driverId", "startDate", "endDate"}) {
+            String value = request.getParameter(name);
+            if (value != null && !value.isEmpty()) {
+                params.append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8)).append('&');
+            }
+        }
+
+        content.appendRaw("<div class='mt-20' style='display: flex; justify-content: space-between;'>");
+        if (page.hasPrev()) {
+            content.appendRaw("<a href='?").appendRaw(params).appendRaw("dir=prev&cursor=")
+                    .appendRaw(URLEncoder.encode(page.getPrevCursor(), StandardCharsets.UTF_8))
+                    .appendRaw("' class='btn btn-secondary'>← Назад</a>");
+        } else {
+            content.appendRaw("<span></span>");
+        }
+        if (page.hasNext()) {
+            content.appendRaw("<a href='?").appendRaw(params).appendRaw("dir=next&cursor=")
+                    .appendRaw(URLEncoder.encode(page.getNextCursor(), StandardCharsets.UTF_8))
+                    .appendRaw("' class='btn btn-secondary'>Далее →</a>");
+        }
+        content.appendRaw("</div>");
+    }
+
+    private Long parseLongParam(String value) {
+        try {
+            return value != null && !value.isEmpty() ? Long.parseLong(value) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private LocalDate parseDateParam(String value) {
+        try {
+            return value != null && !value.isEmpty() ? LocalDate.parse(value) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
     }
 
     /**
@@ -454,57 +579,65 @@ public class OrderServlet extends HttpServlet {
      * Форма создания нового заказа
      */
     private void showCreateOrderForm(PrintWriter out, User currentUser) {
-        StringBuilder content = new StringBuilder();
-
-        content.append("<div class='card'>");
-        content.append("<div class='card-header'>");
-        content.append("<h2 class='card-title'> Создать новый заказ</h2>");
-        content.append("</div>");
-        content.append("<div class='card-body'>");
-
-        content.append("<form method='POST' action='/orders/save' class='form'>");
-        content.append("<div class='form-group'>");
-        content.append("<label for='customerName' class='form-label'>Имя клиента:</label>");
-        content.append("<input type='text' class='form-control' id='customerName' name='customerName' placeholder='Например: Иван Иванов'>");
-        content.append("</div>");
-
-        content.append("<div class='form-group'>");
-        content.append("<label for='customerPhone' class='form-label'>Телефон клиента: <span class='required'>*</span></label>");
-        content.append("<input type='tel' class='form-control' id='customerPhone' name='customerPhone' required placeholder='+79991234567'>");
-        content.append("</div>");
-
-        content.append("<div class='form-group'>");
-        content.append("<label for='pickupAddress' class='form-label'>Адрес подачи: <span class='required'>*</span></label>");
-        content.append("<input type='text' class='form-control' id='pickupAddress' name='pickupAddress' required placeholder='Например: ул. Ленина, 10'>");
-        content.append("</div>");
-
-        content.append("<div class='form-group'>");
-        content.append("<label for='destinationAddress' class='form-label'>Адрес назначения:</label>");
-        content.append("<input type='text' class='form-control' id='destinationAddress' name='destinationAddress' placeholder='Например: ул. Пушкина, 20'>");
-        content.append("</div>");
-
-        content.append("<div class='form-group'>");
-        content.append("<label for='notes' class='form-label'>Примечания:</label>");
-        content.append("<textarea class='form-control' id='notes' name='notes' rows='3' placeholder='Дополнительная информация'></textarea>");
-        content.append("</div>");
-
-        content.append("<div class='form-group'>");
-        content.append("<label for='plannedPickupTime' class='form-label'>Планируемое время подачи:</label>");
-        content.append("<input type='datetime-local' class='form-control' id='plannedPickupTime' name='plannedPickupTime'>");
-        content.append("</div>");
-
-        content.append("<input type='hidden' name='operatorId' value='").append(currentUser.getId()).append("'>");
-
-        content.append("<div class='form-actions'>");
-        content.append("<button type='submit' class='btn btn-success'> Создать заказ</button>");
-        content.append("<a href='/orders' class='btn btn-danger'> Отмена</a>");
-        content.append("</div>");
-        content.append("</form>");
-
-        content.append("</div>");
-        content.append("</div>");
-
-        HtmlUtil.renderFullPage(out, currentRequest, "Создать заказ", "orders", content.toString());
+        try (PageBuffer content = PageBuffer.acquire()) {
+
+            content.appendRaw("<div class='card'>");
+            content.appendRaw("<div class='card-header'>");
+            content.appendRaw("<h2 class='card-title'> Создать новый заказ</h2>");
+            content.appendRaw("</div>");
+            content.appendRaw("<div class='card-body'>");
+
+            content.appendRaw("<form method='POST' action='/orders/save' class='form'>");
+            content.appendRaw("<div class='form-group'>");
+            content.appendRaw("<label for='customerName' class='form-label'>Имя клиента:</label>");
+            content.appendRaw("<input type='text' class='form-control' id='customerName' name='customerName' placeholder='Например: Иван Иванов'>");
+            content.appendRaw("</div>");
+
+            content.appendRaw("<div class='form-group'>");
+            content.appendRaw("<label for='customerPhone' class='form-label'>Телефон клиента: <span class='required'>*</span></label>");
+            content.appendRaw("<input type='tel' class='form-control' id='customerPhone' name='customerPhone' required placeholder='+79991234567'>");
+            content.appendRaw("</div>");
+
+            content.appendRaw("<div class='form-group'>");
+            content.appendRaw("<label for='pickupAddress' class='form-label'>Адрес подачи: <span class='required'>*</span></label>");
+            content.appendRaw("<input type='text' class='form-control' id='pickupAddress' name='pickupAddress' required placeholder='Например: ул. Ленина, 10'>");
+            content.appendRaw("</div>");
+
+            content.appendRaw("<div class='form-group'>");
+            content.appendRaw("<label for='pickupLatitude' class='form-label'>Координаты точки подачи:</label>");
+            content.appendRaw("<input type='number' class='form-control' id='pickupLatitude' name='pickupLatitude' step='0.000001' min='-90' max='90' placeholder='Широта, например 55.751244'>");
+            content.appendRaw("<input type='number' class='form-control' id='pickupLongitude' name='pickupLongitude' step='0.000001' min='-180' max='180' placeholder='Долгота, например 37.618423'>");
+            content.appendRaw("<small class='form-hint'>Необязательно. По координатам автоназначение выбирает ближайшего водителя</small>");
+            content.appendRaw("</div>");
+
+            content.appendRaw("<div class='form-group'>");
+            content.appendRaw("<label for='destinationAddress' class='form-label'>Адрес назначения:</label>");
+            content.appendRaw("<input type='text' class='form-control' id='destinationAddress' name='destinationAddress' placeholder='Например: ул. Пушкина, 20'>");
+            content.appendRaw("</div>");
+
+            content.appendRaw("<div class='form-group'>");
+            content.appendRaw("<label for='notes' class='form-label'>Примечания:</label>");
+            content.appendRaw("<textarea class='form-control' id='notes' name='notes' rows='3' placeholder='Дополнительная информация'></textarea>");
+            content.appendRaw("</div>");
+
+            content.appendRaw("<div class='form-group'>");
+            content.appendRaw("<label for='plannedPickupTime' class='form-label'>Планируемое время подачи:</label>");
+            content.appendRaw("<input type='datetime-local' class='form-control' id='plannedPickupTime' name='plannedPickupTime'>");
+            content.appendRaw("</div>");
+
+            content.appendRaw("<input type='hidden' name='operatorId' value='").append(currentUser.getId()).appendRaw("'>");
+
+            content.appendRaw("<div class='form-actions'>");
+            content.appendRaw("<button type='submit' class='btn btn-success'> Создать заказ</button>");
+            content.appendRaw("<a href='/orders' class='btn btn-danger'> Отмена</a>");
+            content.appendRaw("</div>");
+            content.appendRaw("</form>");
+
+            content.appendRaw("</div>");
+            content.appendRaw("</div>");
+
+            HtmlUtil.renderFullPage(out, currentRequest, "Создать заказ", "orders", content);
+        }
     }
 
     /**
@@ -526,112 +659,113 @@ public class OrderServlet extends HttpServlet {
 
             String userRole = currentUser.getUserType(); // ДОБАВЛЯЕМ ЭТУ СТРОКУ
 
-            StringBuilder content = new StringBuilder();
-
-            content.append("<div class='card'>");
-            content.append("<div class='card-header'>");
-            content.append("<h2 class='card-title'> Детали заказа #").append(order.getId()).append("</h2>");
-            content.append("</div>");
-            content.append("<div class='card-body'>");
-
-            // Информация о заказе в виде сетки
-            content.append("<div class='info-grid'>");
-
-            // Клиент
-            content.append("<div class='info-section'>");
-            content.append("<h3> Клиент</h3>");
-            content.append("<p><strong>Имя:</strong> ").append(order.getCustomerName() != null ? order.getCustomerName() : "—").append("</p>");
-            content.append("<p><strong>Телефон:</strong> ").append(order.getCustomerPhone() != null ? order.getCustomerPhone() : "—").append("</p>");
-            content.append("<p><strong>Оператор:</strong> ").append(order.getOperator().getFullName()).append("</p>");
-            content.append("</div>");
-
-            // Маршрут
-            content.append("<div class='info-section'>");
-            content.append("<h3> Маршрут</h3>");
-            content.append("<p><strong>Откуда:</strong> ").append(order.getPickupAddress()).append("</p>");
-            content.append("<p><strong>Куда:</strong> ").append(order.getDestinationAddress() != null ? order.getDestinationAddress() : "—").append("</p>");
-            if (order.getDistanceKm() != null) {
-                content.append("<p><strong>Дистанция:</strong> ").append(String.format("%.1f", order.getDistanceKm())).append(" км</p>");
-            }
-            content.append("</div>");
-
-            // Исполнитель
-            content.append("<div class='info-section'>");
-            content.append("<h3> Исполнитель</h3>");
-            if (order.getDriver() != null) {
-                content.append("<p><strong>Водитель:</strong> ").append(order.getDriver().getFullName()).append("</p>");
-                content.append("<p><strong>Телефон:</strong> ").append(order.getDriver().getPhone() != null ? order.getDriver().getPhone() : "—").append("</p>");
-                content.append("<p><strong>В/у:</strong> ").append(order.getDriver().getLicenseNumber()).append("</p>");
-                if (order.getCar() != null) {
-                    Car car = order.getCar();
-                    content.append("<p><strong>Автомобиль:</strong> ").append(car.getLicensePlate())
-                            .append(" (").append(car.getBrand()).append(" ").append(car.getModel()).append(")</p>");
+            try (PageBuffer content = PageBuffer.acquire()) {
+
+                content.appendRaw("<div class='card'>");
+                content.appendRaw("<div class='card-header'>");
+                content.appendRaw("<h2 class='card-title'> Детали заказа #").append(order.getId()).appendRaw("</h2>");
+                content.appendRaw("</div>");
+                content.appendRaw("<div class='card-body'>");
+
+                // Информация о заказе в виде сетки
+                content.appendRaw("<div class='info-grid'>");
+
+                // Клиент
+                content.appendRaw("<div class='info-section'>");
+                content.appendRaw("<h3> Клиент</h3>");
+                content.appendRaw("<p><strong>Имя:</strong> ").appendEscaped(order.getCustomerName() != null ? order.getCustomerName() : "—").appendRaw("</p>");
+                content.appendRaw("<p><strong>Телефон:</strong> ").appendEscaped(order.getCustomerPhone() != null ? order.getCustomerPhone() : "—").appendRaw("</p>");
+                content.appendRaw("<p><strong>Оператор:</strong> ").appendEscaped(order.getOperator().getFullName()).appendRaw("</p>");
+                content.appendRaw("</div>");
+
+                // Маршрут
+                content.appendRaw("<div class='info-section'>");
+                content.appendRaw("<h3> Маршрут</h3>");
+                content.appendRaw("<p><strong>Откуда:</strong> ").appendEscaped(order.getPickupAddress()).appendRaw("</p>");
+                content.appendRaw("<p><strong>Куда:</strong> ").appendEscaped(order.getDestinationAddress() != null ? order.getDestinationAddress() : "—").appendRaw("</p>");
+                if (order.getDistanceKm() != null) {
+                    content.appendRaw("<p><strong>Дистанция:</strong> ").appendRaw(String.format("%.1f", order.getDistanceKm())).appendRaw(" км</p>");
                 }
-            } else {
-                content.append("<p><strong>Водитель:</strong> Не назначен</p>");
-            }
-            content.append("</div>");
-
-            // Время
-            content.append("<div class='info-section'>");
-            content.append("<h3> Время</h3>");
-            content.append("<p><strong>Создан:</strong> ").append(formatDateTime(order.getOrderTime())).append("</p>");
-            if (order.getPlannedPickupTime() != null) {
-                content.append("<p><strong>Плановое время подачи:</strong> ").append(formatDateTime(order.getPlannedPickupTime())).append("</p>");
-            }
-            if (order.getActualPickupTime() != null) {
-                content.append("<p><strong>Фактическое время подачи:</strong> ").append(formatDateTime(order.getActualPickupTime())).append("</p>");
-            }
-            if (order.getCompletionTime() != null) {
-                content.append("<p><strong>Завершен:</strong> ").append(formatDateTime(order.getCompletionTime())).append("</p>");
-            }
-            content.append("</div>");
-
-            // Финансы и статус
-            content.append("<div class='info-section'>");
-            content.append("<h3> Финансы</h3>");
-            content.append("<p><strong>Статус:</strong> ").append(getStatusBadge(order.getStatus())).append("</p>");
-            content.append("<p><strong>Стоимость:</strong> ").append(order.getPrice() != null ? String.format("%.2f ₽", order.getPrice()) : "—").append("</p>");
-            if (order.getNotes() != null && !order.getNotes().isEmpty()) {
-                content.append("<p><strong>Примечания:</strong> ").append(order.getNotes()).append("</p>");
-            }
-            content.append("</div>");
+                content.appendRaw("</div>");
 
-            content.append("</div>"); // закрываем info-grid
-
-            // Кнопки действий
-            content.append("<div class='action-buttons mt-30'>");
-            content.append("<a href='/orders' class='btn btn-secondary'>← Назад к списку</a>");
-
-            // Общая логика для всех ролей
-            if (canPerformActionOnOrder(currentUser, order)) {
-                if (order.canBeAssigned() && canAssignDriver(userRole)) {
-                    content.append("<a href='/orders/assign-driver?orderId=").append(order.getId())
-                            .append("' class='btn btn-info'> Назначить водителя</a>");
+                // Исполнитель
+                content.appendRaw("<div class='info-section'>");
+                content.appendRaw("<h3> Исполнитель</h3>");
+                if (order.getDriver() != null) {
+                    content.appendRaw("<p><strong>Водитель:</strong> ").appendEscaped(order.getDriver().getFullName()).appendRaw("</p>");
+                    content.appendRaw("<p><strong>Телефон:</strong> ").appendEscaped(order.getDriver().getPhone() != null ? order.getDriver().getPhone() : "—").appendRaw("</p>");
+                    content.appendRaw("<p><strong>В/у:</strong> ").appendEscaped(order.getDriver().getLicenseNumber()).appendRaw("</p>");
+                    if (order.getCar() != null) {
+                        Car car = order.getCar();
+                        content.appendRaw("<p><strong>Автомобиль:</strong> ").appendEscaped(car.getLicensePlate())
+                                .appendRaw(" (").appendEscaped(car.getBrand()).appendRaw(" ").appendEscaped(car.getModel()).appendRaw(")</p>");
+                    }
+                } else {
+                    content.appendRaw("<p><strong>Водитель:</strong> Не назначен</p>");
                 }
-
-                if ("ASSIGNED".equals(order.getStatus()) && canStartOrder(currentUser, order)) {
-                    content.append("<a href='/orders/start?id=").append(order.getId())
-                            .append("' class='btn btn-success'>️ Начать выполнение</a>");
+                content.appendRaw("</div>");
+
+                // Время
+                content.appendRaw("<div class='info-section'>");
+                content.appendRaw("<h3> Время</h3>");
+                content.appendRaw("<p><strong>Создан:</strong> ").appendRaw(formatDateTime(order.getOrderTime())).appendRaw("</p>");
+                if (order.getPlannedPickupTime() != null) {
+                    content.appendRaw("<p><strong>Плановое время подачи:</strong> ").appendRaw(formatDateTime(order.getPlannedPickupTime())).appendRaw("</p>");
                 }
-
-                if (order.isInProgress() && canCompleteOrder(userRole, order, currentUser)) {
-                    content.append("<a href='/orders/complete?id=").append(order.getId())
-                            .append("' class='btn btn-warning'> Завершить заказ</a>");
+                if (order.getActualPickupTime() != null) {
+                    content.appendRaw("<p><strong>Фактическое время подачи:</strong> ").appendRaw(formatDateTime(order.getActualPickupTime())).appendRaw("</p>");
+                }
+                if (order.getCompletionTime() != null) {
+                    content.appendRaw("<p><strong>Завершен:</strong> ").appendRaw(formatDateTime(order.getCompletionTime())).appendRaw("</p>");
                 }
+                content.appendRaw("</div>");
+
+                // Финансы и статус
+                content.appendRaw("<div class='info-section'>");
+                content.appendRaw("<h3> Финансы</h3>");
+                content.appendRaw("<p><strong>Статус:</strong> ").appendRaw(getStatusBadge(order.getStatus())).appendRaw("</p>");
+                content.appendRaw("<p><strong>Стоимость:</strong> ").appendEscaped(order.getPrice() != null ? String.format("%.2f ₽", order.getPrice()) : "—").appendRaw("</p>");
+                if (order.getNotes() != null && !order.getNotes().isEmpty()) {
+                    content.appendRaw("<p><strong>Примечания:</strong> ").appendEscaped(order.getNotes()).appendRaw("</p>");
+                }
+                content.appendRaw("</div>");
+
+                content.appendRaw("</div>"); // закрываем info-grid
+
+                // Кнопки действий
+                content.appendRaw("<div class='action-buttons mt-30'>");
+                content.appendRaw("<a href='/orders' class='btn btn-secondary'>← Назад к списку</a>");
+
+                // Общая логика для всех ролей
+                if (canPerformActionOnOrder(currentUser, order)) {
+                    if (order.canBeAssigned() && canAssignDriver(userRole)) {
+                        content.appendRaw("<a href='/orders/assign-driver?orderId=").append(order.getId())
+                                .appendRaw("' class='btn btn-info'> Назначить водителя</a>");
+                    }
 
-                if ((order.canBeAssigned() || "ASSIGNED".equals(order.getStatus()) || order.isInProgress())
-                        && canCancelOrder(userRole)) {
-                    content.append("<a href='/orders/cancel?id=").append(order.getId())
-                            .append("' class='btn btn-danger'> Отменить заказ</a>");
+                    if ("ASSIGNED".equals(order.getStatus()) && canStartOrder(currentUser, order)) {
+                        content.appendRaw("<a href='/orders/start?id=").append(order.getId())
+                                .appendRaw("' class='btn btn-success'>️ Начать выполнение</a>");
+                    }
+
+                    if (order.isInProgress() && canCompleteOrder(userRole, order, currentUser)) {
+                        content.appendRaw("<a href='/orders/complete?id=").append(order.getId())
+                                .appendRaw("' class='btn btn-warning'> Завершить заказ</a>");
+                    }
+
+                    if ((order.canBeAssigned() || "ASSIGNED".equals(order.getStatus()) || order.isInProgress())
+                            && canCancelOrder(userRole)) {
+                        content.appendRaw("<a href='/orders/cancel?id=").append(order.getId())
+                                .appendRaw("' class='btn btn-danger'> Отменить заказ</a>");
+                    }
                 }
-            }
 
-            content.append("</div>");
-            content.append("</div>"); // закрываем card-body
-            content.append("</div>"); // закрываем card
+                content.appendRaw("</div>");
+                content.appendRaw("</div>"); // закрываем card-body
+                content.appendRaw("</div>"); // закрываем card
 
-            HtmlUtil.renderFullPage(out, currentRequest, "Заказ #" + order.getId(), "orders", content.toString());
+                HtmlUtil.renderFullPage(out, currentRequest, "Заказ #" + order.getId(), "orders", content);
+            }
 
         } catch (Exception e) {
             renderError(out, "Ошибка при загрузке данных: " + e.getMessage(), currentRequest);
@@ -652,95 +786,106 @@ public class OrderServlet extends HttpServlet {
             List<Driver> availableDrivers = driverService.getAvailableDrivers();
             List<Car> allCars = carService.getAllCars();
 
-            StringBuilder content = new StringBuilder();
-
-            content.append("<div class='card'>");
-            content.append("<div class='card-header'>");
-            content.append("<h2 class='card-title'> Назначить водителя и автомобиль</h2>");
-            content.append("</div>");
-            content.append("<div class='card-body'>");
-
-            // Информация о заказе
-            content.append("<div class='alert alert-info mb-30'>");
-            content.append("<p><strong>Заказ #").append(order.getId()).append("</strong></p>");
-            content.append("<p><small>").append(order.getCustomerName() != null ? order.getCustomerName() : "Клиент")
-                    .append(" | ").append(order.getCustomerPhone() != null ? order.getCustomerPhone() : "").append("</small></p>");
-            content.append("<p><small>🗺 ").append(order.getPickupAddress()).append(" → ")
-                    .append(order.getDestinationAddress() != null ? order.getDestinationAddress() : "...").append("</small></p>");
-            content.append("</div>");
-
-            // Форма
-            content.append("<form method='post' action='/orders/assign-driver' class='form'>");
-            content.append("<input type='hidden' name='orderId' value='").append(order.getId()).append("'>");
-
-            content.append("<div class='form-group'>");
-            content.append("<label for='driverId' class='form-label'>Выберите водителя <span class='required'>*</span></label>");
-            content.append("<select class='form-control' id='driverId' name='driverId' required>");
-            content.append("<option value=''>-- Выберите водителя --</option>");
-
-            for (Driver driver : availableDrivers) {
-                Car driverCar = driver.getCurrentCar();
-                String carInfo = driverCar != null ?
-                        " " + driverCar.getLicensePlate() + " (" + driverCar.getModel() + ")" :
-                        " Нет автомобиля";
-
-                String activeOrders = orderService.getActiveOrdersForDriver(driver.getId()).size() + " активных заказов";
-
-                content.append("<option value='").append(driver.getId()).append("'>")
-                        .append(driver.getFullName()).append(" (").append(driver.getLicenseNumber()).append(") - ")
-                        .append(carInfo).append(" - ").append(activeOrders).append("</option>");
-            }
-            content.append("</select>");
-            content.append("</div>");
-
-            content.append("<div class='form-group'>");
-            content.append("<label for='carId' class='form-label'>Выберите автомобиль:</label>");
-            content.append("<select class='form-control' id='carId' name='carId'>");
-            content.append("<option value=''>-- Автомобиль по умолчанию (из профиля водителя) --</option>");
-
-            for (Car car : allCars) {
-                boolean isAvailable = car.getIsActive() &&
-                        !car.getInRepair() &&
-                        car.getCurrentDriver() == null;
-
-                String status = "";
-                if (!isAvailable) {
-                    if (car.getCurrentDriver() != null) {
-                        status = " ( Занят: " + car.getCurrentDriver().getFullName() + ")";
-                    } else if (Boolean.TRUE.equals(car.getInRepair())) {
-                        status = " ( В ремонте)";
-                    } else if (!Boolean.TRUE.equals(car.getIsActive())) {
-                        status = " ( Не активен)";
-                    }
+            try (PageBuffer content = PageBuffer.acquire()) {
+
+                content.appendRaw("<div class='card'>");
+                content.appendRaw("<div class='card-header'>");
+                content.appendRaw("<h2 class='card-title'> Назначить водителя и автомобиль</h2>");
+                content.appendRaw("</div>");
+                content.appendRaw("<div class='card-body'>");
+
+                // Информация о заказе
+                content.appendRaw("<div class='alert alert-info mb-30'>");
+                content.appendRaw("<p><strong>Заказ #").append(order.getId()).appendRaw("</strong></p>");
+                content.appendRaw("<p><small>").appendEscaped(order.getCustomerName() != null ? order.getCustomerName() : "Клиент")
+                        .appendRaw(" | ").appendEscaped(order.getCustomerPhone() != null ? order.getCustomerPhone() : "").appendRaw("</small></p>");
+                content.appendRaw("<p><small>🗺 ").appendEscaped(order.getPickupAddress()).appendRaw(" → ")
+                        .appendEscaped(order.getDestinationAddress() != null ? order.getDestinationAddress() : "...").appendRaw("</small></p>");
+                content.appendRaw("</div>");
+
+                // Автоназначение
+                content.appendRaw("<form method='post' action='/orders/auto-assign' class='form mb-30'>");
+                content.appendRaw("<input type='hidden' name='orderId' value='").append(order.getId()).appendRaw("'>");
+                content.appendRaw("<button type='submit' class='btn btn-primary'> Автоназначение</button>");
+                content.appendRaw("<small class='form-hint'>").appendRaw(order.hasPickupLocation()
+                        ? "Будет выбран ближайший свободный водитель с учетом времени простоя"
+                        : "Координаты подачи не указаны - будет выбран дольше всех простаивающий свободный водитель");
+                content.appendRaw("</small>");
+                content.appendRaw("</form>");
+
+                // Форма
+                content.appendRaw("<form method='post' action='/orders/assign-driver' class='form'>");
+                content.appendRaw("<input type='hidden' name='orderId' value='").append(order.getId()).appendRaw("'>");
+
+                content.appendRaw("<div class='form-group'>");
+                content.appendRaw("<label for='driverId' class='form-label'>Выберите водителя <span class='required'>*</span></label>");
+                content.appendRaw("<select class='form-control' id='driverId' name='driverId' required>");
+                content.appendRaw("<option value=''>-- Выберите водителя --</option>");
+
+                for (Driver driver : availableDrivers) {
+                    Car driverCar = driver.getCurrentCar();
+                    String carInfo = driverCar != null ?
+                            " " + driverCar.getLicensePlate() + " (" + driverCar.getModel() + ")" :
+                            " Нет автомобиля";
+
+                    String activeOrders = orderService.getActiveOrdersForDriver(driver.getId()).size() + " активных заказов";
+
+                    content.appendRaw("<option value='").append(driver.getId()).appendRaw("'>")
+                            .appendEscaped(driver.getFullName()).appendRaw(" (").appendEscaped(driver.getLicenseNumber()).appendRaw(") - ")
+                            .appendEscaped(carInfo).appendRaw(" - ").appendRaw(activeOrders).appendRaw("</option>");
                 }
+                content.appendRaw("</select>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='form-group'>");
+                content.appendRaw("<label for='carId' class='form-label'>Выберите автомобиль:</label>");
+                content.appendRaw("<select class='form-control' id='carId' name='carId'>");
+                content.appendRaw("<option value=''>-- Автомобиль по умолчанию (из профиля водителя) --</option>");
+
+                for (Car car : allCars) {
+                    boolean isAvailable = car.getIsActive() &&
+                            !car.getInRepair() &&
+                            car.getCurrentDriver() == null;
+
+                    String status = "";
+                    if (!isAvailable) {
+                        if (car.getCurrentDriver() != null) {
+                            status = " ( Занят: " + car.getCurrentDriver().getFullName() + ")";
+                        } else if (Boolean.TRUE.equals(car.getInRepair())) {
+                            status = " ( В ремонте)";
+                        } else if (!Boolean.TRUE.equals(car.getIsActive())) {
+                            status = " ( Не активен)";
+                        }
+                    }
 
-                String disabled = isAvailable ? "" : "disabled";
+                    String disabled = isAvailable ? "" : "disabled";
 
-                content.append("<option value='").append(car.getId()).append("' ").append(disabled).append(">")
-                        .append(car.getLicensePlate()).append(" - ").append(car.getBrand()).append(" ").append(car.getModel())
-                        .append(" (").append(car.getMileageKm() != null ? car.getMileageKm() : "0").append(" км)")
-                        .append(status).append("</option>");
+                    content.appendRaw("<option value='").append(car.getId()).appendRaw("' ").appendRaw(disabled).appendRaw(">")
+                            .appendEscaped(car.getLicensePlate()).appendRaw(" - ").appendEscaped(car.getBrand()).appendRaw(" ").appendEscaped(car.getModel())
+                            .appendRaw(" (").append(car.getMileageKm() != null ? car.getMileageKm() : 0).appendRaw(" км)")
+                            .appendEscaped(status).appendRaw("</option>");
+                }
+                content.appendRaw("</select>");
+                content.appendRaw("<small class='form-hint'>Если не выбрать автомобиль, будет использован автомобиль из профиля водителя</small>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='form-group'>");
+                content.appendRaw("<label for='estimatedPrice' class='form-label'>Примерная стоимость (руб):</label>");
+                content.appendRaw("<input type='number' class='form-control' id='estimatedPrice' name='estimatedPrice' step='0.01' min='0' placeholder='500.00'>");
+                content.appendRaw("<small class='form-hint'>Ориентировочная стоимость поездки</small>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='form-actions'>");
+                content.appendRaw("<button type='submit' class='btn btn-success'> Назначить</button>");
+                content.appendRaw("<a href='/orders' class='btn btn-danger'> Отмена</a>");
+                content.appendRaw("</div>");
+                content.appendRaw("</form>");
+
+                content.appendRaw("</div>");
+                content.appendRaw("</div>");
+
+                HtmlUtil.renderFullPage(out, currentRequest, "Назначить водителя", "orders", content);
             }
-            content.append("</select>");
-            content.append("<small class='form-hint'>Если не выбрать автомобиль, будет использован автомобиль из профиля водителя</small>");
-            content.append("</div>");
-
-            content.append("<div class='form-group'>");
-            content.append("<label for='estimatedPrice' class='form-label'>Примерная стоимость (руб):</label>");
-            content.append("<input type='number' class='form-control' id='estimatedPrice' name='estimatedPrice' step='0.01' min='0' placeholder='500.00'>");
-            content.append("<small class='form-hint'>Ориентировочная стоимость поездки</small>");
-            content.append("</div>");
-
-            content.append("<div class='form-actions'>");
-            content.append("<button type='submit' class='btn btn-success'> Назначить</button>");
-            content.append("<a href='/orders' class='btn btn-danger'> Отмена</a>");
-            content.append("</div>");
-            content.append("</form>");
-
-            content.append("</div>");
-            content.append("</div>");
-
-            HtmlUtil.renderFullPage(out, currentRequest, "Назначить водителя", "orders", content.toString());
 
         } catch (Exception e) {
             renderError(out, "Ошибка при загрузке данных: " + e.getMessage(), currentRequest);
@@ -758,54 +903,55 @@ public class OrderServlet extends HttpServlet {
                 return;
             }
 
-            StringBuilder content = new StringBuilder();
+            try (PageBuffer content = PageBuffer.acquire()) {
 
-            content.append("<div class='card'>");
-            content.append("<div class='card-header'>");
-            content.append("<h2 class='card-title'> Завершение заказа</h2>");
-            content.append("</div>");
-            content.append("<div class='card-body'>");
+                content.appendRaw("<div class='card'>");
+                content.appendRaw("<div class='card-header'>");
+                content.appendRaw("<h2 class='card-title'> Завершение заказа</h2>");
+                content.appendRaw("</div>");
+                content.appendRaw("<div class='card-body'>");
 
-            content.append("<div class='alert alert-warning mb-30'>");
-            content.append("<p><strong>Заказ #").append(order.getId()).append("</strong></p>");
-            content.append("<p><small>").append(order.getPickupAddress()).append(" → ")
-                    .append(order.getDestinationAddress() != null ? order.getDestinationAddress() : "...").append("</small></p>");
-            if (order.getCustomerName() != null) {
-                content.append("<p><small> ").append(order.getCustomerName()).append("</small></p>");
+                content.appendRaw("<div class='alert alert-warning mb-30'>");
+                content.appendRaw("<p><strong>Заказ #").append(order.getId()).appendRaw("</strong></p>");
+                content.appendRaw("<p><small>").appendEscaped(order.getPickupAddress()).appendRaw(" → ")
+                        .appendEscaped(order.getDestinationAddress() != null ? order.getDestinationAddress() : "...").appendRaw("</small></p>");
+                if (order.getCustomerName() != null) {
+                    content.appendRaw("<p><small> ").appendEscaped(order.getCustomerName()).appendRaw("</small></p>");
+                }
+                content.appendRaw("</div>");
+
+                content.appendRaw("<form method='post' action='/orders/complete' class='form'>");
+                content.appendRaw("<input type='hidden' name='orderId' value='").append(order.getId()).appendRaw("'>");
+
+                // Изменяем поле дистанции - делаем НЕОБЯЗАТЕЛЬНЫМ
+                content.appendRaw("<div class='form-group'>");
+                content.appendRaw("<label for='actualDistance' class='form-label'>Фактическая дистанция (км):</label>");
+                content.appendRaw("<input type='number' class='form-control' id='actualDistance' name='actualDistance' step='0.1' min='0' placeholder='5.5'>");
+                content.appendRaw("<p class='form-hint'>Если не указано, будет использована примерная дистанция</p>");
+                content.appendRaw("</div>");
+
+                // Стоимость остается обязательной
+                content.appendRaw("<div class='form-group'>");
+                content.appendRaw("<label for='actualPrice' class='form-label'>Фактическая стоимость (руб): <span class='required'>*</span></label>");
+                content.appendRaw("<input type='number' class='form-control' id='actualPrice' name='actualPrice' required step='0.01' min='0' placeholder='500.00'>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='form-group'>");
+                content.appendRaw("<label for='notes' class='form-label'>Комментарий к выполнению:</label>");
+                content.appendRaw("<textarea class='form-control' id='notes' name='notes' rows='3' placeholder='Дополнительная информация о выполнении заказа'></textarea>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='form-actions'>");
+                content.appendRaw("<button type='submit' class='btn btn-success'>Завершить заказ</button>");
+                content.appendRaw("<a href='/orders' class='btn btn-danger'> Отмена</a>");
+                content.appendRaw("</div>");
+                content.appendRaw("</form>");
+
+                content.appendRaw("</div>");
+                content.appendRaw("</div>");
+
+                HtmlUtil.renderFullPage(out, currentRequest, "Завершить заказ", "orders", content);
             }
-            content.append("</div>");
-
-            content.append("<form method='post' action='/orders/complete' class='form'>");
-            content.append("<input type='hidden' name='orderId' value='").append(order.getId()).append("'>");
-
-            // Изменяем поле дистанции - делаем НЕОБЯЗАТЕЛЬНЫМ
-            content.append("<div class='form-group'>");
-            content.append("<label for='actualDistance' class='form-label'>Фактическая дистанция (км):</label>");
-            content.append("<input type='number' class='form-control' id='actualDistance' name='actualDistance' step='0.1' min='0' placeholder='5.5'>");
-            content.append("<p class='form-hint'>Если не указано, будет использована примерная дистанция</p>");
-            content.append("</div>");
-
-            // Стоимость остается обязательной
-            content.append("<div class='form-group'>");
-            content.append("<label for='actualPrice' class='form-label'>Фактическая стоимость (руб): <span class='required'>*</span></label>");
-            content.append("<input type='number' class='form-control' id='actualPrice' name='actualPrice' required step='0.01' min='0' placeholder='500.00'>");
-            content.append("</div>");
-
-            content.append("<div class='form-group'>");
-            content.append("<label for='notes' class='form-label'>Комментарий к выполнению:</label>");
-            content.append("<textarea class='form-control' id='notes' name='notes' rows='3' placeholder='Дополнительная информация о выполнении заказа'></textarea>");
-            content.append("</div>");
-
-            content.append("<div class='form-actions'>");
-            content.append("<button type='submit' class='btn btn-success'>Завершить заказ</button>");
-            content.append("<a href='/orders' class='btn btn-danger'> Отмена</a>");
-            content.append("</div>");
-            content.append("</form>");
-
-            content.append("</div>");
-            content.append("</div>");
-
-            HtmlUtil.renderFullPage(out, currentRequest, "Завершить заказ", "orders", content.toString());
 
         } catch (Exception e) {
             renderError(out, "Ошибка при загрузке данных: " + e.getMessage(), currentRequest);
@@ -823,55 +969,56 @@ public class OrderServlet extends HttpServlet {
                 return;
             }
 
-            StringBuilder content = new StringBuilder();
+            try (PageBuffer content = PageBuffer.acquire()) {
 
-            content.append("<div class='card'>");
-            content.append("<div class='card-header'>");
-            content.append("<h2 class='card-title'> Отмена заказа</h2>");
-            content.append("</div>");
-            content.append("<div class='card-body'>");
+                content.appendRaw("<div class='card'>");
+                content.appendRaw("<div class='card-header'>");
+                content.appendRaw("<h2 class='card-title'> Отмена заказа</h2>");
+                content.appendRaw("</div>");
+                content.appendRaw("<div class='card-body'>");
 
-            content.append("<div class='alert alert-danger mb-30'>");
-            content.append("<p><strong>Заказ #").append(order.getId()).append("</strong></p>");
-            content.append("<p><small>").append(order.getPickupAddress()).append(" → ")
-                    .append(order.getDestinationAddress() != null ? order.getDestinationAddress() : "...").append("</small></p>");
-            if (order.getCustomerName() != null) {
-                content.append("<p><small> ").append(order.getCustomerName()).append(" (").append(order.getCustomerPhone()).append(")</small></p>");
-            }
-            if (order.getDriver() != null) {
-                content.append("<p><small> Водитель: ").append(order.getDriver().getFullName()).append("</small></p>");
+                content.appendRaw("<div class='alert alert-danger mb-30'>");
+                content.appendRaw("<p><strong>Заказ #").append(order.getId()).appendRaw("</strong></p>");
+                content.appendRaw("<p><small>").appendEscaped(order.getPickupAddress()).appendRaw(" → ")
+                        .appendEscaped(order.getDestinationAddress() != null ? order.getDestinationAddress() : "...").appendRaw("</small></p>");
+                if (order.getCustomerName() != null) {
+                    content.appendRaw("<p><small> ").appendEscaped(order.getCustomerName()).appendRaw(" (").appendEscaped(order.getCustomerPhone()).appendRaw(")</small></p>");
+                }
+                if (order.getDriver() != null) {
+                    content.appendRaw("<p><small> Водитель: ").appendEscaped(order.getDriver().getFullName()).appendRaw("</small></p>");
+                }
+                content.appendRaw("</div>");
+
+                content.appendRaw("<form method='post' action='/orders/cancel' class='form'>");
+                content.appendRaw("<input type='hidden' name='orderId' value='").append(order.getId()).appendRaw("'>");
+
+                content.appendRaw("<div class='form-group'>");
+                content.appendRaw("<label for='reason' class='form-label'>Причина отмены: <span class='required'>*</span></label>");
+                content.appendRaw("<select class='form-control' id='reason' name='reason' required>");
+                content.appendRaw("<option value=''>-- Выберите причину --</option>");
+                content.appendRaw("<option value='Клиент отменил'>Клиент отменил</option>");
+                content.appendRaw("<option value='Нет свободных водителей'>Нет свободных водителей</option>");
+                content.appendRaw("<option value='Проблемы с автомобилем'>Проблемы с автомобилем</option>");
+                content.appendRaw("<option value='Другое'>Другое</option>");
+                content.appendRaw("</select>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='form-group'>");
+                content.appendRaw("<label for='details' class='form-label'>Подробности (если выбрано 'Другое'):</label>");
+                content.appendRaw("<textarea class='form-control' id='details' name='details' rows='3' placeholder='Подробное описание причины отмены'></textarea>");
+                content.appendRaw("</div>");
+
+                content.appendRaw("<div class='form-actions'>");
+                content.appendRaw("<button type='submit' class='btn btn-danger'> Отменить заказ</button>");
+                content.appendRaw("<a href='/orders' class='btn btn-secondary'> Назад</a>");
+                content.appendRaw("</div>");
+                content.appendRaw("</form>");
+
+                content.appendRaw("</div>");
+                content.appendRaw("</div>");
+
+                HtmlUtil.renderFullPage(out, currentRequest, "Отменить заказ", "orders", content);
             }
-            content.append("</div>");
-
-            content.append("<form method='post' action='/orders/cancel' class='form'>");
-            content.append("<input type='hidden' name='orderId' value='").append(order.getId()).append("'>");
-
-            content.append("<div class='form-group'>");
-            content.append("<label for='reason' class='form-label'>Причина отмены: <span class='required'>*</span></label>");
-            content.append("<select class='form-control' id='reason' name='reason' required>");
-            content.append("<option value=''>-- Выберите причину --</option>");
-            content.append("<option value='Клиент отменил'>Клиент отменил</option>");
-            content.append("<option value='Нет свободных водителей'>Нет свободных водителей</option>");
-            content.append("<option value='Проблемы с автомобилем'>Проблемы с автомобилем</option>");
-            content.append("<option value='Другое'>Другое</option>");
-            content.append("</select>");
-            content.append("</div>");
-
-            content.append("<div class='form-group'>");
-            content.append("<label for='details' class='form-label'>Подробности (если выбрано 'Другое'):</label>");
-            content.append("<textarea class='form-control' id='details' name='details' rows='3' placeholder='Подробное описание причины отмены'></textarea>");
-            content.append("</div>");
-
-            content.append("<div class='form-actions'>");
-            content.append("<button type='submit' class='btn btn-danger'> Отменить заказ</button>");
-            content.append("<a href='/orders' class='btn btn-secondary'> Назад</a>");
-            content.append("</div>");
-            content.append("</form>");
-
-            content.append("</div>");
-            content.append("</div>");
-
-            HtmlUtil.renderFullPage(out, currentRequest, "Отменить заказ", "orders", content.toString());
 
         } catch (Exception e) {
             renderError(out, "Ошибка при загрузке данных: " + e.getMessage(), currentRequest);
@@ -884,7 +1031,7 @@ public class OrderServlet extends HttpServlet {
 
         this.currentRequest = request; // Сохраняем для использования в методах
 
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -915,6 +1062,14 @@ public class OrderServlet extends HttpServlet {
                     assignDriver(request, response, currentUser);
                     break;
 
+                case "/auto-assign":
+                    if (!canAssignDriver(currentUser.getUserType())) {
+                        response.sendError(HttpServletResponse.SC_FORBIDDEN, "У вас нет прав для назначения водителей");
+                        return;
+                    }
+                    autoAssignDriver(request, response);
+                    break;
+
                 case "/complete":
                     if (!canCompleteOrder(currentUser.getUserType())) {
                         response.sendError(HttpServletResponse.SC_FORBIDDEN, "У вас нет прав для завершения заказов");
@@ -939,7 +1094,7 @@ public class OrderServlet extends HttpServlet {
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Неизвестное действие: " + path);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в doPost()", e);
             response.sendRedirect("/orders?error=" + e.getMessage());
         }
     }
@@ -970,6 +1125,14 @@ public class OrderServlet extends HttpServlet {
                 order.setNotes(notes);
             }
 
+            Double pickupLatitude = getDoubleParameter(request, "pickupLatitude");
+            Double pickupLongitude = getDoubleParameter(request, "pickupLongitude");
+            if (pickupLatitude != null && pickupLongitude != null
+                    && Math.abs(pickupLatitude) <= 90 && Math.abs(pickupLongitude) <= 180) {
+                order.setPickupLatitude(pickupLatitude);
+                order.setPickupLongitude(pickupLongitude);
+            }
+
             if (plannedPickupTimeStr != null && !plannedPickupTimeStr.isEmpty()) {
                 try {
                     LocalDateTime plannedTime = LocalDateTime.parse(plannedPickupTimeStr.replace("T", " "));
@@ -993,45 +1156,34 @@ public class OrderServlet extends HttpServlet {
 
         Long orderId = Long.parseLong(request.getParameter("orderId"));
         Long driverId = Long.parseLong(request.getParameter("driverId"));
-        String carIdParam = request.getParameter("carId");
+        Long carId = parseLongParam(request.getParameter("carId"));
         Double estimatedPrice = getDoubleParameter(request, "estimatedPrice");
 
-        try {
-            Order order = orderService.getOrderById(orderId);
-            Driver driver = driverService.getDriverById(driverId);
-
-            if (order == null || driver == null) {
-                response.sendRedirect("/orders?error=Не найдены заказ или водитель");
-                return;
-            }
-
-            Car car = null;
-            if (carIdParam != null && !carIdParam.isEmpty()) {
-                Long carId = Long.parseLong(carIdParam);
-                car = carService.getCarById(carId);
-            } else {
-                car = driver.getCurrentCar();
-            }
+        String note = estimatedPrice != null ? "Ориентировочная стоимость: " + estimatedPrice + " руб." : null;
+        OrderService.TransitionResult result = orderService.assignOrderToDriver(orderId, driverId, carId, note);
 
-            if (car == null) {
-                response.sendRedirect("/orders/assign-driver?orderId=" + orderId + "&error=У водителя нет автомобиля");
-                return;
-            }
-
-            // Используем бизнес-метод из сущности
-            order.assignToDriver(driver, car);
+        if (result.isApplied()) {
+            response.sendRedirect("/orders?success=Водитель назначен");
+        } else if (result.isOffered()) {
+            response.sendRedirect("/orders?success=" + URLEncoder.encode(result.getMessage(), StandardCharsets.UTF_8));
+        } else if (result.isConflict()) {
+            redirectToConflict(response, result);
+        } else {
+            response.sendRedirect("/orders/assign-driver?orderId=" + orderId + "&error=" + result.getMessage());
+        }
+    }
 
-            if (estimatedPrice != null) {
-                String additionalNotes = "Ориентировочная стоимость: " + estimatedPrice + " руб.";
-                order.setNotes((order.getNotes() != null ? order.getNotes() + "\n" : "") + additionalNotes);
-            }
+    private void autoAssignDriver(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
 
-            // Используем правильный метод из OrderService
-            orderService.updateOrder(order);
-            response.sendRedirect("/orders?success=Водитель назначен");
+        Long orderId = Long.parseLong(request.getParameter("orderId"));
 
-        } catch (Exception e) {
-            response.sendRedirect("/orders/assign-driver?orderId=" + orderId + "&error=" + e.getMessage());
+        if (orderService.autoAssignOrder(orderId)) {
+            response.sendRedirect(OfferDispatcher.isEnabled()
+                    ? "/orders?success=Заказ предложен ближайшему свободному водителю"
+                    : "/orders?success=Водитель назначен автоматически");
+        } else {
+            response.sendRedirect("/orders/assign-driver?orderId=" + orderId + "&error=Нет свободных водителей");
         }
     }
 
@@ -1060,26 +1212,16 @@ public class OrderServlet extends HttpServlet {
                 return;
             }
 
-            // Используем бизнес-метод из сущности
-            // Добавляем проверку на null для дистанции
-            if (actualDistance != null) {
-                order.completeOrder(actualDistance, actualPrice);
+            String note = notes != null && !notes.isEmpty() ? "При завершении: " + notes : null;
+            OrderService.TransitionResult result = orderService.completeOrder(orderId, actualDistance, actualPrice, note);
+            if (result.isApplied()) {
+                response.sendRedirect("/orders?success=Заказ завершен");
+            } else if (result.isConflict()) {
+                redirectToConflict(response, result);
             } else {
-                // Если дистанция не указана, используем примерную или 0
-                order.setStatus("COMPLETED");
-                order.setPrice(actualPrice);
-                order.setCompletionTime(LocalDateTime.now());
-                // Дистанция остается null
-            }
-
-            if (notes != null && !notes.isEmpty()) {
-                order.setNotes((order.getNotes() != null ? order.getNotes() + "\n" : "") + "При завершении: " + notes);
+                response.sendRedirect("/orders?error=Ошибка при завершении заказа");
             }
 
-            // Используем правильный метод из OrderService
-            orderService.updateOrder(order);
-            response.sendRedirect("/orders?success=Заказ завершен");
-
         } catch (Exception e) {
             response.sendRedirect("/orders?error=Ошибка при завершении заказа");
         }
@@ -1092,22 +1234,17 @@ public class OrderServlet extends HttpServlet {
         String reason = request.getParameter("reason");
         String details = request.getParameter("details");
 
-        try {
-            Order order = orderService.getOrderById(orderId);
-
-            String fullReason = reason;
-            if (details != null && !details.isEmpty()) {
-                fullReason += ": " + details;
-            }
-
-            // Используем бизнес-метод из сущности
-            order.cancelOrder(fullReason);
+        String fullReason = reason;
+        if (details != null && !details.isEmpty()) {
+            fullReason += ": " + details;
+        }
 
-            // Используем правильный метод из OrderService
-            orderService.updateOrder(order);
+        OrderService.TransitionResult result = orderService.cancelOrder(orderId, fullReason);
+        if (result.isApplied()) {
             response.sendRedirect("/orders?success=Заказ отменен");
-
-        } catch (Exception e) {
+        } else if (result.isConflict()) {
+            redirectToConflict(response, result);
+        } else {
             response.sendRedirect("/orders?error=Ошибка при отмене заказа");
         }
     }
@@ -1129,12 +1266,7 @@ public class OrderServlet extends HttpServlet {
                 return;
             }
 
-            // Используем бизнес-метод из сущности
-            order.startTrip();
-
-            // Используем правильный метод из OrderService
-            orderService.updateOrder(order);
-            response.sendRedirect("/orders?success=Заказ начат");
+            startOrder(orderId, response);
 
         } catch (Exception e) {
             response.sendRedirect("/orders?error=Ошибка при начале выполнения заказа");
@@ -1145,19 +1277,25 @@ public class OrderServlet extends HttpServlet {
      * Начало выполнения заказа (из GET для кнопок)
      */
     private void startOrder(Long orderId, HttpServletResponse response) throws IOException {
-        try {
-            Order order = orderService.getOrderById(orderId);
-            if (order != null && "ASSIGNED".equals(order.getStatus())) {
-                order.startTrip();
-                // Используем правильный метод из OrderService
-                orderService.updateOrder(order);
-            }
+        OrderService.TransitionResult result = orderService.startOrderExecution(orderId);
+        if (result.isApplied()) {
             response.sendRedirect("/orders?success=Заказ начат");
-        } catch (Exception e) {
+        } else if (result.isConflict()) {
+            redirectToConflict(response, result);
+        } else {
             response.sendRedirect("/orders?error=Ошибка при начале заказа");
         }
     }
 
+    /**
+     * Возврат к списку с сообщением о конфликте: текст строится заново по заказу из БД,
+     * в адрес попадает только номер заказа
+     */
+    private void redirectToConflict(HttpServletResponse response, OrderService.TransitionResult result)
+            throws IOException {
+        response.sendRedirect("/orders?conflict=" + result.getOrderId());
+    }
+
     // ==================== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ====================
 
     /**
@@ -1274,7 +1412,7 @@ public class OrderServlet extends HttpServlet {
     /**
      * Формирует бейдж статуса
      */
-    private String getStatusBadge(String status) {
+    private static String getStatusBadge(String status) {
         if (status == null) return "<span class='badge'>Неизвестно</span>";
 
         String badgeClass;
@@ -1309,12 +1447,24 @@ public class OrderServlet extends HttpServlet {
         return "<span class='badge " + badgeClass + "'>" + statusText + "</span>";
     }
 
+    /**
+     * Бейдж статуса в буфер страницы: известные статусы - готовым куском
+     */
+    private static void appendStatusBadge(PageBuffer content, String status) {
+        PageBuffer.Fragment badge = status != null ? STATUS_BADGES.get(status) : null;
+        if (badge != null) {
+            content.append(badge);
+        } else {
+            content.appendRaw(getStatusBadge(status));
+        }
+    }
+
     /**
      * Форматирует дату и время
      */
     private String formatDateTime(LocalDateTime dateTime) {
         if (dateTime == null) return "—";
-        return dateTime.format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"));
+        return dateTime.format(DATE_TIME);
     }
 
     /**
@@ -3,11 +3,14 @@ package com.taxi.controller;
 import com.taxi.entity.*;
 import com.taxi.service.TechnicalInspectionService;
 import com.taxi.util.HtmlUtil;
+import com.taxi.util.AuthUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -20,6 +23,7 @@ import java.util.List;
 @WebServlet("/inspections/*")
 public class TechnicalInspectionServlet extends HttpServlet {
 
+    private static final Logger log = LoggerFactory.getLogger(TechnicalInspectionServlet.class);
     private TechnicalInspectionService inspectionService = new TechnicalInspectionService();
     private DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
     private DateTimeFormatter dateOnlyFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
@@ -29,7 +33,7 @@ public class TechnicalInspectionServlet extends HttpServlet {
             throws ServletException, IOException {
 
         // === ПРОВЕРКА АВТОРИЗАЦИИ И ПРАВ ===
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -83,7 +87,7 @@ public class TechnicalInspectionServlet extends HttpServlet {
             HtmlUtil.renderErrorPage(out, request, "Ошибка формата", "Неверный формат ID");
         } catch (Exception e) {
             HtmlUtil.renderErrorPage(out, request, "Ошибка", e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка в doGet()", e);
         }
     }
 
@@ -550,7 +554,7 @@ public class TechnicalInspectionServlet extends HttpServlet {
             throws ServletException, IOException {
 
         // Проверка авторизации
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -584,7 +588,7 @@ public class TechnicalInspectionServlet extends HttpServlet {
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Неизвестное действие: " + path);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в doPost()", e);
             response.sendRedirect(request.getContextPath() + "/inspections?error=" + e.getMessage());
         }
     }
@@ -609,7 +613,7 @@ public class TechnicalInspectionServlet extends HttpServlet {
             response.sendRedirect(request.getContextPath() + "/inspections?success=created");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в saveInspection()", e);
             response.sendRedirect(request.getContextPath() + "/inspections?error=" + e.getMessage());
         }
     }
@@ -639,7 +643,7 @@ public class TechnicalInspectionServlet extends HttpServlet {
             response.sendRedirect(request.getContextPath() + "/inspections?success=updated");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в updateInspection()", e);
             response.sendRedirect(request.getContextPath() + "/inspections?error=" + e.getMessage());
         }
     }
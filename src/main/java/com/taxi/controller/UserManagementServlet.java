@@ -3,11 +3,14 @@ package com.taxi.controller;
 import com.taxi.entity.User;
 import com.taxi.service.UserService;
 import com.taxi.util.HtmlUtil;
+import com.taxi.util.AuthUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -16,6 +19,7 @@ import java.util.List;
 @WebServlet("/admin/users/*")
 public class UserManagementServlet extends HttpServlet {
 
+    private static final Logger log = LoggerFactory.getLogger(UserManagementServlet.class);
     private UserService userService = new UserService();
 
     @Override
@@ -23,7 +27,7 @@ public class UserManagementServlet extends HttpServlet {
             throws ServletException, IOException {
 
         // Проверка авторизации и роли
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -76,7 +80,7 @@ public class UserManagementServlet extends HttpServlet {
             HtmlUtil.renderErrorPage(out, request, "Ошибка формата", "Неверный формат ID");
         } catch (Exception e) {
             HtmlUtil.renderErrorPage(out, request, "Ошибка", e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка в doGet()", e);
         }
     }
 
@@ -85,7 +89,7 @@ public class UserManagementServlet extends HttpServlet {
             throws ServletException, IOException {
 
         // Проверка авторизации и роли
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null || !"ADMIN".equals(currentUser.getUserType())) {
             response.sendRedirect("/login");
             return;
@@ -110,7 +114,7 @@ public class UserManagementServlet extends HttpServlet {
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Неизвестное действие: " + path);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в doPost()", e);
             response.sendRedirect(request.getContextPath() + "/admin/users?error=" + e.getMessage());
         }
     }
@@ -571,7 +575,7 @@ public class UserManagementServlet extends HttpServlet {
         } catch (IllegalArgumentException e) {
             response.sendRedirect(request.getContextPath() + "/admin/users?error=" + e.getMessage());
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в saveUser()", e);
             response.sendRedirect(request.getContextPath() + "/admin/users?error=Ошибка при создании пользователя");
         }
     }
@@ -608,7 +612,7 @@ public class UserManagementServlet extends HttpServlet {
             response.sendRedirect(request.getContextPath() + "/admin/users?success=updated");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в updateUser()", e);
             response.sendRedirect(request.getContextPath() + "/admin/users?error=Ошибка при обновлении пользователя");
         }
     }
@@ -4,11 +4,16 @@ import com.taxi.entity.*;
 import com.taxi.repository.*;
 import com.taxi.service.*;
 import com.taxi.util.HtmlUtil;
+import com.taxi.util.PageBuffer;
+import com.taxi.util.PageOutput;
+import com.taxi.util.AuthUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -23,6 +28,30 @@ import java.util.stream.Collectors;
 @WebServlet("/waybills/*")
 public class WaybillServlet extends HttpServlet {
 
+    private static final Logger log = LoggerFactory.getLogger(WaybillServlet.class);
+
+    // Строки таблиц путевых листов: куски разметки между значениями, закодированные один раз
+    private static final PageBuffer.Fragment[] DRIVER_WAYBILL_ROW = PageBuffer.Fragment.split(
+            "<tr><td>#{}</td><td>{}</td><td>{}</td>{}<td><span class='badge {}'>{}</span></td>"
+                    + "<td><div class='action-buttons-small'>"
+                    + "<a href='/waybills/view?id={}' class='btn btn-sm btn-primary'> Просмотр</a>"
+                    + "</div></td></tr>");
+    private static final PageBuffer.Fragment[] WAYBILL_ROW = PageBuffer.Fragment.split(
+            "<tr><td><strong>#{}</strong></td><td><strong>{}</strong></td><td>{}</td><td>{}</td><td>{}</td>{}"
+                    + "<td><span class='badge {}'>{}</span></td><td><div class='action-buttons-small'>");
+    private static final PageBuffer.Fragment[] ROW_CLOSE = PageBuffer.Fragment.split(
+            "<a href='/waybills/close?id={}' class='btn btn-sm btn-success' title='Завершить смену'> Завершить</a>");
+    private static final PageBuffer.Fragment[] ROW_VIEW_ACTIVE = PageBuffer.Fragment.split(
+            "<a href='/waybills/view?id={}' class='btn btn-sm btn-primary' title='Просмотр'>️ Просмотр</a>");
+    private static final PageBuffer.Fragment[] ROW_VIEW = PageBuffer.Fragment.split(
+            "<a href='/waybills/view?id={}' class='btn btn-sm btn-primary' title='Просмотр'> Просмотр</a>");
+    private static final PageBuffer.Fragment[] ROW_DELETE = PageBuffer.Fragment.split(
+            "<a href='/waybills/confirm-delete?id={}' class='btn btn-sm btn-danger' title='Удалить путевой лист'> Удалить</a>");
+    private static final PageBuffer.Fragment ROW_END = PageBuffer.Fragment.of("</div></td></tr>");
+    private static final PageBuffer.Fragment[] CAR_CELL = PageBuffer.Fragment.split("{}<br><small>{}</small>");
+    private static final PageBuffer.Fragment[] TOTALS_CELLS = PageBuffer.Fragment.split("<td>{}</td><td>{}</td>");
+    private static final PageBuffer.Fragment KM = PageBuffer.Fragment.of(" км");
+    private static final PageBuffer.Fragment NO_VALUE = PageBuffer.Fragment.of("-");
     private WaybillService waybillService = new WaybillService();
     private DriverRepository driverRepository = new DriverRepository();
     private CarRepository carRepository = new CarRepository();
@@ -39,7 +68,7 @@ public class WaybillServlet extends HttpServlet {
             throws ServletException, IOException {
 
         // ПРОВЕРКА АВТОРИЗАЦИИ
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -48,7 +77,7 @@ public class WaybillServlet extends HttpServlet {
         String userRole = currentUser.getUserType();
         String path = request.getPathInfo();
         response.setContentType("text/html; charset=UTF-8");
-        PrintWriter out = response.getWriter();
+        PrintWriter out = new PageOutput(response);
 
         try {
             // Проверка доступа для DOCTOR и OPERATOR
@@ -124,7 +153,7 @@ public class WaybillServlet extends HttpServlet {
             HtmlUtil.renderErrorPage(out, request, "Ошибка формата", "Неверный формат ID");
         } catch (Exception e) {
             HtmlUtil.renderErrorPage(out, request, "Ошибка", e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка в doGet()", e);
         }
     }
 
@@ -134,7 +163,7 @@ public class WaybillServlet extends HttpServlet {
             throws IOException, ServletException {
         String path = request.getPathInfo();
         response.setContentType("text/html; charset=UTF-8");
-        PrintWriter out = response.getWriter();
+        PrintWriter out = new PageOutput(response);
 
         // Получаем водителя по текущему пользователю
         Driver driver = driverRepository.findByUserId(currentUser.getId());
@@ -181,117 +210,105 @@ public class WaybillServlet extends HttpServlet {
     private void showDriverWaybills(HttpServletRequest request, PrintWriter out, Driver driver) {
         List<Waybill> driverWaybills = waybillService.getWaybillsByDriver(driver.getId());
 
-        StringBuilder content = new StringBuilder();
-
-        content.append("<div class='card'>")
-                .append("<h1 class='page-title'> Мои путевые листы</h1>")
-                .append("<p class='page-subtitle'>История ваших смен</p>")
-                .append("</div>");
-
-        // Информация о водителе
-        content.append("<div class='card mb-20'>")
-                .append("<div class='info-grid'>")
-                .append("<div><strong> Водитель:</strong><br>").append(driver.getFullName()).append("</div>")
-                .append("<div><strong> Автомобиль:</strong><br>")
-                .append(driver.getCurrentCar() != null ?
-                        driver.getCurrentCar().getLicensePlate() + " (" + driver.getCurrentCar().getModel() + ")" :
-                        "Не назначен")
-                .append("</div>")
-                .append("</div>")
-                .append("</div>");
+        try (PageBuffer content = PageBuffer.acquire()) {
+
+            content.appendRaw("<div class='card'>")
+                    .appendRaw("<h1 class='page-title'> Мои путевые листы</h1>")
+                    .appendRaw("<p class='page-subtitle'>История ваших смен</p>")
+                    .appendRaw("</div>");
+
+            // Информация о водителе
+            content.appendRaw("<div class='card mb-20'>")
+                    .appendRaw("<div class='info-grid'>")
+                    .appendRaw("<div><strong> Водитель:</strong><br>").appendEscaped(driver.getFullName()).appendRaw("</div>")
+                    .appendRaw("<div><strong> Автомобиль:</strong><br>")
+                    .appendEscaped(driver.getCurrentCar() != null ?
+                            driver.getCurrentCar().getLicensePlate() + " (" + driver.getCurrentCar().getModel() + ")" :
+                            "Не назначен")
+                    .appendRaw("</div>")
+                    .appendRaw("</div>")
+                    .appendRaw("</div>");
+
+            // Активная смена
+            List<Waybill> activeWaybills = driverWaybills.stream()
+                    .filter(w -> w.getStatus() == Waybill.WaybillStatus.ACTIVE)
+                    .collect(Collectors.toList());
+
+            if (!activeWaybills.isEmpty()) {
+                Waybill activeWaybill = activeWaybills.get(0);
+                content.appendRaw("<div class='card mb-20'>")
+                        .appendRaw("<div class='card-header'>")
+                        .appendRaw("<h3> Активная смена</h3>")
+                        .appendRaw("</div>")
+                        .appendRaw("<div class='info-grid'>")
+                        .appendRaw("<div>")
+                        .appendRaw("<p><strong>ID:</strong> #").append(activeWaybill.getId()).appendRaw("</p>")
+                        .appendRaw("<p><strong>Начало:</strong> ").appendRaw(dateFormatter.format(activeWaybill.getStartTime())).appendRaw("</p>")
+                        .appendRaw("</div>")
+                        .appendRaw("<div>")
+                        .appendRaw("<p><strong>Пробег:</strong> ").appendRaw(activeWaybill.getInitialMileageKm() != null ?
+                                activeWaybill.getInitialMileageKm() + " км" : "-").appendRaw("</p>")
+                        .appendRaw("<p><strong>Статус:</strong> <span class='badge badge-success'>Активна</span></p>")
+                        .appendRaw("</div>")
+                        .appendRaw("</div>")
+                        .appendRaw("<div class='form-actions'>")
+                        .appendRaw("<a href='/orders?my=true' class='btn btn-primary'> Мои заказы</a>")
+                        .appendRaw("<a href='/driver-panel' class='btn btn-secondary'> Панель управления</a>")
+                        .appendRaw("</div>")
+                        .appendRaw("</div>");
+            }
 
-        // Активная смена
-        List<Waybill> activeWaybills = driverWaybills.stream()
-                .filter(w -> w.getStatus() == Waybill.WaybillStatus.ACTIVE)
-                .collect(Collectors.toList());
+            // История смен
+            if (driverWaybills.isEmpty()) {
+                content.appendRaw("<div class='card text-center'>")
+                        .appendRaw("<div class='empty-state'>")
+                        .appendRaw("<div class='empty-icon'></div>")
+                        .appendRaw("<h3>Нет путевых листов</h3>")
+                        .appendRaw("<p>У вас еще нет завершенных смен</p>")
+                        .appendRaw("</div>")
+                        .appendRaw("</div>");
+            } else {
+                content.appendRaw("<div class='card'>")
+                        .appendRaw("<h3> История смен</h3>")
+                        .appendRaw("<div class='table-container'>")
+                        .appendRaw("<table>")
+                        .appendRaw("<thead>")
+                        .appendRaw("<tr>")
+                        .appendRaw("<th>ID</th>")
+                        .appendRaw("<th>Дата</th>")
+                        .appendRaw("<th>Автомобиль</th>")
+                        .appendRaw("<th>Пробег</th>")
+                        .appendRaw("<th>Заработок</th>")
+                        .appendRaw("<th>Статус</th>")
+                        .appendRaw("<th>Действия</th>")
+                        .appendRaw("</tr>")
+                        .appendRaw("</thead>")
+                        .appendRaw("<tbody>");
+
+                for (Waybill waybill : driverWaybills) {
+                    content.append(DRIVER_WAYBILL_ROW[0]).append(waybill.getId())
+                            .append(DRIVER_WAYBILL_ROW[1]).appendRaw(dateFormatter.format(waybill.getStartTime()))
+                            .append(DRIVER_WAYBILL_ROW[2]);
+                    appendCarCell(content, waybill.getCar());
+                    content.append(DRIVER_WAYBILL_ROW[3]);
+                    appendShiftTotals(content, waybill);
+                    content.append(DRIVER_WAYBILL_ROW[4]).appendRaw(getStatusClass(waybill.getStatus()))
+                            .append(DRIVER_WAYBILL_ROW[5]).appendRaw(getStatusText(waybill.getStatus()))
+                            .append(DRIVER_WAYBILL_ROW[6]).append(waybill.getId())
+                            .append(DRIVER_WAYBILL_ROW[7]);
+                }
 
-        if (!activeWaybills.isEmpty()) {
-            Waybill activeWaybill = activeWaybills.get(0);
-            content.append("<div class='card mb-20'>")
-                    .append("<div class='card-header'>")
-                    .append("<h3> Активная смена</h3>")
-                    .append("</div>")
-                    .append("<div class='info-grid'>")
-                    .append("<div>")
-                    .append("<p><strong>ID:</strong> #").append(activeWaybill.getId()).append("</p>")
-                    .append("<p><strong>Начало:</strong> ").append(dateFormatter.format(activeWaybill.getStartTime())).append("</p>")
-                    .append("</div>")
-                    .append("<div>")
-                    .append("<p><strong>Пробег:</strong> ").append(activeWaybill.getInitialMileageKm() != null ?
-                            activeWaybill.getInitialMileageKm() + " км" : "-").append("</p>")
-                    .append("<p><strong>Статус:</strong> <span class='badge badge-success'>Активна</span></p>")
-                    .append("</div>")
-                    .append("</div>")
-                    .append("<div class='form-actions'>")
-                    .append("<a href='/orders?my=true' class='btn btn-primary'> Мои заказы</a>")
-                    .append("<a href='/driver-panel' class='btn btn-secondary'> Панель управления</a>")
-                    .append("</div>")
-                    .append("</div>");
-        }
+                content.appendRaw("</tbody>")
+                        .appendRaw("</table>")
+                        .appendRaw("</div>")
+                        .appendRaw("</div>");
 
-        // История смен
-        if (driverWaybills.isEmpty()) {
-            content.append("<div class='card text-center'>")
-                    .append("<div class='empty-state'>")
-                    .append("<div class='empty-icon'></div>")
-                    .append("<h3>Нет путевых листов</h3>")
-                    .append("<p>У вас еще нет завершенных смен</p>")
-                    .append("</div>")
-                    .append("</div>");
-        } else {
-            content.append("<div class='card'>")
-                    .append("<h3> История смен</h3>")
-                    .append("<div class='table-container'>")
-                    .append("<table>")
-                    .append("<thead>")
-                    .append("<tr>")
-                    .append("<th>ID</th>")
-                    .append("<th>Дата</th>")
-                    .append("<th>Автомобиль</th>")
-                    .append("<th>Пробег</th>")
-                    .append("<th>Заработок</th>")
-                    .append("<th>Статус</th>")
-                    .append("<th>Действия</th>")
-                    .append("</tr>")
-                    .append("</thead>")
-                    .append("<tbody>");
-
-            for (Waybill waybill : driverWaybills) {
-                String statusClass = getStatusClass(waybill.getStatus());
-                String statusText = getStatusText(waybill.getStatus());
-
-                String carInfo = waybill.getCar() != null ?
-                        waybill.getCar().getLicensePlate() + "<br><small>" + waybill.getCar().getModel() + "</small>" :
-                        "-";
-
-                content.append("<tr>")
-                        .append("<td>#").append(waybill.getId()).append("</td>")
-                        .append("<td>").append(dateFormatter.format(waybill.getStartTime())).append("</td>")
-                        .append("<td>").append(carInfo).append("</td>")
-                        .append("<td>").append(waybill.getShiftMileage() > 0 ?
-                                waybill.getShiftMileage() + " км" : "-").append("</td>")
-                        .append("<td>").append(waybill.getTotalEarnings() != null ?
-                                String.format("%.2f ₽", waybill.getTotalEarnings()) : "-").append("</td>")
-                        .append("<td><span class='badge ").append(statusClass).append("'>").append(statusText).append("</span></td>")
-                        .append("<td>")
-                        .append("<div class='action-buttons-small'>")
-                        .append("<a href='/waybills/view?id=").append(waybill.getId())
-                        .append("' class='btn btn-sm btn-primary'> Просмотр</a>")
-                        .append("</div>")
-                        .append("</td>")
-                        .append("</tr>");
+                // Статистика для водителя
+                appendDriverStatistics(content, driverWaybills);
             }
 
-            content.append("</tbody>")
-                    .append("</table>")
-                    .append("</div>")
-                    .append("</div>");
-
-            // Статистика для водителя
-            content.append(showDriverStatistics(driverWaybills));
+            HtmlUtil.renderFullPage(out, request, "Мои путевые листы", "driver-waybills", content);
         }
-
-        HtmlUtil.renderFullPage(out, request, "Мои путевые листы", "driver-waybills", content.toString());
     }
 
     private boolean checkDriverWaybillOwnership(Long waybillId, Driver driver) {
@@ -326,200 +343,186 @@ public class WaybillServlet extends HttpServlet {
         List<Car> allCars = carRepository.findAll();
 
         // Формируем контент страницы
-        StringBuilder content = new StringBuilder();
-
-        // Показываем сообщения об успехе/ошибке
-        String success = request.getParameter("success");
-        String error = request.getParameter("error");
-
-        if (success != null) {
-            String message = switch (success) {
-                case "opened" -> " Смена успешно открыта!";
-                case "closed" -> " Смена успешно завершена!";
-                case "deleted" -> "️ Путевой лист успешно удален!";
-                default -> "";
-            };
-            if (!message.isEmpty()) {
-                content.append("<div class='card fade-in'>")
-                        .append("<div class='alert alert-success'>").append(message).append("</div>")
-                        .append("</div>");
+        try (PageBuffer content = PageBuffer.acquire()) {
+
+            // Показываем сообщения об успехе/ошибке
+            String success = request.getParameter("success");
+            String error = request.getParameter("error");
+
+            if (success != null) {
+                String message = switch (success) {
+                    case "opened" -> " Смена успешно открыта!";
+                    case "closed" -> " Смена успешно завершена!";
+                    case "deleted" -> "️ Путевой лист успешно удален!";
+                    default -> "";
+                };
+                if (!message.isEmpty()) {
+                    content.appendRaw("<div class='card fade-in'>")
+                            .appendRaw("<div class='alert alert-success'>").appendRaw(message).appendRaw("</div>")
+                            .appendRaw("</div>");
+                }
             }
-        }
 
-        if (error != null) {
-            content.append("<div class='card fade-in'>")
-                    .append("<div class='alert alert-danger'> Ошибка: ").append(error).append("</div>")
-                    .append("</div>");
-        }
-
-        // Заголовок страницы
-        content.append("<div class='card mb-20'>")
-                .append("<h1 class='page-title'> Путевые листы</h1>")
-                .append("<p class='page-subtitle'>Управление сменами водителей</p>")
-                .append("</div>");
-
-        // Кнопка добавления (только для механиков и админов)
-        content.append("<div class='card mb-20'>")
-                .append("<div class='action-buttons'>")
-                .append("<a href='/waybills/new' class='btn btn-success'> Открыть новую смену</a>")
-                .append("</div>")
-                .append("</div>");
-
-        // Блок фильтров
-        content.append("<div class='card mb-20'>")
-                .append("<h3> Фильтры</h3>")
-                .append("<form method='get' action='/waybills' class='form-horizontal'>")
-                .append("<div class='info-grid'>");
-
-        // Поиск
-        content.append("<div class='form-group'>")
-                .append("<label for='search' class='form-label'>Поиск</label>")
-                .append("<input type='text' class='form-control' id='search' name='search' ")
-                .append("placeholder='ФИО водителя, номер авто...' value='").append(search != null ? search : "").append("'>")
-                .append("</div>");
-
-        // Фильтр по водителю
-        content.append("<div class='form-group'>")
-                .append("<label for='driver' class='form-label'>Водитель</label>")
-                .append("<select class='form-control' id='driver' name='driver'>")
-                .append("<option value=''>Все водители</option>");
-
-        for (Driver driver : allDrivers) {
-            boolean selected = driverFilter != null && driverFilter.equals(driver.getId().toString());
-            content.append("<option value='").append(driver.getId()).append("' ")
-                    .append(selected ? "selected" : "").append(">")
-                    .append(driver.getFullName()).append(" (").append(driver.getLicenseNumber()).append(")</option>");
-        }
-
-        content.append("</select>")
-                .append("</div>");
-
-        // Фильтр по автомобилю
-        content.append("<div class='form-group'>")
-                .append("<label for='car' class='form-label'>Автомобиль</label>")
-                .append("<select class='form-control' id='car' name='car'>")
-                .append("<option value=''>Все автомобили</option>");
-
-        for (Car car : allCars) {
-            boolean selected = carFilter != null && carFilter.equals(car.getId().toString());
-            content.append("<option value='").append(car.getId()).append("' ")
-                    .append(selected ? "selected" : "").append(">")
-                    .append(car.getLicensePlate()).append(" (").append(car.getModel()).append(")</option>");
-        }
+            if (error != null) {
+                content.appendRaw("<div class='card fade-in'>")
+                        .appendRaw("<div class='alert alert-danger'> Ошибка: ").appendEscaped(error).appendRaw("</div>")
+                        .appendRaw("</div>");
+            }
 
-        content.append("</select>")
-                .append("</div>");
+            // Заголовок страницы
+            content.appendRaw("<div class='card mb-20'>")
+                    .appendRaw("<h1 class='page-title'> Путевые листы</h1>")
+                    .appendRaw("<p class='page-subtitle'>Управление сменами водителей</p>")
+                    .appendRaw("</div>");
+
+            // Кнопка добавления (только для механиков и админов)
+            content.appendRaw("<div class='card mb-20'>")
+                    .appendRaw("<div class='action-buttons'>")
+                    .appendRaw("<a href='/waybills/new' class='btn btn-success'> Открыть новую смену</a>")
+                    .appendRaw("</div>")
+                    .appendRaw("</div>");
+
+            // Блок фильтров
+            content.appendRaw("<div class='card mb-20'>")
+                    .appendRaw("<h3> Фильтры</h3>")
+                    .appendRaw("<form method='get' action='/waybills' class='form-horizontal'>")
+                    .appendRaw("<div class='info-grid'>");
+
+            // Поиск
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='search' class='form-label'>Поиск</label>")
+                    .appendRaw("<input type='text' class='form-control' id='search' name='search' ")
+                    .appendRaw("placeholder='ФИО водителя, номер авто...' value='").appendEscaped(search != null ? search : "").appendRaw("'>")
+                    .appendRaw("</div>");
+
+            // Фильтр по водителю
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='driver' class='form-label'>Водитель</label>")
+                    .appendRaw("<select class='form-control' id='driver' name='driver'>")
+                    .appendRaw("<option value=''>Все водители</option>");
+
+            for (Driver driver : allDrivers) {
+                boolean selected = driverFilter != null && driverFilter.equals(driver.getId().toString());
+                content.appendRaw("<option value='").append(driver.getId()).appendRaw("' ")
+                        .appendRaw(selected ? "selected" : "").appendRaw(">")
+                        .appendEscaped(driver.getFullName()).appendRaw(" (").appendEscaped(driver.getLicenseNumber()).appendRaw(")</option>");
+            }
 
-        // Фильтр по статусу
-        content.append("<div class='form-group'>")
-                .append("<label for='status' class='form-label'>Статус</label>")
-                .append("<select class='form-control' id='status' name='status'>")
-                .append("<option value=''>Все статусы</option>")
-                .append("<option value='active' ").append("active".equals(statusFilter) ? "selected" : "").append(">Активные</option>")
-                .append("<option value='completed' ").append("completed".equals(statusFilter) ? "selected" : "").append(">Завершенные</option>")
-                .append("<option value='cancelled' ").append("cancelled".equals(statusFilter) ? "selected" : "").append(">Отмененные</option>")
-                .append("</select>")
-                .append("</div>");
+            content.appendRaw("</select>")
+                    .appendRaw("</div>");
 
-        // Фильтр по дате
-        content.append("<div class='form-group'>")
-                .append("<label for='date' class='form-label'>Дата начала</label>")
-                .append("<input type='date' class='form-control' id='date' name='date' value='")
-                .append(dateFilter != null ? dateFilter : "").append("'>")
-                .append("</div>");
+            // Фильтр по автомобилю
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='car' class='form-label'>Автомобиль</label>")
+                    .appendRaw("<select class='form-control' id='car' name='car'>")
+                    .appendRaw("<option value=''>Все автомобили</option>");
 
-        content.append("</div>") // Закрываем info-grid
-                .append("<div class='form-actions'>")
-                .append("<button type='submit' class='btn btn-primary'> Применить</button>")
-                .append("<a href='/waybills' class='btn btn-secondary'> Сбросить</a>")
-                .append("</div>")
-                .append("</form>")
-                .append("</div>");
+            for (Car car : allCars) {
+                boolean selected = carFilter != null && carFilter.equals(car.getId().toString());
+                content.appendRaw("<option value='").append(car.getId()).appendRaw("' ")
+                        .appendRaw(selected ? "selected" : "").appendRaw(">")
+                        .appendEscaped(car.getLicensePlate()).appendRaw(" (").appendEscaped(car.getModel()).appendRaw(")</option>");
+            }
 
-        // Таблица путевых листов
-        if (waybills.isEmpty()) {
-            content.append("<div class='card text-center fade-in'>")
-                    .append("<div class='empty-state'>")
-                    .append("<div class='empty-icon'></div>")
-                    .append("<h3>Нет путевых листов</h3>")
-                    .append("<p>По выбранным фильтрам ничего не найдено</p>")
-                    .append("<a href='/waybills/new' class='btn btn-success mt-20'>Открыть первую смену</a>")
-                    .append("</div>")
-                    .append("</div>");
-        } else {
-            content.append("<div class='card fade-in'>")
-                    .append("<div class='table-container'>")
-                    .append("<table>")
-                    .append("<thead>")
-                    .append("<tr>")
-                    .append("<th>ID</th>")
-                    .append("<th>Водитель</th>")
-                    .append("<th>Автомобиль</th>")
-                    .append("<th>Начало</th>")
-                    .append("<th>Конец</th>")
-                    .append("<th>Пробег</th>")
-                    .append("<th>Заработок</th>")
-                    .append("<th>Статус</th>")
-                    .append("<th>Действия</th>")
-                    .append("</tr>")
-                    .append("</thead>")
-                    .append("<tbody>");
-
-            for (Waybill waybill : waybills) {
-                String statusClass = getStatusClass(waybill.getStatus());
-                String statusText = getStatusText(waybill.getStatus());
-
-                String carInfo = waybill.getCar() != null ?
-                        waybill.getCar().getLicensePlate() + "<br><small>" + waybill.getCar().getModel() + "</small>" :
-                        "-";
-
-                content.append("<tr>")
-                        .append("<td><strong>#").append(waybill.getId()).append("</strong></td>")
-                        .append("<td><strong>").append(waybill.getDriver().getFullName()).append("</strong></td>")
-                        .append("<td>").append(carInfo).append("</td>")
-                        .append("<td>").append(dateFormatter.format(waybill.getStartTime())).append("</td>")
-                        .append("<td>").append(waybill.getEndTime() != null ?
-                                dateFormatter.format(waybill.getEndTime()) : "-").append("</td>")
-                        .append("<td>").append(waybill.getShiftMileage() > 0 ?
-                                waybill.getShiftMileage() + " км" : "-").append("</td>")
-                        .append("<td>").append(waybill.getTotalEarnings() != null ?
-                                String.format("%.2f ₽", waybill.getTotalEarnings()) : "-").append("</td>")
-                        .append("<td><span class='badge ").append(statusClass).append("'>").append(statusText).append("</span></td>")
-                        .append("<td>")
-                        .append("<div class='action-buttons-small'>");
+            content.appendRaw("</select>")
+                    .appendRaw("</div>");
+
+            // Фильтр по статусу
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='status' class='form-label'>Статус</label>")
+                    .appendRaw("<select class='form-control' id='status' name='status'>")
+                    .appendRaw("<option value=''>Все статусы</option>")
+                    .appendRaw("<option value='active' ").appendRaw("active".equals(statusFilter) ? "selected" : "").appendRaw(">Активные</option>")
+                    .appendRaw("<option value='completed' ").appendRaw("completed".equals(statusFilter) ? "selected" : "").appendRaw(">Завершенные</option>")
+                    .appendRaw("<option value='cancelled' ").appendRaw("cancelled".equals(statusFilter) ? "selected" : "").appendRaw(">Отмененные</option>")
+                    .appendRaw("</select>")
+                    .appendRaw("</div>");
+
+            // Фильтр по дате
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='date' class='form-label'>Дата начала</label>")
+                    .appendRaw("<input type='date' class='form-control' id='date' name='date' value='")
+                    .appendEscaped(dateFilter != null ? dateFilter : "").appendRaw("'>")
+                    .appendRaw("</div>");
+
+            content.appendRaw("</div>") // Закрываем info-grid
+                    .appendRaw("<div class='form-actions'>")
+                    .appendRaw("<button type='submit' class='btn btn-primary'> Применить</button>")
+                    .appendRaw("<a href='/waybills' class='btn btn-secondary'> Сбросить</a>")
+                    .appendRaw("</div>")
+                    .appendRaw("</form>")
+                    .appendRaw("</div>");
+
+            // Таблица путевых листов
+            if (waybills.isEmpty()) {
+                content.appendRaw("<div class='card text-center fade-in'>")
+                        .appendRaw("<div class='empty-state'>")
+                        .appendRaw("<div class='empty-icon'></div>")
+                        .appendRaw("<h3>Нет путевых листов</h3>")
+                        .appendRaw("<p>По выбранным фильтрам ничего не найдено</p>")
+                        .appendRaw("<a href='/waybills/new' class='btn btn-success mt-20'>Открыть первую смену</a>")
+                        .appendRaw("</div>")
+                        .appendRaw("</div>");
+            } else {
+                content.appendRaw("<div class='card fade-in'>")
+                        .appendRaw("<div class='table-container'>")
+                        .appendRaw("<table>")
+                        .appendRaw("<thead>")
+                        .appendRaw("<tr>")
+                        .appendRaw("<th>ID</th>")
+                        .appendRaw("<th>Водитель</th>")
+                        .appendRaw("<th>Автомобиль</th>")
+                        .appendRaw("<th>Начало</th>")
+                        .appendRaw("<th>Конец</th>")
+                        .appendRaw("<th>Пробег</th>")
+                        .appendRaw("<th>Заработок</th>")
+                        .appendRaw("<th>Статус</th>")
+                        .appendRaw("<th>Действия</th>")
+                        .appendRaw("</tr>")
+                        .appendRaw("</thead>")
+                        .appendRaw("<tbody>");
+
+                for (Waybill waybill : waybills) {
+                    content.append(WAYBILL_ROW[0]).append(waybill.getId())
+                            .append(WAYBILL_ROW[1]).appendEscaped(waybill.getDriver().getFullName())
+                            .append(WAYBILL_ROW[2]);
+                    appendCarCell(content, waybill.getCar());
+                    content.append(WAYBILL_ROW[3]).appendRaw(dateFormatter.format(waybill.getStartTime()))
+                            .append(WAYBILL_ROW[4]).appendRaw(waybill.getEndTime() != null ?
+                                    dateFormatter.format(waybill.getEndTime()) : "-")
+                            .append(WAYBILL_ROW[5]);
+                    appendShiftTotals(content, waybill);
+                    content.append(WAYBILL_ROW[6]).appendRaw(getStatusClass(waybill.getStatus()))
+                            .append(WAYBILL_ROW[7]).appendRaw(getStatusText(waybill.getStatus()))
+                            .append(WAYBILL_ROW[8]);
+
+                    if (waybill.getStatus() == Waybill.WaybillStatus.ACTIVE) {
+                        content.append(ROW_CLOSE[0]).append(waybill.getId()).append(ROW_CLOSE[1]);
+                        content.append(ROW_VIEW_ACTIVE[0]).append(waybill.getId()).append(ROW_VIEW_ACTIVE[1]);
+                    } else {
+                        content.append(ROW_VIEW[0]).append(waybill.getId()).append(ROW_VIEW[1]);
+                        content.append(ROW_DELETE[0]).append(waybill.getId()).append(ROW_DELETE[1]);
+                    }
 
-                if (waybill.getStatus() == Waybill.WaybillStatus.ACTIVE) {
-                    content.append("<a href='/waybills/close?id=").append(waybill.getId())
-                            .append("' class='btn btn-sm btn-success' title='Завершить смену'> Завершить</a>");
-                    content.append("<a href='/waybills/view?id=").append(waybill.getId())
-                            .append("' class='btn btn-sm btn-primary' title='Просмотр'>️ Просмотр</a>");
-                } else {
-                    content.append("<a href='/waybills/view?id=").append(waybill.getId())
-                            .append("' class='btn btn-sm btn-primary' title='Просмотр'> Просмотр</a>");
-                    content.append("<a href='/waybills/confirm-delete?id=").append(waybill.getId())
-                            .append("' class='btn btn-sm btn-danger' title='Удалить путевой лист'> Удалить</a>");
+                    content.append(ROW_END);
                 }
 
-                content.append("</div>")
-                        .append("</td>")
-                        .append("</tr>");
+                content.appendRaw("</tbody>")
+                        .appendRaw("</table>")
+                        .appendRaw("</div>");
+
+                // Количество записей
+                content.appendRaw("<div class='mt-20' style='padding-top: 15px; border-top: 1px solid #333;'>")
+                        .appendRaw("<div style='color: #888; font-size: 0.9em;'>Показано: ").append(waybills.size()).appendRaw(" записей</div>")
+                        .appendRaw("</div>")
+                        .appendRaw("</div>");
             }
 
-            content.append("</tbody>")
-                    .append("</table>")
-                    .append("</div>");
+            // Статистика
+            appendStatistics(content);
 
-            // Количество записей
-            content.append("<div class='mt-20' style='padding-top: 15px; border-top: 1px solid #333;'>")
-                    .append("<div style='color: #888; font-size: 0.9em;'>Показано: ").append(waybills.size()).append(" записей</div>")
-                    .append("</div>")
-                    .append("</div>");
+            HtmlUtil.renderFullPage(out, request, "Путевые листы", "waybills", content);
         }
-
-        // Статистика
-        content.append(showStatisticsHtml());
-
-        HtmlUtil.renderFullPage(out, request, "Путевые листы", "waybills", content.toString());
     }
 
     // ==================== ДЕТАЛИ ПУТЕВОГО ЛИСТА (НОВЫЙ МЕТОД) ====================
@@ -533,7 +536,7 @@ public class WaybillServlet extends HttpServlet {
             }
 
             // Проверка прав для DRIVER
-            User currentUser = (User) request.getSession().getAttribute("user");
+            User currentUser = AuthUtil.getCurrentUser(request);
             String userRole = currentUser.getUserType();
 
             if ("DRIVER".equals(userRole)) {
@@ -544,172 +547,173 @@ public class WaybillServlet extends HttpServlet {
                 }
             }
 
-            StringBuilder content = new StringBuilder();
-
-            content.append("<div class='card'>")
-                    .append("<div class='card-header'>")
-                    .append("<h2 class='card-title'> Путевой лист #").append(waybill.getId()).append("</h2>")
-                    .append("</div>")
-                    .append("<div class='card-body'>");
-
-            // Информация о путевом листе в виде сетки
-            content.append("<div class='info-grid'>");
-
-            // Водитель и автомобиль
-            content.append("<div class='info-section'>")
-                    .append("<h3> Водитель и авто</h3>")
-                    .append("<p><strong>Водитель:</strong> ").append(waybill.getDriver().getFullName()).append("</p>")
-                    .append("<p><strong>Телефон:</strong> ").append(waybill.getDriver().getPhone() != null ?
-                            waybill.getDriver().getPhone() : "-").append("</p>")
-                    .append("<p><strong>В/у:</strong> ").append(waybill.getDriver().getLicenseNumber()).append("</p>")
-                    .append("<p><strong>Автомобиль:</strong> ").append(waybill.getCar().getLicensePlate())
-                    .append(" (").append(waybill.getCar().getBrand()).append(" ").append(waybill.getCar().getModel()).append(")</p>")
-                    .append("</div>");
-
-            // Время и пробег
-            content.append("<div class='info-section'>")
-                    .append("<h3> Время и пробег</h3>")
-                    .append("<p><strong>Начало смены:</strong> ").append(dateFormatter.format(waybill.getStartTime())).append("</p>");
-
-            if (waybill.getEndTime() != null) {
-                content.append("<p><strong>Конец смены:</strong> ").append(dateFormatter.format(waybill.getEndTime())).append("</p>");
-                long hours = java.time.Duration.between(waybill.getStartTime(), waybill.getEndTime()).toHours();
-                long minutes = java.time.Duration.between(waybill.getStartTime(), waybill.getEndTime()).toMinutesPart();
-                content.append("<p><strong>Продолжительность:</strong> ").append(hours).append(" ч ").append(minutes).append(" мин</p>");
-            }
+            try (PageBuffer content = PageBuffer.acquire()) {
+
+                content.appendRaw("<div class='card'>")
+                        .appendRaw("<div class='card-header'>")
+                        .appendRaw("<h2 class='card-title'> Путевой лист #").append(waybill.getId()).appendRaw("</h2>")
+                        .appendRaw("</div>")
+                        .appendRaw("<div class='card-body'>");
+
+                // Информация о путевом листе в виде сетки
+                content.appendRaw("<div class='info-grid'>");
+
+                // Водитель и автомобиль
+                content.appendRaw("<div class='info-section'>")
+                        .appendRaw("<h3> Водитель и авто</h3>")
+                        .appendRaw("<p><strong>Водитель:</strong> ").appendEscaped(waybill.getDriver().getFullName()).appendRaw("</p>")
+                        .appendRaw("<p><strong>Телефон:</strong> ").appendEscaped(waybill.getDriver().getPhone() != null ?
+                                waybill.getDriver().getPhone() : "-").appendRaw("</p>")
+                        .appendRaw("<p><strong>В/у:</strong> ").appendEscaped(waybill.getDriver().getLicenseNumber()).appendRaw("</p>")
+                        .appendRaw("<p><strong>Автомобиль:</strong> ").appendEscaped(waybill.getCar().getLicensePlate())
+                        .appendRaw(" (").appendEscaped(waybill.getCar().getBrand()).appendRaw(" ").appendEscaped(waybill.getCar().getModel()).appendRaw(")</p>")
+                        .appendRaw("</div>");
+
+                // Время и пробег
+                content.appendRaw("<div class='info-section'>")
+                        .appendRaw("<h3> Время и пробег</h3>")
+                        .appendRaw("<p><strong>Начало смены:</strong> ").appendRaw(dateFormatter.format(waybill.getStartTime())).appendRaw("</p>");
+
+                if (waybill.getEndTime() != null) {
+                    content.appendRaw("<p><strong>Конец смены:</strong> ").appendRaw(dateFormatter.format(waybill.getEndTime())).appendRaw("</p>");
+                    long hours = java.time.Duration.between(waybill.getStartTime(), waybill.getEndTime()).toHours();
+                    long minutes = java.time.Duration.between(waybill.getStartTime(), waybill.getEndTime()).toMinutesPart();
+                    content.appendRaw("<p><strong>Продолжительность:</strong> ").append(hours).appendRaw(" ч ").append(minutes).appendRaw(" мин</p>");
+                }
 
-            content.append("<p><strong>Начальный пробег:</strong> ").append(waybill.getInitialMileageKm() != null ?
-                            waybill.getInitialMileageKm() + " км" : "-").append("</p>")
-                    .append("<p><strong>Конечный пробег:</strong> ").append(waybill.getFinalMileage() != null ?
-                            waybill.getFinalMileage() + " км" : "-").append("</p>")
-                    .append("<p><strong>Пробег за смену:</strong> ").append(waybill.getShiftMileage()).append(" км</p>")
-                    .append("</div>");
-
-            // Финансы и статус
-            content.append("<div class='info-section'>")
-                    .append("<h3> Финансы</h3>")
-                    .append("<p><strong>Статус:</strong> ").append(getStatusBadge(waybill.getStatus())).append("</p>")
-                    .append("<p><strong>Заработок водителя:</strong> ").append(waybill.getTotalEarnings() != null ?
-                            String.format("%.2f ₽", waybill.getTotalEarnings()) : "-").append("</p>")
-                    .append("<p><strong>Выручка:</strong> ").append(waybill.getTotalRevenue() != null ?
-                            String.format("%.2f ₽", waybill.getTotalRevenue()) : "-").append("</p>")
-                    .append("</div>");
-
-            // Персонал
-            content.append("<div class='info-section'>")
-                    .append("<h3> Персонал</h3>")
-                    .append("<p><strong>Открыл смену:</strong> ").append(waybill.getDoctor() != null ?
-                            waybill.getDoctor().getFullName() : "-").append("</p>");
-
-            if (waybill.getMechanic() != null) {
-                content.append("<p><strong>Закрыл смену:</strong> ").append(waybill.getMechanic().getFullName()).append("</p>");
-            }
+                content.appendRaw("<p><strong>Начальный пробег:</strong> ").appendRaw(waybill.getInitialMileageKm() != null ?
+                                waybill.getInitialMileageKm() + " км" : "-").appendRaw("</p>")
+                        .appendRaw("<p><strong>Конечный пробег:</strong> ").appendRaw(waybill.getFinalMileage() != null ?
+                                waybill.getFinalMileage() + " км" : "-").appendRaw("</p>")
+                        .appendRaw("<p><strong>Пробег за смену:</strong> ").append(waybill.getShiftMileage()).appendRaw(" км</p>")
+                        .appendRaw("</div>");
+
+                // Финансы и статус
+                content.appendRaw("<div class='info-section'>")
+                        .appendRaw("<h3> Финансы</h3>")
+                        .appendRaw("<p><strong>Статус:</strong> ").appendRaw(getStatusBadge(waybill.getStatus())).appendRaw("</p>")
+                        .appendRaw("<p><strong>Заработок водителя:</strong> ").appendRaw(waybill.getTotalEarnings() != null ?
+                                String.format("%.2f ₽", waybill.getTotalEarnings()) : "-").appendRaw("</p>")
+                        .appendRaw("<p><strong>Выручка:</strong> ").appendRaw(waybill.getTotalRevenue() != null ?
+                                String.format("%.2f ₽", waybill.getTotalRevenue()) : "-").appendRaw("</p>")
+                        .appendRaw("</div>");
+
+                // Персонал
+                content.appendRaw("<div class='info-section'>")
+                        .appendRaw("<h3> Персонал</h3>")
+                        .appendRaw("<p><strong>Открыл смену:</strong> ").appendEscaped(waybill.getDoctor() != null ?
+                                waybill.getDoctor().getFullName() : "-").appendRaw("</p>");
+
+                if (waybill.getMechanic() != null) {
+                    content.appendRaw("<p><strong>Закрыл смену:</strong> ").appendEscaped(waybill.getMechanic().getFullName()).appendRaw("</p>");
+                }
 
-            if (waybill.getNotes() != null && !waybill.getNotes().isEmpty()) {
-                content.append("<p><strong>Примечания:</strong> ").append(waybill.getNotes()).append("</p>");
-            }
-            content.append("</div>");
+                if (waybill.getNotes() != null && !waybill.getNotes().isEmpty()) {
+                    content.appendRaw("<p><strong>Примечания:</strong> ").appendEscaped(waybill.getNotes()).appendRaw("</p>");
+                }
+                content.appendRaw("</div>");
 
-            content.append("</div>");
+                content.appendRaw("</div>");
 
-            //  СЕКЦИЯ С ЗАКАЗАМИ
-            content.append("<div class='info-section mt-30'>")
-                    .append("<h3>📦 Заказы в этом путевом листе</h3>");
+                //  СЕКЦИЯ С ЗАКАЗАМИ
+                content.appendRaw("<div class='info-section mt-30'>")
+                        .appendRaw("<h3>📦 Заказы в этом путевом листе</h3>");
 
-            // Получаем заказы, связанные с этим путевым листом
-            List<Order> waybillOrders = orderService.getOrdersByWaybillId(waybillId);
+                // Получаем заказы, связанные с этим путевым листом
+                List<Order> waybillOrders = orderService.getOrdersByWaybillId(waybillId);
 
-            if (waybillOrders.isEmpty()) {
-                content.append("<div class='empty-state'>")
-                        .append("<div class='empty-icon'></div>")
-                        .append("<p>В этом путевом листе пока нет заказов</p>")
-                        .append("</div>");
-            } else {
-                content.append("<div class='orders-list'>");
+                if (waybillOrders.isEmpty()) {
+                    content.appendRaw("<div class='empty-state'>")
+                            .appendRaw("<div class='empty-icon'></div>")
+                            .appendRaw("<p>В этом путевом листе пока нет заказов</p>")
+                            .appendRaw("</div>");
+                } else {
+                    content.appendRaw("<div class='orders-list'>");
 
-                double totalWaybillRevenue = 0;
-                double totalWaybillDistance = 0;
+                    double totalWaybillRevenue = 0;
+                    double totalWaybillDistance = 0;
 
-                for (Order order : waybillOrders) {
-                    content.append("<div class='order-item'>")
-                            .append("<div class='order-header'>")
-                            .append("<strong>Заказ #").append(order.getId()).append("</strong>");
+                    for (Order order : waybillOrders) {
+                        content.appendRaw("<div class='order-item'>")
+                                .appendRaw("<div class='order-header'>")
+                                .appendRaw("<strong>Заказ #").append(order.getId()).appendRaw("</strong>");
 
-                    if (order.getCompletionTime() != null) {
-                        content.append("<span class='order-time'>").append(dateFormatter.format(order.getCompletionTime())).append("</span>");
-                    }
+                        if (order.getCompletionTime() != null) {
+                            content.appendRaw("<span class='order-time'>").appendRaw(dateFormatter.format(order.getCompletionTime())).appendRaw("</span>");
+                        }
 
-                    content.append("</div>")
-                            .append("<div class='order-route'>")
-                            .append("📍 ").append(order.getPickupAddress());
+                        content.appendRaw("</div>")
+                                .appendRaw("<div class='order-route'>")
+                                .appendRaw("📍 ").appendEscaped(order.getPickupAddress());
 
-                    if (order.getDestinationAddress() != null) {
-                        content.append(" → 📍 ").append(order.getDestinationAddress());
-                    }
+                        if (order.getDestinationAddress() != null) {
+                            content.appendRaw(" → 📍 ").appendEscaped(order.getDestinationAddress());
+                        }
 
-                    content.append("</div>")
-                            .append("<div class='order-stats'>");
+                        content.appendRaw("</div>")
+                                .appendRaw("<div class='order-stats'>");
 
-                    if (order.getPrice() != null) {
-                        content.append("<span class='order-price'> ").append(String.format("%.2f", order.getPrice())).append(" руб.</span> ");
-                        totalWaybillRevenue += order.getPrice();
-                    }
+                        if (order.getPrice() != null) {
+                            content.appendRaw("<span class='order-price'> ").appendRaw(String.format("%.2f", order.getPrice())).appendRaw(" руб.</span> ");
+                            totalWaybillRevenue += order.getPrice();
+                        }
+
+                        if (order.getDistanceKm() != null) {
+                            content.appendRaw("<span class='order-distance'> ").appendRaw(String.format("%.1f", order.getDistanceKm())).appendRaw(" км</span>");
+                            totalWaybillDistance += order.getDistanceKm();
+                        }
 
-                    if (order.getDistanceKm() != null) {
-                        content.append("<span class='order-distance'> ").append(String.format("%.1f", order.getDistanceKm())).append(" км</span>");
-                        totalWaybillDistance += order.getDistanceKm();
+                        content.appendRaw("</div>")
+                                .appendRaw("</div>"); // закрываем order-item
                     }
 
-                    content.append("</div>")
-                            .append("</div>"); // закрываем order-item
+                    // Итоги по путевому листу
+                    content.appendRaw("<div class='waybill-totals mt-20'>")
+                            .appendRaw("<h4> Итоги смены:</h4>")
+                            .appendRaw("<div class='totals-grid'>")
+                            .appendRaw("<div class='total-item'>")
+                            .appendRaw("<div class='total-label'>Количество заказов</div>")
+                            .appendRaw("<div class='total-value'>").append(waybillOrders.size()).appendRaw("</div>")
+                            .appendRaw("</div>")
+                            .appendRaw("<div class='total-item'>")
+                            .appendRaw("<div class='total-label'>Общая дистанция</div>")
+                            .appendRaw("<div class='total-value'>").appendRaw(String.format("%.1f", totalWaybillDistance)).appendRaw(" км</div>")
+                            .appendRaw("</div>")
+                            .appendRaw("<div class='total-item'>")
+                            .appendRaw("<div class='total-label'>Общая выручка</div>")
+                            .appendRaw("<div class='total-value'>").appendRaw(String.format("%.2f", totalWaybillRevenue)).appendRaw(" руб.</div>")
+                            .appendRaw("</div>")
+                            .appendRaw("<div class='total-item'>")
+                            .appendRaw("<div class='total-label'>Средний чек</div>")
+                            .appendRaw("<div class='total-value'>").appendRaw(String.format("%.2f",
+                                    waybillOrders.size() > 0 ? totalWaybillRevenue / waybillOrders.size() : 0)).appendRaw(" руб.</div>")
+                            .appendRaw("</div>")
+                            .appendRaw("</div>")
+                            .appendRaw("</div>");
+
+                    content.appendRaw("</div>"); // закрываем orders-list
                 }
 
-                // Итоги по путевому листу
-                content.append("<div class='waybill-totals mt-20'>")
-                        .append("<h4> Итоги смены:</h4>")
-                        .append("<div class='totals-grid'>")
-                        .append("<div class='total-item'>")
-                        .append("<div class='total-label'>Количество заказов</div>")
-                        .append("<div class='total-value'>").append(waybillOrders.size()).append("</div>")
-                        .append("</div>")
-                        .append("<div class='total-item'>")
-                        .append("<div class='total-label'>Общая дистанция</div>")
-                        .append("<div class='total-value'>").append(String.format("%.1f", totalWaybillDistance)).append(" км</div>")
-                        .append("</div>")
-                        .append("<div class='total-item'>")
-                        .append("<div class='total-label'>Общая выручка</div>")
-                        .append("<div class='total-value'>").append(String.format("%.2f", totalWaybillRevenue)).append(" руб.</div>")
-                        .append("</div>")
-                        .append("<div class='total-item'>")
-                        .append("<div class='total-label'>Средний чек</div>")
-                        .append("<div class='total-value'>").append(String.format("%.2f",
-                                waybillOrders.size() > 0 ? totalWaybillRevenue / waybillOrders.size() : 0)).append(" руб.</div>")
-                        .append("</div>")
-                        .append("</div>")
-                        .append("</div>");
-
-                content.append("</div>"); // закрываем orders-list
-            }
-
-            content.append("</div>");
-            //  КОНЕЦ СЕКЦИИ С ЗАКАЗАМИ
+                content.appendRaw("</div>");
+                //  КОНЕЦ СЕКЦИИ С ЗАКАЗАМИ
 
-            // Кнопки действий
-            content.append("<div class='action-buttons mt-30'>")
-                    .append("<a href='/waybills' class='btn btn-secondary'>← Назад к списку</a>");
+                // Кнопки действий
+                content.appendRaw("<div class='action-buttons mt-30'>")
+                        .appendRaw("<a href='/waybills' class='btn btn-secondary'>← Назад к списку</a>");
 
-            if (waybill.getStatus() == Waybill.WaybillStatus.ACTIVE) {
-                content.append("<a href='/waybills/close?id=").append(waybill.getId())
-                        .append("' class='btn btn-success'> Завершить смену</a>");
-            }
+                if (waybill.getStatus() == Waybill.WaybillStatus.ACTIVE) {
+                    content.appendRaw("<a href='/waybills/close?id=").append(waybill.getId())
+                            .appendRaw("' class='btn btn-success'> Завершить смену</a>");
+                }
 
-            content.append("</div>")
-                    .append("</div>") // закрываем card-body
-                    .append("</div>"); // закрываем card
+                content.appendRaw("</div>")
+                        .appendRaw("</div>") // закрываем card-body
+                        .appendRaw("</div>"); // закрываем card
 
-            HtmlUtil.renderFullPage(out, request, "Путевой лист #" + waybill.getId(),
-                    "DRIVER".equals(userRole) ? "driver-waybills" : "waybills",
-                    content.toString());
+                HtmlUtil.renderFullPage(out, request, "Путевой лист #" + waybill.getId(),
+                        "DRIVER".equals(userRole) ? "driver-waybills" : "waybills",
+                        content);
+            }
 
         } catch (Exception e) {
             HtmlUtil.renderErrorPage(out, request, "Ошибка", "Не удалось загрузить путевой лист: " + e.getMessage());
@@ -795,7 +799,7 @@ public class WaybillServlet extends HttpServlet {
         return html.toString();
     }
 
-    private String showStatisticsHtml() {
+    private void appendStatistics(PageBuffer html) {
         List<Waybill> allWaybills = waybillService.getAllWaybills();
         List<Waybill> activeWaybills = waybillService.getActiveWaybills();
         List<Waybill> completedWaybills = waybillService.getCompletedWaybills();
@@ -817,51 +821,47 @@ public class WaybillServlet extends HttpServlet {
         double avgEarnings = completed > 0 ? totalEarnings / completed : 0;
         double avgMileage = completed > 0 ? (double) totalMileage / completed : 0;
 
-        StringBuilder html = new StringBuilder();
-
-        html.append("<div class='card fade-in'>")
-                .append("<h3> Статистика путевых листов</h3>")
-                .append("<div class='stats-grid'>");
-
-        html.append("<div class='stat-card'>")
-                .append("<div class='stat-icon'></div>")
-                .append("<div class='stat-value'>").append(total).append("</div>")
-                .append("<div class='stat-label'>Всего смен</div>")
-                .append("</div>");
-
-        html.append("<div class='stat-card'>")
-                .append("<div class='stat-icon'></div>")
-                .append("<div class='stat-value'>").append(active).append("</div>")
-                .append("<div class='stat-label'>Активные</div>")
-                .append("</div>");
-
-        html.append("<div class='stat-card'>")
-                .append("<div class='stat-icon'></div>")
-                .append("<div class='stat-value'>").append(completed).append("</div>")
-                .append("<div class='stat-label'>Завершены</div>")
-                .append("</div>");
-
-        html.append("<div class='stat-card'>")
-                .append("<div class='stat-icon'></div>")
-                .append("<div class='stat-value'>").append(String.format("%.0f", totalEarnings)).append("</div>")
-                .append("<div class='stat-label'>Общий доход (₽)</div>")
-                .append("</div>");
+        html.appendRaw("<div class='card fade-in'>")
+                .appendRaw("<h3> Статистика путевых листов</h3>")
+                .appendRaw("<div class='stats-grid'>");
+
+        html.appendRaw("<div class='stat-card'>")
+                .appendRaw("<div class='stat-icon'></div>")
+                .appendRaw("<div class='stat-value'>").append(total).appendRaw("</div>")
+                .appendRaw("<div class='stat-label'>Всего смен</div>")
+                .appendRaw("</div>");
+
+        html.appendRaw("<div class='stat-card'>")
+                .appendRaw("<div class='stat-icon'></div>")
+                .appendRaw("<div class='stat-value'>").append(active).appendRaw("</div>")
+                .appendRaw("<div class='stat-label'>Активные</div>")
+                .appendRaw("</div>");
+
+        html.appendRaw("<div class='stat-card'>")
+                .appendRaw("<div class='stat-icon'></div>")
+                .appendRaw("<div class='stat-value'>").append(completed).appendRaw("</div>")
+                .appendRaw("<div class='stat-label'>Завершены</div>")
+                .appendRaw("</div>");
+
+        html.appendRaw("<div class='stat-card'>")
+                .appendRaw("<div class='stat-icon'></div>")
+                .appendRaw("<div class='stat-value'>").appendRaw(String.format("%.0f", totalEarnings)).appendRaw("</div>")
+                .appendRaw("<div class='stat-label'>Общий доход (₽)</div>")
+                .appendRaw("</div>");
 
         if (completed > 0) {
-            html.append("<div class='stat-card'>")
-                    .append("<div class='stat-icon'></div>")
-                    .append("<div class='stat-value'>").append(String.format("%.0f", avgEarnings)).append("</div>")
-                    .append("<div class='stat-label'>Ср. доход (₽)</div>")
-                    .append("</div>");
+            html.appendRaw("<div class='stat-card'>")
+                    .appendRaw("<div class='stat-icon'></div>")
+                    .appendRaw("<div class='stat-value'>").appendRaw(String.format("%.0f", avgEarnings)).appendRaw("</div>")
+                    .appendRaw("<div class='stat-label'>Ср. доход (₽)</div>")
+                    .appendRaw("</div>");
         }
 
-        html.append("</div>")
-                .append("</div>");
-
-        return html.toString();
+        html.appendRaw("</div>")
+                .appendRaw("</div>");
     }
 
-    private String showDriverStatistics(List<Waybill> driverWaybills) {
+    private void appendDriverStatistics(PageBuffer html, List<Waybill> driverWaybills) {
         long total = driverWaybills.size();
         long completed = driverWaybills.stream()
                 .filter(w -> w.getStatus() == Waybill.WaybillStatus.COMPLETED)
@@ -879,43 +879,70 @@ public class WaybillServlet extends HttpServlet {
                 .mapToInt(Waybill::getShiftMileage)
                 .sum();
 
-        StringBuilder html = new StringBuilder();
+        html.appendRaw("<div class='card fade-in'>")
+                .appendRaw("<h3> Моя статистика</h3>")
+                .appendRaw("<div class='stats-grid'>");
 
-        html.append("<div class='card fade-in'>")
-                .append("<h3> Моя статистика</h3>")
-                .append("<div class='stats-grid'>");
+        html.appendRaw("<div class='stat-card'>")
+                .appendRaw("<div class='stat-icon'></div>")
+                .appendRaw("<div class='stat-value'>").append(total).appendRaw("</div>")
+                .appendRaw("<div class='stat-label'>Всего смен</div>")
+                .appendRaw("</div>");
 
-        html.append("<div class='stat-card'>")
-                .append("<div class='stat-icon'></div>")
-                .append("<div class='stat-value'>").append(total).append("</div>")
-                .append("<div class='stat-label'>Всего смен</div>")
-                .append("</div>");
+        html.appendRaw("<div class='stat-card'>")
+                .appendRaw("<div class='stat-icon'></div>")
+                .appendRaw("<div class='stat-value'>").appendRaw(String.format("%.0f", totalEarnings)).appendRaw("</div>")
+                .appendRaw("<div class='stat-label'>Общий доход</div>")
+                .appendRaw("</div>");
 
-        html.append("<div class='stat-card'>")
-                .append("<div class='stat-icon'></div>")
-                .append("<div class='stat-value'>").append(String.format("%.0f", totalEarnings)).append("</div>")
-                .append("<div class='stat-label'>Общий доход</div>")
-                .append("</div>");
-
-        html.append("<div class='stat-card'>")
-                .append("<div class='stat-icon'></div>")
-                .append("<div class='stat-value'>").append(totalMileage).append("</div>")
-                .append("<div class='stat-label'>Общий пробег (км)</div>")
-                .append("</div>");
+        html.appendRaw("<div class='stat-card'>")
+                .appendRaw("<div class='stat-icon'></div>")
+                .appendRaw("<div class='stat-value'>").append(totalMileage).appendRaw("</div>")
+                .appendRaw("<div class='stat-label'>Общий пробег (км)</div>")
+                .appendRaw("</div>");
 
         if (completed > 0) {
             double avgEarnings = totalEarnings / completed;
-            html.append("<div class='stat-card'>")
-                    .append("<div class='stat-icon'></div>")
-                    .append("<div class='stat-value'>").append(String.format("%.0f", avgEarnings)).append("</div>")
-                    .append("<div class='stat-label'>Ср. доход за смену</div>")
-                    .append("</div>");
+            html.appendRaw("<div class='stat-card'>")
+                    .appendRaw("<div class='stat-icon'></div>")
+                    .appendRaw("<div class='stat-value'>").appendRaw(String.format("%.0f", avgEarnings)).appendRaw("</div>")
+                    .appendRaw("<div class='stat-label'>Ср. доход за смену</div>")
+                    .appendRaw("</div>");
         }
 
-        html.append("</div>")
-                .append("</div>");
+        html.appendRaw("</div>")
+                .appendRaw("</div>");
+    }
 
-        return html.toString();
+    /**
+     * Ячейка автомобиля в таблице: номер и модель или прочерк
+     */
+    private void appendCarCell(PageBuffer content, Car car) {
+        if (car != null) {
+            content.append(CAR_CELL[0]).appendEscaped(car.getLicensePlate())
+                    .append(CAR_CELL[1]).appendEscaped(car.getModel()).append(CAR_CELL[2]);
+        } else {
+            content.append(NO_VALUE);
+        }
+    }
+
+    /**
+     * Ячейки пробега и заработка за смену
+     */
+    private void appendShiftTotals(PageBuffer content, Waybill waybill) {
+        content.append(TOTALS_CELLS[0]);
+        if (waybill.getShiftMileage() > 0) {
+            content.append(waybill.getShiftMileage()).append(KM);
+        } else {
+            content.append(NO_VALUE);
+        }
+        content.append(TOTALS_CELLS[1]);
+        if (waybill.getTotalEarnings() != null) {
+            content.appendRaw(String.format("%.2f ₽", waybill.getTotalEarnings()));
+        } else {
+            content.append(NO_VALUE);
+        }
+        content.append(TOTALS_CELLS[2]);
     }
 
     // Вспомогательные методы для получения классов и текста статуса
@@ -947,102 +974,103 @@ public class WaybillServlet extends HttpServlet {
         List<Driver> allowedDrivers = medicalCheckService.getAllowedDrivers();
         List<User> technicians = userRepository.findByRole("MECHANIC");
 
-        StringBuilder content = new StringBuilder();
-
-        content.append("<div class='card'>")
-                .append("<div class='card-header'>")
-                .append("<h2 class='card-title'> Открыть новую смену</h2>")
-                .append("</div>")
-                .append("<div class='card-body'>");
-
-        if (allowedDrivers.isEmpty() || technicians.isEmpty()) {
-            content.append("<div class='alert alert-warning'>")
-                    .append("<p>⚠ Нельзя открыть смену:</p>");
-            if (allowedDrivers.isEmpty()) {
-                content.append("<p>• Нет допущенных водителей</p>");
-            }
-            if (technicians.isEmpty()) {
-                content.append("<p>• Нет доступных техников</p>");
-            }
-            content.append("<p style='margin-top: 10px;'>")
-                    .append("<a href='/medical-checks' class='btn btn-sm'> Медосмотры</a>")
-                    .append("<a href='/inspections' class='btn btn-sm'>🔧 Техосмотры</a>")
-                    .append("</p>")
-                    .append("</div>");
-
-            content.append("</div>") // card-body
-                    .append("</div>"); // card
-
-            HtmlUtil.renderFullPage(out, request, "Открыть смену", "waybills", content.toString());
-            return;
-        }
+        try (PageBuffer content = PageBuffer.acquire()) {
 
-        content.append("<form method='post' action='/waybills/save' class='form-vertical'>")
-                .append("<div class='info-grid'>");
+            content.appendRaw("<div class='card'>")
+                    .appendRaw("<div class='card-header'>")
+                    .appendRaw("<h2 class='card-title'> Открыть новую смену</h2>")
+                    .appendRaw("</div>")
+                    .appendRaw("<div class='card-body'>");
 
-        // Водитель
-        content.append("<div class='form-group'>")
-                .append("<label for='driverId' class='form-label'>Водитель <span class='required'>*</span></label>")
-                .append("<select class='form-control' id='driverId' name='driverId' required onchange='updateDriverInfo(this.value)'>")
-                .append("<option value=''>-- Выберите водителя --</option>");
-
-        for (Driver driver : allowedDrivers) {
-            boolean hasCar = driver.getCurrentCar() != null;
-            String carInfo = hasCar ?
-                    " ( " + driver.getCurrentCar().getLicensePlate() + ")" :
-                    " ( Нет авто)";
-
-            content.append("<option value='").append(driver.getId()).append("' ")
-                    .append("data-hascar='").append(hasCar).append("' ")
-                    .append("data-carinfo='").append(hasCar ?
-                            driver.getCurrentCar().getLicensePlate() + " - " + driver.getCurrentCar().getModel() : "").append("'>")
-                    .append(driver.getFullName()).append(" ").append(carInfo).append("</option>");
-        }
+            if (allowedDrivers.isEmpty() || technicians.isEmpty()) {
+                content.appendRaw("<div class='alert alert-warning'>")
+                        .appendRaw("<p>⚠ Нельзя открыть смену:</p>");
+                if (allowedDrivers.isEmpty()) {
+                    content.appendRaw("<p>• Нет допущенных водителей</p>");
+                }
+                if (technicians.isEmpty()) {
+                    content.appendRaw("<p>• Нет доступных техников</p>");
+                }
+                content.appendRaw("<p style='margin-top: 10px;'>")
+                        .appendRaw("<a href='/medical-checks' class='btn btn-sm'> Медосмотры</a>")
+                        .appendRaw("<a href='/inspections' class='btn btn-sm'>🔧 Техосмотры</a>")
+                        .appendRaw("</p>")
+                        .appendRaw("</div>");
 
-        content.append("</select>")
-                .append("<div id='carInfo' style='margin-top: 10px; display: none;'></div>")
-                .append("</div>");
+                content.appendRaw("</div>") // card-body
+                        .appendRaw("</div>"); // card
 
-        // Техник
-        content.append("<div class='form-group'>")
-                .append("<label for='technicianId' class='form-label'>Техник <span class='required'>*</span></label>")
-                .append("<select class='form-control' id='technicianId' name='technicianId' required>")
-                .append("<option value=''>-- Выберите техника --</option>");
+                HtmlUtil.renderFullPage(out, request, "Открыть смену", "waybills", content);
+                return;
+            }
 
-        for (User technician : technicians) {
-            content.append("<option value='").append(technician.getId()).append("'>")
-                    .append(technician.getFullName()).append(" (").append(technician.getLogin()).append(")</option>");
-        }
+            content.appendRaw("<form method='post' action='/waybills/save' class='form-vertical'>")
+                    .appendRaw("<div class='info-grid'>");
+
+            // Водитель
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='driverId' class='form-label'>Водитель <span class='required'>*</span></label>")
+                    .appendRaw("<select class='form-control' id='driverId' name='driverId' required onchange='updateDriverInfo(this.value)'>")
+                    .appendRaw("<option value=''>-- Выберите водителя --</option>");
+
+            for (Driver driver : allowedDrivers) {
+                boolean hasCar = driver.getCurrentCar() != null;
+                String carInfo = hasCar ?
+                        " ( " + driver.getCurrentCar().getLicensePlate() + ")" :
+                        " ( Нет авто)";
+
+                content.appendRaw("<option value='").append(driver.getId()).appendRaw("' ")
+                        .appendRaw("data-hascar='").appendRaw(hasCar ? "true" : "false").appendRaw("' ")
+                        .appendRaw("data-carinfo='").appendEscaped(hasCar ?
+                                driver.getCurrentCar().getLicensePlate() + " - " + driver.getCurrentCar().getModel() : "").appendRaw("'>")
+                        .appendEscaped(driver.getFullName()).appendRaw(" ").appendEscaped(carInfo).appendRaw("</option>");
+            }
 
-        content.append("</select>")
-                .append("</div>");
+            content.appendRaw("</select>")
+                    .appendRaw("<div id='carInfo' style='margin-top: 10px; display: none;'></div>")
+                    .appendRaw("</div>");
 
-        content.append("</div>"); // Закрываем info-grid
+            // Техник
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='technicianId' class='form-label'>Техник <span class='required'>*</span></label>")
+                    .appendRaw("<select class='form-control' id='technicianId' name='technicianId' required>")
+                    .appendRaw("<option value=''>-- Выберите техника --</option>");
 
-        // Начальный пробег
-        content.append("<div class='form-group'>")
-                .append("<label for='initialMileage' class='form-label'>Начальный пробег (км) <span class='required'>*</span></label>")
-                .append("<input type='number' class='form-control' id='initialMileage' name='initialMileage' required min='0' placeholder='Текущий пробег автомобиля'>")
-                .append("<p class='form-hint'>Укажите текущий пробег автомобиля на момент начала смены</p>")
-                .append("</div>");
+            for (User technician : technicians) {
+                content.appendRaw("<option value='").append(technician.getId()).appendRaw("'>")
+                        .appendEscaped(technician.getFullName()).appendRaw(" (").appendEscaped(technician.getLogin()).appendRaw(")</option>");
+            }
 
-        // Примечания
-        content.append("<div class='form-group'>")
-                .append("<label for='notes' class='form-label'>Примечания</label>")
-                .append("<textarea class='form-control' id='notes' name='notes' rows='3' placeholder='Дополнительная информация...'></textarea>")
-                .append("</div>");
+            content.appendRaw("</select>")
+                    .appendRaw("</div>");
 
-        // Кнопки
-        content.append("<div class='form-actions'>")
-                .append("<button type='submit' class='btn btn-success' id='submitBtn'> Открыть смену</button>")
-                .append("<a href='/waybills' class='btn btn-danger'> Отмена</a>")
-                .append("</div>")
-                .append("</form>");
+            content.appendRaw("</div>"); // Закрываем info-grid
 
-        content.append("</div>") // закрываем card-body
-                .append("</div>"); // закрываем card
+            // Начальный пробег
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='initialMileage' class='form-label'>Начальный пробег (км) <span class='required'>*</span></label>")
+                    .appendRaw("<input type='number' class='form-control' id='initialMileage' name='initialMileage' required min='0' placeholder='Текущий пробег автомобиля'>")
+                    .appendRaw("<p class='form-hint'>Укажите текущий пробег автомобиля на момент начала смены</p>")
+                    .appendRaw("</div>");
 
-        HtmlUtil.renderFullPage(out, request, "Открыть смену", "waybills", content.toString());
+            // Примечания
+            content.appendRaw("<div class='form-group'>")
+                    .appendRaw("<label for='notes' class='form-label'>Примечания</label>")
+                    .appendRaw("<textarea class='form-control' id='notes' name='notes' rows='3' placeholder='Дополнительная информация...'></textarea>")
+                    .appendRaw("</div>");
+
+            // Кнопки
+            content.appendRaw("<div class='form-actions'>")
+                    .appendRaw("<button type='submit' class='btn btn-success' id='submitBtn'> Открыть смену</button>")
+                    .appendRaw("<a href='/waybills' class='btn btn-danger'> Отмена</a>")
+                    .appendRaw("</div>")
+                    .appendRaw("</form>");
+
+            content.appendRaw("</div>") // закрываем card-body
+                    .appendRaw("</div>"); // закрываем card
+
+            HtmlUtil.renderFullPage(out, request, "Открыть смену", "waybills", content);
+        }
     }
 
     private void showEditForm(long id, PrintWriter out, HttpServletRequest request) {
@@ -1058,99 +1086,100 @@ public class WaybillServlet extends HttpServlet {
                 return;
             }
 
-            StringBuilder content = new StringBuilder();
-
-            content.append("<div class='card'>")
-                    .append("<div class='card-header'>")
-                    .append("<h2 class='card-title'> Завершить смену</h2>")
-                    .append("</div>")
-                    .append("<div class='card-body'>");
-
-            // Информация о текущей смене
-            content.append("<div class='info-section mb-30'>")
-                    .append("<h4> Информация о смене</h4>")
-                    .append("<div class='info-grid'>")
-                    .append("<div><strong> Водитель:</strong><br>").append(waybill.getDriver().getFullName()).append("</div>")
-                    .append("<div><strong> Автомобиль:</strong><br>").append(waybill.getCar().getLicensePlate())
-                    .append(" (").append(waybill.getCar().getModel()).append(")</div>")
-                    .append("<div><strong> Начало смены:</strong><br>").append(dateFormatter.format(waybill.getStartTime())).append("</div>")
-                    .append("<div><strong> Начальный пробег:</strong><br>").append(waybill.getInitialMileageKm() != null ?
-                            waybill.getInitialMileageKm() + " км" : "-").append("</div>")
-                    .append("</div>")
-                    .append("</div>");
-
-            // Получаем заказы из этой смены для отображения статистики
-            List<Order> waybillOrders = orderService.getOrdersByWaybillId(id);
-
-            if (!waybillOrders.isEmpty()) {
-                content.append("<div class='info-section mb-30'>")
-                        .append("<h4> Статистика заказов</h4>")
-                        .append("<div class='info-grid'>")
-                        .append("<div><strong> Количество заказов:</strong><br>").append(waybillOrders.size()).append("</div>");
-
-                double totalRevenue = 0.0;
-                double totalDistance = 0.0;
-                for (Order order : waybillOrders) {
-                    if (order.getPrice() != null) totalRevenue += order.getPrice();
-                    if (order.getDistanceKm() != null) totalDistance += order.getDistanceKm();
+            try (PageBuffer content = PageBuffer.acquire()) {
+
+                content.appendRaw("<div class='card'>")
+                        .appendRaw("<div class='card-header'>")
+                        .appendRaw("<h2 class='card-title'> Завершить смену</h2>")
+                        .appendRaw("</div>")
+                        .appendRaw("<div class='card-body'>");
+
+                // Информация о текущей смене
+                content.appendRaw("<div class='info-section mb-30'>")
+                        .appendRaw("<h4> Информация о смене</h4>")
+                        .appendRaw("<div class='info-grid'>")
+                        .appendRaw("<div><strong> Водитель:</strong><br>").appendEscaped(waybill.getDriver().getFullName()).appendRaw("</div>")
+                        .appendRaw("<div><strong> Автомобиль:</strong><br>").appendEscaped(waybill.getCar().getLicensePlate())
+                        .appendRaw(" (").appendEscaped(waybill.getCar().getModel()).appendRaw(")</div>")
+                        .appendRaw("<div><strong> Начало смены:</strong><br>").appendRaw(dateFormatter.format(waybill.getStartTime())).appendRaw("</div>")
+                        .appendRaw("<div><strong> Начальный пробег:</strong><br>").appendRaw(waybill.getInitialMileageKm() != null ?
+                                waybill.getInitialMileageKm() + " км" : "-").appendRaw("</div>")
+                        .appendRaw("</div>")
+                        .appendRaw("</div>");
+
+                // Получаем заказы из этой смены для отображения статистики
+                List<Order> waybillOrders = orderService.getOrdersByWaybillId(id);
+
+                if (!waybillOrders.isEmpty()) {
+                    content.appendRaw("<div class='info-section mb-30'>")
+                            .appendRaw("<h4> Статистика заказов</h4>")
+                            .appendRaw("<div class='info-grid'>")
+                            .appendRaw("<div><strong> Количество заказов:</strong><br>").append(waybillOrders.size()).appendRaw("</div>");
+
+                    double totalRevenue = 0.0;
+                    double totalDistance = 0.0;
+                    for (Order order : waybillOrders) {
+                        if (order.getPrice() != null) totalRevenue += order.getPrice();
+                        if (order.getDistanceKm() != null) totalDistance += order.getDistanceKm();
+                    }
+
+                    content.appendRaw("<div><strong> Общая выручка:</strong><br>").appendRaw(String.format("%.2f", totalRevenue)).appendRaw(" руб.</div>")
+                            .appendRaw("<div><strong> Общая дистанция:</strong><br>").appendRaw(String.format("%.1f", totalDistance)).appendRaw(" км</div>")
+                            .appendRaw("<div><strong> Средний чек:</strong><br>").appendRaw(String.format("%.2f",
+                                    waybillOrders.size() > 0 ? totalRevenue / waybillOrders.size() : 0)).appendRaw(" руб.</div>")
+                            .appendRaw("</div>")
+                            .appendRaw("</div>");
                 }
 
-                content.append("<div><strong> Общая выручка:</strong><br>").append(String.format("%.2f", totalRevenue)).append(" руб.</div>")
-                        .append("<div><strong> Общая дистанция:</strong><br>").append(String.format("%.1f", totalDistance)).append(" км</div>")
-                        .append("<div><strong> Средний чек:</strong><br>").append(String.format("%.2f",
-                                waybillOrders.size() > 0 ? totalRevenue / waybillOrders.size() : 0)).append(" руб.</div>")
-                        .append("</div>")
-                        .append("</div>");
+                content.appendRaw("<form method='post' action='/waybills/update' class='form-vertical'>")
+                        .appendRaw("<input type='hidden' name='id' value='").append(waybill.getId()).appendRaw("'>");
+
+                content.appendRaw("<div class='info-grid'>");
+
+                // Конечный пробег
+                int initialMileage = waybill.getInitialMileageKm() != null ? waybill.getInitialMileageKm() : 0;
+                int suggestedFinalMileage = initialMileage + 50; // Предлагаем на 50 км больше
+
+                content.appendRaw("<div class='form-group'>")
+                        .appendRaw("<label for='finalMileage' class='form-label'>Конечный пробег (км) <span class='required'>*</span></label>")
+                        .appendRaw("<input type='number' class='form-control' id='finalMileage' name='finalMileage' required ")
+                        .appendRaw("min='").append(initialMileage + 1).appendRaw("' ")
+                        .appendRaw("value='").append(suggestedFinalMileage).appendRaw("'>")
+                        .appendRaw("<p class='form-hint'>Должен быть больше начального (").append(initialMileage).appendRaw(" км)</p>")
+                        .appendRaw("</div>");
+
+                // Заработок
+                double suggestedEarnings = waybillOrders.isEmpty() ? 2500.00 :
+                        waybillOrders.stream()
+                                .filter(o -> o.getPrice() != null)
+                                .mapToDouble(Order::getPrice)
+                                .sum() * 0.8; // 80% водителю, 20% таксопарку
+
+                content.appendRaw("<div class='form-group'>")
+                        .appendRaw("<label for='totalEarnings' class='form-label'>Заработок водителя (₽) <span class='required'>*</span></label>")
+                        .appendRaw("<input type='number' class='form-control' id='totalEarnings' name='totalEarnings' required ")
+                        .appendRaw("min='0' step='0.01' value='").appendRaw(String.format("%.2f", suggestedEarnings)).appendRaw("'>")
+    //                    .appendRaw("<p class='form-hint'>Заработок водителя после вычета комиссии (20%)</p>")
+                        .appendRaw("</div>");
+
+                content.appendRaw("</div>"); // Закрываем info-grid
+
+                // Примечания
+                content.appendRaw("<div class='form-group'>")
+                        .appendRaw("<label for='notes' class='form-label'>Примечания по смене</label>")
+                        .appendRaw("<textarea class='form-control' id='notes' name='notes' rows='3' placeholder='Особенности смены, проблемы и т.д.'></textarea>")
+                        .appendRaw("</div>");
+
+                content.appendRaw("<div class='form-actions'>")
+                        .appendRaw("<button type='submit' class='btn btn-success'> Завершить смену</button>")
+                        .appendRaw("<a href='/waybills' class='btn btn-danger'> Отмена</a>")
+                        .appendRaw("</div>")
+                        .appendRaw("</form>")
+                        .appendRaw("</div>") // закрываем card-body
+                        .appendRaw("</div>"); // закрываем card
+
+                HtmlUtil.renderFullPage(out, request, "Завершить смену", "waybills", content);
             }
-
-            content.append("<form method='post' action='/waybills/update' class='form-vertical'>")
-                    .append("<input type='hidden' name='id' value='").append(waybill.getId()).append("'>");
-
-            content.append("<div class='info-grid'>");
-
-            // Конечный пробег
-            int initialMileage = waybill.getInitialMileageKm() != null ? waybill.getInitialMileageKm() : 0;
-            int suggestedFinalMileage = initialMileage + 50; // Предлагаем на 50 км больше
-
-            content.append("<div class='form-group'>")
-                    .append("<label for='finalMileage' class='form-label'>Конечный пробег (км) <span class='required'>*</span></label>")
-                    .append("<input type='number' class='form-control' id='finalMileage' name='finalMileage' required ")
-                    .append("min='").append(initialMileage + 1).append("' ")
-                    .append("value='").append(suggestedFinalMileage).append("'>")
-                    .append("<p class='form-hint'>Должен быть больше начального (").append(initialMileage).append(" км)</p>")
-                    .append("</div>");
-
-            // Заработок
-            double suggestedEarnings = waybillOrders.isEmpty() ? 2500.00 :
-                    waybillOrders.stream()
-                            .filter(o -> o.getPrice() != null)
-                            .mapToDouble(Order::getPrice)
-                            .sum() * 0.8; // 80% водителю, 20% таксопарку
-
-            content.append("<div class='form-group'>")
-                    .append("<label for='totalEarnings' class='form-label'>Заработок водителя (₽) <span class='required'>*</span></label>")
-                    .append("<input type='number' class='form-control' id='totalEarnings' name='totalEarnings' required ")
-                    .append("min='0' step='0.01' value='").append(String.format("%.2f", suggestedEarnings)).append("'>")
-//                    .append("<p class='form-hint'>Заработок водителя после вычета комиссии (20%)</p>")
-                    .append("</div>");
-
-            content.append("</div>"); // Закрываем info-grid
-
-            // Примечания
-            content.append("<div class='form-group'>")
-                    .append("<label for='notes' class='form-label'>Примечания по смене</label>")
-                    .append("<textarea class='form-control' id='notes' name='notes' rows='3' placeholder='Особенности смены, проблемы и т.д.'></textarea>")
-                    .append("</div>");
-
-            content.append("<div class='form-actions'>")
-                    .append("<button type='submit' class='btn btn-success'> Завершить смену</button>")
-                    .append("<a href='/waybills' class='btn btn-danger'> Отмена</a>")
-                    .append("</div>")
-                    .append("</form>")
-                    .append("</div>") // закрываем card-body
-                    .append("</div>"); // закрываем card
-
-            HtmlUtil.renderFullPage(out, request, "Завершить смену", "waybills", content.toString());
         } catch (Exception e) {
             HtmlUtil.renderErrorPage(out, request, "Ошибка", "Не удалось загрузить информацию о смене: " + e.getMessage());
         }
@@ -1236,7 +1265,7 @@ public class WaybillServlet extends HttpServlet {
             throws ServletException, IOException {
 
         // Проверка авторизации
-        User currentUser = (User) request.getSession().getAttribute("user");
+        User currentUser = AuthUtil.getCurrentUser(request);
         if (currentUser == null) {
             response.sendRedirect("/login");
             return;
@@ -1247,7 +1276,7 @@ public class WaybillServlet extends HttpServlet {
         // Только ADMIN и MECHANIC могут выполнять POST-запросы
         if (!"ADMIN".equals(userRole) && !"MECHANIC".equals(userRole)) {
             response.setContentType("text/html; charset=UTF-8");
-            PrintWriter out = response.getWriter();
+            PrintWriter out = new PageOutput(response);
             HtmlUtil.renderAccessDeniedPage(out, request, userRole);
             return;
         }
@@ -1274,7 +1303,7 @@ public class WaybillServlet extends HttpServlet {
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Неизвестное действие: " + path);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в doPost()", e);
             response.sendRedirect(request.getContextPath() + "/waybills?error=" + e.getMessage());
         }
     }
@@ -1363,7 +1392,7 @@ public class WaybillServlet extends HttpServlet {
             String notes = request.getParameter("notes");
 
             // В реальном приложении mechanicId должен браться из сессии
-            User currentUser = (User) request.getSession().getAttribute("user");
+            User currentUser = AuthUtil.getCurrentUser(request);
             Long mechanicId = currentUser.getId();
 
             Waybill waybill = waybillService.completeWaybill(waybillId, mechanicId, finalMileage, totalEarnings, notes);
@@ -1371,7 +1400,7 @@ public class WaybillServlet extends HttpServlet {
             response.sendRedirect(request.getContextPath() + "/waybills?success=closed");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в updateWaybill()", e);
             response.sendRedirect(request.getContextPath() + "/waybills?error=" + e.getMessage());
         }
     }
@@ -1396,49 +1425,50 @@ public class WaybillServlet extends HttpServlet {
                 return;
             }
 
-            StringBuilder content = new StringBuilder();
-
-            content.append("<div class='card'>")
-                    .append("<div class='card-header'>")
-                    .append("<h2 class='card-title'>🗑️ Подтверждение удаления</h2>")
-                    .append("</div>")
-                    .append("<div class='card-body'>");
-
-            content.append("<div style='text-align: center; margin: 30px 0;'>")
-                    .append("<div style='font-size: 64px; color: #f44336; margin-bottom: 20px;'>⚠</div>")
-                    .append("<h3 style='color: #fff; margin-bottom: 15px;'>Удалить путевой лист?</h3>")
-                    .append("<p style='color: #aaa; font-size: 1.1em; max-width: 500px; margin: 0 auto 30px;'>")
-                    .append("Вы уверены, что хотите удалить путевой лист #").append(waybillId).append("?<br>")
-                    .append("Это действие нельзя отменить.</p>")
-                    .append("</div>");
-
-            // Информация о путевом листе
-            content.append("<div class='info-section mb-30'>")
-                    .append("<h4> Информация о путевом листе</h4>")
-                    .append("<div class='info-grid'>")
-                    .append("<div><strong> Водитель:</strong><br>").append(waybill.getDriver().getFullName()).append("</div>")
-                    .append("<div><strong> Автомобиль:</strong><br>").append(waybill.getCar().getLicensePlate())
-                    .append(" (").append(waybill.getCar().getModel()).append(")</div>")
-                    .append("<div><strong> Дата начала:</strong><br>").append(dateFormatter.format(waybill.getStartTime())).append("</div>")
-                    .append("<div><strong> Статус:</strong><br>").append(getStatusText(waybill.getStatus())).append("</div>")
-                    .append("</div>")
-                    .append("</div>");
-
-            // Кнопки действий
-            content.append("<div class='form-actions' style='justify-content: center;'>")
-                    .append("<form method='post' action='/waybills/delete' style='display: inline;'>")
-                    .append("<input type='hidden' name='id' value='").append(waybillId).append("'>")
-                    .append("<button type='submit' class='btn btn-danger' style='padding: 12px 30px; font-size: 1.1em;'>")
-                    .append(" Да, удалить</button>")
-                    .append("</form>")
-                    .append("<a href='/waybills' class='btn btn-secondary' style='padding: 12px 30px; font-size: 1.1em; margin-left: 15px;'>")
-                    .append(" Отмена</a>")
-                    .append("</div>");
-
-            content.append("</div>") // закрываем card-body
-                    .append("</div>"); // закрываем card
-
-            HtmlUtil.renderFullPage(out, request, "Удаление путевого листа", "waybills", content.toString());
+            try (PageBuffer content = PageBuffer.acquire()) {
+
+                content.appendRaw("<div class='card'>")
+                        .appendRaw("<div class='card-header'>")
+                        .appendRaw("<h2 class='card-title'>🗑️ Подтверждение удаления</h2>")
+                        .appendRaw("</div>")
+                        .appendRaw("<div class='card-body'>");
+
+                content.appendRaw("<div style='text-align: center; margin: 30px 0;'>")
+                        .appendRaw("<div style='font-size: 64px; color: #f44336; margin-bottom: 20px;'>⚠</div>")
+                        .appendRaw("<h3 style='color: #fff; margin-bottom: 15px;'>Удалить путевой лист?</h3>")
+                        .appendRaw("<p style='color: #aaa; font-size: 1.1em; max-width: 500px; margin: 0 auto 30px;'>")
+                        .appendRaw("Вы уверены, что хотите удалить путевой лист #").append(waybillId).appendRaw("?<br>")
+                        .appendRaw("Это действие нельзя отменить.</p>")
+                        .appendRaw("</div>");
+
+                // Информация о путевом листе
+                content.appendRaw("<div class='info-section mb-30'>")
+                        .appendRaw("<h4> Информация о путевом листе</h4>")
+                        .appendRaw("<div class='info-grid'>")
+                        .appendRaw("<div><strong> Водитель:</strong><br>").appendEscaped(waybill.getDriver().getFullName()).appendRaw("</div>")
+                        .appendRaw("<div><strong> Автомобиль:</strong><br>").appendEscaped(waybill.getCar().getLicensePlate())
+                        .appendRaw(" (").appendEscaped(waybill.getCar().getModel()).appendRaw(")</div>")
+                        .appendRaw("<div><strong> Дата начала:</strong><br>").appendRaw(dateFormatter.format(waybill.getStartTime())).appendRaw("</div>")
+                        .appendRaw("<div><strong> Статус:</strong><br>").appendRaw(getStatusText(waybill.getStatus())).appendRaw("</div>")
+                        .appendRaw("</div>")
+                        .appendRaw("</div>");
+
+                // Кнопки действий
+                content.appendRaw("<div class='form-actions' style='justify-content: center;'>")
+                        .appendRaw("<form method='post' action='/waybills/delete' style='display: inline;'>")
+                        .appendRaw("<input type='hidden' name='id' value='").append(waybillId).appendRaw("'>")
+                        .appendRaw("<button type='submit' class='btn btn-danger' style='padding: 12px 30px; font-size: 1.1em;'>")
+                        .appendRaw(" Да, удалить</button>")
+                        .appendRaw("</form>")
+                        .appendRaw("<a href='/waybills' class='btn btn-secondary' style='padding: 12px 30px; font-size: 1.1em; margin-left: 15px;'>")
+                        .appendRaw(" Отмена</a>")
+                        .appendRaw("</div>");
+
+                content.appendRaw("</div>") // закрываем card-body
+                        .appendRaw("</div>"); // закрываем card
+
+                HtmlUtil.renderFullPage(out, request, "Удаление путевого листа", "waybills", content);
+            }
 
         } catch (Exception e) {
             HtmlUtil.renderErrorPage(out, request, "Ошибка",
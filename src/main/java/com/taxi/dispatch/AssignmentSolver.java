@@ -0,0 +1,108 @@
+package com.taxi.dispatch;
+
+import java.util.Arrays;
+
+/**
+ * Задача о назначениях: венгерский алгоритм (кратчайшие увеличивающие пути с потенциалами),
+ * O(n^2 * m) для матрицы n x m при n <= m. Матрица может быть прямоугольной в любую сторону
+ */
+final class AssignmentSolver {
+
+    private AssignmentSolver() {
+    }
+
+    /**
+     * Минимизирует суммарную стоимость. Возвращает для каждой строки номер столбца
+     * или -1, если строке столбца не хватило (строк больше, чем столбцов)
+     */
+    static int[] solve(double[][] cost) {
+        int rows = cost.length;
+        int columns = rows > 0 ? cost[0].length : 0;
+        if (rows == 0 || columns == 0) {
+            int[] empty = new int[rows];
+            Arrays.fill(empty, -1);
+            return empty;
+        }
+        if (rows <= columns) {
+            return solveWide(cost, rows, columns);
+        }
+
+        // Строк больше - решаем транспонированную задачу и разворачиваем ответ
+        double[][] transposed = new double[columns][rows];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                transposed[j][i] = cost[i][j];
+            }
+        }
+        int[] rowForColumn = solveWide(transposed, columns, rows);
+        int[] result = new int[rows];
+        Arrays.fill(result, -1);
+        for (int j = 0; j < columns; j++) {
+            result[rowForColumn[j]] = j;
+        }
+        return result;
+    }
+
+    private static int[] solveWide(double[][] cost, int n, int m) {
+        // Индексы с 1, нулевой столбец - фиктивный
+        double[] u = new double[n + 1];
+        double[] v = new double[m + 1];
+        int[] rowOfColumn = new int[m + 1];
+        int[] way = new int[m + 1];
+        double[] minSlack = new double[m + 1];
+        boolean[] used = new boolean[m + 1];
+
+        for (int i = 1; i <= n; i++) {
+            rowOfColumn[0] = i;
+            int column = 0;
+            Arrays.fill(minSlack, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+
+            do {
+                used[column] = true;
+                int row = rowOfColumn[column];
+                double delta = Double.POSITIVE_INFINITY;
+                int nextColumn = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    double slack = cost[row - 1][j - 1] - u[row] - v[j];
+                    if (slack < minSlack[j]) {
+                        minSlack[j] = slack;
+                        way[j] = column;
+                    }
+                    if (minSlack[j] < delta) {
+                        delta = minSlack[j];
+                        nextColumn = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[rowOfColumn[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minSlack[j] -= delta;
+                    }
+                }
+                column = nextColumn;
+            } while (rowOfColumn[column] != 0);
+
+            // Разворачиваем увеличивающий путь
+            do {
+                int previous = way[column];
+                rowOfColumn[column] = rowOfColumn[previous];
+                column = previous;
+            } while (column != 0);
+        }
+
+        int[] result = new int[n];
+        Arrays.fill(result, -1);
+        for (int j = 1; j <= m; j++) {
+            if (rowOfColumn[j] != 0) {
+                result[rowOfColumn[j] - 1] = j - 1;
+            }
+        }
+        return result;
+    }
+}
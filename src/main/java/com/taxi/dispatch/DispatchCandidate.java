@@ -0,0 +1,24 @@
+package com.taxi.dispatch;
+
+/**
+ * Водитель, готовый принять заказ: смена, на которой он работает, и момент,
+ * с которого он простаивает
+ */
+public class DispatchCandidate {
+    private final long driverId;
+    private final Long waybillId;
+    private final Long carId;
+    private final long idleSinceMillis;
+
+    public DispatchCandidate(long driverId, Long waybillId, Long carId, long idleSinceMillis) {
+        this.driverId = driverId;
+        this.waybillId = waybillId;
+        this.carId = carId;
+        this.idleSinceMillis = idleSinceMillis;
+    }
+
+    public long getDriverId() { return driverId; }
+    public Long getWaybillId() { return waybillId; }
+    public Long getCarId() { return carId; }
+    public long getIdleSinceMillis() { return idleSinceMillis; }
+}
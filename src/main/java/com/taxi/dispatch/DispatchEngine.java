@@ -0,0 +1,615 @@
+package com.taxi.dispatch;
+
+import com.taxi.entity.Order;
+import com.taxi.repository.DriverRepository;
+import com.taxi.repository.FetchPlan;
+import com.taxi.repository.OrderRepository;
+import com.taxi.util.Background;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Автоназначение заказов на ближайшего свободного водителя.
+ *
+ * В памяти держится набор водителей, готовых принять заказ (активный путевой лист,
+ * действующий медосмотр, нет заказов в работе), и сеточный индекс их последних координат.
+ * Кандидаты ранжируются по расстоянию до точки подачи с поправкой на время простоя.
+ * Назначение атомарно: водитель резервируется в памяти (один диспетчер на водителя
+ * в пределах узла), а затем заказ назначается условным UPDATE под блокировкой строки
+ * водителя, поэтому двойное назначение невозможно и между узлами.
+ *
+ * Набор кандидатов обновляется точечно (refreshDriver) при смене статуса заказа,
+ * путевого листа или медосмотра; полная перестройка - Background.scheduleRebuild
+ */
+public class DispatchEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatchEngine.class);
+
+    // Дальше этого расстояния водителя на подачу не отправляем, км
+    static final double MAX_PICKUP_KM = 15.0;
+    // Сколько минут простоя "стоит" километр подачи
+    static final double IDLE_MINUTES_PER_KM = 20.0;
+    // Простой учитывается не больше этого значения: бонус не больше 2 км, чтобы не перевешивать расстояние
+    static final double MAX_IDLE_MINUTES = 40.0;
+    // Срок действия пройденного медосмотра
+    public static final Duration MEDICAL_CHECK_VALIDITY = Duration.ofHours(24);
+
+    // Больше заказов в пакете - вместо венгерского алгоритма жадное назначение
+    static final int MAX_MATCHING_ORDERS = 200;
+    // Сколько лучших водителей каждого заказа попадает в матрицу стоимостей
+    static final int CANDIDATES_PER_ORDER = 8;
+
+    private static final long REBUILD_INTERVAL_SECONDS = 60;
+    private static final int MAX_ASSIGN_ATTEMPTS = 5;
+    // Стоимость недопустимой пары в матрице (водитель дальше MAX_PICKUP_KM)
+    private static final double INFEASIBLE_COST = 1e9;
+
+    // Меньше оценка - лучше; при равной оценке лучше тот, кто простаивает дольше
+    private static final Comparator<ScoredCandidate> BEST_FIRST = Comparator
+            .comparingDouble((ScoredCandidate scored) -> scored.score)
+            .thenComparingLong(scored -> scored.candidate.getIdleSinceMillis());
+    private static final Comparator<ScoredCandidate> WORST_FIRST = BEST_FIRST.reversed();
+
+    private final DriverRepository driverRepository;
+    private final OrderRepository orderRepository;
+
+    // водитель -> данные кандидата (только готовые принять заказ)
+    private final ConcurrentHashMap<Long, DispatchCandidate> candidates = new ConcurrentHashMap<>();
+    // последние известные координаты всех водителей: [широта, долгота]
+    private final ConcurrentHashMap<Long, double[]> positions = new ConcurrentHashMap<>();
+    // индекс кандидатов с известными координатами
+    private final DriverGridIndex grid = new DriverGridIndex();
+    // водитель -> заказ, который сейчас на него назначается
+    private final ConcurrentHashMap<Long, Long> reservations = new ConcurrentHashMap<>();
+
+    private static class Holder {
+        private static final DispatchEngine INSTANCE = createInstance();
+
+        private static DispatchEngine createInstance() {
+            DispatchEngine engine = new DispatchEngine(new DriverRepository(), new OrderRepository());
+            try {
+                engine.rebuild();
+            } catch (RuntimeException e) {
+                // Пустой набор: кандидаты подгрузятся по одному при обновлениях и при плановой перестройке
+                log.error("Ошибка построения набора кандидатов", e);
+            }
+            Background.scheduleRebuild("dispatch", REBUILD_INTERVAL_SECONDS, engine::rebuild);
+            return engine;
+        }
+    }
+
+    public static DispatchEngine getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Репозитории могут быть null - тогда движок работает только в памяти (бенчмарк)
+     */
+    DispatchEngine(DriverRepository driverRepository, OrderRepository orderRepository) {
+        this.driverRepository = driverRepository;
+        this.orderRepository = orderRepository;
+    }
+
+    // ОБНОВЛЕНИЕ СОСТОЯНИЯ
+
+    /**
+     * Полностью перечитывает набор кандидатов из БД.
+     * При ошибке БД исключение уходит вызывающему, а набор остается прежним:
+     * он меняется только после успешного чтения
+     */
+    public void rebuild() {
+        List<Object[]> rows = driverRepository.findDispatchCandidates(null, medicalValidFrom());
+
+        Set<Long> eligible = new HashSet<>();
+        for (Object[] row : rows) {
+            DispatchCandidate candidate = toCandidate(row);
+            eligible.add(candidate.getDriverId());
+            addCandidate(candidate);
+        }
+        for (Long driverId : candidates.keySet()) {
+            if (!eligible.contains(driverId)) {
+                removeCandidate(driverId);
+            }
+        }
+    }
+
+    /**
+     * Перепроверяет одного водителя: вызывается после изменений его заказов,
+     * путевых листов и медосмотров. Если прочитать не удалось, остается прежняя запись:
+     * вызовы идут после уже записанных изменений, и ошибка здесь не должна их отменять
+     */
+    public void refreshDriver(Long driverId) {
+        if (driverId == null) {
+            return;
+        }
+        List<Object[]> rows;
+        try {
+            rows = driverRepository.findDispatchCandidates(driverId, medicalValidFrom());
+        } catch (RuntimeException e) {
+            log.error("Ошибка обновления кандидата {}", driverId, e);
+            return;
+        }
+        if (rows.isEmpty()) {
+            removeCandidate(driverId);
+        } else {
+            addCandidate(toCandidate(rows.get(0)));
+        }
+    }
+
+    /**
+     * Последние координаты водителя (от приложения водителя)
+     */
+    public void updateDriverLocation(Long driverId, double latitude, double longitude) {
+        positions.put(driverId, new double[]{latitude, longitude});
+        DispatchCandidate candidate = candidates.get(driverId);
+        if (candidate != null) {
+            grid.put(candidate, latitude, longitude);
+            // водителя могли убрать из кандидатов, пока он переносился в сетке
+            if (!candidates.containsKey(driverId)) {
+                grid.remove(driverId);
+            }
+        }
+    }
+
+    void addCandidate(DispatchCandidate candidate) {
+        long driverId = candidate.getDriverId();
+        candidates.put(driverId, candidate);
+        double[] position = positions.get(driverId);
+        if (position != null) {
+            grid.put(candidate, position[0], position[1]);
+        }
+    }
+
+    void removeCandidate(long driverId) {
+        candidates.remove(driverId);
+        grid.remove(driverId);
+    }
+
+    // НАЗНАЧЕНИЕ
+
+    /**
+     * Назначает заказ в статусе NEW на лучшего доступного водителя.
+     * Возвращает результат назначения или null, если подходящих водителей нет
+     */
+    public Assignment assign(Order order) {
+        if (order == null || order.getId() == null || !"NEW".equals(order.getStatus())) {
+            return null;
+        }
+
+        Set<Long> excluded = new HashSet<>();
+        for (int attempt = 0; attempt < MAX_ASSIGN_ATTEMPTS; attempt++) {
+            ScoredCandidate best = selectCandidate(order.getPickupLatitude(), order.getPickupLongitude(),
+                    System.currentTimeMillis(), excluded);
+            if (best == null) {
+                return null;
+            }
+
+            DispatchCandidate candidate = best.candidate;
+            long driverId = candidate.getDriverId();
+            excluded.add(driverId);
+
+            if (!reserve(driverId, order.getId())) {
+                continue; // водителя прямо сейчас назначает другой поток
+            }
+            try {
+                if (orderRepository.assignIfDriverFree(order.getId(), driverId,
+                        candidate.getCarId(), candidate.getWaybillId())) {
+                    removeCandidate(driverId);
+                    return new Assignment(order.getId(), driverId, candidate.getCarId(),
+                            candidate.getWaybillId(), best.distanceKm);
+                }
+            } finally {
+                release(driverId, order.getId());
+            }
+
+            // Не вышло: либо водитель уже занят (индекс отстал от БД), либо заказ уже назначен
+            refreshDriver(driverId);
+            Order current = orderRepository.findById(order.getId(), FetchPlan.REPORT);
+            if (current == null || !"NEW".equals(current.getStatus())) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Пакетное назначение: заказы в статусе NEW распределяются между свободными водителями
+     * так, чтобы суммарная оценка (подача минус простой) была минимальной. До MAX_MATCHING_ORDERS
+     * заказов задача решается точно венгерским алгоритмом, больше - жадно, от старых заказов к новым.
+     * Все назначения записываются одной транзакцией. Возвращает выполненные назначения
+     */
+    public List<Assignment> assignBatch(List<Order> orders) {
+        List<Order> pending = new ArrayList<>();
+        for (Order order : orders) {
+            if (order.getId() != null && "NEW".equals(order.getStatus())) {
+                pending.add(order);
+            }
+        }
+        if (pending.isEmpty() || candidates.isEmpty()) {
+            return List.of();
+        }
+
+        long nowMillis = System.currentTimeMillis();
+        Map<Order, ScoredCandidate> matched = pending.size() > MAX_MATCHING_ORDERS
+                ? matchGreedy(pending, nowMillis)
+                : matchOptimal(pending, nowMillis);
+        return commitBatch(matched);
+    }
+
+    /**
+     * Жадно: каждому заказу по очереди лучший из оставшихся водителей
+     */
+    Map<Order, ScoredCandidate> matchGreedy(List<Order> orders, long nowMillis) {
+        Map<Order, ScoredCandidate> matched = new LinkedHashMap<>();
+        Set<Long> taken = new HashSet<>();
+        for (Order order : orders) {
+            ScoredCandidate best = selectCandidate(order.getPickupLatitude(), order.getPickupLongitude(),
+                    nowMillis, taken);
+            if (best != null) {
+                taken.add(best.candidate.getDriverId());
+                matched.put(order, best);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Точно: матрица "заказ x водитель" по CANDIDATES_PER_ORDER лучшим водителям каждого заказа
+     * и венгерский алгоритм. Если заказов больше, чем водителей, в розыгрыш идут самые старые
+     */
+    Map<Order, ScoredCandidate> matchOptimal(List<Order> orders, long nowMillis) {
+        List<Order> batch = orders.subList(0, Math.min(orders.size(), candidates.size()));
+
+        // При скоплении заказов в одном месте их лучшие водители совпадают -
+        // расширяем выборку, пока водителей в матрице не станет не меньше, чем заказов
+        Map<Long, DispatchCandidate> columnsById = new LinkedHashMap<>();
+        for (int limit = CANDIDATES_PER_ORDER; ; limit *= 2) {
+            for (Order order : batch) {
+                for (ScoredCandidate scored : bestCandidates(order.getPickupLatitude(), order.getPickupLongitude(),
+                        nowMillis, Set.of(), limit)) {
+                    columnsById.putIfAbsent(scored.candidate.getDriverId(), scored.candidate);
+                }
+            }
+            if (columnsById.size() >= batch.size() || limit >= candidates.size()) {
+                break;
+            }
+        }
+        List<DispatchCandidate> columns = new ArrayList<>(columnsById.values());
+        if (columns.isEmpty()) {
+            return Map.of();
+        }
+
+        ScoredCandidate[][] pairs = new ScoredCandidate[batch.size()][columns.size()];
+        double[][] cost = new double[batch.size()][columns.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            for (int j = 0; j < columns.size(); j++) {
+                pairs[i][j] = score(batch.get(i), columns.get(j), nowMillis);
+                cost[i][j] = pairs[i][j] != null ? pairs[i][j].score : INFEASIBLE_COST;
+            }
+        }
+
+        int[] columnOfRow = AssignmentSolver.solve(cost);
+        Map<Order, ScoredCandidate> matched = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            int j = columnOfRow[i];
+            if (j >= 0 && pairs[i][j] != null) {
+                matched.put(batch.get(i), pairs[i][j]);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Оценка пары по правилам selectCandidate или null, если водитель дальше MAX_PICKUP_KM.
+     * Водитель без координат для заказа с координатами хуже любого допустимого с координатами
+     */
+    private ScoredCandidate score(Order order, DispatchCandidate candidate, long nowMillis) {
+        double idleBonusKm = idleMinutes(candidate, nowMillis) / IDLE_MINUTES_PER_KM;
+        if (!order.hasPickupLocation()) {
+            return new ScoredCandidate(candidate, -idleBonusKm, Double.NaN);
+        }
+        double[] position = positions.get(candidate.getDriverId());
+        if (position == null) {
+            double maxIdleBonusKm = MAX_IDLE_MINUTES / IDLE_MINUTES_PER_KM;
+            return new ScoredCandidate(candidate, MAX_PICKUP_KM + maxIdleBonusKm - idleBonusKm, Double.NaN);
+        }
+        double distanceKm = DriverGridIndex.distanceKm(order.getPickupLatitude(), order.getPickupLongitude(),
+                position[0], position[1]);
+        return distanceKm <= MAX_PICKUP_KM
+                ? new ScoredCandidate(candidate, distanceKm - idleBonusKm, distanceKm)
+                : null;
+    }
+
+    /**
+     * Резервирует водителей и записывает назначения одним пакетом.
+     * Не прошедшие условный UPDATE водители перепроверяются по БД
+     */
+    private List<Assignment> commitBatch(Map<Order, ScoredCandidate> matched) {
+        List<OrderRepository.DriverAssignment> batch = new ArrayList<>();
+        Map<Long, ScoredCandidate> byOrder = new LinkedHashMap<>();
+        for (Map.Entry<Order, ScoredCandidate> entry : matched.entrySet()) {
+            Long orderId = entry.getKey().getId();
+            DispatchCandidate candidate = entry.getValue().candidate;
+            // занятых одиночным назначением водителей пропускаем - заказ уйдет в следующий цикл
+            if (reserve(candidate.getDriverId(), orderId)) {
+                byOrder.put(orderId, entry.getValue());
+                batch.add(new OrderRepository.DriverAssignment(orderId, candidate.getDriverId(),
+                        candidate.getCarId(), candidate.getWaybillId()));
+            }
+        }
+
+        List<Assignment> result = new ArrayList<>();
+        List<Long> rejected = new ArrayList<>();
+        try {
+            Set<Long> assigned = orderRepository.assignBatch(batch);
+            for (Map.Entry<Long, ScoredCandidate> entry : byOrder.entrySet()) {
+                DispatchCandidate candidate = entry.getValue().candidate;
+                if (assigned.contains(entry.getKey())) {
+                    removeCandidate(candidate.getDriverId());
+                    result.add(new Assignment(entry.getKey(), candidate.getDriverId(), candidate.getCarId(),
+                            candidate.getWaybillId(), entry.getValue().distanceKm));
+                } else {
+                    rejected.add(candidate.getDriverId());
+                }
+            }
+        } finally {
+            for (Map.Entry<Long, ScoredCandidate> entry : byOrder.entrySet()) {
+                release(entry.getValue().candidate.getDriverId(), entry.getKey());
+            }
+        }
+
+        for (Long driverId : rejected) {
+            refreshDriver(driverId);
+        }
+        return result;
+    }
+
+    // ПРЕДЛОЖЕНИЯ ВОДИТЕЛЯМ
+
+    /**
+     * Подбирает водителя для предложения заказа и держит его резерв, пока водитель не ответит:
+     * другие заказы его в это время не получат. В БД ничего не пишется - заказ остается NEW
+     * до confirmOffer. Водители из excluded (уже отказавшиеся) пропускаются.
+     * Возвращает null, если предложить некому
+     */
+    public Assignment reserveForOffer(Order order, Set<Long> excluded) {
+        if (order == null || order.getId() == null || !"NEW".equals(order.getStatus())) {
+            return null;
+        }
+        long nowMillis = System.currentTimeMillis();
+        Set<Long> skipped = new HashSet<>(excluded);
+        skipped.addAll(reservations.keySet()); // эти водители сейчас решают по другим заказам
+        for (int attempt = 0; attempt < MAX_ASSIGN_ATTEMPTS; attempt++) {
+            ScoredCandidate best = selectCandidate(order.getPickupLatitude(), order.getPickupLongitude(),
+                    nowMillis, skipped);
+            if (best == null) {
+                return null;
+            }
+            DispatchCandidate candidate = best.candidate;
+            if (reserve(candidate.getDriverId(), order.getId())) {
+                return new Assignment(order.getId(), candidate.getDriverId(), candidate.getCarId(),
+                        candidate.getWaybillId(), best.distanceKm);
+            }
+            skipped.add(candidate.getDriverId()); // его прямо сейчас назначает другой поток
+        }
+        return null;
+    }
+
+    /**
+     * Водитель принял предложение: заказ назначается тем же условным UPDATE, что и при
+     * автоназначении, резерв снимается. false - заказ уже не NEW или водитель успел занять другой заказ
+     */
+    public boolean confirmOffer(Assignment offer) {
+        try {
+            if (orderRepository.assignIfDriverFree(offer.getOrderId(), offer.getDriverId(),
+                    offer.getCarId(), offer.getWaybillId())) {
+                removeCandidate(offer.getDriverId());
+                return true;
+            }
+        } finally {
+            release(offer.getDriverId(), offer.getOrderId());
+        }
+        refreshDriver(offer.getDriverId());
+        return false;
+    }
+
+    /**
+     * Предложение отклонено, истекло или отозвано - водитель снова доступен
+     */
+    public void releaseOffer(Assignment offer) {
+        release(offer.getDriverId(), offer.getOrderId());
+    }
+
+    /**
+     * Резервирует водителя за заказом, пока идет назначение. false - водителя уже назначает другой поток
+     */
+    boolean reserve(long driverId, long orderId) {
+        return reservations.putIfAbsent(driverId, orderId) == null;
+    }
+
+    void release(long driverId, long orderId) {
+        reservations.remove(driverId, orderId);
+    }
+
+    /**
+     * Выбирает лучшего кандидата. Для заказа с координатами - ближайший с учетом простоя
+     * в радиусе MAX_PICKUP_KM, иначе (или если рядом никого) - дольше всех простаивающий
+     * водитель без известных координат. Для заказа без координат - дольше всех простаивающий
+     */
+    ScoredCandidate selectCandidate(Double latitude, Double longitude, long nowMillis, Set<Long> excluded) {
+        List<ScoredCandidate> best = bestCandidates(latitude, longitude, nowMillis, excluded, 1);
+        return best.isEmpty() ? null : best.get(0);
+    }
+
+    /**
+     * До limit лучших кандидатов по тем же правилам, что и selectCandidate, лучший первым
+     */
+    List<ScoredCandidate> bestCandidates(Double latitude, Double longitude, long nowMillis,
+                                         Set<Long> excluded, int limit) {
+        if (latitude == null || longitude == null) {
+            return longestIdle(nowMillis, excluded, false, limit);
+        }
+
+        List<ScoredCandidate> best = nearest(latitude, longitude, nowMillis, excluded, limit);
+        if (best.size() < limit) {
+            best.addAll(longestIdle(nowMillis, excluded, true, limit - best.size()));
+        }
+        return best;
+    }
+
+    private List<ScoredCandidate> nearest(double latitude, double longitude, long nowMillis,
+                                          Set<Long> excluded, int limit) {
+        // В голове очереди - худший из отобранных
+        PriorityQueue<ScoredCandidate> best = new PriorityQueue<>(limit + 1, WORST_FIRST);
+        double maxIdleBonusKm = MAX_IDLE_MINUTES / IDLE_MINUTES_PER_KM;
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        int maxRing = (int) Math.ceil(MAX_PICKUP_KM / DriverGridIndex.cellSizeKm(latitude)) + 1;
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            double lowerBoundKm = DriverGridIndex.ringLowerBoundKm(latitude, ring);
+            if (lowerBoundKm > MAX_PICKUP_KM) {
+                break;
+            }
+            // Дальше кольца только хуже: даже максимальный простой не перекроет расстояние
+            if (best.size() == limit && lowerBoundKm - maxIdleBonusKm >= best.peek().score) {
+                break;
+            }
+
+            grid.scanRing(latitude, longitude, ring, entry -> {
+                double distanceKm = DriverGridIndex.distanceKm(latitude, longitude,
+                        entry.latitude, entry.longitude, cosLatitude);
+                if (distanceKm > MAX_PICKUP_KM) {
+                    return;
+                }
+                DispatchCandidate candidate = entry.candidate;
+                double score = distanceKm - idleMinutes(candidate, nowMillis) / IDLE_MINUTES_PER_KM;
+                if (best.size() == limit && score >= best.peek().score) {
+                    return;
+                }
+                Long driverId = candidate.getDriverId();
+                if (!excluded.contains(driverId) && !reservations.containsKey(driverId)) {
+                    best.add(new ScoredCandidate(candidate, score, distanceKm));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            });
+        }
+        return sorted(best);
+    }
+
+    private List<ScoredCandidate> longestIdle(long nowMillis, Set<Long> excluded, boolean unlocatedOnly, int limit) {
+        PriorityQueue<ScoredCandidate> best = new PriorityQueue<>(limit + 1, WORST_FIRST);
+        for (DispatchCandidate candidate : candidates.values()) {
+            long driverId = candidate.getDriverId();
+            if (excluded.contains(driverId) || reservations.containsKey(driverId)
+                    || (unlocatedOnly && grid.contains(driverId))) {
+                continue;
+            }
+            best.add(new ScoredCandidate(candidate, -idleMinutes(candidate, nowMillis) / IDLE_MINUTES_PER_KM, Double.NaN));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        return sorted(best);
+    }
+
+    private static List<ScoredCandidate> sorted(PriorityQueue<ScoredCandidate> queue) {
+        List<ScoredCandidate> result = new ArrayList<>(queue);
+        result.sort(BEST_FIRST);
+        return result;
+    }
+
+    private static double idleMinutes(DispatchCandidate candidate, long nowMillis) {
+        double minutes = (nowMillis - candidate.getIdleSinceMillis()) / 60000.0;
+        return Math.max(0, Math.min(minutes, MAX_IDLE_MINUTES));
+    }
+
+    // СТАТИСТИКА
+
+    public int getCandidatesCount() {
+        return candidates.size();
+    }
+
+    public int getLocatedCandidatesCount() {
+        return grid.size();
+    }
+
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+
+    private static LocalDateTime medicalValidFrom() {
+        return LocalDateTime.now().minus(MEDICAL_CHECK_VALIDITY);
+    }
+
+    /**
+     * Строка DriverRepository.findDispatchCandidates -> кандидат.
+     * Простой считается от завершения последнего заказа, а если заказов не было - от начала смены
+     */
+    private static DispatchCandidate toCandidate(Object[] row) {
+        LocalDateTime shiftStart = (LocalDateTime) row[3];
+        LocalDateTime lastCompletion = (LocalDateTime) row[4];
+        LocalDateTime idleSince = lastCompletion != null && (shiftStart == null || lastCompletion.isAfter(shiftStart))
+                ? lastCompletion : shiftStart;
+        long idleSinceMillis = idleSince != null
+                ? idleSince.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : System.currentTimeMillis();
+        return new DispatchCandidate((Long) row[0], (Long) row[1], (Long) row[2], idleSinceMillis);
+    }
+
+    /**
+     * Кандидат с оценкой (меньше - лучше)
+     */
+    static class ScoredCandidate {
+        final DispatchCandidate candidate;
+        final double score;
+        final double distanceKm;
+
+        ScoredCandidate(DispatchCandidate candidate, double score, double distanceKm) {
+            this.candidate = candidate;
+            this.score = score;
+            this.distanceKm = distanceKm;
+        }
+    }
+
+    /**
+     * Результат автоназначения
+     */
+    public static class Assignment {
+        private final Long orderId;
+        private final Long driverId;
+        private final Long carId;
+        private final Long waybillId;
+        private final double distanceKm;
+
+        public Assignment(Long orderId, Long driverId, Long carId, Long waybillId, double distanceKm) {
+            this.orderId = orderId;
+            this.driverId = driverId;
+            this.carId = carId;
+            this.waybillId = waybillId;
+            this.distanceKm = distanceKm;
+        }
+
+        public Long getOrderId() { return orderId; }
+        public Long getDriverId() { return driverId; }
+        public Long getCarId() { return carId; }
+        public Long getWaybillId() { return waybillId; }
+
+        /**
+         * Расстояние подачи, км (NaN, если координаты неизвестны)
+         */
+        public double getDistanceKm() { return distanceKm; }
+    }
+}
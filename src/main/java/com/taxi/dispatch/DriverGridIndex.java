@@ -0,0 +1,165 @@
+package com.taxi.dispatch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Пространственный индекс водителей: равномерная сетка по широте и долготе.
+ * Ячейка 0.01° (около 1 км по широте). Поиск обходит кольца ячеек вокруг точки:
+ * кольцо r - ячейки на расстоянии ровно r ячеек по любой из осей.
+ * В ячейке хранятся сами кандидаты с координатами, чтобы при поиске не ходить в другие карты
+ */
+class DriverGridIndex {
+
+    static final double CELL_DEGREES = 0.01;
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180.0;
+
+    // ячейка -> водители в ней
+    private final ConcurrentHashMap<Long, Map<Long, Entry>> cells = new ConcurrentHashMap<>();
+    // водитель -> его ячейка
+    private final ConcurrentHashMap<Long, Long> cellOfDriver = new ConcurrentHashMap<>();
+
+    /**
+     * Добавляет водителя или переносит его в ячейку новой позиции
+     */
+    void put(DispatchCandidate candidate, double latitude, double longitude) {
+        Entry entry = new Entry(candidate, latitude, longitude);
+        long cell = cellKey(latitude, longitude);
+        // compute по ключу водителя атомарен - перемещения одного водителя не перемешиваются
+        cellOfDriver.compute(candidate.getDriverId(), (id, previous) -> {
+            if (previous != null && previous != cell) {
+                removeFromCell(previous, id);
+            }
+            cells.compute(cell, (key, drivers) -> {
+                Map<Long, Entry> result = drivers != null ? drivers : new ConcurrentHashMap<>();
+                result.put(id, entry);
+                return result;
+            });
+            return cell;
+        });
+    }
+
+    void remove(long driverId) {
+        cellOfDriver.computeIfPresent(driverId, (id, cell) -> {
+            removeFromCell(cell, id);
+            return null;
+        });
+    }
+
+    boolean contains(long driverId) {
+        return cellOfDriver.containsKey(driverId);
+    }
+
+    int size() {
+        return cellOfDriver.size();
+    }
+
+    void clear() {
+        cellOfDriver.clear();
+        cells.clear();
+    }
+
+    /**
+     * Передает consumer всех водителей из ячеек кольца ring вокруг точки
+     */
+    void scanRing(double latitude, double longitude, int ring, Consumer<Entry> consumer) {
+        int centerLat = cellIndex(latitude);
+        int centerLon = cellIndex(longitude);
+
+        if (ring == 0) {
+            scanCell(centerLat, centerLon, consumer);
+            return;
+        }
+        for (int d = -ring; d <= ring; d++) {
+            // верхняя и нижняя стороны кольца целиком, боковые - без углов
+            scanCell(centerLat + ring, centerLon + d, consumer);
+            scanCell(centerLat - ring, centerLon + d, consumer);
+            if (d != -ring && d != ring) {
+                scanCell(centerLat + d, centerLon + ring, consumer);
+                scanCell(centerLat + d, centerLon - ring, consumer);
+            }
+        }
+    }
+
+    /**
+     * Нижняя граница расстояния от точки до любого водителя в кольце ring, км
+     */
+    static double ringLowerBoundKm(double latitude, int ring) {
+        return Math.max(0, ring - 1) * cellSizeKm(latitude);
+    }
+
+    /**
+     * Меньшая сторона ячейки на данной широте, км
+     */
+    static double cellSizeKm(double latitude) {
+        return CELL_DEGREES * KM_PER_DEGREE * Math.cos(Math.toRadians(Math.min(Math.abs(latitude), 89.0)));
+    }
+
+    /**
+     * Расстояние между точками, км. Равнопромежуточная проекция - на масштабах города
+     * погрешность меньше метра на километр, а считается в разы быстрее гаверсинуса
+     */
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        return distanceKm(lat1, lon1, lat2, lon2, Math.cos(Math.toRadians((lat1 + lat2) / 2)));
+    }
+
+    /**
+     * То же с заранее посчитанным косинусом широты - для серии расстояний от одной точки
+     */
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2, double cosLatitude) {
+        double x = (lon2 - lon1) * cosLatitude;
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * KM_PER_DEGREE;
+    }
+
+    private void scanCell(int latIndex, int lonIndex, Consumer<Entry> consumer) {
+        Map<Long, Entry> drivers = cells.get(key(latIndex, lonIndex));
+        if (drivers != null) {
+            for (Entry entry : drivers.values()) {
+                consumer.accept(entry);
+            }
+        }
+    }
+
+    private void removeFromCell(long cell, long driverId) {
+        cells.computeIfPresent(cell, (key, drivers) -> {
+            drivers.remove(driverId);
+            return drivers.isEmpty() ? null : drivers;
+        });
+    }
+
+    private static long cellKey(double latitude, double longitude) {
+        return key(cellIndex(latitude), cellIndex(longitude));
+    }
+
+    private static int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    /**
+     * Ключ ячейки. Не сдвиг на 32 бита: у такого Long хеш равен latIndex ^ lonIndex,
+     * соседние ячейки массово совпадают по хешу и карта вырождается в деревья
+     */
+    private static long key(int latIndex, int lonIndex) {
+        // |lonIndex| <= 18000 при ячейке 0.01°
+        return (long) latIndex * 100_000L + lonIndex;
+    }
+
+    /**
+     * Кандидат и его координаты на момент попадания в индекс
+     */
+    static class Entry {
+        final DispatchCandidate candidate;
+        final double latitude;
+        final double longitude;
+
+        Entry(DispatchCandidate candidate, double latitude, double longitude) {
+            this.candidate = candidate;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.taxi.dispatch;
+
+import com.taxi.entity.Order;
+import com.taxi.repository.FetchPlan;
+import com.taxi.repository.OrderRepository;
+import com.taxi.util.HashedTimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Предложения заказов водителям с подтверждением.
+ *
+ * Заказ не назначается сразу: водителю уходит предложение, и на время ответа он зарезервирован
+ * в DispatchEngine за этим заказом. Принял - заказ назначается условным UPDATE (NEW -> ASSIGNED).
+ * Отказался или не ответил за taxi.dispatch.offer_timeout_seconds - предложение уходит следующему
+ * кандидату. Сроки всех предложений отсчитывает одно колесо таймеров, без потока на предложение.
+ *
+ * Пока идет цикл предложений, заказ в БД остается NEW: если предложения закончились, отозваны
+ * или узел перезапустился, заказ виден диспетчеру как новый и подхватывается снова -
+ * "подвисших" заказов не бывает. Состояние предложений живет в памяти узла.
+ *
+ * Выключено по умолчанию (offer_timeout_seconds = 0) - тогда заказы назначаются сразу, как раньше
+ */
+public class OfferDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OfferDispatcher.class);
+
+    // Сколько секунд водитель думает над предложением; 0 - предложения выключены
+    private static final long OFFER_TIMEOUT_SECONDS = Long.getLong("taxi.dispatch.offer_timeout_seconds", 0);
+    // Сколько водителей опросить за один круг
+    private static final int OFFER_ATTEMPTS = Integer.getInteger("taxi.dispatch.offer_attempts", 5);
+    // Пауза перед новым кругом, когда все кандидаты отказались
+    private static final long OFFER_RETRY_SECONDS = Long.getLong("taxi.dispatch.offer_retry_seconds", 30);
+    // После стольких кругов заказ оставляется диспетчеру
+    private static final int MAX_ROUNDS = 10;
+
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
+    private static final AtomicInteger WORKER_COUNTER = new AtomicInteger();
+
+    private final DispatchEngine engine;
+    private final OrderRepository orderRepository;
+    private final HashedTimingWheel timers;
+    // Истечение и переход к следующему водителю ходят в БД - не в потоке колеса
+    private final ExecutorService workers;
+    private final AtomicLong offerIds = new AtomicLong();
+
+    // Под блокировкой this: заказ -> состояние цикла, водитель -> его текущее предложение
+    private final Map<Long, OrderOffers> byOrder = new HashMap<>();
+    private final Map<Long, Offer> byDriver = new HashMap<>();
+    // Ожидающие запросы водителей (long-poll): будятся при любой смене их предложения
+    private final ConcurrentHashMap<Long, Set<Runnable>> listeners = new ConcurrentHashMap<>();
+
+    private static class Holder {
+        private static final OfferDispatcher INSTANCE =
+                new OfferDispatcher(DispatchEngine.getInstance(), new OrderRepository());
+    }
+
+    public static OfferDispatcher getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    OfferDispatcher(DispatchEngine engine, OrderRepository orderRepository) {
+        this.engine = engine;
+        this.orderRepository = orderRepository;
+        if (isEnabled()) {
+            this.timers = new HashedTimingWheel("dispatch-offer-timer", TICK_MILLIS, WHEEL_SIZE);
+            this.workers = Executors.newFixedThreadPool(2, runnable -> {
+                Thread thread = new Thread(runnable, "dispatch-offer-" + WORKER_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            log.info("Предложения водителям включены: {} с на ответ, {} водителей за круг",
+                    OFFER_TIMEOUT_SECONDS, OFFER_ATTEMPTS);
+        } else {
+            this.timers = null;
+            this.workers = null;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return OFFER_TIMEOUT_SECONDS > 0;
+    }
+
+    // ПРЕДЛОЖЕНИЕ
+
+    /**
+     * Начинает цикл предложений по заказу в статусе NEW.
+     * driverId - водитель, выбранный диспетчером (с его автомобилем carId и путевым листом waybillId);
+     * null - лучший кандидат DispatchEngine. note добавляется к заказу, когда водитель его примет.
+     * Возвращает первое предложение или null, если предложить сейчас некому
+     * (выбранный водитель уже рассматривает другой заказ или свободных водителей нет)
+     */
+    public Offer offer(Order order, Long driverId, Long carId, Long waybillId, String note) {
+        if (driverId != null) {
+            withdraw(order.getId()); // выбор диспетчера важнее идущего автоматического цикла
+        }
+        OrderOffers state;
+        synchronized (this) {
+            OrderOffers existing = byOrder.get(order.getId());
+            if (existing != null) {
+                return existing.current; // цикл по заказу уже идет
+            }
+            state = new OrderOffers(order.getId(), note);
+            byOrder.put(order.getId(), state);
+        }
+
+        Offer offer = driverId != null
+                ? offerTo(state, order, driverId, carId, waybillId)
+                : offerNext(state, order, true);
+        if (offer == null) {
+            finish(state);
+        }
+        return offer;
+    }
+
+    /**
+     * Водитель принимает предложение: заказ назначается на него.
+     * Возвращает принятое предложение или null, если оно уже истекло, отозвано
+     * или назначить не удалось (тогда заказ уходит следующему водителю)
+     */
+    public Offer accept(Long driverId, long offerId) {
+        Offer offer;
+        OrderOffers state;
+        synchronized (this) {
+            offer = byDriver.get(driverId);
+            if (offer == null || offer.id != offerId) {
+                return null;
+            }
+            state = byOrder.get(offer.orderId);
+            // Таймер уже сработал - истечение обработает свой поток
+            if (state == null || state.current != offer || !state.timeout.cancel()) {
+                return null;
+            }
+            byDriver.remove(driverId);
+            state.current = null;
+            state.timeout = null;
+        }
+
+        boolean assigned = false;
+        try {
+            assigned = engine.confirmOffer(offer.assignment);
+        } finally {
+            if (assigned) {
+                finish(state);
+                log.info("Водитель #{} принял заказ #{}", driverId, offer.orderId);
+            } else {
+                // Заказ уже не NEW или водитель занят другим заказом - дальше по кругу
+                rejectedBy(state, driverId);
+            }
+            notifyDriver(driverId);
+        }
+        return assigned ? offer : null;
+    }
+
+    /**
+     * Водитель отказывается: предложение сразу уходит следующему кандидату
+     */
+    public boolean decline(Long driverId, long offerId) {
+        Offer offer;
+        OrderOffers state;
+        synchronized (this) {
+            offer = byDriver.get(driverId);
+            if (offer == null || offer.id != offerId) {
+                return false;
+            }
+            state = byOrder.get(offer.orderId);
+            if (state == null || state.current != offer || !state.timeout.cancel()) {
+                return false;
+            }
+            byDriver.remove(driverId);
+            state.current = null;
+            state.timeout = null;
+        }
+        engine.releaseOffer(offer.assignment);
+        log.info("Водитель #{} отказался от заказа #{}", driverId, offer.orderId);
+        rejectedBy(state, driverId);
+        notifyDriver(driverId);
+        return true;
+    }
+
+    /**
+     * Заказ изменен помимо предложений (назначен вручную, отменен, удален) - цикл прекращается
+     */
+    public void withdraw(Long orderId) {
+        Offer offer;
+        synchronized (this) {
+            OrderOffers state = byOrder.remove(orderId);
+            if (state == null) {
+                return;
+            }
+            state.finished = true;
+            if (state.timeout != null) {
+                state.timeout.cancel();
+            }
+            offer = state.current;
+            state.current = null;
+            if (offer != null) {
+                byDriver.remove(offer.driverId, offer);
+            }
+        }
+        if (offer != null) {
+            engine.releaseOffer(offer.assignment);
+            notifyDriver(offer.driverId);
+        }
+    }
+
+    /**
+     * Текущее предложение водителю или null
+     */
+    public synchronized Offer getOffer(Long driverId) {
+        return byDriver.get(driverId);
+    }
+
+    /**
+     * Идет ли по заказу цикл предложений
+     */
+    public synchronized boolean isOffering(Long orderId) {
+        return byOrder.containsKey(orderId);
+    }
+
+    public synchronized int getActiveOffersCount() {
+        return byDriver.size();
+    }
+
+    // ОЖИДАНИЕ ВОДИТЕЛЕМ
+
+    /**
+     * listener вызывается (из чужого потока), когда у водителя появилось, исчезло или сменилось предложение
+     */
+    public void addListener(Long driverId, Runnable listener) {
+        listeners.computeIfAbsent(driverId, id -> ConcurrentHashMap.newKeySet()).add(listener);
+    }
+
+    public void removeListener(Long driverId, Runnable listener) {
+        listeners.computeIfPresent(driverId, (id, set) -> {
+            set.remove(listener);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private void notifyDriver(Long driverId) {
+        Set<Runnable> waiting = listeners.get(driverId);
+        if (waiting == null) {
+            return;
+        }
+        for (Runnable listener : waiting) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("Ошибка оповещения водителя #{}", driverId, e);
+            }
+        }
+    }
+
+    // ЦИКЛ ПРЕДЛОЖЕНИЙ
+
+    /**
+     * Предложение водителю, выбранному диспетчером (он может и не быть кандидатом автоназначения)
+     */
+    private Offer offerTo(OrderOffers state, Order order, Long driverId, Long carId, Long waybillId) {
+        if (!engine.reserve(driverId, order.getId())) {
+            return null;
+        }
+        return publish(state, order, new DispatchEngine.Assignment(order.getId(), driverId, carId, waybillId,
+                Double.NaN));
+    }
+
+    /**
+     * Предложение лучшему кандидату, еще не отказавшемуся от заказа.
+     * Если круг исчерпан, через OFFER_RETRY_SECONDS начинается новый (если это не первая попытка)
+     */
+    private Offer offerNext(OrderOffers state, Order order, boolean first) {
+        DispatchEngine.Assignment assignment = state.attempts < OFFER_ATTEMPTS
+                ? engine.reserveForOffer(order, state.declined)
+                : null;
+        if (assignment != null) {
+            return publish(state, order, assignment);
+        }
+        if (!first) {
+            scheduleRetry(state);
+        }
+        return null;
+    }
+
+    private Offer publish(OrderOffers state, Order order, DispatchEngine.Assignment assignment) {
+        Offer offer = new Offer(offerIds.incrementAndGet(), order, assignment,
+                System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(OFFER_TIMEOUT_SECONDS), state.note);
+        synchronized (this) {
+            if (state.finished) {
+                offer = null; // заказ отозван, пока подбирали водителя
+            } else {
+                state.attempts++;
+                state.current = offer;
+                byDriver.put(offer.driverId, offer);
+                Offer expiring = offer;
+                state.timeout = timers.schedule(() -> workers.execute(() -> expired(state, expiring)),
+                        TimeUnit.SECONDS.toMillis(OFFER_TIMEOUT_SECONDS));
+            }
+        }
+        if (offer == null) {
+            engine.releaseOffer(assignment);
+            return null;
+        }
+        log.debug("Заказ #{} предложен водителю #{}", offer.orderId, offer.driverId);
+        notifyDriver(offer.driverId);
+        return offer;
+    }
+
+    private void expired(OrderOffers state, Offer offer) {
+        synchronized (this) {
+            if (state.current != offer) {
+                return;
+            }
+            byDriver.remove(offer.driverId, offer);
+            state.current = null;
+            state.timeout = null;
+        }
+        engine.releaseOffer(offer.assignment);
+        log.info("Водитель #{} не ответил на предложение заказа #{}", offer.driverId, offer.orderId);
+        notifyDriver(offer.driverId);
+        rejectedBy(state, offer.driverId);
+    }
+
+    /**
+     * Водитель не взял заказ - предлагаем следующему. В отдельном потоке: отвечающий водитель не ждет подбора
+     */
+    private void rejectedBy(OrderOffers state, Long driverId) {
+        synchronized (this) {
+            state.declined.add(driverId);
+        }
+        workers.execute(() -> advance(state));
+    }
+
+    private void advance(OrderOffers state) {
+        try {
+            Order order = orderRepository.findById(state.orderId, FetchPlan.REPORT);
+            if (order == null || !"NEW".equals(order.getStatus())) {
+                finish(state);
+                return;
+            }
+            offerNext(state, order, false);
+        } catch (RuntimeException e) {
+            // Не бросаем заказ из-за сбоя: следующий круг попробует снова
+            log.error("Ошибка при передаче заказа #{} следующему водителю", state.orderId, e);
+            scheduleRetry(state);
+        }
+    }
+
+    private void scheduleRetry(OrderOffers state) {
+        synchronized (this) {
+            if (state.finished) {
+                return;
+            }
+            if (++state.rounds >= MAX_ROUNDS) {
+                byOrder.remove(state.orderId, state);
+                state.finished = true;
+                log.warn("Заказ #{}: никто из водителей не принял предложение, оставлен диспетчеру", state.orderId);
+                return;
+            }
+            state.declined.clear();
+            state.attempts = 0;
+            state.timeout = timers.schedule(() -> workers.execute(() -> {
+                synchronized (this) {
+                    if (state.finished || state.current != null) {
+                        return;
+                    }
+                    state.timeout = null;
+                }
+                advance(state);
+            }), TimeUnit.SECONDS.toMillis(OFFER_RETRY_SECONDS));
+        }
+    }
+
+    private synchronized void finish(OrderOffers state) {
+        state.finished = true;
+        byOrder.remove(state.orderId, state);
+    }
+
+    /**
+     * Цикл предложений одного заказа; поля меняются под блокировкой OfferDispatcher
+     */
+    private static class OrderOffers {
+        final Long orderId;
+        final String note;
+        // Отказавшиеся и не ответившие в текущем круге
+        final Set<Long> declined = new HashSet<>();
+        int attempts;
+        int rounds;
+        Offer current;
+        HashedTimingWheel.Timeout timeout;
+        boolean finished;
+
+        OrderOffers(Long orderId, String note) {
+            this.orderId = orderId;
+            this.note = note;
+        }
+    }
+
+    /**
+     * Предложение заказа водителю
+     */
+    public static class Offer {
+        private final long id;
+        private final Long orderId;
+        private final Long driverId;
+        private final long expiresAtMillis;
+        private final String pickupAddress;
+        private final String destinationAddress;
+        private final String note;
+        private final DispatchEngine.Assignment assignment;
+
+        Offer(long id, Order order, DispatchEngine.Assignment assignment, long expiresAtMillis, String note) {
+            this.id = id;
+            this.orderId = order.getId();
+            this.driverId = assignment.getDriverId();
+            this.expiresAtMillis = expiresAtMillis;
+            this.pickupAddress = order.getPickupAddress();
+            this.destinationAddress = order.getDestinationAddress();
+            this.note = note;
+            this.assignment = assignment;
+        }
+
+        public long getId() { return id; }
+        public Long getOrderId() { return orderId; }
+        public Long getDriverId() { return driverId; }
+        public long getExpiresAtMillis() { return expiresAtMillis; }
+        public String getPickupAddress() { return pickupAddress; }
+        public String getDestinationAddress() { return destinationAddress; }
+        public String getNote() { return note; }
+
+        /**
+         * Расстояние подачи, км; NaN - неизвестно
+         */
+        public double getDistanceKm() { return assignment.getDistanceKm(); }
+    }
+}
@@ -1,8 +1,12 @@
 package com.taxi.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "taxi.car")
 @Table(name = "cars")
 public class Car {
     @Id
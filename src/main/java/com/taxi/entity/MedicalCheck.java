@@ -1,12 +1,19 @@
 package com.taxi.entity;
 
 import jakarta.persistence.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "medical_checks")
+@Table(name = "medical_checks", indexes = {
+        // Последний осмотр водителя - допуск к работе
+        @Index(name = "idx_medical_checks_driver_date", columnList = "driver_id, check_date")
+})
 public class MedicalCheck {
+    private static final Logger log = LoggerFactory.getLogger(MedicalCheck.class);
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -47,9 +54,9 @@ public class MedicalCheck {
     public void openShift() {
         if (this.isPassed) {
             this.opensShift = true;
-            System.out.println(" Смена открыта для водителя: " + driver.getFullName());
+            log.debug("Смена открыта для водителя: {}", driver.getFullName());
         } else {
-            System.out.println(" Нельзя открыть смену - водитель не прошел медосмотр");
+            log.info("Нельзя открыть смену - водитель не прошел медосмотр");
         }
     }
 
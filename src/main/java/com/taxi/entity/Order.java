@@ -1,32 +1,79 @@
 package com.taxi.entity;
 
 import jakarta.persistence.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
 
 @Entity
-@Table(name = "orders")
+@NamedEntityGraph(name = "Order.list",
+        attributeNodes = {
+                @NamedAttributeNode(value = "driver", subgraph = "driver"),
+                @NamedAttributeNode(value = "car", subgraph = "car")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "driver", attributeNodes = @NamedAttributeNode("currentCar")),
+                // Обратная сторона one-to-one не бывает ленивой - забираем водителя авто тем же запросом
+                @NamedSubgraph(name = "car", attributeNodes = @NamedAttributeNode("currentDriver"))
+        })
+@NamedEntityGraph(name = "Order.detail",
+        attributeNodes = {
+                @NamedAttributeNode("operator"),
+                @NamedAttributeNode(value = "driver", subgraph = "driver"),
+                @NamedAttributeNode(value = "car", subgraph = "car"),
+                @NamedAttributeNode("waybill")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "driver", attributeNodes = @NamedAttributeNode("currentCar")),
+                @NamedSubgraph(name = "car", attributeNodes = @NamedAttributeNode("currentDriver"))
+        })
+@NamedEntityGraph(name = "Order.report")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_status", columnList = "status"),
+        @Index(name = "idx_orders_driver_id", columnList = "driver_id"),
+        @Index(name = "idx_orders_waybill_id", columnList = "waybill_id"),
+        // Порядок списка заказов и курсор пагинации: (order_time, id)
+        @Index(name = "idx_orders_order_time_id", columnList = "order_time, id"),
+        @Index(name = "idx_orders_completion_time", columnList = "completion_time")
+})
 public class Order {
+
+    private static final Logger log = LoggerFactory.getLogger(Order.class);
+
+    /**
+     * Допустимые переходы статусов: из статуса - в какие можно перейти
+     */
+    private static final Map<String, Set<String>> STATUS_TRANSITIONS = Map.of(
+            "NEW", Set.of("ASSIGNED", "CANCELLED"),
+            "ASSIGNED", Set.of("IN_PROGRESS", "CANCELLED"),
+            "IN_PROGRESS", Set.of("COMPLETED", "CANCELLED"),
+            "COMPLETED", Set.of(),
+            "CANCELLED", Set.of()
+    );
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     // Связь с диспетчером, который создал заказ
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "operator_id", nullable = false)
     private User operator;
 
     // Связь с водителем, который выполняет заказ
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "driver_id")
     private Driver driver;
 
     // Связь с автомобилем, на котором выполняется заказ
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "car_id")
     private Car car;
 
     // Связь с путевым листом (доработать)
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "waybill_id")
     private Waybill waybill;
 
@@ -44,6 +91,13 @@ public class Order {
     @Column(name = "destination_address", length = 200)
     private String destinationAddress;
 
+    // Координаты точки подачи (необязательные, нужны для автоназначения ближайшего водителя)
+    @Column(name = "pickup_lat")
+    private Double pickupLatitude;
+
+    @Column(name = "pickup_lon")
+    private Double pickupLongitude;
+
     // Временные метки
     @Column(name = "order_time", nullable = false)
     private LocalDateTime orderTime;
@@ -71,6 +125,11 @@ public class Order {
     @Column(name = "notes", length = 500)
     private String notes;
 
+    // Версия строки для оптимистичной блокировки, растет при каждом изменении
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     // Конструкторы
     public Order() {
         this.orderTime = LocalDateTime.now();
@@ -104,8 +163,9 @@ public class Order {
         this.driver = driver;
         this.car = car;
         this.status = "ASSIGNED";
-        System.out.println(" Заказ #" + id + " назначен водителю: " +
-                driver.getFullName() + " на авто: " + car.getDisplayName());
+        if (log.isDebugEnabled()) {
+            log.debug("Заказ #{} назначен водителю: {} на авто: {}", id, driver.getFullName(), car.getDisplayName());
+        }
     }
 
     /**
@@ -114,7 +174,7 @@ public class Order {
     public void startTrip() {
         this.actualPickupTime = LocalDateTime.now();
         this.status = "IN_PROGRESS";
-        System.out.println(" Заказ #" + id + " начал выполнение");
+        log.debug("Заказ #{} начал выполнение", id);
     }
 
     /**
@@ -130,7 +190,7 @@ public class Order {
             this.distanceKm = distance;
         }
 
-        System.out.println("🏁 Заказ #" + id + " завершен. Стоимость: " + price + " руб.");
+        log.debug("Заказ #{} завершен. Стоимость: {} руб.", id, price);
     }
 
     /**
@@ -140,7 +200,7 @@ public class Order {
         this.status = "CANCELLED";
         this.notes = (this.notes != null ? this.notes + "\n" : "") +
                 "Отменен: " + reason;
-        System.out.println(" Заказ #" + id + " отменен. Причина: " + reason);
+        log.debug("Заказ #{} отменен. Причина: {}", id, reason);
     }
 
     /**
@@ -150,6 +210,13 @@ public class Order {
         return "NEW".equals(this.status);
     }
 
+    /**
+     * Проверить, допустим ли переход из статуса from в статус to
+     */
+    public static boolean isTransitionAllowed(String from, String to) {
+        return from != null && STATUS_TRANSITIONS.getOrDefault(from, Set.of()).contains(to);
+    }
+
     /**
      * Проверить, выполняется ли заказ сейчас
      */
@@ -161,6 +228,9 @@ public class Order {
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
     public User getOperator() { return operator; }
     public void setOperator(User operator) { this.operator = operator; }
 
@@ -185,6 +255,16 @@ public class Order {
     public String getDestinationAddress() { return destinationAddress; }
     public void setDestinationAddress(String destinationAddress) { this.destinationAddress = destinationAddress; }
 
+    public Double getPickupLatitude() { return pickupLatitude; }
+    public void setPickupLatitude(Double pickupLatitude) { this.pickupLatitude = pickupLatitude; }
+
+    public Double getPickupLongitude() { return pickupLongitude; }
+    public void setPickupLongitude(Double pickupLongitude) { this.pickupLongitude = pickupLongitude; }
+
+    public boolean hasPickupLocation() {
+        return pickupLatitude != null && pickupLongitude != null;
+    }
+
     public LocalDateTime getOrderTime() { return orderTime; }
     public void setOrderTime(LocalDateTime orderTime) { this.orderTime = orderTime; }
 
@@ -5,7 +5,10 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "technical_inspections")
+@Table(name = "technical_inspections", indexes = {
+        // Последний техосмотр автомобиля
+        @Index(name = "idx_technical_inspections_car_date", columnList = "car_id, inspection_date")
+})
 public class TechnicalInspection {
 
     @Id
@@ -1,14 +1,40 @@
 package com.taxi.entity;
 
 import jakarta.persistence.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@NamedEntityGraph(name = "Waybill.list",
+        attributeNodes = {
+                @NamedAttributeNode(value = "driver", subgraph = "driver"),
+                @NamedAttributeNode(value = "car", subgraph = "car")
+        },
+        subgraphs = {
+                // Закрепленный автомобиль водителя (ManyToOne по умолчанию EAGER) - тем же запросом
+                @NamedSubgraph(name = "driver", attributeNodes = @NamedAttributeNode("currentCar")),
+                @NamedSubgraph(name = "car", attributeNodes = @NamedAttributeNode("currentDriver"))
+        })
+@NamedEntityGraph(name = "Waybill.detail",
+        attributeNodes = {
+                @NamedAttributeNode(value = "driver", subgraph = "driver"),
+                @NamedAttributeNode(value = "car", subgraph = "car"),
+                @NamedAttributeNode("doctor"),
+                @NamedAttributeNode("mechanic")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "driver", attributeNodes = @NamedAttributeNode("currentCar")),
+                @NamedSubgraph(name = "car", attributeNodes = @NamedAttributeNode("currentDriver"))
+        })
+@NamedEntityGraph(name = "Waybill.report")
 @Table(name = "waybills")
 public class Waybill {
 
+    private static final Logger log = LoggerFactory.getLogger(Waybill.class);
+
     public enum WaybillStatus {
         ACTIVE("Активна"),
         COMPLETED("Завершена"),
@@ -30,20 +56,20 @@ public class Waybill {
     private Long id;
 
     // Связь с водителем
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "driver_id", nullable = false)
     private Driver driver;
 
     // Связь с автомобилем
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "car_id", nullable = false)
     private Car car;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "doctor_id", nullable = false)
     private User doctor;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "mechanic_id")
     private User mechanic;
 
@@ -66,18 +92,26 @@ public class Waybill {
     @Column(name = "total_earnings")
     private Double totalEarnings = 0.0; // Общий заработок за смену
 
-    @Column(name = "orders_count")
+    // Итоги по выполненным заказам ведет сама БД: OrderRepository увеличивает их одним UPDATE
+    // при завершении заказа. При сохранении путевого листа они не пишутся (updatable = false),
+    // иначе устаревшая копия затерла бы заказы, завершенные после ее чтения
+    @Column(name = "orders_count", updatable = false)
     private Integer ordersCount = 0; // Количество выполненных заказов
 
-    @Column(name = "total_distance")
+    @Column(name = "total_distance", updatable = false)
     private Double totalDistance = 0.0; // Общая дистанция всех заказов
 
-    @Column(name = "total_revenue")
+    @Column(name = "total_revenue", updatable = false)
     private Double totalRevenue = 0.0; // Общая выручка от заказов
 
     @Column(name = "notes", length = 500)
     private String notes;
 
+    // Оптимистичная блокировка: сохранение устаревшей копии путевого листа завершится ошибкой
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @Transient
     private List<Order> orders = new ArrayList<>();
 
@@ -159,14 +193,13 @@ public class Waybill {
             car.setMileageKm(finalMileage);
         }
 
-        System.out.println(" Путевой лист #" + id + " завершен");
-        System.out.println("    Водитель: " + driver.getFullName());
-        System.out.println("    Автомобиль: " + car.getLicensePlate() + " (" + car.getModel() + ")");
-        System.out.println("    Пробег за смену: " + getShiftMileage() + " км");
-        System.out.println("    Заказов выполнено: " + ordersCount);
-        System.out.println("    Общая дистанция: " + totalDistance + " км");
-        System.out.println("    Заработок: " + totalEarnings + " руб.");
-        System.out.println("     Продолжительность: " + getShiftDuration());
+        // Итог смены пишет сервис; здесь подробности только для отладки - без лишних обращений к связям
+        if (log.isDebugEnabled()) {
+            log.debug("Путевой лист #{} завершен: водитель {}, автомобиль {} ({}), пробег {} км, заказов {}, "
+                            + "дистанция {} км, заработок {} руб., продолжительность {}",
+                    id, driver.getFullName(), car.getLicensePlate(), car.getModel(), getShiftMileage(),
+                    ordersCount, totalDistance, totalEarnings, getShiftDuration());
+        }
     }
 
     /**
@@ -177,8 +210,7 @@ public class Waybill {
         this.status = WaybillStatus.CANCELLED;
         this.notes = (this.notes != null ? this.notes + "\n" : "") + "Отменено: " + reason;
 
-        System.out.println(" Путевой лист #" + id + " отменен");
-        System.out.println("   Причина: " + reason);
+        log.info("Путевой лист #{} отменен. Причина: {}", id, reason);
     }
 
     /**
@@ -265,7 +297,7 @@ public class Waybill {
         // Обновляем счетчик
         ordersCount = orders.size();
 
-        System.out.println("📦 Заказ #" + order.getId() + " добавлен в путевой лист #" + id);
+        log.debug("Заказ #{} добавлен в путевой лист #{}", order.getId(), id);
     }
 
     /**
@@ -282,11 +314,8 @@ public class Waybill {
             totalEarnings += revenue;
         }
 
-        System.out.println("📊 Статистика путевого листа #" + id + " обновлена:");
-        System.out.println("   • Заказов: " + ordersCount);
-        System.out.println("   • Дистанция: " + totalDistance + " км");
-        System.out.println("   • Выручка: " + totalRevenue + " руб");
-        System.out.println("   • Заработок: " + totalEarnings + " руб");
+        log.debug("Статистика путевого листа #{}: заказов {}, {} км, выручка {} руб, заработок {} руб",
+                id, ordersCount, totalDistance, totalRevenue, totalEarnings);
     }
 
     /**
@@ -357,6 +386,9 @@ public class Waybill {
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
     public Driver getDriver() { return driver; }
     public void setDriver(Driver driver) { this.driver = driver; }
 
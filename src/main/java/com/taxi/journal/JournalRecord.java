@@ -0,0 +1,154 @@
+package com.taxi.journal;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * Запись журнала заказов: одно сохранение (или удаление) заказа.
+ *
+ * Формат фиксированной длины SIZE байт, little-endian:
+ * crc32c(4) | тип(1) | статус до(1) | статус после(1) | резерв(1) | seq(8) | время, мс(8) |
+ * заказ(8) | водитель(8) | автомобиль(8) | путевой лист(8) | цена(8) | дистанция(8).
+ * Отсутствующие id пишутся как 0, отсутствующие цена и дистанция - как NaN.
+ * Контрольная сумма покрывает все байты после нее: недописанная при сбое запись не читается
+ */
+public final class JournalRecord {
+
+    public static final int SIZE = 72;
+
+    public static final byte SAVED = 1;
+    public static final byte DELETED = 2;
+
+    // Код статуса - индекс в массиве; 0 - статуса нет (новый или удаленный заказ)
+    private static final String[] STATUSES = {null, "NEW", "ASSIGNED", "IN_PROGRESS", "COMPLETED", "CANCELLED"};
+
+    private final byte type;
+    private final String previousStatus;
+    private final String status;
+    private final long seq;
+    private final long timestampMillis;
+    private final long orderId;
+    private final long driverId;
+    private final long carId;
+    private final long waybillId;
+    private final double price;
+    private final double distanceKm;
+
+    JournalRecord(byte type, String previousStatus, String status, long seq, long timestampMillis, long orderId,
+                  long driverId, long carId, long waybillId, double price, double distanceKm) {
+        this.type = type;
+        this.previousStatus = previousStatus;
+        this.status = status;
+        this.seq = seq;
+        this.timestampMillis = timestampMillis;
+        this.orderId = orderId;
+        this.driverId = driverId;
+        this.carId = carId;
+        this.waybillId = waybillId;
+        this.price = price;
+        this.distanceKm = distanceKm;
+    }
+
+    /**
+     * Пишет запись в buffer с его текущей позиции (порядок байт buffer должен быть LITTLE_ENDIAN)
+     */
+    void encode(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(0)
+                .put(type)
+                .put(statusCode(previousStatus))
+                .put(statusCode(status))
+                .put((byte) 0)
+                .putLong(seq)
+                .putLong(timestampMillis)
+                .putLong(orderId)
+                .putLong(driverId)
+                .putLong(carId)
+                .putLong(waybillId)
+                .putDouble(price)
+                .putDouble(distanceKm);
+        buffer.putInt(start, checksum(buffer, start));
+    }
+
+    /**
+     * Читает запись с позиции offset. null - там конец журнала (пустое место) или недописанная запись
+     */
+    static JournalRecord decode(ByteBuffer buffer, int offset) {
+        if (offset + SIZE > buffer.limit()) {
+            return null;
+        }
+        byte type = buffer.get(offset + 4);
+        if (type != SAVED && type != DELETED) {
+            return null;
+        }
+        if (buffer.getInt(offset) != checksum(buffer, offset)) {
+            return null;
+        }
+        return new JournalRecord(type,
+                status(buffer.get(offset + 5)),
+                status(buffer.get(offset + 6)),
+                buffer.getLong(offset + 8),
+                buffer.getLong(offset + 16),
+                buffer.getLong(offset + 24),
+                buffer.getLong(offset + 32),
+                buffer.getLong(offset + 40),
+                buffer.getLong(offset + 48),
+                buffer.getDouble(offset + 56),
+                buffer.getDouble(offset + 64));
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(offset + 4).limit(offset + SIZE));
+        return (int) crc.getValue();
+    }
+
+    private static byte statusCode(String status) {
+        for (int i = 1; i < STATUSES.length; i++) {
+            if (STATUSES[i].equals(status)) {
+                return (byte) i;
+            }
+        }
+        return 0;
+    }
+
+    private static String status(byte code) {
+        return code > 0 && code < STATUSES.length ? STATUSES[code] : null;
+    }
+
+    public boolean isDeleted() { return type == DELETED; }
+
+    /**
+     * Статус до изменения; null - заказ только что создан
+     */
+    public String getPreviousStatus() { return previousStatus; }
+    public String getStatus() { return status; }
+    public long getSeq() { return seq; }
+    public long getTimestampMillis() { return timestampMillis; }
+    public long getOrderId() { return orderId; }
+
+    /**
+     * id водителя, автомобиля, путевого листа; 0 - не назначен
+     */
+    public long getDriverId() { return driverId; }
+    public long getCarId() { return carId; }
+    public long getWaybillId() { return waybillId; }
+
+    /**
+     * Цена и дистанция; NaN - не указаны
+     */
+    public double getPrice() { return price; }
+    public double getDistanceKm() { return distanceKm; }
+
+    /**
+     * Сменился ли статус этой записью
+     */
+    public boolean isTransition() {
+        return status != null && !status.equals(previousStatus);
+    }
+
+    @Override
+    public String toString() {
+        return "#" + seq + " заказ " + orderId + ": " + previousStatus + " -> " + (isDeleted() ? "удален" : status);
+    }
+}
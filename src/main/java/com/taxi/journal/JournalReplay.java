@@ -0,0 +1,261 @@
+package com.taxi.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Разбор журнала заказов без БД: восстановление состояния заказов и статистика переходов.
+ *
+ * Запуск по копии журнала: java -cp target/classes com.taxi.journal.JournalReplay <каталог> [дней]
+ */
+public final class JournalReplay {
+
+    private JournalReplay() {
+    }
+
+    /**
+     * Последняя запись по каждому заказу - его состояние на момент конца журнала.
+     * Удаленные заказы не попадают
+     */
+    public static Map<Long, JournalRecord> latestStates(Path dir) throws IOException {
+        Map<Long, JournalRecord> states = new LinkedHashMap<>();
+        OrderJournal.replay(dir, 0, record -> {
+            if (record.isDeleted()) {
+                states.remove(record.getOrderId());
+            } else {
+                states.put(record.getOrderId(), record);
+            }
+        });
+        return states;
+    }
+
+    /**
+     * Статистика по переходам, завершившимся в [from, to)
+     */
+    public static Stats stats(Path dir, Instant from, Instant to) throws IOException {
+        StatsCollector collector = new StatsCollector(from.toEpochMilli(), to.toEpochMilli());
+        OrderJournal.replay(dir, 0, collector);
+        return collector.result();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Использование: JournalReplay <каталог журнала> [дней, по умолчанию 1]");
+            return;
+        }
+        Path dir = Paths.get(args[0]);
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Instant to = Instant.now();
+        Stats stats = stats(dir, to.minus(Duration.ofDays(days)), to);
+
+        System.out.println("Журнал: " + dir + ", за " + days + " дн.");
+        System.out.println("Создано: " + stats.created + ", назначено: " + stats.assigned
+                + ", выполнено: " + stats.completed + ", отменено: " + stats.cancelled);
+        System.out.println("Выручка: " + String.format(Locale.ROOT, "%.2f", stats.revenue) + " руб.");
+        System.out.println("До назначения:    " + stats.timeToAssign);
+        System.out.println("До подачи:        " + stats.timeToPickup);
+        System.out.println("Поездка:          " + stats.tripTime);
+        System.out.println("Заказов в работе на конец журнала: " + latestStates(dir).values().stream()
+                .filter(record -> !"COMPLETED".equals(record.getStatus()) && !"CANCELLED".equals(record.getStatus()))
+                .count());
+    }
+
+    /**
+     * Итоги за период
+     */
+    public static class Stats {
+        private final long created;
+        private final long assigned;
+        private final long completed;
+        private final long cancelled;
+        private final double revenue;
+        private final Durations timeToAssign;
+        private final Durations timeToPickup;
+        private final Durations tripTime;
+
+        Stats(long created, long assigned, long completed, long cancelled, double revenue,
+              Durations timeToAssign, Durations timeToPickup, Durations tripTime) {
+            this.created = created;
+            this.assigned = assigned;
+            this.completed = completed;
+            this.cancelled = cancelled;
+            this.revenue = revenue;
+            this.timeToAssign = timeToAssign;
+            this.timeToPickup = timeToPickup;
+            this.tripTime = tripTime;
+        }
+
+        public long getCreated() { return created; }
+        public long getAssigned() { return assigned; }
+        public long getCompleted() { return completed; }
+        public long getCancelled() { return cancelled; }
+        public double getRevenue() { return revenue; }
+
+        /**
+         * От создания заказа до назначения водителя
+         */
+        public Durations getTimeToAssign() { return timeToAssign; }
+
+        /**
+         * От назначения до начала поездки (водитель забрал клиента)
+         */
+        public Durations getTimeToPickup() { return timeToPickup; }
+
+        /**
+         * От начала поездки до завершения
+         */
+        public Durations getTripTime() { return tripTime; }
+    }
+
+    /**
+     * Распределение длительностей: количество, среднее, медиана, 90-й перцентиль, максимум
+     */
+    public static class Durations {
+        private final long[] sortedMillis;
+
+        Durations(long[] millis, int count) {
+            this.sortedMillis = Arrays.copyOf(millis, count);
+            Arrays.sort(sortedMillis);
+        }
+
+        public int getCount() {
+            return sortedMillis.length;
+        }
+
+        public double getAverageSeconds() {
+            return sortedMillis.length == 0 ? 0 : Arrays.stream(sortedMillis).average().orElse(0) / 1000.0;
+        }
+
+        public double getQuantileSeconds(double quantile) {
+            if (sortedMillis.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sortedMillis.length) - 1;
+            return sortedMillis[Math.max(0, Math.min(index, sortedMillis.length - 1))] / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            if (sortedMillis.length == 0) {
+                return "нет данных";
+            }
+            return String.format(Locale.ROOT, "%d шт., среднее %s, медиана %s, p90 %s, макс. %s",
+                    sortedMillis.length, format(getAverageSeconds()), format(getQuantileSeconds(0.5)),
+                    format(getQuantileSeconds(0.9)), format(getQuantileSeconds(1.0)));
+        }
+
+        private static String format(double seconds) {
+            return seconds < 120
+                    ? String.format(Locale.ROOT, "%.1f с", seconds)
+                    : String.format(Locale.ROOT, "%.1f мин", seconds / 60);
+        }
+    }
+
+    /**
+     * Один проход по журналу. По заказу хранятся только моменты создания, назначения
+     * и начала поездки, пока он не завершен, поэтому память - по числу открытых заказов
+     */
+    private static class StatsCollector implements Consumer<JournalRecord> {
+        private final long fromMillis;
+        private final long toMillis;
+        // заказ -> [создан, назначен, поездка начата]; 0 - еще не было
+        private final Map<Long, long[]> open = new HashMap<>();
+
+        private long created;
+        private long assigned;
+        private long completed;
+        private long cancelled;
+        private double revenue;
+        private final DurationsBuilder timeToAssign = new DurationsBuilder();
+        private final DurationsBuilder timeToPickup = new DurationsBuilder();
+        private final DurationsBuilder tripTime = new DurationsBuilder();
+
+        StatsCollector(long fromMillis, long toMillis) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+        }
+
+        @Override
+        public void accept(JournalRecord record) {
+            long time = record.getTimestampMillis();
+            boolean inPeriod = time >= fromMillis && time < toMillis;
+            if (record.isDeleted()) {
+                open.remove(record.getOrderId());
+                return;
+            }
+            if (!record.isTransition()) {
+                return;
+            }
+            long[] moments = open.computeIfAbsent(record.getOrderId(), id -> new long[3]);
+            switch (record.getStatus()) {
+                case "NEW":
+                    moments[0] = time;
+                    if (inPeriod) created++;
+                    break;
+                case "ASSIGNED":
+                    if (moments[1] == 0) {
+                        moments[1] = time;
+                        if (inPeriod) {
+                            assigned++;
+                            timeToAssign.add(moments[0], time);
+                        }
+                    }
+                    break;
+                case "IN_PROGRESS":
+                    moments[2] = time;
+                    if (inPeriod) timeToPickup.add(moments[1], time);
+                    break;
+                case "COMPLETED":
+                    if (inPeriod) {
+                        completed++;
+                        tripTime.add(moments[2], time);
+                        if (!Double.isNaN(record.getPrice())) revenue += record.getPrice();
+                    }
+                    open.remove(record.getOrderId());
+                    break;
+                case "CANCELLED":
+                    if (inPeriod) cancelled++;
+                    open.remove(record.getOrderId());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Stats result() {
+            return new Stats(created, assigned, completed, cancelled, revenue,
+                    timeToAssign.build(), timeToPickup.build(), tripTime.build());
+        }
+    }
+
+    private static class DurationsBuilder {
+        private long[] millis = new long[64];
+        private int count;
+
+        /**
+         * start = 0 - начало не попало в журнал (заказ создан до его включения), пропускаем
+         */
+        void add(long start, long end) {
+            if (start == 0 || end < start) {
+                return;
+            }
+            if (count == millis.length) {
+                millis = Arrays.copyOf(millis, count * 2);
+            }
+            millis[count++] = end - start;
+        }
+
+        Durations build() {
+            return new Durations(millis, count);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.taxi.journal;
+
+import com.taxi.entity.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Журнал жизненного цикла заказов: каждое сохранение заказа дописывается записью
+ * фиксированной длины (JournalRecord) в сегменты, отображенные в память.
+ *
+ * Запись - это копирование 72 байт в страницу памяти под короткой блокировкой, без
+ * системных вызовов: на диск страницы сбрасывает фоновый поток раз в taxi.journal.fsync_ms
+ * (0 - только при смене сегмента и остановке). Он же заранее создает следующий сегмент,
+ * поэтому и смена сегмента обычно не ждет файловой системы. Запись выполняется после
+ * коммита в БД и в транзакцию не входит.
+ *
+ * Сегменты - файлы orders-<seq первой записи>.journal размером taxi.journal.segment_mb
+ * в каталоге taxi.journal.dir. Журнал включается заданием каталога
+ */
+public class OrderJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderJournal.class);
+
+    private static final String DIR = System.getProperty("taxi.journal.dir");
+    private static final int SEGMENT_MB = Integer.getInteger("taxi.journal.segment_mb", 64);
+    private static final long FSYNC_MS = Long.getLong("taxi.journal.fsync_ms", 1000);
+
+    private static final String PREFIX = "orders-";
+    private static final String SUFFIX = ".journal";
+    // Раз в столько миллисекунд фоновый поток проверяет, не пора ли готовить следующий сегмент
+    private static final long MAINTENANCE_MS = 200;
+
+    private final Path dir;
+    private final int segmentRecords;
+    private final ScheduledExecutorService background;
+
+    // Под блокировкой this
+    private Segment current;
+    private Segment next;
+    private long lastSeq;
+    private final List<Segment> retired = new ArrayList<>();
+    // Для фонового сброса: до какой записи текущий сегмент уже на диске
+    private long forcedSeq;
+
+    private static class Holder {
+        private static final OrderJournal INSTANCE = create();
+
+        private static OrderJournal create() {
+            if (DIR == null || DIR.isEmpty()) {
+                return null;
+            }
+            try {
+                return new OrderJournal(Paths.get(DIR), SEGMENT_MB * 1024 * 1024, FSYNC_MS);
+            } catch (IOException e) {
+                log.error("Журнал заказов не открыт: {}", DIR, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Журнал, если задан каталог taxi.journal.dir, иначе null
+     */
+    public static OrderJournal getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    OrderJournal(Path dir, int segmentBytes, long fsyncMillis) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.segmentRecords = Math.max(1, segmentBytes / JournalRecord.SIZE);
+        openLastSegment();
+
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(this::prepareNextSegment, MAINTENANCE_MS, MAINTENANCE_MS,
+                TimeUnit.MILLISECONDS);
+        if (fsyncMillis > 0) {
+            background.scheduleWithFixedDelay(this::force, fsyncMillis, fsyncMillis, TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "order-journal-close"));
+        log.info("Журнал заказов: {}, последняя запись #{}", dir, lastSeq);
+    }
+
+    // ЗАПИСЬ
+
+    /**
+     * Заказ сохранен; previousStatus - статус до изменения (null для нового заказа)
+     */
+    public void orderSaved(String previousStatus, Order order) {
+        if (order == null || order.getId() == null) {
+            return;
+        }
+        // У связей нужен только id - он есть и у незагруженной ссылки Hibernate
+        append(JournalRecord.SAVED, previousStatus, order.getStatus(), order.getId(),
+                order.getDriver() != null ? order.getDriver().getId() : null,
+                order.getCar() != null ? order.getCar().getId() : null,
+                order.getWaybill() != null ? order.getWaybill().getId() : null,
+                order.getPrice(), order.getDistanceKm());
+    }
+
+    public void orderDeleted(String previousStatus, Long orderId) {
+        if (orderId != null) {
+            append(JournalRecord.DELETED, previousStatus, null, orderId, null, null, null, null, null);
+        }
+    }
+
+    private void append(byte type, String previousStatus, String status, long orderId,
+                        Long driverId, Long carId, Long waybillId, Double price, Double distanceKm) {
+        try {
+            synchronized (this) {
+                if (current.count == segmentRecords) {
+                    roll();
+                }
+                JournalRecord record = new JournalRecord(type, previousStatus, status, lastSeq + 1,
+                        System.currentTimeMillis(), orderId, idOrZero(driverId), idOrZero(carId), idOrZero(waybillId),
+                        price != null ? price : Double.NaN, distanceKm != null ? distanceKm : Double.NaN);
+                current.buffer.position(current.count * JournalRecord.SIZE);
+                record.encode(current.buffer);
+                current.count++;
+                lastSeq++;
+            }
+        } catch (IOException | RuntimeException e) {
+            // Журнал вторичен: сбой записи не должен ломать работу с заказом
+            log.error("Не удалось записать в журнал заказ #{}", orderId, e);
+        }
+    }
+
+    private void roll() throws IOException {
+        Segment full = current;
+        current = next != null && next.firstSeq == lastSeq + 1 ? next : Segment.create(dir, lastSeq + 1, segmentRecords);
+        next = null;
+        retired.add(full);
+        background.execute(this::closeRetired);
+    }
+
+    /**
+     * Последняя записанная запись
+     */
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    // ФОНОВЫЕ ЗАДАЧИ
+
+    private void prepareNextSegment() {
+        long firstSeq;
+        synchronized (this) {
+            // Заранее, когда текущий заполнен наполовину
+            if (next != null || current.count < segmentRecords / 2) {
+                return;
+            }
+            firstSeq = current.firstSeq + segmentRecords;
+        }
+        try {
+            Segment prepared = Segment.create(dir, firstSeq, segmentRecords);
+            synchronized (this) {
+                if (next == null && current.firstSeq < firstSeq) {
+                    next = prepared;
+                    return;
+                }
+            }
+            prepared.channel.close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось подготовить сегмент журнала #{}", firstSeq, e);
+        }
+    }
+
+    /**
+     * Сбрасывает на диск записанное в текущий сегмент
+     */
+    public void force() {
+        Segment segment;
+        int from;
+        int count;
+        synchronized (this) {
+            if (forcedSeq == lastSeq) {
+                return;
+            }
+            segment = current;
+            // Записи до forcedSeq уже на диске; если он из прошлого сегмента, текущий сбрасывается
+            // с начала (прошлый целиком сбросит closeRetired)
+            from = forcedSeq >= segment.firstSeq ? (int) (forcedSeq - segment.firstSeq + 1) : 0;
+            count = segment.count;
+            forcedSeq = lastSeq;
+        }
+        try {
+            // Только измененный хвост: страницы до него уже на диске
+            segment.buffer.force(from * JournalRecord.SIZE, (count - from) * JournalRecord.SIZE);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сбросить журнал заказов на диск", e);
+        }
+    }
+
+    private void closeRetired() {
+        List<Segment> segments;
+        synchronized (this) {
+            segments = new ArrayList<>(retired);
+            retired.clear();
+        }
+        for (Segment segment : segments) {
+            try {
+                segment.buffer.force();
+                segment.channel.close();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Не удалось закрыть сегмент журнала {}", segment.path, e);
+            }
+        }
+    }
+
+    public void close() {
+        background.shutdown();
+        closeRetired();
+        synchronized (this) {
+            forcedSeq = -1;
+        }
+        force();
+    }
+
+    // ЧТЕНИЕ
+
+    /**
+     * Проходит по записям журнала с номером больше afterSeq в порядке записи.
+     * Читает файлы, БД не нужна: работает и для журнала, скопированного с сервера
+     */
+    public static void replay(Path dir, long afterSeq, Consumer<JournalRecord> consumer) throws IOException {
+        List<Path> segments = listSegments(dir);
+        for (int i = 0; i < segments.size(); i++) {
+            // Сегмент целиком раньше afterSeq - его не читаем
+            if (i + 1 < segments.size() && firstSeqOf(segments.get(i + 1)) <= afterSeq + 1) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                for (int offset = 0; ; offset += JournalRecord.SIZE) {
+                    JournalRecord record = JournalRecord.decode(buffer, offset);
+                    if (record == null) {
+                        break;
+                    }
+                    if (record.getSeq() > afterSeq) {
+                        consumer.accept(record);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Записи этого журнала после afterSeq (см. replay(Path, long, Consumer))
+     */
+    public void replay(long afterSeq, Consumer<JournalRecord> consumer) {
+        try {
+            replay(dir, afterSeq, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // СЕГМЕНТЫ
+
+    /**
+     * Открывает последний непустой сегмент и находит в нем конец записей.
+     * Пустые сегменты после него - заготовленные prepareNextSegment, но не начатые: они удаляются,
+     * иначе нумерация продолжилась бы с заготовки, перескочив незаполненный хвост предыдущего
+     */
+    private void openLastSegment() throws IOException {
+        List<Path> segments = listSegments(dir);
+        int lastIndex = segments.size() - 1;
+        while (lastIndex > 0 && !hasRecords(segments.get(lastIndex))) {
+            log.info("Удален пустой сегмент журнала {}", segments.get(lastIndex));
+            Files.delete(segments.get(lastIndex));
+            lastIndex--;
+        }
+        if (lastIndex < 0) {
+            current = Segment.create(dir, 1, segmentRecords);
+            return;
+        }
+        Path last = segments.get(lastIndex);
+        current = Segment.open(last, firstSeqOf(last), segmentRecords);
+        while (current.count < segmentRecords
+                && JournalRecord.decode(current.buffer, current.count * JournalRecord.SIZE) != null) {
+            current.count++;
+        }
+        lastSeq = current.firstSeq + current.count - 1;
+        forcedSeq = lastSeq;
+        // После сбоя за недописанной записью могут остаться ранее сброшенные на диск -
+        // затираем их до первого пустого места, чтобы они не ожили между новыми записями
+        byte[] empty = new byte[JournalRecord.SIZE];
+        int wipeFrom = current.count * JournalRecord.SIZE;
+        int offset = wipeFrom;
+        while (offset < current.buffer.limit() && current.buffer.get(offset + 4) != 0) {
+            current.buffer.put(offset, empty);
+            offset += JournalRecord.SIZE;
+        }
+        // Сразу на диск: фоновый сброс начинает с новых записей и до затертых дальше них не дойдет
+        if (offset > wipeFrom) {
+            current.buffer.force(wipeFrom, offset - wipeFrom);
+        }
+    }
+
+    /**
+     * Есть ли в сегменте хотя бы одна целая запись
+     */
+    private static boolean hasRecords(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer first = ByteBuffer.allocate(JournalRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(first, 0);
+            return JournalRecord.decode(first, 0) != null;
+        }
+    }
+
+    private static List<Path> listSegments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long firstSeqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static long idOrZero(Long id) {
+        return id != null ? id : 0;
+    }
+
+    /**
+     * Файл сегмента, целиком отображенный в память
+     */
+    private static final class Segment {
+        final Path path;
+        final long firstSeq;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int count;
+
+        private Segment(Path path, long firstSeq, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSeq = firstSeq;
+            this.channel = channel;
+            this.buffer = buffer;
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        static Segment create(Path dir, long firstSeq, int records) throws IOException {
+            // Номер с ведущими нулями - сортировка имен совпадает с порядком записей
+            return open(dir.resolve(String.format("%s%020d%s", PREFIX, firstSeq, SUFFIX)), firstSeq, records);
+        }
+
+        static Segment open(Path path, long firstSeq, int records) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) records * JournalRecord.SIZE);
+            return new Segment(path, firstSeq, channel, buffer);
+        }
+    }
+}
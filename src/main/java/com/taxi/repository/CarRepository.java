@@ -1,34 +1,42 @@
 package com.taxi.repository;
 
 import com.taxi.entity.Car;
+import com.taxi.entity.Waybill;
 import com.taxi.util.HibernateUtil;
+import com.taxi.util.LatencyMetrics;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 public class CarRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(CarRepository.class);
+
     /**
      * Получить все автомобили
      */
 
 
     public List<Car> findAll() {
-        System.out.println("CarRepository.findAll() вызван");
-
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findAll");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            System.out.println(" Сессия Hibernate открыта");
-
-            List<Car> cars = session.createQuery("FROM Car", Car.class).list();
-            System.out.println("Найдено записей: " + cars.size());
+            List<Car> cars = session.createQuery("FROM Car", Car.class)
+                    .setCacheable(true)
+                    .list();
+            log.debug("findAll(): найдено записей: {}", cars.size());
 
             return cars;
 
         } catch (Exception e) {
-            System.err.println(" ОШИБКА в CarRepository.findAll(): " + e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка в findAll()", e);
             return List.of(); // возвращаем пустой список вместо null
+        } finally {
+            timer.close();
         }
     }
 
@@ -36,11 +44,14 @@ public class CarRepository {
      * Найти автомобиль по ID
      */
     public Car findById(Long id) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findById");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.get(Car.class, id);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findById()", e);
             return null;
+        } finally {
+            timer.close();
         }
     }
 
@@ -49,6 +60,7 @@ public class CarRepository {
      */
     public Car save(Car car) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.save");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             if (car.getId() == null) {
@@ -57,12 +69,17 @@ public class CarRepository {
                 car = session.merge(car);
             }
             transaction.commit();
-            return car;
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в save()", e);
             throw new RuntimeException("Ошибка сохранения автомобиля", e);
+        } finally {
+            timer.close();
         }
+        // Индексы - после фиксации и вне транзакционного try: их сбой не откатывает сохраненное
+        FleetIndex.getInstance().refreshCar(car.getId());
+        SearchIndex.getInstance().refreshCar(car.getId());
+        return car;
     }
 
     /**
@@ -70,16 +87,21 @@ public class CarRepository {
      */
     public Car update(Car car) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.update");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             car = session.merge(car);
             transaction.commit();
-            return car;
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в update()", e);
             throw new RuntimeException("Ошибка обновления автомобиля", e);
+        } finally {
+            timer.close();
         }
+        FleetIndex.getInstance().refreshCar(car.getId());
+        SearchIndex.getInstance().refreshCar(car.getId());
+        return car;
     }
 
     /**
@@ -87,42 +109,43 @@ public class CarRepository {
      */
     public boolean delete(Long id) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.delete");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             Car car = session.get(Car.class, id);
-            if (car != null) {
-                session.remove(car);
-                transaction.commit();
-                return true;
+            if (car == null) {
+                return false;
             }
-            return false;
+            session.remove(car);
+            transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в delete()", e);
             return false;
+        } finally {
+            timer.close();
         }
+        FleetIndex.getInstance().carRemoved(id);
+        SearchIndex.getInstance().carRemoved(id);
+        return true;
     }
 
     /**
-     * Найти автомобили по модели
+     * Найти автомобили по модели (по SearchIndex, без просмотра таблицы), по номеру
      */
     public List<Car> findByModel(String model) {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
-                            "FROM Car WHERE LOWER(model) LIKE LOWER(:model) ORDER BY licensePlate",
-                            Car.class)
-                    .setParameter("model", "%" + model + "%")
-                    .list();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return List.of();
-        }
+        List<Car> cars = new ArrayList<>(model == null || model.isBlank()
+                ? findAll()
+                : findByIds(SearchIndex.getInstance().findIds(model, SearchIndex.Field.CAR_MODEL)));
+        cars.sort(Comparator.comparing(Car::getLicensePlate, Comparator.nullsLast(Comparator.naturalOrder())));
+        return cars;
     }
 
     /**
      * Найти автомобиль по номеру
      */
     public Car findByLicensePlate(String licensePlate) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findByLicensePlate");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM Car WHERE licensePlate = :licensePlate",
@@ -130,8 +153,10 @@ public class CarRepository {
                     .setParameter("licensePlate", licensePlate)
                     .uniqueResult();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findByLicensePlate()", e);
             return null;
+        } finally {
+            timer.close();
         }
     }
 
@@ -139,6 +164,7 @@ public class CarRepository {
      * Получить автомобили с пробегом больше указанного
      */
     public List<Car> findByMileageGreaterThan(int mileage) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findByMileageGreaterThan");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM Car WHERE mileageKm > :mileage ORDER BY mileageKm DESC",
@@ -146,8 +172,93 @@ public class CarRepository {
                     .setParameter("mileage", mileage)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findByMileageGreaterThan()", e);
+            return List.of();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Найти автомобили по списку ID вместе с водителями (связь не ленивая) - одним запросом
+     */
+    public List<Car> findByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findByIds");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                            "FROM Car c LEFT JOIN FETCH c.currentDriver WHERE c.id IN :ids ORDER BY c.id",
+                            Car.class)
+                    .setParameter("ids", ids)
+                    .list();
+        } catch (Exception e) {
+            log.error("Ошибка в findByIds()", e);
             return List.of();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Состояние автомобилей для FleetIndex. Строки: [0] id, [1] активен, [2] в ремонте,
+     * [3] последний техосмотр пройден (1/0), [4] число активных путевых листов.
+     * carId ограничивает выборку одним автомобилем (null - все)
+     */
+    public List<Object[]> findFleetState(Long carId) {
+        String hql = "SELECT c.id, c.isActive, c.inRepair, " +
+                "(SELECT COUNT(ti.id) FROM TechnicalInspection ti WHERE ti.car.id = c.id AND ti.isPassed = true " +
+                "AND " + TechnicalInspectionRepository.LATEST_PER_CAR + "), " +
+                "(SELECT COUNT(w.id) FROM Waybill w WHERE w.car.id = c.id AND w.status = :active) " +
+                "FROM Car c" +
+                (carId != null ? " WHERE c.id = :carId" : "");
+
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findFleetState");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            var query = session.createQuery(hql, Object[].class)
+                    .setParameter("active", Waybill.WaybillStatus.ACTIVE);
+            if (carId != null) {
+                query.setParameter("carId", carId);
+            }
+            return query.list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Закрепление автомобилей за водителями. Строки: [0] id водителя, [1] id автомобиля
+     */
+    public List<Object[]> findDriverCars() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findDriverCars");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                    "SELECT d.id, d.currentCar.id FROM Driver d WHERE d.currentCar IS NOT NULL",
+                    Object[].class
+            ).list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Текст автомобилей для SearchIndex. Строки: [0] id, [1] гос. номер, [2] VIN, [3] марка, [4] модель.
+     * carId ограничивает выборку одним автомобилем (null - все)
+     */
+    public List<Object[]> findSearchFields(Long carId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findSearchFields");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            var query = session.createQuery(
+                    "SELECT c.id, c.licensePlate, c.vin, c.brand, c.model FROM Car c" +
+                            (carId != null ? " WHERE c.id = :carId" : " ORDER BY c.id"),
+                    Object[].class);
+            if (carId != null) {
+                query.setParameter("carId", carId);
+            }
+            return query.list();
+        } finally {
+            timer.close();
         }
     }
 
@@ -156,6 +267,7 @@ public class CarRepository {
      */
     public boolean updateMileage(Long carId, int newMileage) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.updateMileage");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
 
@@ -169,8 +281,10 @@ public class CarRepository {
             return false;
         } catch (Exception e) {
             if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            log.error("Ошибка в updateMileage()", e);
             return false;
+        } finally {
+            timer.close();
         }
     }
 
@@ -178,11 +292,14 @@ public class CarRepository {
      * Получить общее количество автомобилей
      */
     public long count() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.count");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return (Long) session.createQuery("SELECT COUNT(c) FROM Car c").uniqueResult();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в count()", e);
             return 0;
+        } finally {
+            timer.close();
         }
     }
 
@@ -190,12 +307,15 @@ public class CarRepository {
      * Получить средний пробег автомобилей
      */
     public double getAverageMileage() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.getAverageMileage");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             Double avg = (Double) session.createQuery("SELECT AVG(c.mileageKm) FROM Car c").uniqueResult();
             return avg != null ? avg : 0.0;
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в getAverageMileage()", e);
             return 0.0;
+        } finally {
+            timer.close();
         }
     }
 
@@ -203,14 +323,18 @@ public class CarRepository {
      * Найти доступные автомобили (не в ремонте и активные)
      */
     public List<Car> findAvailableCars() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findAvailableCars");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM Car c WHERE c.isActive = true AND c.inRepair = false ORDER BY c.licensePlate",
                             Car.class)
+                    .setCacheable(true)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findAvailableCars()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
@@ -219,14 +343,17 @@ public class CarRepository {
      * Это упрощенный метод, реальная логика должна проверять дату последнего техосмотра
      */
     public List<Car> findCarsRequiringInspection() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findCarsRequiringInspection");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM Car c WHERE c.mileageKm > 15000 AND c.isActive = true ORDER BY c.mileageKm DESC",
                             Car.class)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findCarsRequiringInspection()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
@@ -234,14 +361,18 @@ public class CarRepository {
      * Найти автомобили в ремонте
      */
     public List<Car> findCarsInRepair() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findCarsInRepair");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM Car c WHERE c.inRepair = true ORDER BY c.licensePlate",
                             Car.class)
+                    .setCacheable(true)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findCarsInRepair()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
@@ -249,14 +380,18 @@ public class CarRepository {
      * Найти активные автомобили
      */
     public List<Car> findActiveCars() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("CarRepository.findActiveCars");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM Car c WHERE c.isActive = true ORDER BY c.licensePlate",
                             Car.class)
+                    .setCacheable(true)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findActiveCars()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 }
\ No newline at end of file
@@ -3,44 +3,83 @@ package com.taxi.repository;
 import com.taxi.entity.Car;
 import com.taxi.entity.Driver;
 import com.taxi.entity.User;
+import com.taxi.entity.Waybill;
 import com.taxi.util.HibernateUtil;
+import com.taxi.util.LatencyMetrics;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 
 public class DriverRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(DriverRepository.class);
+
     // Получить всех водителей
     public List<Driver> findAll() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findAll");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery("FROM Driver", Driver.class).list();
+            return session.createQuery("FROM Driver", Driver.class)
+                    .setCacheable(true)
+                    .list();
+        } finally {
+            timer.close();
         }
     }
 
     // Найти водителя по ID
     public Driver findById(Long id) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findById");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.get(Driver.class, id);
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Найти водителей по списку ID (из кэша второго уровня, недостающих - одним запросом)
+    public List<Driver> findByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findByIds");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            List<Driver> drivers = session.byMultipleIds(Driver.class).multiLoad(ids);
+            drivers.removeIf(Objects::isNull);
+            return drivers;
+        } finally {
+            timer.close();
         }
     }
 
     // Сохранить водителя
     public void save(Driver driver) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.save");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             session.saveOrUpdate(driver);
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в save()", e);
+            return;
+        } finally {
+            timer.close();
         }
+        // Индексы - после фиксации и вне транзакционного try: их сбой не откатывает сохраненное
+        FleetIndex.getInstance().driverChanged(driver.getId(), carId(driver));
+        SearchIndex.getInstance().refreshDriver(driver.getId());
     }
 
     // Удалить водителя
     public void delete(Long id) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.delete");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             Driver driver = session.get(Driver.class, id);
@@ -49,33 +88,46 @@ public class DriverRepository {
             }
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в delete()", e);
+            return;
+        } finally {
+            timer.close();
         }
+        FleetIndex.getInstance().driverRemoved(id);
+        SearchIndex.getInstance().driverRemoved(id);
     }
 
     public List<Driver> findDriversWithoutCar() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findDriversWithoutCar");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                     "FROM Driver d WHERE d.currentCar IS NULL AND d.isActive = true",
                     Driver.class
             ).list();
+        } finally {
+            timer.close();
         }
     }
 
     // найти водителя по авто
     public List<Driver> findDriversByCarId(Long carId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findDriversByCarId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                     "FROM Driver d WHERE d.currentCar.id = :carId",
                     Driver.class
             ).setParameter("carId", carId).list();
+        } finally {
+            timer.close();
         }
     }
 
     // назначить авто
     public void assignCarToDriver(Long driverId, Long carId) {
         Transaction transaction = null;
+        boolean assigned = false;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.assignCarToDriver");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
 
@@ -86,18 +138,26 @@ public class DriverRepository {
             if (driver != null && car != null) {
                 driver.setCurrentCar(car);
                 session.saveOrUpdate(driver);
+                assigned = true;
             }
 
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в assignCarToDriver()", e);
+            return;
+        } finally {
+            timer.close();
+        }
+        if (assigned) {
+            FleetIndex.getInstance().driverChanged(driverId, carId);
         }
     }
 
     // отвязать авто
     public void unassignCarFromDriver(Long driverId) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.unassignCarFromDriver");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
 
@@ -109,9 +169,13 @@ public class DriverRepository {
 
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в unassignCarFromDriver()", e);
+            return;
+        } finally {
+            timer.close();
         }
+        FleetIndex.getInstance().driverChanged(driverId, null);
     }
 
     /**
@@ -119,28 +183,36 @@ public class DriverRepository {
      */
     public void update(Driver driver) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.update");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             session.merge(driver); // Используем merge для обновления
             transaction.commit();
-            System.out.println(" Водитель обновлен: " + driver.getFullName());
         } catch (Exception e) {
-            if (transaction != null) {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
-            System.err.println(" Ошибка при обновлении водителя: " + e.getMessage());
+            log.error("Ошибка при обновлении водителя", e);
             throw e;
+        } finally {
+            timer.close();
         }
+        FleetIndex.getInstance().driverChanged(driver.getId(), carId(driver));
+        SearchIndex.getInstance().refreshDriver(driver.getId());
+        log.debug("Водитель обновлен: {}", driver.getFullName());
     }
 
     public Driver findByLicenseNumber(String licenseNumber) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findByLicenseNumber");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                     "FROM Driver WHERE licenseNumber = :license", Driver.class
             ).setParameter("license", licenseNumber).uniqueResult();
         } catch (Exception e) {
-            System.err.println("Ошибка при поиске водителя по номеру прав: " + e.getMessage());
+            log.error("Ошибка при поиске водителя по номеру прав", e);
             return null;
+        } finally {
+            timer.close();
         }
     }
 
@@ -148,15 +220,19 @@ public class DriverRepository {
      * Найти водителя по ID пользователя (ОБНОВЛЕНО для связи с User)
      */
     public Driver findByUserId(Long userId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findByUserId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM Driver d WHERE d.user.id = :userId",
                             Driver.class
                     ).setParameter("userId", userId)
+                    .setCacheable(true)
                     .uniqueResult();
         } catch (Exception e) {
-            System.err.println("Ошибка при поиске водителя по ID пользователя: " + e.getMessage());
+            log.error("Ошибка при поиске водителя по ID пользователя", e);
             return null;
+        } finally {
+            timer.close();
         }
     }
 
@@ -164,15 +240,19 @@ public class DriverRepository {
      * Найти всех водителей с информацией о пользователях
      */
     public List<Driver> findAllWithUsers() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findAllWithUsers");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM Driver d LEFT JOIN FETCH d.user ORDER BY d.fullName", Driver.class)
                     .list();
+        } finally {
+            timer.close();
         }
     }
 
     // Найти пользователей без привязанных водителей
     public List<User> findUsersWithoutDriver(String userType) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findUsersWithoutDriver");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "SELECT u FROM User u " +
@@ -182,6 +262,96 @@ public class DriverRepository {
                             User.class
                     ).setParameter("userType", userType)
                     .list();
+        } finally {
+            timer.close();
         }
     }
+
+    /**
+     * Водители, которым можно назначить заказ: активный путевой лист, действующий медосмотр
+     * (последний осмотр пройден не раньше validFrom) и нет заказов в статусах ASSIGNED/IN_PROGRESS.
+     * Строки: [0] id водителя, [1] id путевого листа, [2] id автомобиля путевого листа,
+     * [3] начало смены, [4] время завершения последнего заказа (или null).
+     * driverId ограничивает выборку одним водителем (null - все).
+     * Ошибка БД не глушится: пустой список означал бы "кандидатов нет", и набор диспетчера опустел бы
+     */
+    public List<Object[]> findDispatchCandidates(Long driverId, LocalDateTime medicalValidFrom) {
+        String hql = "SELECT d.id, w.id, w.car.id, w.startTime, " +
+                "(SELECT MAX(o.completionTime) FROM Order o WHERE o.driver.id = d.id AND o.status = 'COMPLETED') " +
+                "FROM Waybill w JOIN w.driver d " +
+                "WHERE w.status = :active AND d.isActive = true " +
+                (driverId != null ? "AND d.id = :driverId " : "") +
+                "AND NOT EXISTS (SELECT b.id FROM Order b WHERE b.driver.id = d.id " +
+                "AND b.status IN ('ASSIGNED', 'IN_PROGRESS')) " +
+                "AND EXISTS (SELECT mc.id FROM MedicalCheck mc WHERE mc.driver.id = d.id " +
+                "AND mc.isPassed = true AND mc.checkDate >= :validFrom " +
+                "AND NOT EXISTS (SELECT f.id FROM MedicalCheck f WHERE f.driver.id = d.id " +
+                "AND f.isPassed = false AND f.checkDate > mc.checkDate))";
+
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findDispatchCandidates");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            var query = session.createQuery(hql, Object[].class)
+                    .setParameter("active", Waybill.WaybillStatus.ACTIVE)
+                    .setParameter("validFrom", medicalValidFrom);
+            if (driverId != null) {
+                query.setParameter("driverId", driverId);
+            }
+            return query.list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Допуск водителей к работе. Строки: [0] id водителя, [1] время последнего медосмотра,
+     * [2] время последнего пройденного медосмотра, [3] id активного путевого листа,
+     * [4] число заказов в статусах ASSIGNED/IN_PROGRESS.
+     * driverId ограничивает выборку одним водителем (null - все).
+     * Ошибка БД не глушится: пустой список означал бы "водителей нет", и проекция опустела бы
+     */
+    public List<Object[]> findEligibility(Long driverId) {
+        String hql = "SELECT d.id, " +
+                "(SELECT MAX(mc.checkDate) FROM MedicalCheck mc WHERE mc.driver.id = d.id), " +
+                "(SELECT MAX(p.checkDate) FROM MedicalCheck p WHERE p.driver.id = d.id AND p.isPassed = true), " +
+                "(SELECT MAX(w.id) FROM Waybill w WHERE w.driver.id = d.id AND w.status = :active), " +
+                "(SELECT COUNT(o.id) FROM Order o WHERE o.driver.id = d.id AND o.status IN ('ASSIGNED', 'IN_PROGRESS')) " +
+                "FROM Driver d" +
+                (driverId != null ? " WHERE d.id = :driverId" : "");
+
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findEligibility");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            var query = session.createQuery(hql, Object[].class)
+                    .setParameter("active", Waybill.WaybillStatus.ACTIVE);
+            if (driverId != null) {
+                query.setParameter("driverId", driverId);
+            }
+            return query.list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Текст водителей для SearchIndex. Строки: [0] id, [1] ФИО, [2] номер прав, [3] телефон.
+     * driverId ограничивает выборку одним водителем (null - все)
+     */
+    public List<Object[]> findSearchFields(Long driverId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("DriverRepository.findSearchFields");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            var query = session.createQuery(
+                    "SELECT d.id, d.fullName, d.licenseNumber, d.phone FROM Driver d" +
+                            (driverId != null ? " WHERE d.id = :driverId" : " ORDER BY d.id"),
+                    Object[].class);
+            if (driverId != null) {
+                query.setParameter("driverId", driverId);
+            }
+            return query.list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    private static Long carId(Driver driver) {
+        return driver.getCurrentCar() != null ? driver.getCurrentCar().getId() : null;
+    }
 }
@@ -0,0 +1,59 @@
+package com.taxi.repository;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+
+import java.util.Map;
+
+/**
+ * План загрузки связей заказов и путевых листов под сценарий использования.
+ * Связи Order и Waybill ленивые, поэтому все, что понадобится после закрытия сессии,
+ * должно быть загружено планом. Каждому плану соответствует именованный граф сущности
+ * с именем "Сущность.план", например "Order.list"
+ */
+public enum FetchPlan {
+    /**
+     * Списки и таблицы: водитель и автомобиль
+     */
+    LIST("list"),
+
+    /**
+     * Карточка одной записи: все связи
+     */
+    DETAIL("detail"),
+
+    /**
+     * Отчеты и расчеты: только собственные поля, связи не загружаются
+     */
+    REPORT("report");
+
+    private static final String LOAD_GRAPH_HINT = "jakarta.persistence.loadgraph";
+
+    private final String suffix;
+
+    FetchPlan(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * Имя графа для сущности, например "Waybill.detail"
+     */
+    public String graphName(Class<?> entityClass) {
+        return entityClass.getSimpleName() + "." + suffix;
+    }
+
+    /**
+     * Создает запрос с примененным планом: связи из графа загружаются тем же SELECT через JOIN
+     */
+    <T> Query<T> createQuery(Session session, String hql, Class<T> entityClass) {
+        return session.createQuery(hql, entityClass)
+                .setHint(LOAD_GRAPH_HINT, session.getEntityGraph(graphName(entityClass)));
+    }
+
+    /**
+     * Подсказки для Session.find
+     */
+    Map<String, Object> hints(Session session, Class<?> entityClass) {
+        return Map.of(LOAD_GRAPH_HINT, session.getEntityGraph(graphName(entityClass)));
+    }
+}
@@ -0,0 +1,285 @@
+package com.taxi.repository;
+
+import com.taxi.util.Background;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Состояние автопарка в памяти для выборок доступных автомобилей и счетчиков.
+ *
+ * Каждый автомобиль получает плотный порядковый номер - бит в наборах: активен, в ремонте,
+ * закреплен за водителем, последний техосмотр пройден, в активной смене. Выборка вроде
+ * "активен, не в ремонте, свободен" - побитовые операции над наборами, счетчик - число
+ * установленных битов, без обращения к БД.
+ *
+ * Строится двумя запросами, дальше обновляется записями репозиториев (и сервисов, пишущих
+ * в обход них): автомобиль перечитывается одним запросом, закрепление водителя меняется
+ * без запроса. Полная перестройка - Background.scheduleRebuild, она же освобождает номера удаленных
+ */
+public final class FleetIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(FleetIndex.class);
+
+    private static final long REBUILD_INTERVAL_SECONDS = 60;
+
+    private final CarRepository carRepository = new CarRepository();
+
+    // Все поля ниже - под монитором this
+    // id автомобиля -> порядковый номер
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    // порядковый номер -> id автомобиля
+    private long[] carIds = new long[64];
+    private int size;
+    // водитель -> закрепленный автомобиль
+    private final Map<Long, Long> driverCars = new HashMap<>();
+    // порядковый номер -> число закрепленных водителей
+    private int[] driverCounts = new int[64];
+
+    private final BitSet present = new BitSet();
+    private final BitSet active = new BitSet();
+    private final BitSet inRepair = new BitSet();
+    private final BitSet assigned = new BitSet();
+    private final BitSet validInspection = new BitSet();
+    private final BitSet onActiveWaybill = new BitSet();
+
+    private FleetIndex() {
+    }
+
+    private static class Holder {
+        private static final FleetIndex INSTANCE = create();
+
+        private static FleetIndex create() {
+            FleetIndex index = new FleetIndex();
+            index.rebuild();
+            Background.scheduleRebuild("fleet-index", REBUILD_INTERVAL_SECONDS, index::rebuild);
+            return index;
+        }
+    }
+
+    public static FleetIndex getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // ОБНОВЛЕНИЕ
+
+    /**
+     * Построить индекс заново
+     */
+    public void rebuild() {
+        List<Object[]> cars = carRepository.findFleetState(null);
+        List<Object[]> drivers = carRepository.findDriverCars();
+
+        synchronized (this) {
+            ordinals.clear();
+            driverCars.clear();
+            size = 0;
+            Arrays.fill(driverCounts, 0);
+            present.clear();
+            active.clear();
+            inRepair.clear();
+            assigned.clear();
+            validInspection.clear();
+            onActiveWaybill.clear();
+
+            for (Object[] row : cars) {
+                applyCar(row);
+            }
+            for (Object[] row : drivers) {
+                setDriverCar((Long) row[0], (Long) row[1]);
+            }
+        }
+    }
+
+    /**
+     * Перечитать состояние автомобиля: после изменения самого автомобиля, его техосмотров
+     * или путевых листов. Вызывается после фиксации, поэтому ошибка чтения не пробрасывается:
+     * запись остается прежней до ближайшей перестройки
+     */
+    public void refreshCar(Long carId) {
+        if (carId == null) {
+            return;
+        }
+        List<Object[]> rows;
+        try {
+            rows = carRepository.findFleetState(carId);
+        } catch (RuntimeException e) {
+            log.error("Ошибка обновления автомобиля {} в индексе автопарка", carId, e);
+            return;
+        }
+        synchronized (this) {
+            if (rows.isEmpty()) {
+                removeCar(carId);
+            } else {
+                applyCar(rows.get(0));
+            }
+        }
+    }
+
+    /**
+     * Автомобиль удален
+     */
+    public synchronized void carRemoved(Long carId) {
+        if (carId != null) {
+            removeCar(carId);
+        }
+    }
+
+    /**
+     * Водитель сохранен с автомобилем carId (null - без автомобиля). Прежний автомобиль
+     * водителя индекс помнит сам
+     */
+    public synchronized void driverChanged(Long driverId, Long carId) {
+        if (driverId != null) {
+            setDriverCar(driverId, carId);
+        }
+    }
+
+    /**
+     * Водитель удален
+     */
+    public synchronized void driverRemoved(Long driverId) {
+        if (driverId != null) {
+            setDriverCar(driverId, null);
+        }
+    }
+
+    // ВЫБОРКИ
+
+    /**
+     * Доступные автомобили: активен, не в ремонте, не закреплен за водителем
+     */
+    public synchronized List<Long> getAvailableCarIds() {
+        return ids(available());
+    }
+
+    public synchronized long countAvailable() {
+        return available().cardinality();
+    }
+
+    /**
+     * Автомобили, на которых можно открыть смену: последний техосмотр пройден
+     * и автомобиль не в активной смене
+     */
+    public synchronized List<Long> getShiftReadyCarIds() {
+        return ids(shiftReady());
+    }
+
+    public synchronized List<Long> getActiveCarIds() {
+        return ids(active);
+    }
+
+    public synchronized List<Long> getInRepairCarIds() {
+        return ids(inRepair);
+    }
+
+    public synchronized long countTotal() {
+        return present.cardinality();
+    }
+
+    public synchronized long countActive() {
+        return active.cardinality();
+    }
+
+    public synchronized long countInRepair() {
+        return inRepair.cardinality();
+    }
+
+    /**
+     * Пройден ли последний техосмотр автомобиля
+     */
+    public synchronized boolean hasValidInspection(Long carId) {
+        Integer ordinal = carId != null ? ordinals.get(carId) : null;
+        return ordinal != null && validInspection.get(ordinal);
+    }
+
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+
+    private BitSet available() {
+        BitSet result = (BitSet) active.clone();
+        result.andNot(inRepair);
+        result.andNot(assigned);
+        return result;
+    }
+
+    private BitSet shiftReady() {
+        BitSet result = (BitSet) validInspection.clone();
+        result.andNot(onActiveWaybill);
+        return result;
+    }
+
+    private List<Long> ids(BitSet bits) {
+        List<Long> ids = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            ids.add(carIds[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Строка CarRepository.findFleetState -> биты автомобиля
+     */
+    private void applyCar(Object[] row) {
+        int ordinal = ordinal((Long) row[0]);
+        present.set(ordinal);
+        // is_active по умолчанию true - незаполненное значение считаем активным
+        active.set(ordinal, !Boolean.FALSE.equals(row[1]));
+        inRepair.set(ordinal, Boolean.TRUE.equals(row[2]));
+        validInspection.set(ordinal, ((Number) row[3]).longValue() > 0);
+        onActiveWaybill.set(ordinal, ((Number) row[4]).longValue() > 0);
+    }
+
+    /**
+     * Номер автомобиля остается занятым до перестройки: закрепленные водители могут сослаться на него
+     */
+    private void removeCar(Long carId) {
+        Integer ordinal = ordinals.get(carId);
+        if (ordinal == null) {
+            return;
+        }
+        present.clear(ordinal);
+        active.clear(ordinal);
+        inRepair.clear(ordinal);
+        validInspection.clear(ordinal);
+        onActiveWaybill.clear(ordinal);
+    }
+
+    private void setDriverCar(Long driverId, Long carId) {
+        Long previous = carId != null ? driverCars.put(driverId, carId) : driverCars.remove(driverId);
+        if (previous != null && previous.equals(carId)) {
+            return;
+        }
+        if (previous != null) {
+            int ordinal = ordinal(previous);
+            if (--driverCounts[ordinal] <= 0) {
+                driverCounts[ordinal] = 0;
+                assigned.clear(ordinal);
+            }
+        }
+        if (carId != null) {
+            int ordinal = ordinal(carId);
+            driverCounts[ordinal]++;
+            assigned.set(ordinal);
+        }
+    }
+
+    private int ordinal(Long carId) {
+        Integer ordinal = ordinals.get(carId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (size == carIds.length) {
+            carIds = Arrays.copyOf(carIds, size * 2);
+            driverCounts = Arrays.copyOf(driverCounts, size * 2);
+        }
+        carIds[size] = carId;
+        ordinals.put(carId, size);
+        return size++;
+    }
+}
@@ -0,0 +1,61 @@
+package com.taxi.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Строка отчета по доходам - конструкторная проекция HQL (OrderRepository.streamIncomeReport).
+ * Только поля из БД, как есть; подстановки и расчеты делает ReportService
+ */
+public final class IncomeReportRow {
+    private final Long orderId;
+    private final LocalDateTime orderTime;
+    private final LocalDateTime completionTime;
+    private final Long driverId;
+    private final String driverName;
+    private final Long carId;
+    private final String carLicense;
+    private final String carModel;
+    private final Double distanceKm;
+    private final Double price;
+    private final String customerName;
+    private final String customerPhone;
+    private final String pickupAddress;
+    private final String destinationAddress;
+
+    public IncomeReportRow(Long orderId, LocalDateTime orderTime, LocalDateTime completionTime,
+                           Long driverId, String driverName,
+                           Long carId, String carLicense, String carModel,
+                           Double distanceKm, Double price,
+                           String customerName, String customerPhone,
+                           String pickupAddress, String destinationAddress) {
+        this.orderId = orderId;
+        this.orderTime = orderTime;
+        this.completionTime = completionTime;
+        this.driverId = driverId;
+        this.driverName = driverName;
+        this.carId = carId;
+        this.carLicense = carLicense;
+        this.carModel = carModel;
+        this.distanceKm = distanceKm;
+        this.price = price;
+        this.customerName = customerName;
+        this.customerPhone = customerPhone;
+        this.pickupAddress = pickupAddress;
+        this.destinationAddress = destinationAddress;
+    }
+
+    public Long getOrderId() { return orderId; }
+    public LocalDateTime getOrderTime() { return orderTime; }
+    public LocalDateTime getCompletionTime() { return completionTime; }
+    public Long getDriverId() { return driverId; }
+    public String getDriverName() { return driverName; }
+    public Long getCarId() { return carId; }
+    public String getCarLicense() { return carLicense; }
+    public String getCarModel() { return carModel; }
+    public Double getDistanceKm() { return distanceKm; }
+    public Double getPrice() { return price; }
+    public String getCustomerName() { return customerName; }
+    public String getCustomerPhone() { return customerPhone; }
+    public String getPickupAddress() { return pickupAddress; }
+    public String getDestinationAddress() { return destinationAddress; }
+}
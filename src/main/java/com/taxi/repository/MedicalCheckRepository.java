@@ -2,42 +2,64 @@ package com.taxi.repository;
 
 import com.taxi.entity.MedicalCheck;
 import com.taxi.util.HibernateUtil;
+import com.taxi.util.LatencyMetrics;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MedicalCheckRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(MedicalCheckRepository.class);
+
+    // Больше id в одном условии IN не передаем
+    public static final int MAX_IDS_PER_QUERY = 1000;
+
     // Получить все медосмотры
     public List<MedicalCheck> findAll() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.findAll");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                     "FROM MedicalCheck mc ORDER BY mc.checkDate DESC",
                     MedicalCheck.class
             ).list();
+        } finally {
+            timer.close();
         }
     }
 
     // Найти медосмотр по ID
     public MedicalCheck findById(Long id) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.findById");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.get(MedicalCheck.class, id);
+        } finally {
+            timer.close();
         }
     }
 
     // Найти медосмотры водителя
     public List<MedicalCheck> findByDriverId(Long driverId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.findByDriverId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                     "FROM MedicalCheck mc WHERE mc.driver.id = :driverId ORDER BY mc.checkDate DESC",
                     MedicalCheck.class
             ).setParameter("driverId", driverId).list();
+        } finally {
+            timer.close();
         }
     }
 
     // Получить последний медосмотр водителя
     public MedicalCheck findLatestByDriverId(Long driverId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.findLatestByDriverId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM MedicalCheck mc WHERE mc.driver.id = :driverId ORDER BY mc.checkDate DESC",
@@ -46,11 +68,14 @@ public class MedicalCheckRepository {
                     .setParameter("driverId", driverId)
                     .setMaxResults(1)
                     .uniqueResult();
+        } finally {
+            timer.close();
         }
     }
 
     // Получить последний допускающий медосмотр водителя
     public MedicalCheck findLatestPassedByDriverId(Long driverId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.findLatestPassedByDriverId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM MedicalCheck mc WHERE mc.driver.id = :driverId AND mc.isPassed = true ORDER BY mc.checkDate DESC",
@@ -59,38 +84,138 @@ public class MedicalCheckRepository {
                     .setParameter("driverId", driverId)
                     .setMaxResults(1)
                     .uniqueResult();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Найти медосмотры по списку ID вместе с водителем и врачом. Порядок - как в ids
+     */
+    public List<MedicalCheck> findByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.findByIds");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Map<Long, MedicalCheck> byId = new HashMap<>();
+            // Частями, чтобы не упереться в предел числа параметров запроса
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                List<Long> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+                for (MedicalCheck check : session.createQuery(
+                                "FROM MedicalCheck mc JOIN FETCH mc.driver LEFT JOIN FETCH mc.doctor WHERE mc.id IN :ids",
+                                MedicalCheck.class)
+                        .setParameter("ids", chunk)
+                        .list()) {
+                    byId.put(check.getId(), check);
+                }
+            }
+            List<MedicalCheck> checks = new ArrayList<>(byId.size());
+            for (Long id : ids) {
+                MedicalCheck check = byId.get(id);
+                if (check != null) {
+                    checks.add(check);
+                }
+            }
+            return checks;
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Медосмотры по фильтрам, новые первыми. null в фильтре - не ограничивать;
+     * проверки за период [from, to); ids - только среди этих медосмотров (не больше MAX_IDS_PER_QUERY)
+     */
+    public List<MedicalCheck> findFiltered(Long driverId, LocalDateTime from, LocalDateTime to,
+                                           Boolean isPassed, Boolean opensShift, List<Long> ids) {
+        StringBuilder hql = new StringBuilder(
+                "FROM MedicalCheck mc JOIN FETCH mc.driver LEFT JOIN FETCH mc.doctor WHERE 1 = 1");
+        if (driverId != null) hql.append(" AND mc.driver.id = :driverId");
+        if (from != null) hql.append(" AND mc.checkDate >= :from");
+        if (to != null) hql.append(" AND mc.checkDate < :to");
+        if (isPassed != null) hql.append(" AND mc.isPassed = :isPassed");
+        // opens_shift может быть не заполнен - считаем, что смену не открывал
+        if (Boolean.TRUE.equals(opensShift)) hql.append(" AND mc.opensShift = true");
+        if (Boolean.FALSE.equals(opensShift)) hql.append(" AND (mc.opensShift IS NULL OR mc.opensShift = false)");
+        if (ids != null) hql.append(" AND mc.id IN :ids");
+        hql.append(" ORDER BY mc.checkDate DESC");
+
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.findFiltered");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            var query = session.createQuery(hql.toString(), MedicalCheck.class);
+            if (driverId != null) query.setParameter("driverId", driverId);
+            if (from != null) query.setParameter("from", from);
+            if (to != null) query.setParameter("to", to);
+            if (isPassed != null) query.setParameter("isPassed", isPassed);
+            if (ids != null) query.setParameter("ids", ids);
+            return query.list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Текст медосмотров для SearchIndex. Строки: [0] id, [1] id водителя, [2] примечания, [3] ФИО врача.
+     * checkId ограничивает выборку одним медосмотром (null - все)
+     */
+    public List<Object[]> findSearchFields(Long checkId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.findSearchFields");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            var query = session.createQuery(
+                    "SELECT mc.id, mc.driver.id, mc.notes, doc.fullName FROM MedicalCheck mc LEFT JOIN mc.doctor doc" +
+                            (checkId != null ? " WHERE mc.id = :checkId" : " ORDER BY mc.id"),
+                    Object[].class);
+            if (checkId != null) {
+                query.setParameter("checkId", checkId);
+            }
+            return query.list();
+        } finally {
+            timer.close();
         }
     }
 
     // Сохранить медосмотр
     public void save(MedicalCheck medicalCheck) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.save");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             session.saveOrUpdate(medicalCheck);
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в save()", e);
+            return;
+        } finally {
+            timer.close();
         }
+        // Индекс - после фиксации и вне транзакционного try: его сбой не откатывает сохраненное
+        SearchIndex.getInstance().refreshMedicalCheck(medicalCheck.getId());
     }
 
     // Обновить медосмотр
     public void update(MedicalCheck medicalCheck) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.update");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             session.merge(medicalCheck);
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в update()", e);
+            return;
+        } finally {
+            timer.close();
         }
+        SearchIndex.getInstance().refreshMedicalCheck(medicalCheck.getId());
     }
 
     // Удалить медосмотр
     public void delete(Long id) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("MedicalCheckRepository.delete");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             MedicalCheck medicalCheck = session.get(MedicalCheck.class, id);
@@ -99,8 +224,12 @@ public class MedicalCheckRepository {
             }
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в delete()", e);
+            return;
+        } finally {
+            timer.close();
         }
+        SearchIndex.getInstance().medicalCheckRemoved(id);
     }
 }
\ No newline at end of file
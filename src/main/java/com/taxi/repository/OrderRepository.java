@@ -1,30 +1,67 @@
 package com.taxi.repository;
 
+import com.taxi.entity.Car;
+import com.taxi.entity.Driver;
 import com.taxi.entity.Order;
+import com.taxi.entity.Waybill;
 import com.taxi.util.HibernateUtil;
+import com.taxi.util.LatencyMetrics;
+import jakarta.persistence.LockModeType;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.query.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class OrderRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(OrderRepository.class);
+
+    // Размер порции строк, читаемой из курсора при выгрузке отчетов
+    private static final int REPORT_FETCH_SIZE = 500;
+    // Предел числа id в одном IN-списке
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
     // Существующие методы
-    public List<Order> findAll() {
+    public List<Order> findAll(FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findAll");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery("FROM Order ORDER BY orderTime DESC", Order.class).list();
+            return plan.createQuery(session, "FROM Order ORDER BY orderTime DESC", Order.class).list();
+        } finally {
+            timer.close();
         }
     }
 
-    public Order findById(Long id) {
+    public Order findById(Long id, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findById");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.get(Order.class, id);
+            return session.find(Order.class, id, plan.hints(session, Order.class));
+        } finally {
+            timer.close();
         }
     }
 
     public Order save(Order order) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.save");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             Transaction tx = session.beginTransaction();
             try {
@@ -35,26 +72,33 @@ public class OrderRepository {
                 }
                 tx.commit();
 
-                // Отладочный вывод
-                System.out.println(" Заказ сохранен: #" + order.getId() +
-                        " | Путевой лист: " + (order.getWaybill() != null ?
-                        "#" + order.getWaybill().getId() : "не привязан"));
+                if (log.isDebugEnabled()) {
+                    log.debug("Заказ сохранен: #{} | Путевой лист: {}", order.getId(),
+                            order.getWaybill() != null ? "#" + order.getWaybill().getId() : "не привязан");
+                }
 
                 return order;
             } catch (Exception e) {
                 if (tx != null && tx.isActive()) {
                     tx.rollback();
                 }
+                if (HibernateUtil.isOptimisticLockFailure(e)) {
+                    throw new IllegalStateException("Заказ #" + order.getId()
+                            + " уже изменен другим пользователем. Обновите страницу и повторите действие");
+                }
                 throw e;
             }
         } catch (Exception e) {
-            System.out.println(" Ошибка при сохранении заказа: " + e.getMessage());
+            log.error("Ошибка при сохранении заказа", e);
             throw e;
+        } finally {
+            timer.close();
         }
     }
 
     public void delete(Long id) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.delete");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             Order order = session.get(Order.class, id);
@@ -64,48 +108,276 @@ public class OrderRepository {
             transaction.commit();
         } catch (Exception e) {
             if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            log.error("Ошибка в delete()", e);
+        } finally {
+            timer.close();
         }
     }
 
+    /**
+     * Назначает новый заказ на водителя, только если у водителя нет заказов в работе.
+     * Строка водителя блокируется (SELECT ... FOR UPDATE), поэтому параллельные назначения
+     * на одного водителя выполняются по очереди, в том числе с разных узлов.
+     * Возвращает false, если заказ уже не NEW или водитель занят
+     */
+    public boolean assignIfDriverFree(Long orderId, Long driverId, Long carId, Long waybillId) {
+        Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.assignIfDriverFree");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            transaction = session.beginTransaction();
+            if (session.find(Driver.class, driverId, LockModeType.PESSIMISTIC_WRITE) == null) {
+                transaction.rollback();
+                return false;
+            }
+
+            int updated = session.createMutationQuery(
+                            "UPDATE Order o SET o.driver = :driver, o.car = :car, o.waybill = :waybill, " +
+                                    "o.status = 'ASSIGNED', o.version = o.version + 1 " +
+                                    "WHERE o.id = :orderId AND o.status = 'NEW' " +
+                                    "AND NOT EXISTS (SELECT b.id FROM Order b WHERE b.driver.id = :driverId " +
+                                    "AND b.status IN ('ASSIGNED', 'IN_PROGRESS'))")
+                    .setParameter("driver", session.getReference(Driver.class, driverId))
+                    .setParameter("car", carId != null ? session.getReference(Car.class, carId) : null)
+                    .setParameter("waybill", waybillId != null ? session.getReference(Waybill.class, waybillId) : null)
+                    .setParameter("orderId", orderId)
+                    .setParameter("driverId", driverId)
+                    .executeUpdate();
+            transaction.commit();
+            return updated == 1;
+        } catch (Exception e) {
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в assignIfDriverFree()", e);
+            return false;
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Смена статуса заказа одним условным UPDATE: все изменяемые при переходах поля
+     * записываются, только если строка с тех пор не менялась (та же версия и тот же статус).
+     * При успехе версия в объекте увеличивается. false - заказ уже изменил кто-то другой
+     */
+    public boolean updateIfUnchanged(Order order, String expectedStatus) {
+        return updateIfUnchanged(order, expectedStatus, false, "updateIfUnchanged");
+    }
+
+    /**
+     * Завершение заказа: тот же условный UPDATE, что и в updateIfUnchanged, и в той же транзакции
+     * итоги путевого листа заказа увеличиваются на его цену и дистанцию. Прибавление делает
+     * сама БД (total_revenue = total_revenue + ?), поэтому параллельно завершаемые заказы
+     * одной смены не теряют друг друга, а итоги не расходятся с заказами при сбое
+     */
+    public boolean completeIfUnchanged(Order order, String expectedStatus) {
+        return updateIfUnchanged(order, expectedStatus, true, "completeIfUnchanged");
+    }
+
+    private boolean updateIfUnchanged(Order order, String expectedStatus, boolean addToWaybill, String operation) {
+        Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository." + operation);
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            transaction = session.beginTransaction();
+            int updated = session.createMutationQuery(
+                            "UPDATE Order o SET o.status = :status, o.driver = :driver, o.car = :car, " +
+                                    "o.waybill = :waybill, o.actualPickupTime = :actualPickupTime, " +
+                                    "o.completionTime = :completionTime, o.price = :price, " +
+                                    "o.distanceKm = :distanceKm, o.notes = :notes, o.version = o.version + 1 " +
+                                    "WHERE o.id = :orderId AND o.version = :version AND o.status = :expectedStatus")
+                    .setParameter("status", order.getStatus())
+                    .setParameter("driver", order.getDriver())
+                    .setParameter("car", order.getCar())
+                    .setParameter("waybill", order.getWaybill())
+                    .setParameter("actualPickupTime", order.getActualPickupTime())
+                    .setParameter("completionTime", order.getCompletionTime())
+                    .setParameter("price", order.getPrice())
+                    .setParameter("distanceKm", order.getDistanceKm())
+                    .setParameter("notes", order.getNotes())
+                    .setParameter("orderId", order.getId())
+                    .setParameter("version", order.getVersion())
+                    .setParameter("expectedStatus", expectedStatus)
+                    .executeUpdate();
+            if (updated == 1 && addToWaybill && order.getWaybill() != null) {
+                // Версию путевого листа не трогаем: итоги не входят в то, что правит пользователь
+                session.createMutationQuery(
+                                "UPDATE Waybill w SET w.totalRevenue = coalesce(w.totalRevenue, 0) + :price, " +
+                                        "w.totalDistance = coalesce(w.totalDistance, 0) + :distanceKm, " +
+                                        "w.ordersCount = coalesce(w.ordersCount, 0) + 1 " +
+                                        "WHERE w.id = :waybillId")
+                        .setParameter("price", order.getPrice() != null ? order.getPrice() : 0.0)
+                        .setParameter("distanceKm", order.getDistanceKm() != null ? order.getDistanceKm() : 0.0)
+                        .setParameter("waybillId", order.getWaybill().getId())
+                        .executeUpdate();
+            }
+            transaction.commit();
+            if (updated == 1) {
+                order.setVersion(order.getVersion() + 1);
+            }
+            return updated == 1;
+        } catch (Exception e) {
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в {}()", operation, e);
+            return false;
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Пакетное назначение заказов в одной транзакции: строки всех водителей блокируются
+     * одним запросом (по возрастанию id, чтобы параллельные пакеты не ловили взаимоблокировку),
+     * затем все условные UPDATE уходят одним JDBC-пакетом.
+     * Условия те же, что в assignIfDriverFree. Возвращает id реально назначенных заказов
+     */
+    public Set<Long> assignBatch(List<DriverAssignment> assignments) {
+        if (assignments.isEmpty()) {
+            return Set.of();
+        }
+        Set<Long> assigned = new HashSet<>();
+        Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.assignBatch");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            transaction = session.beginTransaction();
+            session.doWork(connection -> {
+                String placeholders = String.join(",", Collections.nCopies(assignments.size(), "?"));
+                try (PreparedStatement lock = connection.prepareStatement(
+                        "SELECT id FROM drivers WHERE id IN (" + placeholders + ") ORDER BY id FOR UPDATE")) {
+                    for (int i = 0; i < assignments.size(); i++) {
+                        lock.setLong(i + 1, assignments.get(i).getDriverId());
+                    }
+                    // строки заблокированы до конца транзакции, сам результат не нужен
+                    lock.executeQuery().close();
+                }
+
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE orders SET driver_id = ?, car_id = ?, waybill_id = ?, status = 'ASSIGNED', " +
+                                "version = version + 1 " +
+                                "WHERE id = ? AND status = 'NEW' " +
+                                "AND NOT EXISTS (SELECT 1 FROM orders b WHERE b.driver_id = ? " +
+                                "AND b.status IN ('ASSIGNED', 'IN_PROGRESS'))")) {
+                    for (DriverAssignment assignment : assignments) {
+                        update.setLong(1, assignment.getDriverId());
+                        update.setObject(2, assignment.getCarId());
+                        update.setObject(3, assignment.getWaybillId());
+                        update.setLong(4, assignment.getOrderId());
+                        update.setLong(5, assignment.getDriverId());
+                        update.addBatch();
+                    }
+                    int[] counts = update.executeBatch();
+                    boolean unknown = false;
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 1) {
+                            assigned.add(assignments.get(i).getOrderId());
+                        } else if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                            unknown = true;
+                        }
+                    }
+                    if (unknown) {
+                        assigned.addAll(selectAssigned(connection, assignments, placeholders));
+                    }
+                }
+            });
+            transaction.commit();
+            return assigned;
+        } catch (Exception e) {
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в assignBatch()", e);
+            return Set.of();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Какие заказы пакета назначены: драйвер не сообщил число строк (SUCCESS_NO_INFO),
+     * поэтому результат читается в той же транзакции. Заказ назначен, если у него статус
+     * ASSIGNED и водитель из пакета - строки водителей заблокированы нами, назначить их
+     * на этот заказ никто другой не мог
+     */
+    private static Set<Long> selectAssigned(Connection connection, List<DriverAssignment> assignments,
+                                            String placeholders) throws SQLException {
+        Map<Long, Long> drivers = new HashMap<>();
+        for (DriverAssignment assignment : assignments) {
+            drivers.put(assignment.getOrderId(), assignment.getDriverId());
+        }
+        Set<Long> assigned = new HashSet<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT id, driver_id FROM orders WHERE id IN (" + placeholders + ") AND status = 'ASSIGNED'")) {
+            for (int i = 0; i < assignments.size(); i++) {
+                select.setLong(i + 1, assignments.get(i).getOrderId());
+            }
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    long orderId = rows.getLong(1);
+                    if (Long.valueOf(rows.getLong(2)).equals(drivers.get(orderId))) {
+                        assigned.add(orderId);
+                    }
+                }
+            }
+        }
+        return assigned;
+    }
+
     /**
      * Найти заказы по водителю
      */
-    public List<Order> findByDriverId(Long driverId) {
+    public List<Order> findByDriverId(Long driverId, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findByDriverId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Order o WHERE o.driver.id = :driverId ORDER BY o.orderTime DESC",
                             Order.class)
                     .setParameter("driverId", driverId)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findByDriverId()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти заказы по статусу
      */
-    public List<Order> findByStatus(String status) {
+    public List<Order> findByStatus(String status, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findByStatus");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Order o WHERE o.status = :status ORDER BY o.orderTime DESC",
                             Order.class)
                     .setParameter("status", status)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findByStatus()", e);
+            return List.of();
+        } finally {
+            timer.close();
+        }
+    }
+
+    public List<Order> findByStatuses(Collection<String> statuses, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findByStatuses");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return plan.createQuery(session,
+                            "FROM Order o WHERE o.status IN (:statuses) ORDER BY o.orderTime DESC, o.id DESC",
+                            Order.class)
+                    .setParameter("statuses", statuses)
+                    .list();
+        } catch (Exception e) {
+            log.error("Ошибка в findByStatuses()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти активные заказы водителя
      */
-    public List<Order> findActiveByDriverId(Long driverId) {
+    public List<Order> findActiveByDriverId(Long driverId, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findActiveByDriverId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Order o WHERE o.driver.id = :driverId " +
                                     "AND o.status IN ('ASSIGNED', 'IN_PROGRESS') " +
                                     "ORDER BY o.orderTime",
@@ -113,32 +385,61 @@ public class OrderRepository {
                     .setParameter("driverId", driverId)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findActiveByDriverId()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти новые (не назначенные) заказы
      */
-    public List<Order> findNewOrders() {
+    public List<Order> findNewOrders(FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findNewOrders");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Order o WHERE o.status = 'NEW' ORDER BY o.orderTime",
                             Order.class)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findNewOrders()", e);
+            return List.of();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Найти заказы по списку ID (порядок не гарантируется)
+     */
+    public List<Order> findByIds(Collection<Long> ids, FetchPlan plan) {
+        if (ids == null || ids.isEmpty()) {
             return List.of();
         }
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findByIds");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            List<Long> all = new ArrayList<>(ids);
+            List<Order> orders = new ArrayList<>(all.size());
+            for (int from = 0; from < all.size(); from += MAX_IDS_PER_QUERY) {
+                List<Long> chunk = all.subList(from, Math.min(from + MAX_IDS_PER_QUERY, all.size()));
+                orders.addAll(plan.createQuery(session, "FROM Order o WHERE o.id IN :ids", Order.class)
+                        .setParameter("ids", chunk)
+                        .list());
+            }
+            return orders;
+        } finally {
+            timer.close();
+        }
     }
 
     /**
      * Найти заказы за период
      */
-    public List<Order> findByPeriod(java.time.LocalDateTime startDate, java.time.LocalDateTime endDate) {
+    public List<Order> findByPeriod(java.time.LocalDateTime startDate, java.time.LocalDateTime endDate, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findByPeriod");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Order o WHERE o.orderTime BETWEEN :startDate AND :endDate " +
                                     "ORDER BY o.orderTime DESC",
                             Order.class)
@@ -146,17 +447,20 @@ public class OrderRepository {
                     .setParameter("endDate", endDate)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findByPeriod()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти завершенные заказы водителя за период
      */
-    public List<Order> findCompletedByDriverAndPeriod(Long driverId, java.time.LocalDateTime startDate, java.time.LocalDateTime endDate) {
+    public List<Order> findCompletedByDriverAndPeriod(Long driverId, java.time.LocalDateTime startDate, java.time.LocalDateTime endDate, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findCompletedByDriverAndPeriod");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Order o WHERE o.driver.id = :driverId " +
                                     "AND o.status = 'COMPLETED' " +
                                     "AND o.completionTime BETWEEN :startDate AND :endDate " +
@@ -167,8 +471,10 @@ public class OrderRepository {
                     .setParameter("endDate", endDate)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findCompletedByDriverAndPeriod()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
@@ -176,6 +482,7 @@ public class OrderRepository {
      * Получить статистику заказов по водителю
      */
     public Object[] getDriverStats(Long driverId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.getDriverStats");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return (Object[]) session.createQuery(
                             "SELECT COUNT(o), SUM(o.distanceKm), SUM(o.price) " +
@@ -183,17 +490,20 @@ public class OrderRepository {
                     .setParameter("driverId", driverId)
                     .uniqueResult();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в getDriverStats()", e);
             return new Object[]{0L, 0.0, 0.0};
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти заказы водителя за период
      */
-    public List<Order> findByDriverAndPeriod(Long driverId, LocalDateTime start, LocalDateTime end) {
+    public List<Order> findByDriverAndPeriod(Long driverId, LocalDateTime start, LocalDateTime end, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findByDriverAndPeriod");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Order o WHERE o.driver.id = :driverId " +
                                     "AND o.createdAt >= :start AND o.createdAt <= :end " +
                                     "ORDER BY o.createdAt DESC", Order.class)
@@ -202,22 +512,232 @@ public class OrderRepository {
                     .setParameter("end", end)
                     .list();
         } catch (Exception e) {
-            System.err.println("Ошибка при поиске заказов водителя за период: " + e.getMessage());
+            log.error("Ошибка при поиске заказов водителя за период", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
-    public List<Order> findByWaybillId(Long waybillId) {
+    public List<Order> findByWaybillId(Long waybillId, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findByWaybillId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             String hql = "FROM Order o WHERE o.waybill.id = :waybillId " +
                     "AND o.status = 'COMPLETED' " +
                     "ORDER BY o.completionTime DESC";
-            return session.createQuery(hql, Order.class)
+            return plan.createQuery(session, hql, Order.class)
                     .setParameter("waybillId", waybillId)
                     .list();
         } catch (Exception e) {
-            System.out.println("Ошибка при поиске заказов по путевому листу: " + e.getMessage());
+            log.error("Ошибка при поиске заказов по путевому листу", e);
             return new ArrayList<>();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Страница заказов с фильтрами на стороне БД и keyset-пагинацией по (orderTime, id).
+     * Заказы упорядочены от новых к старым. Курсор - (orderTime, id) последней строки
+     * предыдущей страницы (backward = false) или первой строки следующей (backward = true).
+     * Возвращает до limit строк в порядке отображения.
+     */
+    public List<Order> findPage(OrderFilter filter, LocalDateTime cursorTime, Long cursorId,
+                                boolean backward, int limit, FetchPlan plan) {
+        StringBuilder hql = new StringBuilder("FROM Order o WHERE 1 = 1");
+        if (filter.statuses != null && !filter.statuses.isEmpty()) hql.append(" AND o.status IN (:statuses)");
+        if (filter.driverId != null) hql.append(" AND o.driver.id = :driverId");
+        if (filter.from != null) hql.append(" AND o.orderTime >= :from");
+        if (filter.to != null) hql.append(" AND o.orderTime < :to");
+
+        boolean hasCursor = cursorTime != null && cursorId != null;
+        if (hasCursor) {
+            hql.append(backward
+                    ? " AND (o.orderTime > :cursorTime OR (o.orderTime = :cursorTime AND o.id > :cursorId))"
+                    : " AND (o.orderTime < :cursorTime OR (o.orderTime = :cursorTime AND o.id < :cursorId))");
+        }
+        hql.append(backward ? " ORDER BY o.orderTime ASC, o.id ASC" : " ORDER BY o.orderTime DESC, o.id DESC");
+
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findPage");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Query<Order> query = plan.createQuery(session, hql.toString(), Order.class);
+            if (filter.statuses != null && !filter.statuses.isEmpty()) query.setParameter("statuses", filter.statuses);
+            if (filter.driverId != null) query.setParameter("driverId", filter.driverId);
+            if (filter.from != null) query.setParameter("from", filter.from);
+            if (filter.to != null) query.setParameter("to", filter.to);
+            if (hasCursor) {
+                query.setParameter("cursorTime", cursorTime);
+                query.setParameter("cursorId", cursorId);
+            }
+
+            List<Order> orders = new ArrayList<>(query.setMaxResults(limit).list());
+            if (backward) {
+                Collections.reverse(orders);
+            }
+            return orders;
+        } catch (Exception e) {
+            log.error("Ошибка в findPage()", e);
+            return List.of();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Агрегаты по дням создания и статусам для счетчиков панели диспетчера:
+     * [0] дата, [1] статус, [2] COUNT, [3] SUM стоимости,
+     * [4] COUNT заказов с временем завершения, [5] SUM времени выполнения в секундах
+     */
+    public List<Object[]> getDailyStatusTotals() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.getDailyStatusTotals");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                            "SELECT CAST(o.orderTime AS LocalDate), o.status, COUNT(o), SUM(o.price), " +
+                                    "COUNT(o.completionTime), SUM((o.completionTime - o.orderTime) BY SECOND) " +
+                                    "FROM Order o " +
+                                    "GROUP BY CAST(o.orderTime AS LocalDate), o.status",
+                            Object[].class)
+                    .list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Потоковая выборка строк отчета по доходам.
+     * Фильтры по статусу, дате завершения, водителю и автомобилю выполняются в БД,
+     * из таблицы читаются только поля отчета (конструкторная проекция),
+     * строки передаются в consumer по мере чтения курсора без накопления в памяти
+     * (время в LatencyMetrics включает и работу consumer).
+     *
+     * @param from     начало периода (включительно), null - без ограничения
+     * @param to       конец периода (не включительно), null - без ограничения
+     * @param consumer обработчик очередной строки отчета
+     * @return количество прочитанных строк
+     */
+    public long streamIncomeReport(LocalDateTime from, LocalDateTime to, Long driverId, Long carId,
+                                   Consumer<IncomeReportRow> consumer) {
+        String hql = "SELECT new " + IncomeReportRow.class.getName() + "(" +
+                "o.id, o.orderTime, o.completionTime, d.id, d.fullName, c.id, c.licensePlate, c.model, " +
+                "o.distanceKm, o.price, o.customerName, o.customerPhone, o.pickupAddress, o.destinationAddress)" +
+                incomeReportFilter(from, to, driverId, carId) +
+                " ORDER BY o.completionTime DESC, o.id DESC";
+
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.streamIncomeReport");
+        try (StatelessSession session = HibernateUtil.getSessionFactory().openStatelessSession()) {
+            // Без транзакции драйвер PostgreSQL игнорирует fetch size и читает весь результат сразу
+            Transaction tx = session.beginTransaction();
+            try {
+                Query<IncomeReportRow> query = session.createQuery(hql, IncomeReportRow.class);
+                bindIncomeReportParams(query, from, to, driverId, carId);
+                query.setFetchSize(REPORT_FETCH_SIZE);
+
+                long count = 0;
+                try (ScrollableResults<IncomeReportRow> rows = query.scroll(ScrollMode.FORWARD_ONLY)) {
+                    while (rows.next()) {
+                        consumer.accept(rows.get());
+                        count++;
+                    }
+                }
+                tx.commit();
+                return count;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                throw e;
+            }
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Агрегаты отчета по доходам одним запросом:
+     * [0] COUNT заказов, [1] SUM выручки, [2] SUM дистанции, [3] AVG стоимости заказа
+     */
+    public Object[] getIncomeReportTotals(LocalDateTime from, LocalDateTime to, Long driverId, Long carId) {
+        String hql = "SELECT COUNT(o), SUM(o.price), SUM(o.distanceKm), AVG(o.price)" +
+                incomeReportFilter(from, to, driverId, carId);
+
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.getIncomeReportTotals");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Query<Object[]> query = session.createQuery(hql, Object[].class);
+            bindIncomeReportParams(query, from, to, driverId, carId);
+            return query.uniqueResult();
+        } catch (Exception e) {
+            log.error("Ошибка в getIncomeReportTotals()", e);
+            return new Object[]{0L, 0.0, 0.0, 0.0};
+        } finally {
+            timer.close();
+        }
+    }
+
+    private String incomeReportFilter(LocalDateTime from, LocalDateTime to, Long driverId, Long carId) {
+        StringBuilder hql = new StringBuilder(
+                " FROM Order o LEFT JOIN o.driver d LEFT JOIN o.car c " +
+                        "WHERE o.status = 'COMPLETED' AND o.price > 0 AND o.completionTime IS NOT NULL");
+        if (from != null) hql.append(" AND o.completionTime >= :from");
+        if (to != null) hql.append(" AND o.completionTime < :to");
+        if (driverId != null) hql.append(" AND d.id = :driverId");
+        if (carId != null) hql.append(" AND c.id = :carId");
+        return hql.toString();
+    }
+
+    private void bindIncomeReportParams(Query<?> query, LocalDateTime from, LocalDateTime to,
+                                        Long driverId, Long carId) {
+        if (from != null) query.setParameter("from", from);
+        if (to != null) query.setParameter("to", to);
+        if (driverId != null) query.setParameter("driverId", driverId);
+        if (carId != null) query.setParameter("carId", carId);
+    }
+
+    /**
+     * Назначение заказа на водителя для пакетной записи
+     */
+    public static class DriverAssignment {
+        private final Long orderId;
+        private final Long driverId;
+        private final Long carId;
+        private final Long waybillId;
+
+        public DriverAssignment(Long orderId, Long driverId, Long carId, Long waybillId) {
+            this.orderId = orderId;
+            this.driverId = driverId;
+            this.carId = carId;
+            this.waybillId = waybillId;
+        }
+
+        public Long getOrderId() { return orderId; }
+        public Long getDriverId() { return driverId; }
+        public Long getCarId() { return carId; }
+        public Long getWaybillId() { return waybillId; }
+    }
+
+    /**
+     * Фильтр списка заказов (все условия необязательные)
+     */
+    public static class OrderFilter {
+        private Collection<String> statuses;
+        private Long driverId;
+        private LocalDateTime from;
+        private LocalDateTime to;
+
+        public OrderFilter statuses(Collection<String> statuses) {
+            this.statuses = statuses;
+            return this;
+        }
+
+        public OrderFilter driverId(Long driverId) {
+            this.driverId = driverId;
+            return this;
+        }
+
+        /**
+         * Время создания заказа: from включительно, to не включительно
+         */
+        public OrderFilter period(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+            return this;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,1007 @@
+package com.taxi.repository;
+
+import com.taxi.util.Background;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Полнотекстовый поиск по водителям (ФИО, права, телефон), автомобилям (номер, VIN, марка,
+ * модель) и медосмотрам (примечания, врач, а также ФИО и права водителя).
+ *
+ * Индекс в памяти: текст документа - нормализованные поля одной строкой (нижний регистр,
+ * ё = е, знаки препинания - пробел, телефон - только цифры) и обратный индекс:
+ * триграмма (или пара символов) -> отсортированный список номеров документов. Кандидаты для
+ * запроса - пересечение списков самого редкого слова запроса, дальше каждый кандидат
+ * проверяется вхождением всех слов (AND). Слова из одного символа только проверяются.
+ * Ранг - сумма по словам: вес поля, умноженный на качество совпадения (поле целиком,
+ * начало поля, начало слова, середина слова). Чтобы широкий запрос не разбирал каждый из
+ * десятков тысяч кандидатов, у начал слов есть свои списки (с номером поля): по ним ранг
+ * оценивается сверху, и точно считаются только документы, способные попасть на страницу.
+ *
+ * Строится тремя запросами, дальше обновляется записями репозиториев (и сервисов, пишущих
+ * в обход них): документ перечитывается одним запросом, старая версия помечается удаленной,
+ * неизменившийся текст не переиндексируется. Полная перестройка - Background.scheduleRebuild,
+ * она же вычищает удаленные документы из списков
+ */
+public final class SearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    private static final long REBUILD_INTERVAL_SECONDS = 300;
+    // Больше слов в запросе не учитываем
+    private static final int MAX_TERMS = 8;
+    // Разделитель полей в тексте документа: не буква и не цифра, в слова запроса не попадает
+    private static final char SEPARATOR = '\n';
+    // Ключи пар символов не пересекаются с ключами триграмм (те занимают 48 бит)
+    private static final long BIGRAM = 1L << 48;
+    // Ключ начала слова: пара или триграмма с начала слова плюс номер поля (биты 50-51)
+    // и признак начала поля - по ним оценивается ранг без разбора текста
+    private static final long WORD_START = 1L << 49;
+    private static final int POSITION_SHIFT = 50;
+    private static final long FIELD_START = 1L << 52;
+    private static final int MAX_FIELDS = 4;
+
+    /**
+     * Что ищем
+     */
+    public enum Type {
+        DRIVER, CAR, MEDICAL_CHECK
+    }
+
+    /**
+     * Поля документов и их веса
+     */
+    public enum Field {
+        DRIVER_NAME(Type.DRIVER, 4),
+        DRIVER_LICENSE(Type.DRIVER, 4),
+        DRIVER_PHONE(Type.DRIVER, 3),
+        CAR_PLATE(Type.CAR, 4),
+        CAR_VIN(Type.CAR, 3),
+        CAR_BRAND(Type.CAR, 2),
+        CAR_MODEL(Type.CAR, 2),
+        CHECK_NOTES(Type.MEDICAL_CHECK, 1),
+        CHECK_DOCTOR(Type.MEDICAL_CHECK, 1);
+
+        private final Type type;
+        private final int weight;
+
+        Field(Type type, int weight) {
+            this.type = type;
+            this.weight = weight;
+        }
+
+        public Type getType() { return type; }
+        public int getWeight() { return weight; }
+    }
+
+    private static final Type[] TYPES = Type.values();
+    // Поля документа по типам - в порядке колонок find*SearchFields. Медосмотр несет
+    // еще ФИО и права своего водителя (первые два поля его документа)
+    private static final Field[][] LAYOUTS = {
+            {Field.DRIVER_NAME, Field.DRIVER_LICENSE, Field.DRIVER_PHONE},
+            {Field.CAR_PLATE, Field.CAR_VIN, Field.CAR_BRAND, Field.CAR_MODEL},
+            {Field.CHECK_NOTES, Field.CHECK_DOCTOR, Field.DRIVER_NAME, Field.DRIVER_LICENSE}
+    };
+    // Наибольший вес поля по типам: вхождение в середине слова дает не больше
+    private static final int[] MAX_WEIGHTS = Arrays.stream(LAYOUTS)
+            .mapToInt(layout -> Arrays.stream(layout).mapToInt(field -> field.weight).max().orElse(0))
+            .toArray();
+    private static final int CHECK_OWN_FIELDS = 2;
+    private static final int DRIVER_LINKED_FIELDS = 2;
+
+    private final DriverRepository driverRepository = new DriverRepository();
+    private final CarRepository carRepository = new CarRepository();
+    private final MedicalCheckRepository medicalCheckRepository = new MedicalCheckRepository();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Поля ниже - под lock
+    private Documents documents = new Documents();
+    // Документы, измененные во время перестройки: после нее перечитываются заново
+    private List<Object[]> touchedDuringRebuild;
+
+    private SearchIndex() {
+    }
+
+    private static class Holder {
+        private static final SearchIndex INSTANCE = create();
+
+        private static SearchIndex create() {
+            SearchIndex index = new SearchIndex();
+            index.rebuild();
+            Background.scheduleRebuild("search-index", REBUILD_INTERVAL_SECONDS, index::rebuild);
+            return index;
+        }
+    }
+
+    public static SearchIndex getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // ОБНОВЛЕНИЕ
+
+    /**
+     * Построить индекс заново
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            touchedDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Documents rebuilt = new Documents();
+        try {
+            // Водители первыми: медосмотры копируют их текст
+            for (Object[] row : driverRepository.findSearchFields(null)) {
+                rebuilt.put(Type.DRIVER, row);
+            }
+            for (Object[] row : carRepository.findSearchFields(null)) {
+                rebuilt.put(Type.CAR, row);
+            }
+            for (Object[] row : medicalCheckRepository.findSearchFields(null)) {
+                rebuilt.put(Type.MEDICAL_CHECK, row);
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                touchedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        List<Object[]> touched;
+        lock.writeLock().lock();
+        try {
+            touched = touchedDuringRebuild;
+            touchedDuringRebuild = null;
+            documents = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (Object[] key : touched) {
+            refresh((Type) key[0], (Long) key[1]);
+        }
+        log.debug("Поисковый индекс построен: {} документов", rebuilt.size);
+    }
+
+    /**
+     * Перечитать водителя после сохранения. Если изменились ФИО или права, переиндексируются
+     * и его медосмотры
+     */
+    public void refreshDriver(Long driverId) {
+        refresh(Type.DRIVER, driverId);
+    }
+
+    /**
+     * Водитель удален - вместе с его медосмотрами
+     */
+    public void driverRemoved(Long driverId) {
+        remove(Type.DRIVER, driverId);
+    }
+
+    /**
+     * Перечитать автомобиль после сохранения
+     */
+    public void refreshCar(Long carId) {
+        refresh(Type.CAR, carId);
+    }
+
+    public void carRemoved(Long carId) {
+        remove(Type.CAR, carId);
+    }
+
+    /**
+     * Перечитать медосмотр после сохранения
+     */
+    public void refreshMedicalCheck(Long checkId) {
+        refresh(Type.MEDICAL_CHECK, checkId);
+    }
+
+    public void medicalCheckRemoved(Long checkId) {
+        remove(Type.MEDICAL_CHECK, checkId);
+    }
+
+    // ПОИСК
+
+    /**
+     * Страница результатов по документам указанных типов (null или пустой набор - по всем),
+     * лучшие первыми. При равном ранге: водители, автомобили, медосмотры; внутри типа - новые первыми
+     */
+    public Page search(String query, Set<Type> types, int offset, int limit) {
+        Set<Type> filter = types == null || types.isEmpty() ? EnumSet.allOf(Type.class) : types;
+        return search(query, filter, null, offset, limit);
+    }
+
+    /**
+     * Страница результатов с совпадением только в одном поле
+     */
+    public Page search(String query, Field field, int offset, int limit) {
+        return search(query, EnumSet.of(field.type), field, offset, limit);
+    }
+
+    /**
+     * id всех найденных документов типа, лучшие первыми
+     */
+    public List<Long> findIds(String query, Type type) {
+        return ids(search(query, EnumSet.of(type), null, 0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * id всех документов с совпадением в поле field, лучшие первыми
+     */
+    public List<Long> findIds(String query, Field field) {
+        return ids(search(query, field, 0, Integer.MAX_VALUE));
+    }
+
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+
+    private Page search(String query, Set<Type> types, Field field, int offset, int limit) {
+        String[] words = terms(query);
+        if (words.length == 0 || limit <= 0) {
+            return new Page(0, List.of());
+        }
+        int wanted = (int) Math.min((long) Math.max(offset, 0) + limit, Integer.MAX_VALUE);
+        boolean[] accepted = new boolean[TYPES.length];
+        for (Type type : types) {
+            accepted[type.ordinal()] = true;
+        }
+        int position = field != null ? Arrays.asList(LAYOUTS[field.type.ordinal()]).indexOf(field) : -1;
+
+        lock.readLock().lock();
+        try {
+            Documents docs = documents;
+            Term[] terms = new Term[words.length];
+            for (int i = 0; i < words.length; i++) {
+                terms[i] = new Term(docs, words[i]);
+            }
+            Collector collector = new Collector(docs, wanted);
+            String seed = seedTerm(docs, words);
+            // Кандидаты - с конца: перестройка читает документы по id, и номера растут вместе с id
+            // (кроме перечитанных после нее), а при равном ранге выше более новый документ.
+            // Так равные ранги широкого запроса не вытесняют друг друга из кучи, и ее порог
+            // быстро отсекает остальных. Списки слов (Term) обходятся так же
+            if (seed == null) {
+                // Все слова из одного символа - проверяем подряд
+                for (int ordinal = docs.live.previousSetBit(docs.size - 1); ordinal >= 0;
+                     ordinal = docs.live.previousSetBit(ordinal - 1)) {
+                    if (accepted[docs.types[ordinal]]) {
+                        collector.offer(ordinal, docs.score(ordinal, terms, position, collector.threshold(ordinal)));
+                    }
+                }
+            } else {
+                int[] candidates = docs.candidates(seed);
+                for (int i = candidates.length - 1; i >= 0; i--) {
+                    int ordinal = candidates[i];
+                    if (docs.live.get(ordinal) && accepted[docs.types[ordinal]]) {
+                        collector.offer(ordinal, docs.score(ordinal, terms, position, collector.threshold(ordinal)));
+                    }
+                }
+            }
+            return collector.page(Math.max(offset, 0));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Слова запроса после нормализации, без повторов; пусто - искать нечего
+     */
+    private static String[] terms(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return new String[0];
+        }
+        return new LinkedHashSet<>(Arrays.asList(normalized.split(" "))).stream()
+                .limit(MAX_TERMS)
+                .toArray(String[]::new);
+    }
+
+    private static List<Long> ids(Page page) {
+        List<Long> ids = new ArrayList<>(page.hits.size());
+        for (Hit hit : page.hits) {
+            ids.add(hit.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Слово с самым коротким списком кандидатов; null - все слова из одного символа
+     */
+    private static String seedTerm(Documents docs, String[] terms) {
+        String seed = null;
+        int seedSize = Integer.MAX_VALUE;
+        for (String term : terms) {
+            if (term.length() < 2) {
+                continue;
+            }
+            int size = docs.estimate(term);
+            if (size < seedSize) {
+                seed = term;
+                seedSize = size;
+            }
+        }
+        return seed;
+    }
+
+    private void refresh(Type type, Long id) {
+        if (id == null) {
+            return;
+        }
+        List<Object[]> rows;
+        try {
+            rows = switch (type) {
+                case DRIVER -> driverRepository.findSearchFields(id);
+                case CAR -> carRepository.findSearchFields(id);
+                case MEDICAL_CHECK -> medicalCheckRepository.findSearchFields(id);
+            };
+        } catch (RuntimeException e) {
+            // Вызов идет после фиксации: сохраненное не откатываем, документ догонит перестройка
+            log.error("Ошибка обновления поискового индекса: {} #{}", type, id, e);
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            touch(type, id);
+            if (rows.isEmpty()) {
+                documents.remove(type, id);
+            } else {
+                documents.put(type, rows.get(0));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(Type type, Long id) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            touch(type, id);
+            documents.remove(type, id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void touch(Type type, Long id) {
+        if (touchedDuringRebuild != null) {
+            touchedDuringRebuild.add(new Object[]{type, id});
+        }
+    }
+
+    /**
+     * Нижний регистр, ё = е, все кроме букв и цифр - один пробел
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                result.append(c);
+                space = false;
+            } else if (!space) {
+                result.append(' ');
+                space = true;
+            }
+        }
+        int length = result.length();
+        return space && length > 0 ? result.substring(0, length - 1) : result.toString();
+    }
+
+    /**
+     * Телефон ищется по цифрам: "+7 (911) 123-45-67" -> "79111234567"
+     */
+    private static String digits(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    private static long bigram(String text, int start) {
+        return BIGRAM | ((long) text.charAt(start) << 16) | text.charAt(start + 1);
+    }
+
+    private static long startKey(long key, int position, boolean fieldStart) {
+        return key | WORD_START | ((long) position << POSITION_SHIFT) | (fieldStart ? FIELD_START : 0);
+    }
+
+    /**
+     * Ключи списков, в которых должен быть документ со словом: триграммы слова,
+     * для слова из двух символов - его пара
+     */
+    private static long[] keys(String term) {
+        if (term.length() == 2) {
+            return new long[]{bigram(term, 0)};
+        }
+        long[] keys = new long[Math.max(term.length() - 2, 0)];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = trigram(term, i);
+        }
+        return keys;
+    }
+
+    /**
+     * Начало поля с номером position в тексте документа
+     */
+    private static int fieldStart(String text, int position) {
+        int start = 0;
+        for (int i = 0; i < position; i++) {
+            start = text.indexOf(SEPARATOR, start) + 1;
+        }
+        return start;
+    }
+
+    private static int fieldEnd(String text, int start) {
+        int end = text.indexOf(SEPARATOR, start);
+        return end < 0 ? text.length() : end;
+    }
+
+    /**
+     * Лучшее вхождение term в текст документа на участке [from, to): вес поля, умноженный
+     * на качество (4 - поле целиком, 3 - начало поля, 2 - начало слова, 1 - середина слова);
+     * 0 - вхождений нет
+     */
+    private static int bestMatch(String text, Field[] layout, String term, int from, int to) {
+        int best = 0;
+        // Поле текущего вхождения: номер, начало и разделитель за ним (-1 - поле последнее).
+        // Вхождения идут по возрастанию, поэтому поле сдвигается только вперед - один проход по тексту
+        int position = 0;
+        int start = 0;
+        int next = text.indexOf(SEPARATOR);
+        for (int index = text.indexOf(term, from); index >= 0 && index + term.length() <= to;
+             index = text.indexOf(term, index + 1)) {
+            while (next >= 0 && next < index) {
+                position++;
+                start = next + 1;
+                next = text.indexOf(SEPARATOR, start);
+            }
+            int quality;
+            if (index == start) {
+                quality = (next < 0 ? text.length() : next) - start == term.length() ? 4 : 3;
+            } else {
+                quality = text.charAt(index - 1) == ' ' ? 2 : 1;
+            }
+            best = Math.max(best, layout[position].weight * quality);
+        }
+        return best;
+    }
+
+    /**
+     * Документы индекса. Номер документа растет с каждым добавлением, поэтому списки
+     * отсортированы без дополнительной работы. Не потокобезопасен - доступ под lock
+     */
+    private static final class Documents {
+        private byte[] types = new byte[1024];
+        private long[] ids = new long[1024];
+        private String[] texts = new String[1024];
+        // медосмотр -> id его водителя
+        private long[] checkDrivers = new long[1024];
+        // длины полей по 16 бит, поле 0 - младшие: начало поля или поле целиком - без разбора текста
+        private long[] lengths = new long[1024];
+        private int size;
+
+        private final BitSet live = new BitSet();
+        private final List<Map<Long, Integer>> ordinals = List.of(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        // триграмма или пара символов -> номера документов по возрастанию
+        private final Map<Long, IntList> postings = new HashMap<>();
+        // водитель -> номера его медосмотров (могут быть и удаленные)
+        private final Map<Long, IntList> driverChecks = new HashMap<>();
+
+        /**
+         * Строка find*SearchFields -> документ. Неизменившийся текст не переиндексируется
+         */
+        void put(Type type, Object[] row) {
+            long id = (Long) row[0];
+            long driverId = 0;
+            StringBuilder text = new StringBuilder();
+            if (type == Type.MEDICAL_CHECK) {
+                // [0] id, [1] водитель, дальше поля
+                driverId = (Long) row[1];
+                appendFields(text, LAYOUTS[type.ordinal()], row, 2, CHECK_OWN_FIELDS);
+                text.append(SEPARATOR).append(driverFields(driverId));
+            } else {
+                appendFields(text, LAYOUTS[type.ordinal()], row, 1, LAYOUTS[type.ordinal()].length);
+            }
+            put(type, id, text.toString(), driverId);
+        }
+
+        private void put(Type type, long id, String text, long driverId) {
+            Integer current = ordinals.get(type.ordinal()).get(id);
+            if (current != null) {
+                if (texts[current].equals(text) && checkDrivers[current] == driverId) {
+                    return;
+                }
+                live.clear(current);
+            }
+            int ordinal = append(type, id, text, driverId);
+            if (type == Type.DRIVER && (current == null
+                    || !driverFields(current).equals(driverFields(ordinal)))) {
+                relinkChecks(id);
+            }
+        }
+
+        /**
+         * Документ удаляется из выдачи; из списков он уйдет при перестройке.
+         * С водителем удаляются и его медосмотры
+         */
+        void remove(Type type, long id) {
+            Integer ordinal = ordinals.get(type.ordinal()).remove(id);
+            if (ordinal != null) {
+                live.clear(ordinal);
+            }
+            if (type == Type.DRIVER) {
+                IntList checks = driverChecks.remove(id);
+                for (int i = 0; checks != null && i < checks.size; i++) {
+                    if (live.get(checks.data[i])) {
+                        remove(Type.MEDICAL_CHECK, ids[checks.data[i]]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Верхняя оценка числа кандидатов слова - самый короткий из его списков
+         */
+        int estimate(String term) {
+            int min = Integer.MAX_VALUE;
+            for (long key : keys(term)) {
+                IntList list = postings.get(key);
+                if (list == null) {
+                    return 0;
+                }
+                min = Math.min(min, list.size);
+            }
+            return min;
+        }
+
+        /**
+         * Документы, в тексте которых есть все триграммы (пара) слова, включая удаленные
+         */
+        int[] candidates(String term) {
+            List<IntList> lists = new ArrayList<>();
+            for (long key : keys(term)) {
+                IntList list = postings.get(key);
+                if (list == null) {
+                    return new int[0];
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+
+            int[] result = Arrays.copyOf(lists.get(0).data, lists.get(0).size);
+            int length = result.length;
+            for (int l = 1; l < lists.size() && length > 0; l++) {
+                IntList other = lists.get(l);
+                int kept = 0;
+                int j = 0;
+                for (int i = 0; i < length; i++) {
+                    int value = result[i];
+                    // Списки отсортированы: поиск с последней найденной позиции
+                    int found = gallop(other.data, j, other.size, value);
+                    if (found >= 0) {
+                        result[kept++] = value;
+                        j = found + 1;
+                    } else {
+                        j = -found - 1;
+                    }
+                }
+                length = kept;
+            }
+            return length == result.length ? result : Arrays.copyOf(result, length);
+        }
+
+        /**
+         * Arrays.binarySearch на [from, to), но сначала шагами 1, 2, 4... от from: у списков
+         * близкого размера искомое обычно в паре позиций, и пересечение идет почти слиянием
+         */
+        private static int gallop(int[] data, int from, int to, int value) {
+            int high = from;
+            int step = 1;
+            while (high < to && data[high] < value) {
+                from = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            return Arrays.binarySearch(data, from, Math.min(high + 1, to), value);
+        }
+
+        /**
+         * Ранг документа: сумма по словам лучшего вхождения; 0 - хотя бы одно слово не найдено.
+         * position >= 0 ограничивает поиск одним полем.
+         *
+         * Сначала - верхняя оценка по спискам начал слов: начало поля - вес поля * 4 или * 3
+         * (по длине поля), начало слова - вес * 2, иначе (вхождение в середине слова) -
+         * наибольший вес. Если она ниже threshold (документ все равно не попадет в отобранные),
+         * возвращается оценка: для подсчета найденных этого достаточно, а вхождения в тексте
+         * не разбираются
+         */
+        int score(int ordinal, Term[] terms, int position, int threshold) {
+            String text = texts[ordinal];
+            Field[] layout = LAYOUTS[types[ordinal]];
+            int from = 0;
+            int to = text.length();
+            int weight = MAX_WEIGHTS[types[ordinal]];
+            if (position >= 0) {
+                from = fieldStart(text, position);
+                to = fieldEnd(text, from);
+                weight = layout[position].weight;
+            }
+            int bound = 0;
+            for (Term term : terms) {
+                if (!term.contains(ordinal, text, from, to, position < 0)) {
+                    return 0;
+                }
+                bound += term.bound(ordinal, layout, lengths[ordinal], position, weight);
+            }
+            if (bound < threshold) {
+                return bound;
+            }
+            int total = 0;
+            for (Term term : terms) {
+                total += bestMatch(text, layout, term.text, from, to);
+            }
+            return total;
+        }
+
+        /**
+         * Курсор по списку ключа; ключа нет ни в одном документе - курсор пустой
+         */
+        DescendingCursor cursor(long key) {
+            return new DescendingCursor(postings.get(key));
+        }
+
+        private int append(Type type, long id, String text, long driverId) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                texts = Arrays.copyOf(texts, capacity);
+                checkDrivers = Arrays.copyOf(checkDrivers, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            int ordinal = size++;
+            types[ordinal] = (byte) type.ordinal();
+            ids[ordinal] = id;
+            texts[ordinal] = text;
+            checkDrivers[ordinal] = driverId;
+            lengths[ordinal] = fieldLengths(text);
+            live.set(ordinal);
+            ordinals.get(type.ordinal()).put(id, ordinal);
+            if (type == Type.MEDICAL_CHECK) {
+                driverChecks.computeIfAbsent(driverId, key -> new IntList()).add(ordinal);
+            }
+
+            // Слова запроса без пробелов и разделителей - ключи через границу слова не нужны
+            int position = 0;
+            for (int i = 0; i + 2 <= text.length(); i++) {
+                if (text.charAt(i) == SEPARATOR) {
+                    position++;
+                }
+                if (boundary(text.charAt(i)) || boundary(text.charAt(i + 1))) {
+                    continue;
+                }
+                boolean three = i + 3 <= text.length() && !boundary(text.charAt(i + 2));
+                addKey(bigram(text, i), ordinal);
+                if (three) {
+                    addKey(trigram(text, i), ordinal);
+                }
+                if (i == 0 || boundary(text.charAt(i - 1))) {
+                    boolean fieldStart = i == 0 || text.charAt(i - 1) == SEPARATOR;
+                    addKey(startKey(bigram(text, i), position, fieldStart), ordinal);
+                    if (three) {
+                        addKey(startKey(trigram(text, i), position, fieldStart), ordinal);
+                    }
+                }
+            }
+            return ordinal;
+        }
+
+        private static long fieldLengths(String text) {
+            long result = 0;
+            int start = 0;
+            for (int position = 0; position < MAX_FIELDS && start <= text.length(); position++) {
+                int end = fieldEnd(text, start);
+                result |= (long) Math.min(end - start, 0xFFFF) << (16 * position);
+                start = end + 1;
+            }
+            return result;
+        }
+
+        private void addKey(long key, int ordinal) {
+            postings.computeIfAbsent(key, k -> new IntList()).addOnce(ordinal);
+        }
+
+        /**
+         * Медосмотры водителя получают его новые ФИО и права
+         */
+        private void relinkChecks(long driverId) {
+            IntList checks = driverChecks.remove(driverId);
+            if (checks == null) {
+                return;
+            }
+            String linked = driverFields(driverId);
+            for (int i = 0; i < checks.size; i++) {
+                int check = checks.data[i];
+                if (!live.get(check)) {
+                    continue;
+                }
+                String text = texts[check];
+                String own = text.substring(0, fieldStart(text, CHECK_OWN_FIELDS));
+                // Удаленные номера из списка водителя уходят: append добавит новый номер
+                live.clear(check);
+                append(Type.MEDICAL_CHECK, ids[check], own + linked, driverId);
+            }
+        }
+
+        /**
+         * ФИО и права водителя в виде полей текста; пусто - водитель не проиндексирован
+         */
+        private String driverFields(long driverId) {
+            Integer driver = ordinals.get(Type.DRIVER.ordinal()).get(driverId);
+            return driver != null ? driverFields(driver.intValue()) : String.valueOf(SEPARATOR);
+        }
+
+        private String driverFields(int driverOrdinal) {
+            String text = texts[driverOrdinal];
+            return text.substring(0, fieldStart(text, DRIVER_LINKED_FIELDS) - 1);
+        }
+
+        private static boolean boundary(char c) {
+            return c == ' ' || c == SEPARATOR;
+        }
+
+        private static void appendFields(StringBuilder text, Field[] layout, Object[] row, int first, int count) {
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    text.append(SEPARATOR);
+                }
+                String value = (String) row[first + i];
+                text.append(layout[i] == Field.DRIVER_PHONE ? digits(value) : normalize(value));
+            }
+        }
+    }
+
+    /**
+     * Отбор лучших wanted документов: куча по возрастанию ранга, худший - в вершине
+     */
+    private static final class Collector {
+        private final Documents docs;
+        private final int wanted;
+        private final PriorityQueue<Hit> heap;
+        private int total;
+
+        Collector(Documents docs, int wanted) {
+            this.docs = docs;
+            this.wanted = wanted;
+            this.heap = new PriorityQueue<>(Math.min(wanted, 1024), Collections.reverseOrder(Hit.RANK));
+        }
+
+        /**
+         * Наименьший ранг, с которым документ попадет в отобранные: пока куча не полна - любой
+         */
+        int threshold(int ordinal) {
+            if (heap.size() < wanted) {
+                return 1;
+            }
+            Hit worst = heap.peek();
+            byte type = docs.types[ordinal];
+            boolean winsTie = type != worst.type.ordinal() ? type < worst.type.ordinal() : docs.ids[ordinal] > worst.id;
+            return winsTie ? worst.score : worst.score + 1;
+        }
+
+        void offer(int ordinal, int score) {
+            if (score == 0) {
+                return;
+            }
+            total++;
+            byte type = docs.types[ordinal];
+            long id = docs.ids[ordinal];
+            if (heap.size() < wanted) {
+                heap.add(new Hit(TYPES[type], id, score));
+            } else if (better(score, type, id, heap.peek())) {
+                heap.poll();
+                heap.add(new Hit(TYPES[type], id, score));
+            }
+        }
+
+        /**
+         * Сравнение с худшим из отобранных без создания Hit - большинство совпадений до кучи не доходит
+         */
+        private static boolean better(int score, int type, long id, Hit worst) {
+            if (score != worst.score) {
+                return score > worst.score;
+            }
+            if (type != worst.type.ordinal()) {
+                return type < worst.type.ordinal();
+            }
+            return id > worst.id;
+        }
+
+        Page page(int offset) {
+            List<Hit> hits = new ArrayList<>(heap);
+            hits.sort(Hit.RANK);
+            return new Page(total, offset >= hits.size() ? List.of() : hits.subList(offset, hits.size()));
+        }
+    }
+
+    /**
+     * Слово запроса и курсоры по его спискам. Курсоры движутся только назад,
+     * поэтому кандидаты должны проверяться по убыванию номера
+     */
+    private static final class Term {
+        private final String text;
+        // Документы со словом целиком (пара или триграмма); null - проверяется текст
+        private final DescendingCursor occurrences;
+        // [номер поля][0 - начало слова, 1 - начало поля]: документы, где с этого места начинается
+        // пара или триграмма слова; null - слово из одного символа, оценка без списков
+        private final DescendingCursor[][] starts;
+
+        Term(Documents docs, String text) {
+            this.text = text;
+            if (text.length() < 2) {
+                this.occurrences = null;
+                this.starts = null;
+                return;
+            }
+            long key = text.length() == 2 ? bigram(text, 0) : trigram(text, 0);
+            this.occurrences = text.length() <= 3 ? docs.cursor(key) : null;
+            this.starts = new DescendingCursor[MAX_FIELDS][2];
+            for (int position = 0; position < MAX_FIELDS; position++) {
+                starts[position][0] = docs.cursor(startKey(key, position, false));
+                starts[position][1] = docs.cursor(startKey(key, position, true));
+            }
+        }
+
+        /**
+         * Есть ли слово в документе на участке [from, to); wholeText - участок равен всему тексту
+         */
+        boolean contains(int ordinal, String text, int from, int to, boolean wholeText) {
+            if (occurrences != null && wholeText) {
+                return occurrences.contains(ordinal);
+            }
+            int index = text.indexOf(this.text, from);
+            return index >= 0 && index + this.text.length() <= to;
+        }
+
+        /**
+         * Верхняя оценка лучшего вхождения найденного слова (см. Documents.score)
+         */
+        int bound(int ordinal, Field[] layout, long lengths, int position, int weight) {
+            if (starts == null) {
+                return weight * 4;
+            }
+            int bound = weight;
+            int first = Math.max(position, 0);
+            int last = position >= 0 ? position : layout.length - 1;
+            for (int p = first; p <= last; p++) {
+                if (starts[p][1].contains(ordinal)) {
+                    boolean whole = (int) (lengths >>> (16 * p) & 0xFFFF) == text.length();
+                    bound = Math.max(bound, layout[p].weight * (whole ? 4 : 3));
+                } else if (starts[p][0].contains(ordinal)) {
+                    bound = Math.max(bound, layout[p].weight * 2);
+                }
+            }
+            return bound;
+        }
+    }
+
+    /**
+     * Проверка номеров по списку при обходе по убыванию: указатель только отступает
+     */
+    private static final class DescendingCursor {
+        private final IntList list;
+        private int index;
+
+        DescendingCursor(IntList list) {
+            this.list = list;
+            this.index = list != null ? list.size - 1 : -1;
+        }
+
+        boolean contains(int ordinal) {
+            while (index >= 0 && list.data[index] > ordinal) {
+                index--;
+            }
+            return index >= 0 && list.data[index] == ordinal;
+        }
+    }
+
+    private static final class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        /**
+         * Номера добавляются по возрастанию: повтор может быть только последним
+         */
+        void addOnce(int value) {
+            if (size == 0 || data[size - 1] != value) {
+                add(value);
+            }
+        }
+    }
+
+    /**
+     * Найденный документ
+     */
+    public static final class Hit {
+        // Лучшие первыми: ранг по убыванию, затем порядок типов, затем id по убыванию
+        static final Comparator<Hit> RANK = Comparator.comparingInt((Hit hit) -> -hit.score)
+                .thenComparingInt(hit -> hit.type.ordinal())
+                .thenComparingLong(hit -> -hit.id);
+
+        private final Type type;
+        private final long id;
+        private final int score;
+
+        Hit(Type type, long id, int score) {
+            this.type = type;
+            this.id = id;
+            this.score = score;
+        }
+
+        public Type getType() { return type; }
+        public long getId() { return id; }
+        public int getScore() { return score; }
+    }
+
+    /**
+     * Страница результатов и общее число найденных
+     */
+    public static final class Page {
+        private final int total;
+        private final List<Hit> hits;
+
+        Page(int total, List<Hit> hits) {
+            this.total = total;
+            this.hits = hits;
+        }
+
+        public int getTotal() { return total; }
+        public List<Hit> getHits() { return hits; }
+    }
+}
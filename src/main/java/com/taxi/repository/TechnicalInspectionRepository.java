@@ -1,43 +1,59 @@
 package com.taxi.repository;
 
+import com.taxi.entity.Car;
 import com.taxi.entity.TechnicalInspection;
 import com.taxi.util.HibernateUtil;
+import com.taxi.util.LatencyMetrics;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
 public class TechnicalInspectionRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(TechnicalInspectionRepository.class);
+
     // Получить все техосмотры
     public List<TechnicalInspection> findAll() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findAll");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                     "FROM TechnicalInspection ti ORDER BY ti.inspectionDate DESC",
                     TechnicalInspection.class
             ).list();
+        } finally {
+            timer.close();
         }
     }
 
     // Найти техосмотр по ID
     public TechnicalInspection findById(Long id) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findById");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.get(TechnicalInspection.class, id);
+        } finally {
+            timer.close();
         }
     }
 
     // Найти техосмотры автомобиля
     public List<TechnicalInspection> findByCarId(Long carId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findByCarId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                     "FROM TechnicalInspection ti WHERE ti.car.id = :carId ORDER BY ti.inspectionDate DESC",
                     TechnicalInspection.class
             ).setParameter("carId", carId).list();
+        } finally {
+            timer.close();
         }
     }
 
     // Получить последний техосмотр автомобиля
     public static TechnicalInspection findLatestByCarId(Long carId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findLatestByCarId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM TechnicalInspection ti WHERE ti.car.id = :carId ORDER BY ti.inspectionDate DESC",
@@ -46,11 +62,14 @@ public class TechnicalInspectionRepository {
                     .setParameter("carId", carId)
                     .setMaxResults(1)
                     .uniqueResult();
+        } finally {
+            timer.close();
         }
     }
 
     // Получить последний исправный техосмотр автомобиля
     public TechnicalInspection findLatestPassedByCarId(Long carId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findLatestPassedByCarId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM TechnicalInspection ti WHERE ti.car.id = :carId AND ti.isPassed = true ORDER BY ti.inspectionDate DESC",
@@ -59,49 +78,205 @@ public class TechnicalInspectionRepository {
                     .setParameter("carId", carId)
                     .setMaxResults(1)
                     .uniqueResult();
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Последний техосмотр каждого автомобиля (при равном времени - последний добавленный)
+    static final String LATEST_PER_CAR =
+            "NOT EXISTS (SELECT n.id FROM TechnicalInspection n WHERE n.car.id = ti.car.id " +
+                    "AND (n.inspectionDate > ti.inspectionDate " +
+                    "OR (n.inspectionDate = ti.inspectionDate AND n.id > ti.id)))";
+
+    // Последние техосмотры всех автомобилей вместе с автомобилями (и их водителями - связь не ленивая)
+    public List<TechnicalInspection> findLatestPerCar() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findLatestPerCar");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                    "FROM TechnicalInspection ti JOIN FETCH ti.car c LEFT JOIN FETCH c.currentDriver WHERE " + LATEST_PER_CAR,
+                    TechnicalInspection.class
+            ).list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Последний техосмотр автомобиля вместе с автомобилем и механиком
+    public TechnicalInspection findLatestWithDetailsByCarId(Long carId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findLatestWithDetailsByCarId");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                            "FROM TechnicalInspection ti JOIN FETCH ti.car c LEFT JOIN FETCH c.currentDriver " +
+                                    "LEFT JOIN FETCH ti.mechanic WHERE ti.car.id = :carId ORDER BY ti.inspectionDate DESC, ti.id DESC",
+                            TechnicalInspection.class
+                    )
+                    .setParameter("carId", carId)
+                    .setMaxResults(1)
+                    .uniqueResult();
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Результат последнего техосмотра автомобиля; null - осмотров не было
+    public Boolean findLatestResultByCarId(Long carId) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findLatestResultByCarId");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                            "SELECT ti.isPassed FROM TechnicalInspection ti WHERE ti.car.id = :carId " +
+                                    "ORDER BY ti.inspectionDate DESC, ti.id DESC",
+                            Boolean.class
+                    )
+                    .setParameter("carId", carId)
+                    .setMaxResults(1)
+                    .uniqueResult();
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Последние техосмотры (новые первыми) вместе с автомобилями и механиками
+    public List<TechnicalInspection> findRecent(int limit) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findRecent");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                            "FROM TechnicalInspection ti LEFT JOIN FETCH ti.car c LEFT JOIN FETCH c.currentDriver " +
+                                    "LEFT JOIN FETCH ti.mechanic ORDER BY ti.inspectionDate DESC, ti.id DESC",
+                            TechnicalInspection.class
+                    )
+                    .setMaxResults(limit)
+                    .list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Итоги по всем техосмотрам одной строкой: [0] всего, [1] пройдено, [2] средний пробег (или null)
+     */
+    public Object[] getTotals() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.getTotals");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                    "SELECT COUNT(ti.id), SUM(CASE WHEN ti.isPassed = true THEN 1 ELSE 0 END), AVG(ti.mileageKm) " +
+                            "FROM TechnicalInspection ti",
+                    Object[].class
+            ).uniqueResult();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Число автомобилей по результату последнего техосмотра. Строки: [0] пройден, [1] число автомобилей
+     */
+    public List<Object[]> countCarsByLatestResult() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.countCarsByLatestResult");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                    "SELECT ti.isPassed, COUNT(ti.id) FROM TechnicalInspection ti WHERE " + LATEST_PER_CAR +
+                            " GROUP BY ti.isPassed",
+                    Object[].class
+            ).list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Автомобили, у которых нет ни одного техосмотра
+    public List<Car> findCarsWithoutInspection() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.findCarsWithoutInspection");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                    "FROM Car c LEFT JOIN FETCH c.currentDriver " +
+                            "WHERE NOT EXISTS (SELECT ti.id FROM TechnicalInspection ti WHERE ti.car.id = c.id)",
+                    Car.class
+            ).list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Число автомобилей без техосмотров
+    public long countCarsWithoutInspection() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.countCarsWithoutInspection");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Long count = session.createQuery(
+                    "SELECT COUNT(c.id) FROM Car c " +
+                            "WHERE NOT EXISTS (SELECT ti.id FROM TechnicalInspection ti WHERE ti.car.id = c.id)",
+                    Long.class
+            ).uniqueResult();
+            return count != null ? count : 0;
+        } finally {
+            timer.close();
         }
     }
 
     // Сохранить техосмотр
     public TechnicalInspection save(TechnicalInspection inspection) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.save");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             session.saveOrUpdate(inspection);
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в save()", e);
+            return inspection;
+        } finally {
+            timer.close();
         }
+        // Индекс автопарка - после фиксации и вне транзакционного try: его сбой не откатывает сохраненное
+        refreshFleet(inspection);
         return inspection;
     }
 
     // Обновить техосмотр
     public void update(TechnicalInspection inspection) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.update");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             session.merge(inspection);
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в update()", e);
+            return;
+        } finally {
+            timer.close();
         }
+        refreshFleet(inspection);
     }
 
     // Удалить техосмотр
     public void delete(Long id) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("TechnicalInspectionRepository.delete");
+        Long carId = null;
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             TechnicalInspection inspection = session.get(TechnicalInspection.class, id);
             if (inspection != null) {
+                carId = inspection.getCar().getId();
                 session.delete(inspection);
             }
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в delete()", e);
+            return;
+        } finally {
+            timer.close();
+        }
+        FleetIndex.getInstance().refreshCar(carId);
+    }
+
+    private static void refreshFleet(TechnicalInspection inspection) {
+        if (inspection.getCar() != null) {
+            FleetIndex.getInstance().refreshCar(inspection.getCar().getId());
         }
     }
 }
\ No newline at end of file
@@ -2,51 +2,73 @@ package com.taxi.repository;
 
 import com.taxi.entity.User;
 import com.taxi.util.HibernateUtil;
+import com.taxi.util.LatencyMetrics;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
 public class UserRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(UserRepository.class);
+
     public List<User> findAll() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("UserRepository.findAll");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery("FROM User", User.class).list();
+            return session.createQuery("FROM User", User.class)
+                    .setCacheable(true)
+                    .list();
+        } finally {
+            timer.close();
         }
     }
 
     public User findById(Long id) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("UserRepository.findById");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.get(User.class, id);
+        } finally {
+            timer.close();
         }
     }
 
     public User findByLogin(String login) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("UserRepository.findByLogin");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery(
                             "FROM User WHERE login = :login", User.class)
                     .setParameter("login", login)
+                    .setCacheable(true)
                     .uniqueResult();
+        } finally {
+            timer.close();
         }
     }
 
     public List<User> findByRole(String role) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("UserRepository.findByRole");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             Query<User> query = session.createQuery(
                     "SELECT u FROM User u WHERE u.userType = :role ORDER BY u.fullName",
                     User.class
             );
             query.setParameter("role", role);
+            query.setCacheable(true);
             return query.list();
         } catch (Exception e) {
-            System.err.println("Ошибка при поиске пользователей по роли " + role + ": " + e.getMessage());
+            log.error("Ошибка при поиске пользователей по роли {}", role, e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     public void save(User user) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("UserRepository.save");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             session.persist(user);
@@ -54,11 +76,14 @@ public class UserRepository {
         } catch (Exception e) {
             if (transaction != null) transaction.rollback();
             throw e;
+        } finally {
+            timer.close();
         }
     }
 
     public void update(User user) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("UserRepository.update");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             session.merge(user); // Используем merge для обновления
@@ -66,11 +91,14 @@ public class UserRepository {
         } catch (Exception e) {
             if (transaction != null) transaction.rollback();
             throw e;
+        } finally {
+            timer.close();
         }
     }
 
     public void delete(Long id) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("UserRepository.delete");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             User user = session.get(User.class, id);
@@ -81,13 +109,18 @@ public class UserRepository {
         } catch (Exception e) {
             if (transaction != null) transaction.rollback();
             throw e;
+        } finally {
+            timer.close();
         }
     }
 
     public long getTotalUsers() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("UserRepository.getTotalUsers");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery("SELECT COUNT(*) FROM User", Long.class)
                     .uniqueResult();
+        } finally {
+            timer.close();
         }
     }
 }
\ No newline at end of file
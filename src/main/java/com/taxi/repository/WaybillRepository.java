@@ -2,125 +2,154 @@ package com.taxi.repository;
 
 import com.taxi.entity.Waybill;
 import com.taxi.util.HibernateUtil;
+import com.taxi.util.LatencyMetrics;
+import jakarta.persistence.LockModeType;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public class WaybillRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(WaybillRepository.class);
+
     /**
      * Получить все путевые листы
      */
-    public List<Waybill> findAll() {
+    public List<Waybill> findAll(FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findAll");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                     "FROM Waybill w ORDER BY w.startTime DESC",
                     Waybill.class
             ).list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findAll()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти путевой лист по ID
      */
-    public Waybill findById(Long id) {
+    public Waybill findById(Long id, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findById");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.get(Waybill.class, id);
+            return session.find(Waybill.class, id, plan.hints(session, Waybill.class));
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findById()", e);
             return null;
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти активный путевой лист водителя
      */
-    public Waybill findActiveByDriverId(Long driverId) {
+    public Waybill findActiveByDriverId(Long driverId, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findActiveByDriverId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Waybill w WHERE w.driver.id = :driverId AND w.status = 'ACTIVE'",
                             Waybill.class
                     )
                     .setParameter("driverId", driverId)
                     .uniqueResult();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findActiveByDriverId()", e);
             return null;
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти активный путевой лист автомобиля
      */
-    public Waybill findActiveByCarId(Long carId) {
+    public Waybill findActiveByCarId(Long carId, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findActiveByCarId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Waybill w WHERE w.car.id = :carId AND w.status = 'ACTIVE'",
                             Waybill.class
                     )
                     .setParameter("carId", carId)
                     .uniqueResult();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findActiveByCarId()", e);
             return null;
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти путевые листы водителя
      */
-    public List<Waybill> findByDriverId(Long driverId) {
+    public List<Waybill> findByDriverId(Long driverId, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findByDriverId");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                     "FROM Waybill w WHERE w.driver.id = :driverId ORDER BY w.startTime DESC",
                     Waybill.class
             ).setParameter("driverId", driverId).list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findByDriverId()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти активные путевые листы
      */
-    public List<Waybill> findActive() {
+    public List<Waybill> findActive(FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findActive");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                     "FROM Waybill w WHERE w.status = 'ACTIVE' ORDER BY w.startTime",
                     Waybill.class
             ).list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findActive()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти завершенные путевые листы
      */
-    public List<Waybill> findCompleted() {
+    public List<Waybill> findCompleted(FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findCompleted");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                     "FROM Waybill w WHERE w.status = 'COMPLETED' ORDER BY w.endTime DESC",
                     Waybill.class
             ).list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findCompleted()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Найти путевые листы за период
      */
-    public List<Waybill> findByPeriod(java.time.LocalDateTime startDate, java.time.LocalDateTime endDate) {
+    public List<Waybill> findByPeriod(java.time.LocalDateTime startDate, java.time.LocalDateTime endDate, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findByPeriod");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Waybill w WHERE w.startTime BETWEEN :startDate AND :endDate ORDER BY w.startTime DESC",
                             Waybill.class
                     )
@@ -128,17 +157,20 @@ public class WaybillRepository {
                     .setParameter("endDate", endDate)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findByPeriod()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
     /**
      * Получить путевые листы водителя за период
      */
-    public List<Waybill> findByDriverAndPeriod(Long driverId, java.time.LocalDateTime startDate, java.time.LocalDateTime endDate) {
+    public List<Waybill> findByDriverAndPeriod(Long driverId, java.time.LocalDateTime startDate, java.time.LocalDateTime endDate, FetchPlan plan) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findByDriverAndPeriod");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
+            return plan.createQuery(session,
                             "FROM Waybill w WHERE w.driver.id = :driverId " +
                                     "AND w.startTime BETWEEN :startDate AND :endDate " +
                                     "ORDER BY w.startTime DESC",
@@ -149,8 +181,10 @@ public class WaybillRepository {
                     .setParameter("endDate", endDate)
                     .list();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в findByDriverAndPeriod()", e);
             return List.of();
+        } finally {
+            timer.close();
         }
     }
 
@@ -159,6 +193,7 @@ public class WaybillRepository {
      */
     public Waybill save(Waybill waybill) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.save");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             if (waybill.getId() == null) {
@@ -167,12 +202,15 @@ public class WaybillRepository {
                 waybill = session.merge(waybill);
             }
             transaction.commit();
-            return waybill;
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в save()", e);
             throw new RuntimeException("Ошибка сохранения путевого листа", e);
+        } finally {
+            timer.close();
         }
+        refreshFleet(waybill);
+        return waybill;
     }
 
     /**
@@ -180,16 +218,24 @@ public class WaybillRepository {
      */
     public Waybill update(Waybill waybill) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.update");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
             waybill = session.merge(waybill);
             transaction.commit();
-            return waybill;
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                throw new IllegalStateException("Путевой лист #" + waybill.getId()
+                        + " уже изменен другим пользователем. Обновите страницу и повторите действие");
+            }
+            log.error("Ошибка в update()", e);
             throw new RuntimeException("Ошибка обновления путевого листа", e);
+        } finally {
+            timer.close();
         }
+        refreshFleet(waybill);
+        return waybill;
     }
 
     /**
@@ -197,33 +243,41 @@ public class WaybillRepository {
      */
     public boolean delete(Long id) {
         Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.delete");
+        Waybill waybill;
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
-            Waybill waybill = session.get(Waybill.class, id);
-            if (waybill != null) {
-                session.remove(waybill);
-                transaction.commit();
-                return true;
+            waybill = session.get(Waybill.class, id);
+            if (waybill == null) {
+                return false;
             }
-            return false;
+            session.remove(waybill);
+            transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в delete()", e);
             return false;
+        } finally {
+            timer.close();
         }
+        refreshFleet(waybill);
+        return true;
     }
 
     /**
      * Получить количество активных путевых листов
      */
     public long countActive() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.countActive");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return (Long) session.createQuery(
                             "SELECT COUNT(w) FROM Waybill w WHERE w.status = 'ACTIVE'")
                     .uniqueResult();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в countActive()", e);
             return 0;
+        } finally {
+            timer.close();
         }
     }
 
@@ -231,14 +285,17 @@ public class WaybillRepository {
      * Получить общий заработок по всем завершенным сменам
      */
     public double getTotalEarnings() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.getTotalEarnings");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             Double total = (Double) session.createQuery(
                             "SELECT SUM(w.totalEarnings) FROM Waybill w WHERE w.status = 'COMPLETED'")
                     .uniqueResult();
             return total != null ? total : 0.0;
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в getTotalEarnings()", e);
             return 0.0;
+        } finally {
+            timer.close();
         }
     }
 
@@ -246,19 +303,23 @@ public class WaybillRepository {
      * Получить общий пробег по всем завершенным сменам
      */
     public int getTotalMileage() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.getTotalMileage");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             Long total = (Long) session.createQuery(
                             "SELECT SUM(w.finalMileageKm - w.initialMileageKm) FROM Waybill w WHERE w.status = 'COMPLETED'")
                     .uniqueResult();
             return total != null ? total.intValue() : 0;
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Ошибка в getTotalMileage()", e);
             return 0;
+        } finally {
+            timer.close();
         }
     }
 
     // метод для исправления существующих записей в БД
     public void fixNullFields() {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.fixNullFields");
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             Transaction transaction = session.beginTransaction();
 
@@ -272,9 +333,77 @@ public class WaybillRepository {
             }
 
             transaction.commit();
-            System.out.println("✅ Исправлены null-поля в " + waybills.size() + " путевых листах");
+            log.info("Исправлены null-поля в {} путевых листах", waybills.size());
+        } catch (Exception e) {
+            log.error("Ошибка в fixNullFields()", e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Итоги путевых листов, начатых не раньше since, рядом с пересчетом по их выполненным заказам.
+     * Строка: id, ordersCount, totalRevenue, totalDistance, число заказов, сумма цен, сумма дистанций
+     */
+    public List<Object[]> findTotalsWithOrderSums(LocalDateTime since) {
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.findTotalsWithOrderSums");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createQuery(
+                            "SELECT w.id, w.ordersCount, w.totalRevenue, w.totalDistance, " +
+                                    "COUNT(o.id), COALESCE(SUM(o.price), 0.0), COALESCE(SUM(o.distanceKm), 0.0) " +
+                                    "FROM Waybill w LEFT JOIN Order o ON o.waybill = w AND o.status = 'COMPLETED' " +
+                                    "WHERE w.startTime >= :since " +
+                                    "GROUP BY w.id, w.ordersCount, w.totalRevenue, w.totalDistance", Object[].class)
+                    .setParameter("since", since)
+                    .list();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Пересчитывает итоги путевого листа по выполненным заказам. Строка путевого листа
+     * блокируется до пересчета: завершение заказа увеличивает итоги под той же блокировкой,
+     * поэтому уже завершенные заказы попадают в пересчет, а завершаемые прибавятся после него
+     */
+    public boolean recalculateTotals(Long waybillId) {
+        Transaction transaction = null;
+        LatencyMetrics.Timer timer = LatencyMetrics.repository("WaybillRepository.recalculateTotals");
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            transaction = session.beginTransaction();
+            if (session.find(Waybill.class, waybillId, LockModeType.PESSIMISTIC_WRITE) == null) {
+                transaction.rollback();
+                return false;
+            }
+            Object[] sums = session.createQuery(
+                            "SELECT COUNT(o.id), COALESCE(SUM(o.price), 0.0), COALESCE(SUM(o.distanceKm), 0.0) " +
+                                    "FROM Order o WHERE o.waybill.id = :waybillId AND o.status = 'COMPLETED'", Object[].class)
+                    .setParameter("waybillId", waybillId)
+                    .uniqueResult();
+            session.createMutationQuery(
+                            "UPDATE Waybill w SET w.ordersCount = :ordersCount, w.totalRevenue = :totalRevenue, " +
+                                    "w.totalDistance = :totalDistance WHERE w.id = :waybillId")
+                    .setParameter("ordersCount", ((Number) sums[0]).intValue())
+                    .setParameter("totalRevenue", ((Number) sums[1]).doubleValue())
+                    .setParameter("totalDistance", ((Number) sums[2]).doubleValue())
+                    .setParameter("waybillId", waybillId)
+                    .executeUpdate();
+            transaction.commit();
+            return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            if (transaction != null && transaction.isActive()) transaction.rollback();
+            log.error("Ошибка в recalculateTotals()", e);
+            return false;
+        } finally {
+            timer.close();
+        }
+    }
+
+    // С путевым листом могла начаться или закончиться смена автомобиля.
+    // Вызывается после фиксации и вне транзакционного try: сбой индекса не откатывает сохраненное
+    private static void refreshFleet(Waybill waybill) {
+        if (waybill.getCar() != null) {
+            FleetIndex.getInstance().refreshCar(waybill.getCar().getId());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,9 @@
 package com.taxi.service;
 
 import com.taxi.entity.Car;
-import com.taxi.entity.TechnicalInspection;
-import com.taxi.repository.TechnicalInspectionRepository;
+import com.taxi.repository.CarRepository;
+import com.taxi.repository.FleetIndex;
+import com.taxi.repository.SearchIndex;
 import com.taxi.util.HibernateUtil;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
@@ -11,6 +12,10 @@ import java.util.List;
 
 public class CarService {
 
+    private final CarRepository carRepository = new CarRepository();
+    private final FleetIndex fleet = FleetIndex.getInstance();
+    private final SearchIndex searchIndex = SearchIndex.getInstance();
+
     public List<Car> getAllCars() {
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             return session.createQuery("FROM Car", Car.class).list();
@@ -32,10 +37,8 @@ public class CarService {
 
             session.persist(car);
             transaction.commit();
-
-            return car.getId() != null;
         } catch (Exception e) {
-            if (transaction != null) {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
             throw new RuntimeException("Ошибка при создании автомобиля", e);
@@ -44,6 +47,10 @@ public class CarService {
                 session.close();
             }
         }
+        // Индексы - после фиксации и вне транзакционного try: их сбой не откатывает сохраненное
+        fleet.refreshCar(car.getId());
+        searchIndex.refreshCar(car.getId());
+        return car.getId() != null;
     }
 
     public void updateCar(Car car) {
@@ -56,7 +63,7 @@ public class CarService {
             session.merge(car);
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
             throw new RuntimeException("Ошибка при обновлении автомобиля", e);
@@ -65,24 +72,26 @@ public class CarService {
                 session.close();
             }
         }
+        fleet.refreshCar(car.getId());
+        searchIndex.refreshCar(car.getId());
     }
 
     public boolean deleteCar(Long id) {
         Session session = null;
         Transaction transaction = null;
+        Car car;
         try {
             session = HibernateUtil.getSessionFactory().openSession();
             transaction = session.beginTransaction();
 
-            Car car = session.get(Car.class, id);
+            car = session.get(Car.class, id);
             if (car != null) {
                 session.remove(car);
             }
 
             transaction.commit();
-            return car != null;
         } catch (Exception e) {
-            if (transaction != null) {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
             throw new RuntimeException("Ошибка при удалении автомобиля", e);
@@ -91,47 +100,33 @@ public class CarService {
                 session.close();
             }
         }
+        if (car != null) {
+            fleet.carRemoved(id);
+            searchIndex.carRemoved(id);
+        }
+        return car != null;
     }
 
+    /**
+     * Доступные автомобили: активен, не в ремонте, не закреплен за водителем
+     */
     public List<Car> getAvailableCars() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
-                    "FROM Car c WHERE c.isActive = true AND c.inRepair = false AND c.id NOT IN " +
-                            "(SELECT d.currentCar.id FROM Driver d WHERE d.currentCar IS NOT NULL)",
-                    Car.class
-            ).list();
-        }
+        return carRepository.findByIds(fleet.getAvailableCarIds());
     }
 
     public List<Car> getCarsInRepair() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
-                    "FROM Car c WHERE c.inRepair = true",
-                    Car.class
-            ).list();
-        }
+        return carRepository.findByIds(fleet.getInRepairCarIds());
     }
 
     public List<Car> getActiveCars() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            return session.createQuery(
-                    "FROM Car c WHERE c.isActive = true",
-                    Car.class
-            ).list();
-        }
+        return carRepository.findByIds(fleet.getActiveCarIds());
     }
 
     /**
      * Получить общее количество автомобилей
      */
     public long getTotalCars() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            Long count = session.createQuery(
-                    "SELECT COUNT(c) FROM Car c",
-                    Long.class
-            ).uniqueResult();
-            return count != null ? count : 0;
-        }
+        return fleet.countTotal();
     }
 
     /**
@@ -145,40 +140,21 @@ public class CarService {
      * Получить количество активных автомобилей
      */
     public long getActiveCarsCount() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            Long count = session.createQuery(
-                    "SELECT COUNT(c) FROM Car c WHERE c.isActive = true",
-                    Long.class
-            ).uniqueResult();
-            return count != null ? count : 0;
-        }
+        return fleet.countActive();
     }
 
     /**
      * Получить количество автомобилей в ремонте
      */
     public long getCarsInRepairCount() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            Long count = session.createQuery(
-                    "SELECT COUNT(c) FROM Car c WHERE c.inRepair = true",
-                    Long.class
-            ).uniqueResult();
-            return count != null ? count : 0;
-        }
+        return fleet.countInRepair();
     }
 
     /**
      * Получить количество доступных автомобилей
      */
     public long getAvailableCarsCount() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            Long count = session.createQuery(
-                    "SELECT COUNT(c) FROM Car c WHERE c.isActive = true AND c.inRepair = false AND c.id NOT IN " +
-                            "(SELECT d.currentCar.id FROM Driver d WHERE d.currentCar IS NOT NULL)",
-                    Long.class
-            ).uniqueResult();
-            return count != null ? count : 0;
-        }
+        return fleet.countAvailable();
     }
 
     /**
@@ -195,7 +171,6 @@ public class CarService {
     }
 
     public boolean hasValidInspection(Long carId) {
-        TechnicalInspection lastInspection = TechnicalInspectionRepository.findLatestByCarId(carId);
-        return lastInspection != null && lastInspection.getIsPassed();
+        return fleet.hasValidInspection(carId);
     }
 }
\ No newline at end of file
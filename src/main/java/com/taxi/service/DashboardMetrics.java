@@ -0,0 +1,249 @@
+package com.taxi.service;
+
+import com.taxi.entity.Order;
+import com.taxi.repository.OrderRepository;
+import com.taxi.util.Background;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики для панелей диспетчера и заказов.
+ *
+ * Строятся агрегирующим запросом к БД, дальше обновляются
+ * инкрементально из OrderService при создании/изменении/удалении заказа.
+ * Чтение любого показателя - O(1), без обращения к таблице orders.
+ * Счетчики по дням хранятся за последние RETENTION_DAYS дней (по дате создания заказа).
+ *
+ * Полный пересчет - Background.scheduleRebuild: новый набор счетчиков строится целиком
+ * и подменяет старый, читатели не видят промежуточных нулей
+ */
+public final class DashboardMetrics {
+
+    private static final int RETENTION_DAYS = 7;
+    private static final long REBUILD_INTERVAL_SECONDS = 60;
+
+    private volatile Counters counters = new Counters();
+
+    private DashboardMetrics() {
+    }
+
+    private static class Holder {
+        private static final DashboardMetrics INSTANCE = create();
+
+        private static DashboardMetrics create() {
+            DashboardMetrics metrics = new DashboardMetrics();
+            metrics.rebuild();
+            Background.scheduleRebuild("dashboard-metrics", REBUILD_INTERVAL_SECONDS, metrics::rebuild);
+            return metrics;
+        }
+    }
+
+    public static DashboardMetrics getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Пересчитать счетчики одним агрегирующим запросом к БД
+     */
+    public synchronized void rebuild() {
+        List<Object[]> rows = new OrderRepository().getDailyStatusTotals();
+
+        Counters rebuilt = new Counters();
+        LocalDate firstKeptDay = LocalDate.now().minusDays(RETENTION_DAYS - 1);
+        for (Object[] row : rows) {
+            LocalDate day = (LocalDate) row[0];
+            String status = (String) row[1];
+            long count = ((Number) row[2]).longValue();
+            double revenue = row[3] != null ? ((Number) row[3]).doubleValue() : 0.0;
+            long timedCount = row[4] != null ? ((Number) row[4]).longValue() : 0;
+            long seconds = row[5] != null ? ((Number) row[5]).longValue() : 0;
+
+            rebuilt.statusCounts.computeIfAbsent(status, k -> new LongAdder()).add(count);
+            boolean completed = "COMPLETED".equals(status);
+            if (completed) {
+                rebuilt.totalRevenue.add(revenue);
+            }
+
+            if (day == null || day.isBefore(firstKeptDay)) {
+                continue;
+            }
+            DayCounters counters = rebuilt.days.computeIfAbsent(day, d -> new DayCounters());
+            counters.created.add(count);
+            if (completed) {
+                counters.completed.add(count);
+                counters.revenue.add(revenue);
+                counters.timedCompleted.add(timedCount);
+                counters.completionSeconds.add(seconds);
+            }
+        }
+        // Изменение, попавшее между запросом и подменой, учтется следующим пересчетом
+        this.counters = rebuilt;
+    }
+
+    // ОБНОВЛЕНИЕ
+
+    /**
+     * Учесть сохранение заказа: before - состояние до изменения (null для нового заказа)
+     */
+    public void orderSaved(OrderState before, Order after) {
+        apply(before, -1);
+        apply(OrderState.of(after), 1);
+    }
+
+    /**
+     * Учесть удаление заказа
+     */
+    public void orderDeleted(OrderState before) {
+        apply(before, -1);
+    }
+
+    private void apply(OrderState state, int sign) {
+        if (state == null || state.status == null) {
+            return;
+        }
+
+        Counters current = this.counters;
+        current.statusCounts.computeIfAbsent(state.status, k -> new LongAdder()).add(sign);
+        boolean completed = "COMPLETED".equals(state.status);
+        if (completed && state.price != null) {
+            current.totalRevenue.add(sign * state.price);
+        }
+
+        DayCounters counters = dayCounters(current.days, state.orderTime);
+        if (counters == null) {
+            return;
+        }
+        counters.created.add(sign);
+        if (completed) {
+            counters.completed.add(sign);
+            if (state.price != null) {
+                counters.revenue.add(sign * state.price);
+            }
+            if (state.completionTime != null) {
+                counters.timedCompleted.add(sign);
+                counters.completionSeconds.add(sign * Duration.between(state.orderTime, state.completionTime).getSeconds());
+            }
+        }
+    }
+
+    private static DayCounters dayCounters(ConcurrentHashMap<LocalDate, DayCounters> days, LocalDateTime orderTime) {
+        if (orderTime == null) {
+            return null;
+        }
+        LocalDate day = orderTime.toLocalDate();
+        LocalDate firstKeptDay = LocalDate.now().minusDays(RETENTION_DAYS - 1);
+        if (day.isBefore(firstKeptDay)) {
+            return null;
+        }
+        DayCounters counters = days.get(day);
+        if (counters == null) {
+            counters = days.computeIfAbsent(day, d -> new DayCounters());
+            // Новый день - заодно выбрасываем устаревшие
+            days.keySet().removeIf(d -> d.isBefore(firstKeptDay));
+        }
+        return counters;
+    }
+
+    // ЧТЕНИЕ
+
+    public long getTotalOrders() {
+        long total = 0;
+        for (LongAdder count : counters.statusCounts.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public long getCountByStatus(String status) {
+        LongAdder count = counters.statusCounts.get(status);
+        return count != null ? count.sum() : 0;
+    }
+
+    public double getTotalRevenue() {
+        return counters.totalRevenue.sum();
+    }
+
+    public long getOrdersCount(LocalDate day) {
+        DayCounters counters = this.counters.days.get(day);
+        return counters != null ? counters.created.sum() : 0;
+    }
+
+    public long getCompletedCount(LocalDate day) {
+        DayCounters counters = this.counters.days.get(day);
+        return counters != null ? counters.completed.sum() : 0;
+    }
+
+    public double getRevenue(LocalDate day) {
+        DayCounters counters = this.counters.days.get(day);
+        return counters != null ? counters.revenue.sum() : 0.0;
+    }
+
+    /**
+     * Среднее время выполнения заказа (в минутах) для заказов, созданных в этот день
+     */
+    public double getAverageOrderMinutes(LocalDate day) {
+        DayCounters counters = this.counters.days.get(day);
+        if (counters == null) {
+            return 0.0;
+        }
+        long count = counters.timedCompleted.sum();
+        return count > 0 ? counters.completionSeconds.sum() / 60.0 / count : 0.0;
+    }
+
+    /**
+     * Счетчики по статусам (для отладки и страницы администратора)
+     */
+    public Map<String, Long> getStatusCounts() {
+        Map<String, Long> result = new java.util.TreeMap<>();
+        counters.statusCounts.forEach((status, count) -> result.put(status, count.sum()));
+        return result;
+    }
+
+    /**
+     * Набор счетчиков; пересчет строит новый и подменяет целиком
+     */
+    private static class Counters {
+        final ConcurrentHashMap<LocalDate, DayCounters> days = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> statusCounts = new ConcurrentHashMap<>();
+        final DoubleAdder totalRevenue = new DoubleAdder();
+    }
+
+    private static class DayCounters {
+        final LongAdder created = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final DoubleAdder revenue = new DoubleAdder();
+        final LongAdder timedCompleted = new LongAdder();
+        final LongAdder completionSeconds = new LongAdder();
+    }
+
+    /**
+     * Значимые для счетчиков поля заказа, снятые до его изменения
+     */
+    public static class OrderState {
+        final String status;
+        final LocalDateTime orderTime;
+        final LocalDateTime completionTime;
+        final Double price;
+
+        private OrderState(String status, LocalDateTime orderTime, LocalDateTime completionTime, Double price) {
+            this.status = status;
+            this.orderTime = orderTime;
+            this.completionTime = completionTime;
+            this.price = price;
+        }
+
+        public static OrderState of(Order order) {
+            if (order == null) {
+                return null;
+            }
+            return new OrderState(order.getStatus(), order.getOrderTime(), order.getCompletionTime(), order.getPrice());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.taxi.service;
+
+import com.taxi.dispatch.DispatchEngine;
+import com.taxi.repository.DriverRepository;
+import com.taxi.util.Background;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Допуск водителей к работе: по записи на водителя с результатом последнего медосмотра,
+ * сроком его действия, активным путевым листом и числом заказов в работе.
+ *
+ * Строится одним агрегирующим запросом, дальше обновляется точечно (refresh) сервисами
+ * при изменении медосмотров, путевых листов и заказов водителя. Проверка "может ли
+ * водитель работать" - поиск в памяти, без чтения истории медосмотров. Полная перестройка -
+ * Background.scheduleRebuild. Истечение медосмотра проверяется при чтении
+ */
+public final class DriverEligibility {
+
+    private static final Logger log = LoggerFactory.getLogger(DriverEligibility.class);
+
+    private static final long REBUILD_INTERVAL_SECONDS = 60;
+
+    private final DriverRepository driverRepository = new DriverRepository();
+    // водитель -> его допуск
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    private DriverEligibility() {
+    }
+
+    private static class Holder {
+        private static final DriverEligibility INSTANCE = create();
+
+        private static DriverEligibility create() {
+            DriverEligibility eligibility = new DriverEligibility();
+            try {
+                eligibility.rebuild();
+            } catch (RuntimeException e) {
+                // Пустая проекция: записи подгрузятся по одной при чтении и при плановой перестройке
+                log.error("Ошибка построения допуска водителей", e);
+            }
+            Background.scheduleRebuild("eligibility", REBUILD_INTERVAL_SECONDS, eligibility::rebuild);
+            return eligibility;
+        }
+    }
+
+    public static DriverEligibility getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // ОБНОВЛЕНИЕ
+
+    /**
+     * Перечитать допуск всех водителей одним запросом. При ошибке БД исключение уходит
+     * вызывающему, а проекция остается прежней: она меняется только после успешного чтения
+     */
+    public void rebuild() {
+        List<Object[]> rows = driverRepository.findEligibility(null);
+        Set<Long> present = new HashSet<>();
+        for (Object[] row : rows) {
+            Entry entry = toEntry(row);
+            present.add(entry.driverId);
+            entries.put(entry.driverId, entry);
+        }
+        entries.keySet().removeIf(driverId -> !present.contains(driverId));
+    }
+
+    /**
+     * Перечитать допуск одного водителя: после изменения его медосмотров, путевых листов и заказов
+     */
+    public void refresh(Long driverId) {
+        if (driverId == null) {
+            return;
+        }
+        load(driverId);
+    }
+
+    /**
+     * Водителю назначен заказ движком автоназначения: тот уже проверил, что водитель свободен,
+     * поэтому счетчик увеличивается без запроса к БД. Расхождение при гонке с refresh
+     * исправит ближайшая перестройка
+     */
+    public void orderOpened(Long driverId) {
+        if (driverId == null) {
+            return;
+        }
+        Entry entry = entries.computeIfPresent(driverId, (id, current) -> current.withOpenOrders(current.openOrders + 1));
+        if (entry == null) {
+            load(driverId);
+        }
+    }
+
+    // ЧТЕНИЕ
+
+    /**
+     * Допуск водителя; null - такого водителя нет
+     */
+    public Entry get(Long driverId) {
+        if (driverId == null) {
+            return null;
+        }
+        Entry entry = entries.get(driverId);
+        // Водитель добавлен после построения проекции
+        return entry != null ? entry : load(driverId);
+    }
+
+    /**
+     * Допущен ли водитель к работе по медосмотру
+     */
+    public boolean isMedicallyAllowed(Long driverId) {
+        Entry entry = get(driverId);
+        return entry != null && entry.isMedicallyAllowed(LocalDateTime.now());
+    }
+
+    /**
+     * Может ли водитель открыть смену: допущен по медосмотру и нет активного путевого листа
+     */
+    public boolean canStartShift(Long driverId) {
+        Entry entry = get(driverId);
+        return entry != null && entry.canStartShift(LocalDateTime.now());
+    }
+
+    /**
+     * id водителей, допущенных к работе по медосмотру
+     */
+    public List<Long> getMedicallyAllowedDriverIds() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isMedicallyAllowed(now)) {
+                ids.add(entry.driverId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * id водителей, которые могут открыть смену прямо сейчас
+     */
+    public List<Long> getShiftReadyDriverIds() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.canStartShift(now)) {
+                ids.add(entry.driverId);
+            }
+        }
+        return ids;
+    }
+
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+
+    /**
+     * Перечитать запись водителя. Если прочитать не удалось, остается прежняя запись:
+     * вызовы идут после уже записанных изменений, и ошибка здесь не должна их отменять
+     */
+    private Entry load(Long driverId) {
+        List<Object[]> rows;
+        try {
+            rows = driverRepository.findEligibility(driverId);
+        } catch (RuntimeException e) {
+            log.error("Ошибка обновления допуска водителя {}", driverId, e);
+            return entries.get(driverId);
+        }
+        if (rows.isEmpty()) {
+            entries.remove(driverId);
+            return null;
+        }
+        Entry entry = toEntry(rows.get(0));
+        entries.put(driverId, entry);
+        return entry;
+    }
+
+    /**
+     * Строка DriverRepository.findEligibility -> запись.
+     * Последний медосмотр пройден, если не было непройденного позже последнего пройденного
+     */
+    private static Entry toEntry(Object[] row) {
+        LocalDateTime lastCheck = (LocalDateTime) row[1];
+        LocalDateTime lastPassed = (LocalDateTime) row[2];
+        Boolean passed = lastCheck == null ? null : lastPassed != null && !lastPassed.isBefore(lastCheck);
+        LocalDateTime validUntil = Boolean.TRUE.equals(passed)
+                ? lastPassed.plus(DispatchEngine.MEDICAL_CHECK_VALIDITY) : null;
+        int openOrders = row[4] != null ? ((Number) row[4]).intValue() : 0;
+        return new Entry((Long) row[0], passed, lastCheck, validUntil, (Long) row[3], openOrders);
+    }
+
+    /**
+     * Допуск одного водителя (неизменяемый снимок)
+     */
+    public static final class Entry {
+        private final long driverId;
+        private final Boolean medicalPassed;
+        private final LocalDateTime lastCheckTime;
+        private final LocalDateTime medicalValidUntil;
+        private final Long activeWaybillId;
+        private final int openOrders;
+
+        Entry(long driverId, Boolean medicalPassed, LocalDateTime lastCheckTime, LocalDateTime medicalValidUntil,
+              Long activeWaybillId, int openOrders) {
+            this.driverId = driverId;
+            this.medicalPassed = medicalPassed;
+            this.lastCheckTime = lastCheckTime;
+            this.medicalValidUntil = medicalValidUntil;
+            this.activeWaybillId = activeWaybillId;
+            this.openOrders = openOrders;
+        }
+
+        Entry withOpenOrders(int count) {
+            return new Entry(driverId, medicalPassed, lastCheckTime, medicalValidUntil, activeWaybillId, count);
+        }
+
+        public boolean isMedicallyAllowed(LocalDateTime now) {
+            return medicalValidUntil != null && now.isBefore(medicalValidUntil);
+        }
+
+        public boolean canStartShift(LocalDateTime now) {
+            return isMedicallyAllowed(now) && activeWaybillId == null;
+        }
+
+        public long getDriverId() { return driverId; }
+
+        /**
+         * Результат последнего медосмотра; null - осмотров не было
+         */
+        public Boolean getMedicalPassed() { return medicalPassed; }
+        public LocalDateTime getLastCheckTime() { return lastCheckTime; }
+
+        /**
+         * До какого момента действует допуск; null - не допущен
+         */
+        public LocalDateTime getMedicalValidUntil() { return medicalValidUntil; }
+        public Long getActiveWaybillId() { return activeWaybillId; }
+
+        /**
+         * Заказов в статусах ASSIGNED/IN_PROGRESS
+         */
+        public int getOpenOrders() { return openOrders; }
+    }
+}
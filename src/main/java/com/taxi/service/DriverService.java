@@ -3,17 +3,23 @@ package com.taxi.service;
 import com.taxi.entity.*;
 import com.taxi.repository.DriverRepository;
 import com.taxi.repository.CarRepository;
+import com.taxi.repository.FleetIndex;
+import com.taxi.repository.SearchIndex;
 import com.taxi.util.HibernateUtil;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class DriverService {
+    private static final Logger log = LoggerFactory.getLogger(DriverService.class);
     private DriverRepository driverRepository = new DriverRepository();
     private CarRepository carRepository;
     private UserService userService = new UserService(); // Добавляем для работы с пользователями
+    private final FleetIndex fleet = FleetIndex.getInstance();
+    private final SearchIndex searchIndex = SearchIndex.getInstance();
 
     public DriverService() {
         this.driverRepository = new DriverRepository();
@@ -36,43 +42,36 @@ public class DriverService {
         Session session = null;
         Transaction transaction = null;
         try {
-            System.out.println(" Начинаем создание водителя: " + driver.getFullName());
-            System.out.println("    Данные: права=" + driver.getLicenseNumber() + ", тел=" + driver.getPhone());
-
             session = HibernateUtil.getSessionFactory().openSession();
             transaction = session.beginTransaction();
 
-            System.out.println("    Сохраняем водителя в БД...");
             session.persist(driver);
             session.flush(); // Принудительно сохраняем, чтобы получить ID
 
             transaction.commit();
-
-            System.out.println(" Водитель создан: " + driver.getFullName() + " (ID: " + driver.getId() + ")");
-            return driver.getId();
-
         } catch (Exception e) {
-            System.err.println(" КРИТИЧЕСКАЯ ОШИБКА при создании водителя:");
-            System.err.println("   Имя: " + driver.getFullName());
-            System.err.println("   Права: " + driver.getLicenseNumber());
-            System.err.println("   Причина: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка при создании водителя {} (права {})", driver.getFullName(),
+                    driver.getLicenseNumber(), e);
 
-            if (transaction != null) {
+            if (transaction != null && transaction.isActive()) {
                 try {
                     transaction.rollback();
-                    System.out.println("    Транзакция откатана");
                 } catch (Exception rollbackEx) {
-                    System.err.println("   Ошибка при откате: " + rollbackEx.getMessage());
+                    log.error("Ошибка при откате", rollbackEx);
                 }
             }
             throw new RuntimeException("Ошибка при создании водителя: " + e.getMessage(), e);
         } finally {
             if (session != null && session.isOpen()) {
                 session.close();
-                System.out.println("    Сессия закрыта");
             }
         }
+        // Индексы - после фиксации и вне транзакционного try: их сбой не откатывает сохраненное
+        fleet.driverChanged(driver.getId(), driver.getCurrentCar() != null ? driver.getCurrentCar().getId() : null);
+        searchIndex.refreshDriver(driver.getId());
+
+        log.info("Водитель создан: {} (ID: {})", driver.getFullName(), driver.getId());
+        return driver.getId();
     }
 
     public void updateDriver(Driver driver) {
@@ -85,7 +84,7 @@ public class DriverService {
             session.merge(driver);
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
             throw new RuntimeException("Ошибка при обновлении водителя", e);
@@ -94,29 +93,29 @@ public class DriverService {
                 session.close();
             }
         }
+        fleet.driverChanged(driver.getId(), driver.getCurrentCar() != null ? driver.getCurrentCar().getId() : null);
+        searchIndex.refreshDriver(driver.getId());
     }
 
     public void deleteDriver(Long id) {
         Session session = null;
         Transaction transaction = null;
+        Driver driver;
         try {
             session = HibernateUtil.getSessionFactory().openSession();
             transaction = session.beginTransaction();
 
-            Driver driver = session.get(Driver.class, id);
+            driver = session.get(Driver.class, id);
 
             if (driver != null) {
-                System.out.println(" Удаляем водителя: " + driver.getFullName() + " (ID: " + id + ")");
-
                 // 1. Находим и обнуляем все заказы этого водителя
-                System.out.println("    Ищем заказы водителя...");
                 List<Order> driverOrders = session.createQuery(
                                 "FROM Order o WHERE o.driver.id = :driverId", Order.class)
                         .setParameter("driverId", id)
                         .list();
 
                 if (!driverOrders.isEmpty()) {
-                    System.out.println("    Обнуляем водителя в " + driverOrders.size() + " заказах");
+                    log.debug("Обнуляем водителя в {} заказах", driverOrders.size());
                     for (Order order : driverOrders) {
                         order.setDriver(null);
                         session.merge(order);
@@ -125,54 +124,52 @@ public class DriverService {
 
                 // 2. Отвязываем автомобиль
                 if (driver.getCurrentCar() != null) {
-                    System.out.println("    Отвязываем автомобиль: " + driver.getCurrentCar().getLicensePlate());
+                    log.debug("Отвязываем автомобиль: {}", driver.getCurrentCar().getLicensePlate());
                     driver.setCurrentCar(null);
                     session.merge(driver);
                 }
 
                 // 3. Отвязываем пользователя
                 if (driver.getUser() != null) {
-                    System.out.println("    Отвязываем пользователя: " + driver.getUser().getLogin());
+                    log.debug("Отвязываем пользователя: {}", driver.getUser().getLogin());
                     driver.setUser(null);
                     session.merge(driver);
                 }
 
                 // 4. Удаляем медосмотры водителя
-                System.out.println("    Удаляем медосмотры...");
                 session.createQuery("DELETE FROM MedicalCheck m WHERE m.driver.id = :driverId")
                         .setParameter("driverId", id)
                         .executeUpdate();
 
                 // 5. Удаляем путевые листы водителя
-                System.out.println("    Удаляем путевые листы...");
                 session.createQuery("DELETE FROM Waybill w WHERE w.driver.id = :driverId")
                         .setParameter("driverId", id)
                         .executeUpdate();
 
                 // 6. Теперь можно удалить самого водителя
-                System.out.println("    Удаляем водителя...");
                 session.remove(driver);
 
                 transaction.commit();
-                System.out.println(" Водитель и все связанные данные успешно удалены");
-
             } else {
-                System.out.println(" Водитель с ID " + id + " не найден");
+                log.warn("Водитель с ID {} не найден", id);
                 transaction.rollback();
+                return;
             }
 
         } catch (Exception e) {
-            if (transaction != null) {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
-            System.err.println(" Ошибка при удалении водителя (ID: " + id + "): " + e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка при удалении водителя (ID: {})", id, e);
             throw new RuntimeException("Ошибка при удалении водителя: " + e.getMessage(), e);
         } finally {
             if (session != null && session.isOpen()) {
                 session.close();
             }
         }
+        fleet.driverRemoved(id);
+        searchIndex.driverRemoved(id);
+        log.info("Водитель {} (ID: {}) и все связанные данные удалены", driver.getFullName(), id);
     }
 
     public List<Driver> getDriversWithoutCar() {
@@ -206,8 +203,7 @@ public class DriverService {
         driver.setCurrentCar(car);
         driverRepository.update(driver);
 
-        System.out.println(" Автомобиль " + car.getLicensePlate() +
-                " назначен водителю " + driver.getFullName());
+        log.info("Автомобиль {} назначен водителю {}", car.getLicensePlate(), driver.getFullName());
     }
 
     public void unassignCarFromDriver(Long driverId) {
@@ -225,7 +221,7 @@ public class DriverService {
 
             transaction.commit();
         } catch (Exception e) {
-            if (transaction != null) {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
             throw new RuntimeException("Ошибка при снятии автомобиля с водителя", e);
@@ -234,6 +230,7 @@ public class DriverService {
                 session.close();
             }
         }
+        fleet.driverChanged(driverId, null);
     }
 
     // ИЗМЕНЕНИЕ: Обновляем метод для новой связи
@@ -291,22 +288,19 @@ public class DriverService {
      */
     public Long saveDriverWithUser(Driver driver, Long userId) {
         try {
-            System.out.println(" Привязываем пользователя к водителю...");
-            System.out.println("   Водитель: " + driver.getFullName());
-            System.out.println("   User ID: " + userId);
-
             User user = userService.getUserById(userId);
             if (user != null) {
-                System.out.println("    Найден пользователь: " + user.getFullName() + " (" + user.getLogin() + ")");
+                log.debug("Водитель {} привязан к пользователю {} ({})", driver.getFullName(),
+                        user.getFullName(), user.getLogin());
                 driver.setUser(user);
             } else {
-                System.out.println("   ️ Пользователь с ID=" + userId + " не найден, создаем без привязки");
+                log.warn("Пользователь с ID={} не найден, создаем без привязки", userId);
             }
 
             return createDriver(driver);
 
         } catch (Exception e) {
-            System.err.println(" Ошибка при связывании водителя с пользователем: " + e.getMessage());
+            log.error("Ошибка при связывании водителя с пользователем", e);
             throw new RuntimeException("Ошибка при создании водителя с пользователем: " + e.getMessage(), e);
         }
     }
@@ -319,11 +313,11 @@ public class DriverService {
             User user = userService.getUserById(userId);
             if (user != null) {
                 driver.setUser(user);
-                System.out.println(" Обновлена привязка к пользователю: " + user.getFullName());
+                log.info("Обновлена привязка к пользователю: {}", user.getFullName());
             }
         } else {
             driver.setUser(null); // Отвязать пользователя
-            System.out.println(" Пользователь отвязан от водителя");
+            log.info("Пользователь отвязан от водителя");
         }
         updateDriver(driver);
     }
@@ -360,83 +354,14 @@ public class DriverService {
     }
 
     public List<Car> getAvailableCars() {
-        System.out.println("\n ДЕБАГ: ПОИСК ДОСТУПНЫХ АВТОМОБИЛЕЙ ");
-
         try {
-            if (carRepository == null) {
-                System.out.println(" carRepository is NULL!");
-                return List.of();
-            }
-
-            System.out.println(" carRepository загружен");
-            List<Car> allCars = carRepository.findAll();
-            System.out.println("📊 Всего автомобилей в БД: " + allCars.size());
-
-            if (allCars.isEmpty()) {
-                System.out.println(" В БД нет автомобилей!");
-                return List.of();
-            }
-
-            System.out.println("\n📋 СПИСОК ВСЕХ АВТОМОБИЛЕЙ:");
-            for (Car car : allCars) {
-                System.out.println(String.format(
-                        " ID: %d, %s %s (%s) | " +
-                                "Активен: %s | " +
-                                "В ремонте: %s | " +
-                                "Водитель: %s | " +
-                                "Статус: %s",
-                        car.getId(),
-                        car.getBrand(),
-                        car.getModel(),
-                        car.getLicensePlate(),
-                        car.getIsActive(),
-                        car.getInRepair(),
-                        (car.getCurrentDriver() != null ? car.getCurrentDriver().getFullName() : "НЕТ"),
-                        car.getTechnicalStatus()
-                ));
-            }
-
-            List<Car> availableCars = allCars.stream()
-                    .filter(car -> {
-                        boolean isActive = car.getIsActive() == null || car.getIsActive();
-                        if (!isActive) {
-                            System.out.println("    " + car.getLicensePlate() + " - не активен");
-                        }
-                        return isActive;
-                    })
-                    .filter(car -> {
-                        boolean notInRepair = car.getInRepair() == null || !car.getInRepair();
-                        if (!notInRepair) {
-                            System.out.println("    " + car.getLicensePlate() + " - в ремонте");
-                        }
-                        return notInRepair;
-                    })
-                    .filter(car -> {
-                        boolean hasNoDriver = car.getCurrentDriver() == null;
-                        if (!hasNoDriver) {
-                            System.out.println("    " + car.getLicensePlate() + " - занят водителем: " +
-                                    car.getCurrentDriver().getFullName());
-                        }
-                        return hasNoDriver;
-                    })
-                    .collect(Collectors.toList());
-
-            System.out.println("\n ДОСТУПНЫХ АВТОМОБИЛЕЙ: " + availableCars.size());
-
-            if (availableCars.isEmpty()) {
-                System.out.println("⚠ Нет доступных автомобилей! Проверь фильтры выше.");
-            } else {
-                System.out.println(" ДОСТУПНЫЕ АВТОМОБИЛИ:");
-                for (Car car : availableCars) {
-                    System.out.println("    " + car.getLicensePlate() + " - " + car.getBrand() + " " + car.getModel());
-                }
-            }
-
+            // Активен, не в ремонте, не закреплен за водителем - выборка по индексу автопарка
+            List<Car> availableCars = carRepository.findByIds(fleet.getAvailableCarIds());
+            log.debug("Доступных автомобилей: {} из {}", availableCars.size(), fleet.countTotal());
             return availableCars;
 
         } catch (Exception e) {
-            System.err.println(" КРИТИЧЕСКАЯ ОШИБКА в getAvailableCars(): " + e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка при поиске доступных автомобилей", e);
             return List.of();
         }
     }
@@ -511,7 +436,7 @@ public class DriverService {
                     .setParameter("licenseNumber", licenseNumber)
                     .uniqueResult();
         } catch (Exception e) {
-            System.err.println("Ошибка при поиске водителя по номеру прав: " + e.getMessage());
+            log.error("Ошибка при поиске водителя по номеру прав", e);
             return null;
         }
     }
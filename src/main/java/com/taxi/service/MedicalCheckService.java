@@ -1,23 +1,30 @@
 package com.taxi.service;
 
+import com.taxi.dispatch.DispatchEngine;
 import com.taxi.entity.Driver;
 import com.taxi.entity.MedicalCheck;
 import com.taxi.entity.User;
 import com.taxi.repository.DriverRepository;
 import com.taxi.repository.MedicalCheckRepository;
+import com.taxi.repository.SearchIndex;
 import com.taxi.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class MedicalCheckService {
 
+    private static final Logger log = LoggerFactory.getLogger(MedicalCheckService.class);
     private MedicalCheckRepository medicalCheckRepository;
     private DriverRepository driverRepository;
     private UserRepository userRepository;
+    private final DriverEligibility eligibility = DriverEligibility.getInstance();
 
     public MedicalCheckService() {
         this.medicalCheckRepository = new MedicalCheckRepository();
@@ -58,10 +65,10 @@ public class MedicalCheckService {
 
         // Сохраняем
         medicalCheckRepository.save(medicalCheck);
+        DispatchEngine.getInstance().refreshDriver(driverId);
+        eligibility.refresh(driverId);
 
-        System.out.println("🏥 Медосмотр создан: " +
-                driver.getFullName() + " - " +
-                (isPassed ? " Допущен" : " Не допущен"));
+        log.info("Медосмотр создан: {} - {}", driver.getFullName(), isPassed ? "допущен" : "не допущен");
 
         return medicalCheck;
     }
@@ -95,31 +102,17 @@ public class MedicalCheckService {
     }
 
     /**
-     * Проверить, допущен ли водитель к работе
+     * Проверить, допущен ли водитель к работе: последний медосмотр пройден и еще действует
      */
     public boolean isDriverAllowedToWork(Long driverId) {
-        MedicalCheck lastCheck = medicalCheckRepository.findLatestPassedByDriverId(driverId);
-        return lastCheck != null && Boolean.TRUE.equals(lastCheck.getIsPassed());
+        return eligibility.isMedicallyAllowed(driverId);
     }
 
     /**
      * Получить водителей, допущенных к работе
      */
     public List<Driver> getAllowedDrivers() {
-        List<MedicalCheck> allChecks = medicalCheckRepository.findAll();
-
-        // Фильтруем только последние пройденные медосмотры для каждого водителя
-        return allChecks.stream()
-                .filter(check -> Boolean.TRUE.equals(check.getIsPassed()))
-                .collect(Collectors.toMap(
-                        check -> check.getDriver().getId(),
-                        check -> check,
-                        (check1, check2) ->
-                                check1.getCheckDate().isAfter(check2.getCheckDate()) ? check1 : check2
-                ))
-                .values().stream()
-                .map(MedicalCheck::getDriver)
-                .collect(Collectors.toList());
+        return driverRepository.findByIds(eligibility.getMedicallyAllowedDriverIds());
     }
 
     /**
@@ -154,10 +147,11 @@ public class MedicalCheckService {
         medicalCheck.setOpensShift(opensShift);
 
         medicalCheckRepository.update(medicalCheck);
+        DispatchEngine.getInstance().refreshDriver(medicalCheck.getDriver().getId());
+        eligibility.refresh(medicalCheck.getDriver().getId());
 
-        System.out.println("✏ Медосмотр обновлен: " +
-                medicalCheck.getDriver().getFullName() + " - " +
-                (isPassed ? " Допущен" : " Не допущен"));
+        log.info("Медосмотр обновлен: {} - {}", medicalCheck.getDriver().getFullName(),
+                isPassed ? "допущен" : "не допущен");
     }
 
     /**
@@ -166,9 +160,10 @@ public class MedicalCheckService {
     public void deleteMedicalCheck(Long checkId) {
         MedicalCheck medicalCheck = medicalCheckRepository.findById(checkId);
         if (medicalCheck != null) {
-            System.out.println("🗑️ Удален медосмотр: " +
-                    medicalCheck.getDriver().getFullName());
+            log.info("Удален медосмотр: {}", medicalCheck.getDriver().getFullName());
             medicalCheckRepository.delete(checkId);
+            DispatchEngine.getInstance().refreshDriver(medicalCheck.getDriver().getId());
+            eligibility.refresh(medicalCheck.getDriver().getId());
         }
     }
 
@@ -179,20 +174,19 @@ public class MedicalCheckService {
         MedicalCheck lastCheck = medicalCheckRepository.findLatestPassedByDriverId(driverId);
 
         if (lastCheck == null) {
-            System.out.println(" Нельзя открыть смену: водитель не прошел медосмотр");
+            log.info("Нельзя открыть смену: водитель #{} не прошел медосмотр", driverId);
             return false;
         }
 
         if (!Boolean.TRUE.equals(lastCheck.getIsPassed())) {
-            System.out.println(" Нельзя открыть смену: водитель не допущен к работе");
+            log.info("Нельзя открыть смену: водитель #{} не допущен к работе", driverId);
             return false;
         }
 
         lastCheck.setOpensShift(true);
         medicalCheckRepository.update(lastCheck);
 
-        System.out.println(" Смена открыта для водителя: " +
-                lastCheck.getDriver().getFullName());
+        log.info("Смена открыта для водителя: {}", lastCheck.getDriver().getFullName());
 
         return true;
     }
@@ -283,48 +277,44 @@ public class MedicalCheckService {
      */
     public List<MedicalCheck> getFilteredMedicalChecks(Long driverId, LocalDate date,
                                                        Boolean status, Boolean opensShift) {
-        List<MedicalCheck> allChecks = getAllMedicalChecks();
+        return getFilteredMedicalChecks(driverId, date, status, opensShift, null);
+    }
 
-        return allChecks.stream()
-                .filter(check -> {
-                    if (driverId != null && !check.getDriver().getId().equals(driverId)) {
-                        return false;
-                    }
-                    if (date != null && !check.getCheckDate().toLocalDate().equals(date)) {
-                        return false;
-                    }
-                    if (status != null && !check.getIsPassed().equals(status)) {
-                        return false;
-                    }
-                    if (opensShift != null && !opensShift.equals(check.getOpensShift())) {
-                        return false;
-                    }
-                    return true;
-                })
-                .sorted((c1, c2) -> c2.getCheckDate().compareTo(c1.getCheckDate()))
+    /**
+     * Получить медосмотры по фильтрам и тексту (ФИО и права водителя, врач, примечания), новые первыми.
+     * Фильтры применяются в запросе, текст ищется по SearchIndex
+     */
+    public List<MedicalCheck> getFilteredMedicalChecks(Long driverId, LocalDate date, Boolean status,
+                                                       Boolean opensShift, String search) {
+        LocalDateTime from = date != null ? date.atStartOfDay() : null;
+        LocalDateTime to = date != null ? date.plusDays(1).atStartOfDay() : null;
+        if (search == null || search.isBlank()) {
+            return medicalCheckRepository.findFiltered(driverId, from, to, status, opensShift, null);
+        }
+
+        List<Long> matched = SearchIndex.getInstance().findIds(search, SearchIndex.Type.MEDICAL_CHECK);
+        if (matched.isEmpty()) {
+            return List.of();
+        }
+        if (matched.size() <= MedicalCheckRepository.MAX_IDS_PER_QUERY) {
+            return medicalCheckRepository.findFiltered(driverId, from, to, status, opensShift, matched);
+        }
+        // Совпадений много - фильтруем запросом, текст проверяем по набору id
+        Set<Long> matchedIds = new HashSet<>(matched);
+        return medicalCheckRepository.findFiltered(driverId, from, to, status, opensShift, null).stream()
+                .filter(check -> matchedIds.contains(check.getId()))
                 .collect(Collectors.toList());
     }
 
     /**
-     * Поиск медосмотров по тексту
+     * Поиск медосмотров по тексту, лучшие совпадения первыми
      */
     public List<MedicalCheck> searchMedicalChecks(String query) {
         if (query == null || query.trim().isEmpty()) {
             return getAllMedicalChecks();
         }
-
-        String searchTerm = query.toLowerCase().trim();
-        List<MedicalCheck> allChecks = getAllMedicalChecks();
-
-        return allChecks.stream()
-                .filter(check -> {
-                    return check.getDriver().getFullName().toLowerCase().contains(searchTerm) ||
-                            check.getDoctor().getFullName().toLowerCase().contains(searchTerm) ||
-                            (check.getNotes() != null && check.getNotes().toLowerCase().contains(searchTerm)) ||
-                            check.getDriver().getLicenseNumber().toLowerCase().contains(searchTerm);
-                })
-                .sorted((c1, c2) -> c2.getCheckDate().compareTo(c1.getCheckDate()))
-                .collect(Collectors.toList());
+        return medicalCheckRepository.findByIds(
+                SearchIndex.getInstance().findIds(query, SearchIndex.Type.MEDICAL_CHECK));
     }
 
     /**
@@ -359,9 +349,8 @@ public class MedicalCheckService {
         for (MedicalCheck check : expiredChecks) {
             medicalCheckRepository.delete(check.getId());
             deletedCount++;
-            System.out.println("🗑️ Удален просроченный медосмотр: " +
-                    check.getDriver().getFullName() + " (" +
-                    check.getCheckDate().format(java.time.format.DateTimeFormatter.ofPattern("dd.MM.yyyy")) + ")");
+            log.debug("Удален просроченный медосмотр: {} ({})", check.getDriver().getFullName(),
+                    check.getCheckDate());
         }
 
         return deletedCount;
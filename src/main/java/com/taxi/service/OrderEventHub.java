@@ -0,0 +1,336 @@
+package com.taxi.service;
+
+import com.taxi.entity.Driver;
+import com.taxi.entity.Order;
+import com.taxi.repository.DriverRepository;
+import com.taxi.util.JsonUtil;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Раздача изменений заказов открытым панелям диспетчера (Server-Sent Events).
+ *
+ * OrderService сообщает о каждом сохранении заказа; событие один раз превращается
+ * в готовый кадр SSE и раскладывается по очередям подписчиков. В очереди клиента
+ * по каждому заказу хранится только последнее состояние, а счетчики - только последние,
+ * так что медленный клиент получает сжатую сводку, а не всю историю. Если и сводка
+ * переросла MAX_PENDING заказов, клиенту уходит resync - он перечитает страницу целиком.
+ *
+ * Последние REPLAY_SIZE событий хранятся, чтобы переподключившийся клиент
+ * (Last-Event-ID) или только что отрисованная страница догнали пропущенное
+ */
+public final class OrderEventHub {
+    private static final Logger log = LoggerFactory.getLogger(OrderEventHub.class);
+
+    private static final int REPLAY_SIZE = 256;
+    private static final int MAX_PENDING = Integer.getInteger("taxi.sse.max_pending", 512);
+    private static final long HEARTBEAT_SECONDS = 15; // меньше простоя соединения Jetty (30 с)
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESYNC = "event: resync\ndata: {}\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final OrderEventHub INSTANCE = new OrderEventHub();
+
+    private final DashboardMetrics metrics = DashboardMetrics.getInstance();
+    private final DriverRepository driverRepository = new DriverRepository();
+
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    // Кольцо последних событий; номер события seq лежит в ячейке seq % REPLAY_SIZE
+    private final Frame[] replay = new Frame[REPLAY_SIZE];
+    private long lastSeq;
+
+    private final ExecutorService pushers = Executors.newCachedThreadPool(daemon("sse-push"));
+
+    private OrderEventHub() {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(daemon("sse-heartbeat"));
+        heartbeat.scheduleWithFixedDelay(() -> subscribers.forEach(Subscriber::heartbeat),
+                HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static OrderEventHub getInstance() {
+        return INSTANCE;
+    }
+
+    // ПУБЛИКАЦИЯ
+
+    /**
+     * Заказ сохранен: previousStatus - статус до изменения (null для нового заказа)
+     */
+    public void orderSaved(String previousStatus, Order order) {
+        if (order == null || order.getId() == null) {
+            return;
+        }
+        String kind = kindOf(previousStatus, order.getStatus());
+        String json = "{\"id\":" + order.getId()
+                + ",\"kind\":\"" + kind + '"'
+                + ",\"status\":" + JsonUtil.quote(order.getStatus())
+                + ",\"active\":" + OrderService.ACTIVE_STATUSES.contains(order.getStatus())
+                + ",\"customer\":" + JsonUtil.quote(order.getCustomerName())
+                + ",\"pickup\":" + JsonUtil.quote(order.getPickupAddress())
+                + ",\"driver\":" + JsonUtil.quote(driverName(order))
+                + '}';
+        publish(order.getId(), "order", json);
+    }
+
+    public void orderDeleted(Long orderId) {
+        if (orderId != null) {
+            publish(orderId, "order", "{\"id\":" + orderId + ",\"kind\":\"deleted\",\"active\":false}");
+        }
+    }
+
+    private void publish(long orderId, String event, String json) {
+        Frame counters = countersFrame();
+        synchronized (replay) {
+            long seq = ++lastSeq;
+            Frame frame = new Frame(orderId, ("id: " + seq + "\nevent: " + event + "\ndata: " + json + "\n\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            replay[(int) (seq % REPLAY_SIZE)] = frame;
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(frame, counters);
+            }
+        }
+    }
+
+    /**
+     * Номер последнего события: страница запоминает его, чтобы подписка началась ровно после него
+     */
+    public long getLastSeq() {
+        synchronized (replay) {
+            return lastSeq;
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    // ПОДПИСКА
+
+    /**
+     * Куда писать кадры клиента. write вызывается из одного потока за раз
+     */
+    public interface Sink {
+        void write(List<byte[]> frames) throws IOException;
+
+        void close();
+    }
+
+    /**
+     * Подписывает клиента и сразу ставит ему в очередь все события после afterSeq
+     * (или resync, если они уже вытеснены из кольца) и текущие счетчики
+     */
+    public Subscriber subscribe(Sink sink, long afterSeq) {
+        Subscriber subscriber = new Subscriber(sink);
+        Frame counters = countersFrame();
+        synchronized (replay) {
+            if (afterSeq < lastSeq - REPLAY_SIZE || afterSeq > lastSeq) {
+                subscriber.resync();
+            } else {
+                for (long seq = afterSeq + 1; seq <= lastSeq; seq++) {
+                    subscriber.offer(replay[(int) (seq % REPLAY_SIZE)], null);
+                }
+            }
+            subscriber.offer(null, counters);
+            subscribers.add(subscriber);
+        }
+        log.debug("SSE: подписчиков {}", subscribers.size());
+        return subscriber;
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriber.sink.close();
+            log.debug("SSE: подписчиков {}", subscribers.size());
+        }
+    }
+
+    /**
+     * Очередь одного клиента. Пишет в сокет не более одного потока пула за раз,
+     * поэтому медленный клиент задерживает только себя
+     */
+    public final class Subscriber {
+        private final Sink sink;
+        // Ключ - id заказа: новое состояние заменяет еще не отправленное
+        private final LinkedHashMap<Long, Frame> orders = new LinkedHashMap<>();
+        private Frame counters;
+        private boolean resync;
+        private boolean heartbeat;
+        private boolean draining;
+
+        private Subscriber(Sink sink) {
+            this.sink = sink;
+        }
+
+        private void offer(Frame order, Frame latestCounters) {
+            synchronized (this) {
+                if (order != null && !resync) {
+                    orders.remove(order.orderId); // заново в конец: порядок отправки = порядок последних изменений
+                    orders.put(order.orderId, order);
+                    if (orders.size() > MAX_PENDING) {
+                        resync();
+                    }
+                }
+                if (latestCounters != null) {
+                    counters = latestCounters;
+                }
+            }
+            schedule();
+        }
+
+        private synchronized void resync() {
+            resync = true;
+            orders.clear();
+        }
+
+        private void heartbeat() {
+            synchronized (this) {
+                heartbeat = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                pushers.execute(this::drain);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    draining = false;
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                List<byte[]> frames = new ArrayList<>();
+                boolean last;
+                synchronized (this) {
+                    // После resync клиент перечитает страницу и подпишется заново - остальное ему не нужно
+                    last = resync;
+                    if (resync) {
+                        frames.add(RESYNC);
+                    } else {
+                        for (Frame frame : orders.values()) {
+                            frames.add(frame.bytes);
+                        }
+                        if (counters != null) {
+                            frames.add(counters.bytes);
+                        }
+                        if (frames.isEmpty() && heartbeat) {
+                            frames.add(HEARTBEAT);
+                        }
+                    }
+                    orders.clear();
+                    counters = null;
+                    heartbeat = false;
+                    if (frames.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    sink.write(frames);
+                } catch (IOException | RuntimeException e) {
+                    // Клиент ушел (закрыл вкладку, сеть): больше ему не пишем
+                    last = true;
+                }
+                if (last) {
+                    unsubscribe(this);
+                    return;
+                }
+            }
+        }
+    }
+
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+
+    private Frame countersFrame() {
+        LocalDate today = LocalDate.now();
+        String json = "{\"todayOrders\":" + metrics.getOrdersCount(today)
+                + ",\"completedToday\":" + metrics.getCompletedCount(today)
+                + ",\"todayRevenue\":" + String.format(Locale.ROOT, "%.2f", metrics.getRevenue(today))
+                + '}';
+        return new Frame(-1, ("event: counters\ndata: " + json + "\n\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String kindOf(String previousStatus, String status) {
+        if (previousStatus == null) {
+            return "created";
+        }
+        if (status == null || status.equals(previousStatus)) {
+            return "updated";
+        }
+        switch (status) {
+            case "ASSIGNED": return "assigned";
+            case "IN_PROGRESS": return "started";
+            case "COMPLETED": return "completed";
+            case "CANCELLED": return "cancelled";
+            default: return "updated";
+        }
+    }
+
+    /**
+     * Имя водителя: у заказа, прочитанного без связей, водитель - незагруженная ссылка,
+     * тогда берем его по id (обычно из кэша второго уровня, без запроса к БД)
+     */
+    private String driverName(Order order) {
+        Driver driver = order.getDriver();
+        if (driver == null) {
+            return null;
+        }
+        if (Hibernate.isInitialized(driver) && driver.getFullName() != null) {
+            return driver.getFullName();
+        }
+        try {
+            Driver loaded = driverRepository.findById(driver.getId());
+            return loaded != null ? loaded.getFullName() : null;
+        } catch (Exception e) {
+            log.warn("SSE: не удалось получить имя водителя #{}", driver.getId(), e);
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Готовый кадр SSE в UTF-8
+     */
+    private static final class Frame {
+        final long orderId;
+        final byte[] bytes;
+
+        Frame(long orderId, byte[] bytes) {
+            this.orderId = orderId;
+            this.bytes = bytes;
+        }
+    }
+}
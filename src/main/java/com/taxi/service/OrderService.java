@@ -1,39 +1,80 @@
 package com.taxi.service;
 
+import com.taxi.dispatch.DispatchEngine;
+import com.taxi.dispatch.OfferDispatcher;
 import com.taxi.entity.*;
+import com.taxi.journal.OrderJournal;
 import com.taxi.repository.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class OrderService {
+    private static final Logger log = LoggerFactory.getLogger(OrderService.class);
     private OrderRepository orderRepository = new OrderRepository();
     private DriverRepository driverRepository = new DriverRepository();
     private CarRepository carRepository = new CarRepository();
     private UserRepository userRepository = new UserRepository();
     private WaybillRepository waybillRepository = new WaybillRepository();
     private WaybillService waybillService;
+    private final DashboardMetrics metrics = DashboardMetrics.getInstance();
+    private final OrderEventHub events = OrderEventHub.getInstance();
+    private final DispatchEngine dispatchEngine = DispatchEngine.getInstance();
+    private final OfferDispatcher offers = OfferDispatcher.getInstance();
+    private final DriverEligibility eligibility = DriverEligibility.getInstance();
+    // null, если журнал не включен (taxi.journal.dir)
+    private final OrderJournal journal = OrderJournal.getInstance();
+
+    /**
+     * Статусы незавершенного заказа
+     */
+    public static final List<String> ACTIVE_STATUSES = List.of("NEW", "ASSIGNED", "IN_PROGRESS");
 
     public List<Order> getAllOrders() {
-        return orderRepository.findAll();
+        return orderRepository.findAll(FetchPlan.LIST);
     }
 
     public Order getOrderById(Long id) {
-        return orderRepository.findById(id);
+        return orderRepository.findById(id, FetchPlan.DETAIL);
     }
 
     public void createOrder(Order order) {
-        orderRepository.save(order);
+        Order previous = order.getId() != null ? orderRepository.findById(order.getId(), FetchPlan.REPORT) : null;
+        Order saved = orderRepository.save(order);
+        orderSaved(DashboardMetrics.OrderState.of(previous), saved);
+        refreshDispatch(previous, saved);
     }
 
     public void updateOrder(Order order) {
-        orderRepository.save(order);
+        // Сущность приходит уже измененной - прежнее состояние берем из БД
+        Order previous = order.getId() != null ? orderRepository.findById(order.getId(), FetchPlan.REPORT) : null;
+        Order saved = orderRepository.save(order);
+        orderSaved(DashboardMetrics.OrderState.of(previous), saved);
+        refreshDispatch(previous, saved);
     }
 
     public void deleteOrder(Long id) {
+        Order previous = orderRepository.findById(id, FetchPlan.REPORT);
         orderRepository.delete(id);
+        metrics.orderDeleted(DashboardMetrics.OrderState.of(previous));
+        if (previous != null) {
+            events.orderDeleted(id);
+            offers.withdraw(id);
+            if (journal != null) {
+                journal.orderDeleted(previous.getStatus(), id);
+            }
+        }
+        refreshDispatch(previous);
     }
 
     /**
@@ -42,28 +83,109 @@ public class OrderService {
      */
     public List<Order> getDispatcherActiveOrders() {
         try {
-            // Получаем все заказы
-            List<Order> allOrders = getAllOrders();
-            if (allOrders == null || allOrders.isEmpty()) {
-                return new ArrayList<>();
-            }
+            List<Order> activeOrders = orderRepository.findByStatuses(ACTIVE_STATUSES, FetchPlan.LIST);
+            return activeOrders != null ? activeOrders : new ArrayList<>();
+        } catch (Exception e) {
+            log.error("Ошибка при получении активных заказов", e);
+            return new ArrayList<>();
+        }
+    }
 
-            // Фильтруем заказы: оставляем только те, которые НЕ завершены и НЕ отменены
-            List<Order> activeOrders = new ArrayList<>();
-            for (Order order : allOrders) {
-                String status = order.getStatus();
-                if (status != null &&
-                        !status.equalsIgnoreCase("COMPLETED") &&
-                        !status.equalsIgnoreCase("CANCELLED")) {
-                    activeOrders.add(order);
-                }
+    /**
+     * Результат смены статуса заказа
+     */
+    public static class TransitionResult {
+
+        public enum Outcome {
+            APPLIED,    // статус изменен
+            NOT_FOUND,  // заказа нет
+            CONFLICT,   // заказ уже изменен или переход из текущего статуса недопустим
+            REJECTED,   // не прошли проверки (водитель, автомобиль) или ошибка БД
+            OFFERED     // заказ предложен водителю и будет назначен, когда он примет предложение
+        }
+
+        private final Outcome outcome;
+        private final Long orderId;
+        private final String currentStatus;
+        private final String message;
+
+        private TransitionResult(Outcome outcome, Long orderId, String currentStatus, String message) {
+            this.outcome = outcome;
+            this.orderId = orderId;
+            this.currentStatus = currentStatus;
+            this.message = message;
+        }
+
+        static TransitionResult applied(Order order) {
+            return new TransitionResult(Outcome.APPLIED, order.getId(), order.getStatus(),
+                    "Заказ #" + order.getId() + ": " + order.getStatusDisplay());
+        }
+
+        static TransitionResult notFound(Long orderId) {
+            return new TransitionResult(Outcome.NOT_FOUND, orderId, null, "Заказ #" + orderId + " не найден");
+        }
+
+        static TransitionResult conflict(Order current) {
+            return new TransitionResult(Outcome.CONFLICT, current.getId(), current.getStatus(),
+                    "Заказ #" + current.getId() + " уже изменен другим пользователем, текущий статус: "
+                            + current.getStatusDisplay() + ". Обновите страницу и повторите действие");
+        }
+
+        static TransitionResult rejected(Long orderId, String message) {
+            return new TransitionResult(Outcome.REJECTED, orderId, null, message);
+        }
+
+        static TransitionResult offered(Long orderId, String message) {
+            return new TransitionResult(Outcome.OFFERED, orderId, "NEW", message);
+        }
+
+        public Outcome getOutcome() { return outcome; }
+        public boolean isApplied() { return outcome == Outcome.APPLIED; }
+        public boolean isConflict() { return outcome == Outcome.CONFLICT; }
+        public boolean isOffered() { return outcome == Outcome.OFFERED; }
+        public Long getOrderId() { return orderId; }
+
+        /**
+         * Статус заказа после операции (при конфликте - тот, что сейчас в БД)
+         */
+        public String getCurrentStatus() { return currentStatus; }
+
+        public String getMessage() { return message; }
+    }
+
+    /**
+     * Страница заказов по фильтру. cursor - значение из OrderPage.getNextCursor()/getPrevCursor(),
+     * backward = true для перехода на предыдущую страницу
+     */
+    public OrderPage getOrdersPage(OrderRepository.OrderFilter filter, String cursor, boolean backward, int pageSize) {
+        LocalDateTime cursorTime = null;
+        Long cursorId = null;
+        int separator = cursor != null ? cursor.lastIndexOf('_') : -1;
+        if (separator > 0) {
+            try {
+                cursorTime = LocalDateTime.parse(cursor.substring(0, separator));
+                cursorId = Long.parseLong(cursor.substring(separator + 1));
+            } catch (RuntimeException e) {
+                cursorTime = null;
+                cursorId = null;
             }
+        }
+        if (cursorTime == null) {
+            backward = false;
+        }
 
-            return activeOrders;
-        } catch (Exception e) {
-            System.out.println(" Ошибка при получении активных заказов: " + e.getMessage());
-            return new ArrayList<>();
+        // Одна лишняя строка показывает, есть ли страница дальше в направлении чтения
+        List<Order> orders = orderRepository.findPage(filter, cursorTime, cursorId, backward, pageSize + 1, FetchPlan.LIST);
+        boolean more = orders.size() > pageSize;
+
+        if (backward) {
+            if (!more) {
+                // Дошли до начала списка - показываем полную первую страницу
+                return getOrdersPage(filter, null, false, pageSize);
+            }
+            return new OrderPage(orders.subList(1, orders.size()), true, true);
         }
+        return new OrderPage(more ? orders.subList(0, pageSize) : orders, cursorTime != null, more);
     }
 
     // МЕТОДЫ ДЛЯ ВОДИТЕЛЕЙ
@@ -72,14 +194,14 @@ public class OrderService {
      * Получить заказы водителя
      */
     public List<Order> getDriverOrders(Long driverId) {
-        return orderRepository.findByDriverId(driverId);
+        return orderRepository.findByDriverId(driverId, FetchPlan.LIST);
     }
 
     /**
      * Получить активные заказы водителя
      */
     public List<Order> getActiveOrdersForDriver(Long driverId) {
-        return orderRepository.findActiveByDriverId(driverId);
+        return orderRepository.findActiveByDriverId(driverId, FetchPlan.LIST);
     }
 
     /**
@@ -107,113 +229,56 @@ public class OrderService {
      * Получить общее количество заказов
      */
     public long getTotalOrders() {
-        List<Order> orders = getAllOrders();
-        return orders != null ? orders.size() : 0;
+        return metrics.getTotalOrders();
+    }
+
+    /**
+     * Получить количество завершенных заказов
+     */
+    public long getCompletedOrdersCount() {
+        return metrics.getCountByStatus("COMPLETED");
     }
 
     /**
      * Получить количество активных заказов
      */
     public long getActiveOrdersCount() {
-        List<Order> activeOrders = orderRepository.findByStatus("IN_PROGRESS");
-        return activeOrders != null ? activeOrders.size() : 0;
+        return metrics.getCountByStatus("IN_PROGRESS");
     }
 
     /**
      * Получить общую выручку
      */
     public double getTotalRevenue() {
-        List<Order> orders = getAllOrders();
-        if (orders == null) return 0.0;
-        return orders.stream()
-                .filter(o -> o.getPrice() != null && "COMPLETED".equals(o.getStatus()))
-                .mapToDouble(Order::getPrice)
-                .sum();
+        return metrics.getTotalRevenue();
     }
 
     /**
      * Получить количество заказов за сегодня
      */
     public long getTodayOrdersCount() {
-        LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
-        LocalDateTime todayEnd = LocalDateTime.now().withHour(23).withMinute(59).withSecond(59);
-
-        List<Order> orders = getAllOrders();
-        if (orders == null) return 0;
-
-        return orders.stream()
-                .filter(o -> o.getCreatedAt() != null)
-                .filter(o -> !o.getCreatedAt().isBefore(todayStart) && !o.getCreatedAt().isAfter(todayEnd))
-                .count();
+        return metrics.getOrdersCount(LocalDate.now());
     }
 
     /**
      * Получить количество завершенных заказов за сегодня
      */
     public long getCompletedTodayCount() {
-        LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
-        LocalDateTime todayEnd = LocalDateTime.now().withHour(23).withMinute(59).withSecond(59);
-
-        List<Order> orders = getAllOrders();
-        if (orders == null) return 0;
-
-        return orders.stream()
-                .filter(o -> o.getCreatedAt() != null && "COMPLETED".equals(o.getStatus()))
-                .filter(o -> !o.getCreatedAt().isBefore(todayStart) && !o.getCreatedAt().isAfter(todayEnd))
-                .count();
+        return metrics.getCompletedCount(LocalDate.now());
     }
 
     /**
      * Получить выручку за сегодня
      */
     public double getTodayRevenue() {
-        LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
-        LocalDateTime todayEnd = LocalDateTime.now().withHour(23).withMinute(59).withSecond(59);
-
-        List<Order> orders = getAllOrders();
-        if (orders == null) return 0.0;
-
-        return orders.stream()
-                .filter(o -> "COMPLETED".equals(o.getStatus()) && o.getCreatedAt() != null)
-                .filter(o -> !o.getCreatedAt().isBefore(todayStart) && !o.getCreatedAt().isAfter(todayEnd))
-                .filter(o -> o.getPrice() != null)
-                .mapToDouble(Order::getPrice)
-                .sum();
+        return metrics.getRevenue(LocalDate.now());
     }
 
     /**
      * Получить среднее время выполнения заказа сегодня
      */
     public double getAverageOrderTimeToday() {
-        LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
-        LocalDateTime todayEnd = LocalDateTime.now().withHour(23).withMinute(59).withSecond(59);
-
-        List<Order> orders = getAllOrders();
-        if (orders == null) return 0.0;
-
-        List<Order> todayOrders = orders.stream()
-                .filter(o -> "COMPLETED".equals(o.getStatus()) &&
-                        o.getCreatedAt() != null &&
-                        o.getCompletionTime() != null)
-                .filter(o -> !o.getCreatedAt().isBefore(todayStart) && !o.getCreatedAt().isAfter(todayEnd))
-                .toList();
-
-        if (todayOrders.isEmpty()) return 0.0;
-
-        double totalMinutes = 0;
-        int count = 0;
-
-        for (Order order : todayOrders) {
-            try {
-                long minutes = ChronoUnit.MINUTES.between(order.getCreatedAt(), order.getCompletionTime());
-                totalMinutes += minutes;
-                count++;
-            } catch (Exception e) {
-                // Пропускаем заказы с ошибками расчета времени
-            }
-        }
-
-        return count > 0 ? totalMinutes / count : 0.0;
+        return metrics.getAverageOrderMinutes(LocalDate.now());
     }
 
     // ОСНОВНЫЕ БИЗНЕС-МЕТОДЫ
@@ -234,7 +299,7 @@ public class OrderService {
             cleanedPhone = cleanedPhone.replaceAll("[^0-9+]", "");
             if (cleanedPhone.length() > 20) {
                 cleanedPhone = cleanedPhone.substring(0, 20);
-                System.out.println("⚠  Номер телефона укорочен до 20 символов: " + cleanedPhone);
+                log.warn("Номер телефона укорочен до 20 символов: {}", cleanedPhone);
             }
             customerPhone = cleanedPhone;
         }
@@ -258,168 +323,209 @@ public class OrderService {
         order.setOrderTime(LocalDateTime.now());
 
         orderRepository.save(order);
+        orderSaved(null, order);
 
-        System.out.println(" Диспетчер " + dispatcher.getFullName() +
-                " создал новый заказ #" + order.getId());
-        System.out.println("    Клиент: " + (customerName != null ? customerName : "Не указано"));
-        System.out.println("    Телефон: " + customerPhone);
-        System.out.println("    Откуда: " + pickupAddress);
-        System.out.println("    Куда: " + (destinationAddress != null ? destinationAddress : "Не указано"));
+        log.info("Диспетчер {} создал заказ #{}: {} -> {}", dispatcher.getFullName(), order.getId(),
+                pickupAddress, destinationAddress != null ? destinationAddress : "не указано");
 
         return order;
     }
 
     /**
-     * 2. Диспетчер назначает заказ на водителя
+     * 2. Диспетчер назначает заказ на водителя.
+     * carId - автомобиль (null - закрепленный за водителем), note - примечание к заказу (может быть null).
+     * Если включены предложения (OfferDispatcher), заказ не назначается сразу, а предлагается водителю
      */
-    public boolean assignOrderToDriver(Long orderId, Long driverId) {
-        try {
-            Order order = orderRepository.findById(orderId);
-            Driver driver = driverRepository.findById(driverId);
+    public TransitionResult assignOrderToDriver(Long orderId, Long driverId, Long carId, String note) {
+        Driver driver = driverRepository.findById(driverId);
+        if (driver == null) {
+            return TransitionResult.rejected(orderId, "Водитель не найден");
+        }
+        Car car = carId != null ? carRepository.findById(carId) : driver.getCurrentCar();
+        if (car == null) {
+            return TransitionResult.rejected(orderId, "У водителя нет автомобиля");
+        }
 
-            if (order == null || driver == null) {
-                System.out.println(" Заказ или водитель не найдены");
-                return false;
-            }
+        // Проверяем, есть ли у водителя активный путевой лист - заказ привязывается к нему
+        Waybill activeWaybill = waybillRepository.findActiveByDriverId(driverId, FetchPlan.REPORT);
+        if (activeWaybill == null) {
+            log.info("У водителя {} нет активного путевого листа", driver.getFullName());
+        }
 
-            // Проверяем, есть ли у водителя активный путевой лист
-            Waybill activeWaybill = waybillRepository.findActiveByDriverId(driverId);
-            if (activeWaybill == null) {
-                System.out.println("️ У водителя " + driver.getFullName() + " нет активного путевого листа");
-                // Можно создать автоматически или просто предупредить
-                // Для начала просто предупредим
-            } else {
-                System.out.println(" Водитель имеет активный путевой лист #" + activeWaybill.getId());
+        // Предлагается только новый заказ; переназначение уже принятого идет напрямую
+        if (OfferDispatcher.isEnabled()) {
+            Order order = orderRepository.findById(orderId, FetchPlan.REPORT);
+            if (order != null && "NEW".equals(order.getStatus())) {
+                return offerOrderToDriver(order, driver, car, activeWaybill, note);
             }
+        }
+        return changeStatus(orderId, "ASSIGNED", order -> {
+            order.assignToDriver(driver, car);
+            order.setWaybill(activeWaybill);
+            appendNote(order, note);
+        });
+    }
+
+    private TransitionResult offerOrderToDriver(Order order, Driver driver, Car car, Waybill waybill, String note) {
+        Long orderId = order.getId();
+        OfferDispatcher.Offer offer = offers.offer(order, driver.getId(), car.getId(),
+                waybill != null ? waybill.getId() : null, note);
+        if (offer == null) {
+            return TransitionResult.rejected(orderId, "Водитель сейчас рассматривает другой заказ");
+        }
+        return TransitionResult.offered(orderId, "Заказ #" + orderId + " предложен водителю " + driver.getFullName()
+                + ". Если он не примет заказ, предложение получит следующий свободный водитель");
+    }
 
-            // Назначаем заказ
-            order.setDriver(driver);
-            order.setStatus("ASSIGNED");
-            orderRepository.save(order);
+    /**
+     * Водитель принимает предложенный заказ: заказ назначается на него
+     */
+    public TransitionResult acceptOffer(Long driverId, long offerId) {
+        OfferDispatcher.Offer pending = offers.getOffer(driverId);
+        if (pending == null || pending.getId() != offerId) {
+            return TransitionResult.rejected(null, "Предложение уже недействительно");
+        }
+        Long orderId = pending.getOrderId();
+        try {
+            Order order = orderRepository.findById(orderId, FetchPlan.REPORT);
+            DashboardMetrics.OrderState before = DashboardMetrics.OrderState.of(order);
+            if (order == null || offers.accept(driverId, offerId) == null) {
+                return TransitionResult.rejected(orderId, "Предложение уже недействительно");
+            }
 
-            System.out.println(" Заказ #" + orderId + " назначен водителю " + driver.getFullName());
-            return true;
+            Order assigned = orderRepository.findById(orderId, FetchPlan.REPORT);
+            if (pending.getNote() != null && !pending.getNote().isEmpty()) {
+                appendNote(assigned, pending.getNote());
+                if (!orderRepository.updateIfUnchanged(assigned, "ASSIGNED")) {
+                    log.info("Заказ #{} изменен сразу после назначения, примечание не добавлено", orderId);
+                    assigned = orderRepository.findById(orderId, FetchPlan.REPORT);
+                }
+            }
+            orderSaved(before, assigned);
+            eligibility.orderOpened(driverId);
+            return TransitionResult.applied(assigned);
         } catch (Exception e) {
-            System.out.println(" Ошибка при назначении заказа: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            log.error("Ошибка при принятии предложения заказа #{}", orderId, e);
+            return TransitionResult.rejected(orderId, "Ошибка при назначении заказа");
         }
     }
 
+    /**
+     * Водитель отказывается от предложенного заказа - он уходит следующему водителю
+     */
+    public boolean declineOffer(Long driverId, long offerId) {
+        return offers.decline(driverId, offerId);
+    }
+
     /**
      * 3. Водитель начинает выполнение заказа
      */
-    public boolean startOrderExecution(Long orderId) {
-        try {
-            Order order = orderRepository.findById(orderId);
-            if (order == null) {
-                return false;
-            }
+    public TransitionResult startOrderExecution(Long orderId) {
+        return changeStatus(orderId, "IN_PROGRESS", Order::startTrip);
+    }
 
-            order.setStatus("IN_PROGRESS");
-            order.setActualPickupTime(LocalDateTime.now());
-            orderRepository.save(order);
+    /**
+     * 4. Водитель завершает заказ. Дистанция и примечание могут быть null.
+     * Итоги путевого листа заказа увеличиваются в той же транзакции (см. OrderRepository.completeIfUnchanged)
+     */
+    public TransitionResult completeOrder(Long orderId, Double distanceKm, Double price, String note) {
+        return changeStatus(orderId, "COMPLETED", order -> {
+            order.completeOrder(distanceKm, price);
+            appendNote(order, note);
+        });
+    }
 
-            System.out.println(" Заказ #" + orderId + " начал выполнение");
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    /**
+     * 5. Отменить заказ
+     */
+    public TransitionResult cancelOrder(Long orderId, String reason) {
+        return changeStatus(orderId, "CANCELLED", order -> order.cancelOrder(reason));
     }
 
     /**
-     * 4. Водитель завершает заказ
+     * Переход заказа в новый статус. Изменения применяются к только что прочитанной копии
+     * и записываются одним условным UPDATE: если заказ за это время кто-то изменил
+     * или из текущего статуса такой переход недопустим, возвращается конфликт
      */
-    public boolean completeOrder(Long orderId, Double distanceKm, Double price) {
+    private TransitionResult changeStatus(Long orderId, String newStatus, Consumer<Order> changes) {
         try {
-            Order order = orderRepository.findById(orderId);
+            Order order = orderRepository.findById(orderId, FetchPlan.REPORT);
             if (order == null) {
-                System.out.println(" Заказ не найден: " + orderId);
-                return false;
+                return TransitionResult.notFound(orderId);
             }
-
-            // Завершаем заказ
-            order.setStatus("COMPLETED");
-            order.setPrice(price);
-            order.setCompletionTime(LocalDateTime.now());
-
-            // Дистанция может быть null
-            if (distanceKm != null) {
-                order.setDistanceKm(distanceKm);
+            String currentStatus = order.getStatus();
+            if (!Order.isTransitionAllowed(currentStatus, newStatus)) {
+                return TransitionResult.conflict(order);
             }
 
-            System.out.println(" Заказ #" + orderId + " завершен");
-            System.out.println("    Стоимость: " + price + " руб.");
-            if (distanceKm != null) {
-                System.out.println("    Дистанция: " + distanceKm + " км");
+            DashboardMetrics.OrderState before = DashboardMetrics.OrderState.of(order);
+            Long previousDriverId = order.getDriver() != null ? order.getDriver().getId() : null;
+            changes.accept(order);
+            order.setStatus(newStatus);
+
+            boolean updated = "COMPLETED".equals(newStatus)
+                    ? orderRepository.completeIfUnchanged(order, currentStatus)
+                    : orderRepository.updateIfUnchanged(order, currentStatus);
+            if (!updated) {
+                Order current = orderRepository.findById(orderId, FetchPlan.REPORT);
+                log.info("Заказ #{} изменен параллельно, переход в {} отклонен", orderId, newStatus);
+                return current != null ? TransitionResult.conflict(current) : TransitionResult.notFound(orderId);
             }
 
-            orderRepository.save(order);
-
-            return true;
-
+            orderSaved(before, order);
+            if (previousDriverId != null && (order.getDriver() == null
+                    || !previousDriverId.equals(order.getDriver().getId()))) {
+                dispatchEngine.refreshDriver(previousDriverId);
+                eligibility.refresh(previousDriverId);
+            }
+            refreshDispatch(order);
+            return TransitionResult.applied(order);
         } catch (Exception e) {
-            System.out.println(" Ошибка при завершении заказа: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            log.error("Ошибка при изменении статуса заказа #{}", orderId, e);
+            return TransitionResult.rejected(orderId, "Ошибка при изменении заказа");
         }
     }
 
-    /**
-     * Обновляет статистику путевого листа при завершении заказа
-     */
-    private void updateWaybillStats(Waybill waybill, Double distanceKm, Double price) {
-        try {
-            // Получаем текущие значения
-            Double currentDistance = waybill.getTotalDistance() != null ? waybill.getTotalDistance() : 0.0;
-            Double currentRevenue = waybill.getTotalRevenue() != null ? waybill.getTotalRevenue() : 0.0;
-            Integer currentOrders = waybill.getOrdersCount() != null ? waybill.getOrdersCount() : 0;
-
-            // Обновляем
-            waybill.setTotalDistance(currentDistance + (distanceKm != null ? distanceKm : 0.0));
-            waybill.setTotalRevenue(currentRevenue + (price != null ? price : 0.0));
-            waybill.setOrdersCount(currentOrders + 1);
-
-            // Сохраняем
-            waybillRepository.update(waybill);
+    private static void appendNote(Order order, String note) {
+        if (note != null && !note.isEmpty()) {
+            order.setNotes((order.getNotes() != null ? order.getNotes() + "\n" : "") + note);
+        }
+    }
 
-            System.out.println(" Обновлена статистика путевого листа #" + waybill.getId());
-            System.out.println("    Дистанция: " + waybill.getTotalDistance() + " км");
-            System.out.println("    Выручка: " + waybill.getTotalRevenue() + " руб.");
-            System.out.println("    Заказов: " + waybill.getOrdersCount());
+    //  ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
 
-        } catch (Exception e) {
-            System.out.println("⚠ Не удалось обновить статистику путевого листа: " + e.getMessage());
+    /**
+     * Заказ сохранен: обновить счетчики, разослать изменение открытым панелям диспетчера
+     * и записать в журнал
+     */
+    private void orderSaved(DashboardMetrics.OrderState before, Order after) {
+        metrics.orderSaved(before, after);
+        events.orderSaved(before != null ? before.status : null, after);
+        if (journal != null) {
+            journal.orderSaved(before != null ? before.status : null, after);
+        }
+        if (after != null && !"NEW".equals(after.getStatus())) {
+            offers.withdraw(after.getId()); // заказ ушел из NEW помимо предложений
         }
     }
 
     /**
-     * 5. Отменить заказ
+     * Перепроверяет готовность водителей заказов к автоназначению и их допуск к работе
      */
-    public boolean cancelOrder(Long orderId, String reason) {
-        try {
-            Order order = orderRepository.findById(orderId);
-            if (order == null) {
-                return false;
+    private void refreshDispatch(Order... orders) {
+        for (Order order : orders) {
+            if (order != null && order.getDriver() != null) {
+                dispatchEngine.refreshDriver(order.getDriver().getId());
+                eligibility.refresh(order.getDriver().getId());
             }
-
-            order.setStatus("CANCELLED");
-            orderRepository.save(order);
-
-            System.out.println(" Заказ #" + orderId + " отменен. Причина: " + reason);
-            return true;
-        } catch (Exception e) {
-            return false;
         }
     }
 
-    //  ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
-
     /**
      * Получить новые заказы (для диспетчера)
      */
     public List<Order> getNewOrders() {
-        List<Order> newOrders = orderRepository.findNewOrders();
+        List<Order> newOrders = orderRepository.findNewOrders(FetchPlan.LIST);
         return newOrders != null ? newOrders : List.of();
     }
 
@@ -470,18 +576,117 @@ public class OrderService {
     }
 
     /**
-     * Автоматически назначить заказ на первого доступного водителя
+     * Автоматически назначить заказ на ближайшего свободного водителя.
+     * С предложениями (OfferDispatcher) заказ предлагается ему, а назначится после принятия
      */
     public boolean autoAssignOrder(Long orderId) {
-        List<Driver> availableDrivers = getAvailableDrivers();
-        if (availableDrivers.isEmpty()) {
-            System.out.println(" Нет доступных водителей для заказа #" + orderId);
+        try {
+            Order order = orderRepository.findById(orderId, FetchPlan.REPORT);
+            if (order == null || !"NEW".equals(order.getStatus())) {
+                log.debug("Заказ #{} не найден или уже назначен", orderId);
+                return false;
+            }
+
+            if (OfferDispatcher.isEnabled()) {
+                OfferDispatcher.Offer offer = offers.offer(order, null, null, null, null);
+                if (offer == null) {
+                    log.info("Нет доступных водителей для заказа #{}", orderId);
+                    return false;
+                }
+                log.info("Заказ #{} предложен водителю #{}", orderId, offer.getDriverId());
+                return true;
+            }
+
+            DashboardMetrics.OrderState before = DashboardMetrics.OrderState.of(order);
+            DispatchEngine.Assignment assignment = dispatchEngine.assign(order);
+            if (assignment == null) {
+                log.info("Нет доступных водителей для заказа #{}", orderId);
+                return false;
+            }
+            orderSaved(before, orderRepository.findById(orderId, FetchPlan.REPORT));
+            eligibility.orderOpened(assignment.getDriverId());
+
+            if (log.isInfoEnabled()) {
+                log.info("Заказ #{} автоматически назначен водителю #{}{}", orderId, assignment.getDriverId(),
+                        Double.isNaN(assignment.getDistanceKm())
+                                ? "" : String.format(" (подача %.1f км)", assignment.getDistanceKm()));
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Ошибка автоназначения заказа", e);
             return false;
         }
+    }
 
-        // Выбираем первого доступного водителя
-        Driver driver = availableDrivers.get(0);
-        return assignOrderToDriver(orderId, driver.getId());
+    /**
+     * Пакетное автоназначение: все новые заказы распределяются между свободными водителями
+     * разом, с минимальной суммарной подачей. Возвращает число назначенных заказов
+     */
+    public int runBatchDispatch() {
+        try {
+            List<Order> newOrders = orderRepository.findNewOrders(FetchPlan.REPORT);
+            if (newOrders.isEmpty()) {
+                return 0;
+            }
+            if (OfferDispatcher.isEnabled()) {
+                return offerNewOrders(newOrders);
+            }
+
+            List<DispatchEngine.Assignment> assignments = dispatchEngine.assignBatch(newOrders);
+
+            List<Long> assignedIds = new ArrayList<>(assignments.size());
+            for (DispatchEngine.Assignment assignment : assignments) {
+                assignedIds.add(assignment.getOrderId());
+                eligibility.orderOpened(assignment.getDriverId());
+            }
+
+            Map<Long, Order> ordersById = new HashMap<>();
+            for (Order order : newOrders) {
+                ordersById.put(order.getId(), order);
+            }
+            // Назначенные заказы перечитываются одним запросом с водителем и автомобилем:
+            // счетчики, панель диспетчера и журнал получают полные сущности
+            for (Order order : orderRepository.findByIds(assignedIds, FetchPlan.LIST)) {
+                orderSaved(DashboardMetrics.OrderState.of(ordersById.get(order.getId())), order);
+            }
+
+            log.info("Пакетное автоназначение: назначено {} из {} новых заказов",
+                    assignments.size(), newOrders.size());
+            return assignments.size();
+        } catch (Exception e) {
+            log.error("Ошибка пакетного автоназначения", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Пакетное автоназначение с предложениями: каждому новому заказу без идущего цикла
+     * предлагается лучший свободный водитель, от старых заказов к новым. Оптимальное
+     * распределение здесь не строится - водитель все равно может отказаться.
+     * Сюда же попадают заказы, чьи предложения закончились или потерялись при перезапуске
+     */
+    private int offerNewOrders(List<Order> newOrders) {
+        int offered = 0;
+        for (Order order : newOrders) {
+            if (!offers.isOffering(order.getId()) && offers.offer(order, null, null, null, null) != null) {
+                offered++;
+            }
+        }
+        log.info("Пакетное автоназначение: предложено {} из {} новых заказов", offered, newOrders.size());
+        return offered;
+    }
+
+    /**
+     * Запускает пакетное автоназначение раз в intervalSeconds секунд в фоновом потоке
+     */
+    public void startBatchDispatch(long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dispatch-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runBatchDispatch, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        log.info("Пакетное автоназначение включено: раз в {} с", intervalSeconds);
     }
 
     /**
@@ -491,7 +696,7 @@ public class OrderService {
         try {
             LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
             LocalDateTime todayEnd = LocalDateTime.now().withHour(23).withMinute(59).withSecond(59);
-            return orderRepository.findByDriverAndPeriod(driverId, todayStart, todayEnd);
+            return orderRepository.findByDriverAndPeriod(driverId, todayStart, todayEnd, FetchPlan.LIST);
         } catch (Exception e) {
             return List.of();
         }
@@ -501,7 +706,7 @@ public class OrderService {
      * Получить активные заказы
      */
     public List<Order> getActiveOrders() {
-        List<Order> activeOrders = orderRepository.findByStatus("IN_PROGRESS");
+        List<Order> activeOrders = orderRepository.findByStatus("IN_PROGRESS", FetchPlan.LIST);
         return activeOrders != null ? activeOrders : List.of();
     }
 
@@ -509,12 +714,12 @@ public class OrderService {
      * Получить заказы по статусу
      */
     public List<Order> getOrdersByStatus(String status) {
-        List<Order> orders = orderRepository.findByStatus(status);
+        List<Order> orders = orderRepository.findByStatus(status, FetchPlan.LIST);
         return orders != null ? orders : List.of();
     }
 
     public void testOrderSave() {
-        System.out.println("\n=== ТЕСТ СОХРАНЕНИЯ ЗАКАЗА ===");
+        log.info("=== ТЕСТ СОХРАНЕНИЯ ЗАКАЗА ===");
 
         try {
             // Создаем тестового пользователя-оператора
@@ -523,7 +728,7 @@ public class OrderService {
             operator.setFullName("Тест Оператор");
             operator.setUserType("OPERATOR");
 
-            System.out.println("1. Пробуем создать заказ...");
+            log.info("1. Пробуем создать заказ...");
             Order order = new Order();
             order.setOperator(operator);
             order.setCustomerName("Тест Клиент");
@@ -533,36 +738,33 @@ public class OrderService {
             order.setStatus("NEW");
             order.setOrderTime(LocalDateTime.now());
 
-            System.out.println("2. Пробуем сохранить через репозиторий...");
+            log.info("2. Пробуем сохранить через репозиторий...");
             orderRepository.save(order);
+            orderSaved(null, order);
 
-            System.out.println("3. ID заказа после сохранения: " + order.getId());
+            log.info("3. ID заказа после сохранения: {}", order.getId());
 
             // Проверяем, сохранился ли
-            Order savedOrder = orderRepository.findById(order.getId());
+            Order savedOrder = orderRepository.findById(order.getId(), FetchPlan.REPORT);
             if (savedOrder != null) {
-                System.out.println(" ЗАКАЗ УСПЕШНО СОХРАНЕН!");
-                System.out.println("   ID: " + savedOrder.getId());
-                System.out.println("   Клиент: " + savedOrder.getCustomerName());
-                System.out.println("   Телефон: " + savedOrder.getCustomerPhone());
-                System.out.println("   Статус: " + savedOrder.getStatus());
+                log.info("ЗАКАЗ УСПЕШНО СОХРАНЕН: #{}, клиент {}, телефон {}, статус {}", savedOrder.getId(),
+                        savedOrder.getCustomerName(), savedOrder.getCustomerPhone(), savedOrder.getStatus());
             } else {
-                System.out.println(" ЗАКАЗ НЕ СОХРАНИЛСЯ В БД!");
+                log.error("ЗАКАЗ НЕ СОХРАНИЛСЯ В БД!");
             }
 
         } catch (Exception e) {
-            System.out.println(" ОШИБКА: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Ошибка теста сохранения заказа", e);
         }
 
-        System.out.println("=== КОНЕЦ ТЕСТА ===\n");
+        log.info("=== КОНЕЦ ТЕСТА ===");
     }
 
     public List<Order> getOrdersByWaybillId(Long waybillId) {
         try {
-            return orderRepository.findByWaybillId(waybillId);
+            return orderRepository.findByWaybillId(waybillId, FetchPlan.REPORT);
         } catch (Exception e) {
-            System.out.println("Ошибка при получении заказов по путевому листу: " + e.getMessage());
+            log.error("Ошибка при получении заказов по путевому листу", e);
             return List.of();
         }
     }
@@ -580,36 +782,61 @@ public class OrderService {
     }
 
     /**
-     * Получить сводку по путевому листу (использует WaybillService если нужно)
+     * Получить сводку по путевому листу: итоги берутся из самого путевого листа, заказы не перечитываются
      */
     public String getWaybillSummary(Long waybillId) {
         try {
-            List<Order> waybillOrders = getOrdersByWaybillId(waybillId);
-            if (waybillOrders.isEmpty()) {
-                return "В путевом листе нет заказов";
+            Waybill waybill = waybillRepository.findById(waybillId, FetchPlan.REPORT);
+            if (waybill == null) {
+                return "Путевой лист не найден";
             }
-
-            double totalDistance = 0.0;
-            double totalRevenue = 0.0;
-
-            for (Order order : waybillOrders) {
-                if (order.getDistanceKm() != null) {
-                    totalDistance += order.getDistanceKm();
-                }
-                if (order.getPrice() != null) {
-                    totalRevenue += order.getPrice();
-                }
+            int ordersCount = waybill.getOrdersCount();
+            if (ordersCount == 0) {
+                return "В путевом листе нет выполненных заказов";
             }
 
+            double totalDistance = waybill.getTotalDistance();
+            double totalRevenue = waybill.getTotalRevenue();
+
             return String.format(" Сводка по путевому листу #%d:\n" +
                             "    Количество заказов: %d\n" +
                             "    Общая дистанция: %.1f км\n" +
                             "    Общая выручка: %.2f руб.\n" +
                             "    Средний чек: %.2f руб.",
-                    waybillId, waybillOrders.size(), totalDistance, totalRevenue,
-                    waybillOrders.size() > 0 ? totalRevenue / waybillOrders.size() : 0.0);
+                    waybillId, ordersCount, totalDistance, totalRevenue, totalRevenue / ordersCount);
         } catch (Exception e) {
             return "Не удалось получить сводку по путевому листу: " + e.getMessage();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Страница списка заказов с курсорами для навигации
+     */
+    public static class OrderPage {
+        private final List<Order> orders;
+        private final boolean hasPrev;
+        private final boolean hasNext;
+
+        public OrderPage(List<Order> orders, boolean hasPrev, boolean hasNext) {
+            this.orders = orders;
+            this.hasPrev = hasPrev && !orders.isEmpty();
+            this.hasNext = hasNext && !orders.isEmpty();
+        }
+
+        public List<Order> getOrders() { return orders; }
+        public boolean hasPrev() { return hasPrev; }
+        public boolean hasNext() { return hasNext; }
+
+        public String getPrevCursor() {
+            return hasPrev ? cursorOf(orders.get(0)) : null;
+        }
+
+        public String getNextCursor() {
+            return hasNext ? cursorOf(orders.get(orders.size() - 1)) : null;
+        }
+
+        private static String cursorOf(Order order) {
+            return order.getOrderTime() + "_" + order.getId();
+        }
+    }
+}
@@ -1,11 +1,9 @@
 package com.taxi.service;
 
-import com.taxi.entity.Order;
-import com.taxi.entity.Driver;
-import com.taxi.entity.Car;
+import com.taxi.repository.IncomeReportRow;
 import com.taxi.repository.OrderRepository;
-import com.taxi.repository.DriverRepository;
-import com.taxi.repository.CarRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -13,12 +11,16 @@ import java.time.format.DateTimeFormatter;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 public class ReportService {
 
+    private static final Logger log = LoggerFactory.getLogger(ReportService.class);
     private final OrderRepository orderRepository = new OrderRepository();
 
+    // Доля водителя от стоимости заказа
+    private static final double DRIVER_EARNINGS_SHARE = 0.7;
+
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
 
@@ -28,146 +30,28 @@ public class ReportService {
     public List<IncomeReportRecord> getIncomeReportRecords(LocalDate startDate, LocalDate endDate,
                                                            Long driverId, Long carId) {
         List<IncomeReportRecord> records = new ArrayList<>();
+        streamIncomeReportRecords(startDate, endDate, driverId, carId, records::add);
 
-        // Получаем ВСЕ заказы для отладки
-        List<Order> allOrders = orderRepository.findAll();
-        System.out.println("=== ReportService Debug ===");
-        System.out.println("Всего заказов в системе: " + allOrders.size());
-
-        // Выводим статусы всех заказов
-        for (Order order : allOrders) {
-            System.out.println("Заказ #" + order.getId() +
-                    " | Статус: " + order.getStatus() +
-                    " | Водитель: " + (order.getDriver() != null ? order.getDriver().getId() : "null") +
-                    " | Цена: " + order.getPrice() +
-                    " | Дата завершения: " + order.getCompletionTime());
-        }
-
-        // Фильтруем завершенные заказы
-        List<Order> orders = allOrders.stream()
-                .filter(o -> {
-                    boolean isCompleted = "COMPLETED".equals(o.getStatus());
-                    boolean hasPrice = o.getPrice() != null && o.getPrice() > 0;
-                    boolean hasCompletionTime = o.getCompletionTime() != null;
-
-                    if (isCompleted) {
-                        System.out.println("Заказ #" + o.getId() + " - COMPLETED, цена: " + o.getPrice());
-                    }
-
-                    return isCompleted && hasPrice && hasCompletionTime;
-                })
-                .filter(o -> {
-                    // Безопасное преобразование LocalDateTime в LocalDate
-                    if (o.getCompletionTime() == null) return false;
-                    try {
-                        LocalDate orderDate = o.getCompletionTime().toLocalDate();
-                        return isInPeriod(orderDate, startDate, endDate);
-                    } catch (Exception e) {
-                        System.out.println("Ошибка при преобразовании даты для заказа #" + o.getId() + ": " + e.getMessage());
-                        return false;
-                    }
-                })
-                .filter(o -> driverId == null || (o.getDriver() != null && o.getDriver().getId().equals(driverId)))
-                .filter(o -> carId == null || (o.getCar() != null && o.getCar().getId().equals(carId)))
-                .collect(Collectors.toList());
-
-        System.out.println("Найдено завершенных заказов: " + orders.size());
-        System.out.println("Параметры фильтрации: startDate=" + startDate + ", endDate=" + endDate +
-                ", driverId=" + driverId + ", carId=" + carId);
-
-        for (Order order : orders) {
-            try {
-                IncomeReportRecord record = new IncomeReportRecord();
-                record.setOrderId(order.getId());
-
-                // Безопасное преобразование даты
-                if (order.getCompletionTime() != null) {
-                    record.setDate(order.getCompletionTime().toLocalDate());
-                } else {
-                    System.out.println("Заказ #" + order.getId() + " не имеет даты завершения");
-                    continue; // Пропускаем заказы без даты завершения
-                }
-
-                // Информация о водителе
-                if (order.getDriver() != null) {
-                    record.setDriverName(order.getDriver().getFullName());
-                    record.setDriverId(order.getDriver().getId());
-                } else {
-                    record.setDriverName("Не назначен");
-                    record.setDriverId(null);
-                }
-
-                // Информация об автомобиле
-                if (order.getCar() != null) {
-                    record.setCarLicense(order.getCar().getLicensePlate());
-                    record.setCarModel(order.getCar().getModel());
-                    record.setCarId(order.getCar().getId());
-                } else {
-                    record.setCarLicense("Не назначен");
-                    record.setCarModel("—");
-                    record.setCarId(null);
-                }
-
-                // Статистика по заказу
-                record.setOrdersCount(1);
-                record.setDistance(order.getDistanceKm() != null ? order.getDistanceKm() : 0.0);
-                record.setRevenue(order.getPrice() != null ? order.getPrice() : 0.0);
-
-                // Рассчитываем заработок водителя (70% от стоимости заказа)
-                double price = order.getPrice() != null ? order.getPrice() : 0.0;
-                record.setEarnings(price * 0.7);
-
-                // Временные метки
-                record.setStartTime(order.getOrderTime());
-                record.setEndTime(order.getCompletionTime());
-
-                // Рассчитываем продолжительность
-                if (order.getOrderTime() != null && order.getCompletionTime() != null) {
-                    try {
-                        Duration duration = Duration.between(order.getOrderTime(), order.getCompletionTime());
-                        long hours = duration.toHours();
-                        long minutes = duration.toMinutes() % 60;
-                        record.setDuration(hours + "ч " + minutes + "м");
-                    } catch (Exception e) {
-                        System.out.println("Ошибка при расчете продолжительности заказа #" + order.getId() + ": " + e.getMessage());
-                        record.setDuration("Н/Д");
-                    }
-                } else {
-                    record.setDuration("Н/Д");
-                }
-
-                // Дополнительная информация
-                record.setCustomerName(order.getCustomerName() != null ? order.getCustomerName() : "Без имени");
-                record.setCustomerPhone(order.getCustomerPhone() != null ? order.getCustomerPhone() : "—");
-                record.setPickupAddress(order.getPickupAddress() != null ? order.getPickupAddress() : "—");
-                record.setDestinationAddress(order.getDestinationAddress() != null ? order.getDestinationAddress() : "—");
-
-                records.add(record);
-
-                System.out.println("Добавлен в отчет: Заказ #" + order.getId() +
-                        " | Водитель: " + record.getDriverName() +
-                        " | Цена: " + record.getRevenue() +
-                        " | Дата: " + record.getDate());
-
-            } catch (Exception e) {
-                System.out.println("Ошибка при обработке заказа #" + order.getId() + ": " + e.getMessage());
-                e.printStackTrace();
-            }
-        }
-
-        System.out.println("Итого записей в отчете: " + records.size());
-
-        // Сортируем по дате (новые сверху)
-        records.sort((a, b) -> {
-            if (a.getDate() == null && b.getDate() == null) return 0;
-            if (a.getDate() == null) return 1;
-            if (b.getDate() == null) return -1;
-            return b.getDate().compareTo(a.getDate());
-        });
+        log.debug("Итого записей в отчете: {} (startDate={}, endDate={}, driverId={}, carId={})",
+                records.size(), startDate, endDate, driverId, carId);
 
         return records;
     }
 
+    /**
+     * Потоково обработать записи отчета по доходам (новые сверху),
+     * не загружая весь отчет в память
+     *
+     * @return количество обработанных записей
+     */
+    public long streamIncomeReportRecords(LocalDate startDate, LocalDate endDate,
+                                          Long driverId, Long carId,
+                                          Consumer<IncomeReportRecord> consumer) {
+        return orderRepository.streamIncomeReport(
+                periodStart(startDate), periodEnd(endDate), driverId, carId,
+                row -> consumer.accept(new IncomeReportRecord(row)));
+    }
+
     /**
      * Получить упрощенный отчет (только основные поля)
      */
@@ -190,52 +74,45 @@ public class ReportService {
     }
 
     /**
-     * Получить сводную статистику по отчету
+     * Получить сводную статистику по отчету (один агрегирующий запрос к БД)
      */
     public ReportSummary getReportSummary(LocalDate startDate, LocalDate endDate,
                                           Long driverId, Long carId) {
-        List<IncomeReportRecord> records = getIncomeReportRecords(startDate, endDate, driverId, carId);
+        Object[] totals = orderRepository.getIncomeReportTotals(
+                periodStart(startDate), periodEnd(endDate), driverId, carId);
 
-        ReportSummary summary = new ReportSummary();
-        summary.setRecordCount(records.size());
-
-        double totalRevenue = 0;
-        double totalEarnings = 0;
-        double totalDistance = 0;
-        int totalOrders = records.size();
-
-        for (IncomeReportRecord record : records) {
-            totalRevenue += record.getRevenue();
-            totalEarnings += record.getEarnings();
-            totalDistance += record.getDistance();
-        }
+        long totalOrders = totals[0] != null ? ((Number) totals[0]).longValue() : 0;
+        double totalRevenue = totals[1] != null ? ((Number) totals[1]).doubleValue() : 0.0;
+        double totalDistance = totals[2] != null ? ((Number) totals[2]).doubleValue() : 0.0;
+        double averagePrice = totals[3] != null ? ((Number) totals[3]).doubleValue() : 0.0;
 
+        ReportSummary summary = new ReportSummary();
+        summary.setRecordCount((int) totalOrders);
+        summary.setTotalOrders((int) totalOrders);
         summary.setTotalRevenue(totalRevenue);
-        summary.setTotalEarnings(totalEarnings);
+        summary.setTotalEarnings(totalRevenue * DRIVER_EARNINGS_SHARE);
         summary.setTotalDistance(totalDistance);
-        summary.setTotalOrders(totalOrders);
 
-        if (records.size() > 0) {
-            summary.setAverageRevenue(totalRevenue / records.size());
-            summary.setAverageOrderPrice(totalOrders > 0 ? totalRevenue / totalOrders : 0);
+        if (totalOrders > 0) {
+            summary.setAverageRevenue(averagePrice);
+            summary.setAverageOrderPrice(averagePrice);
         }
 
         return summary;
     }
 
-    private boolean isInPeriod(LocalDate date, LocalDate startDate, LocalDate endDate) {
-        if (date == null) return false; // Добавлена проверка на null
+    /**
+     * Начало периода отчета (включительно)
+     */
+    private LocalDateTime periodStart(LocalDate startDate) {
+        return startDate != null ? startDate.atStartOfDay() : null;
+    }
 
-        if (startDate == null && endDate == null) {
-            return true;
-        }
-        if (startDate == null) {
-            return !date.isAfter(endDate);
-        }
-        if (endDate == null) {
-            return !date.isBefore(startDate);
-        }
-        return !date.isBefore(startDate) && !date.isAfter(endDate);
+    /**
+     * Конец периода отчета (не включительно) - начало дня, следующего за endDate
+     */
+    private LocalDateTime periodEnd(LocalDate endDate) {
+        return endDate != null ? endDate.plusDays(1).atStartOfDay() : null;
     }
 
 
@@ -264,6 +141,51 @@ public class ReportService {
         private String pickupAddress;
         private String destinationAddress;
 
+        public IncomeReportRecord() {
+        }
+
+        /**
+         * Запись из строки OrderRepository.streamIncomeReport
+         */
+        public IncomeReportRecord(IncomeReportRow row) {
+            this.orderId = row.getOrderId();
+            this.date = row.getCompletionTime() != null ? row.getCompletionTime().toLocalDate() : null;
+
+            // Информация о водителе
+            this.driverId = row.getDriverId();
+            this.driverName = driverId != null ? row.getDriverName() : "Не назначен";
+
+            // Информация об автомобиле
+            this.carId = row.getCarId();
+            this.carLicense = carId != null ? row.getCarLicense() : "Не назначен";
+            this.carModel = carId != null ? row.getCarModel() : "—";
+
+            // Статистика по заказу
+            this.ordersCount = 1;
+            this.distance = row.getDistanceKm() != null ? row.getDistanceKm() : 0.0;
+            this.revenue = row.getPrice() != null ? row.getPrice() : 0.0;
+            this.earnings = this.revenue * DRIVER_EARNINGS_SHARE;
+
+            // Временные метки
+            this.startTime = row.getOrderTime();
+            this.endTime = row.getCompletionTime();
+            this.duration = formatDuration(startTime, endTime);
+
+            // Дополнительная информация
+            this.customerName = row.getCustomerName() != null ? row.getCustomerName() : "Без имени";
+            this.customerPhone = row.getCustomerPhone() != null ? row.getCustomerPhone() : "—";
+            this.pickupAddress = row.getPickupAddress() != null ? row.getPickupAddress() : "—";
+            this.destinationAddress = row.getDestinationAddress() != null ? row.getDestinationAddress() : "—";
+        }
+
+        private static String formatDuration(LocalDateTime start, LocalDateTime end) {
+            if (start == null || end == null) {
+                return "Н/Д";
+            }
+            Duration duration = Duration.between(start, end);
+            return duration.toHours() + "ч " + (duration.toMinutes() % 60) + "м";
+        }
+
         // Геттеры и сеттеры
         public Long getOrderId() {
             return orderId;
@@ -430,7 +352,7 @@ public class ReportService {
                         duration != null ? duration : ""
                 );
             } catch (Exception e) {
-                System.out.println("Ошибка при форматировании CSV строки: " + e.getMessage());
+                log.error("Ошибка при форматировании CSV строки", e);
                 return "\"Ошибка\",\"Ошибка\",\"\",\"\",\"\",0.00,0.00,0.00,\"\",\"\",\"Ошибка\"";
             }
         }
@@ -0,0 +1,161 @@
+package com.taxi.service;
+
+import com.taxi.entity.Car;
+import com.taxi.entity.Driver;
+import com.taxi.entity.MedicalCheck;
+import com.taxi.repository.CarRepository;
+import com.taxi.repository.DriverRepository;
+import com.taxi.repository.MedicalCheckRepository;
+import com.taxi.repository.SearchIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Поиск по водителям, автомобилям и медосмотрам: ранжирует SearchIndex,
+ * сервис загружает сущности только для запрошенной страницы
+ */
+public class SearchService {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final SearchIndex index = SearchIndex.getInstance();
+    private final DriverRepository driverRepository = new DriverRepository();
+    private final CarRepository carRepository = new CarRepository();
+    private final MedicalCheckRepository medicalCheckRepository = new MedicalCheckRepository();
+
+    /**
+     * Страница результатов (page - с 1) по документам указанных типов (null - по всем), лучшие первыми
+     */
+    public SearchResults search(String query, Set<SearchIndex.Type> types, int page, int pageSize) {
+        int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        int number = Math.max(page, 1);
+        int offset = (int) Math.min((long) (number - 1) * size, Integer.MAX_VALUE - size);
+        SearchIndex.Page found = index.search(query, types, offset, size);
+
+        List<Long> driverIds = new ArrayList<>();
+        List<Long> carIds = new ArrayList<>();
+        List<Long> checkIds = new ArrayList<>();
+        for (SearchIndex.Hit hit : found.getHits()) {
+            switch (hit.getType()) {
+                case DRIVER -> driverIds.add(hit.getId());
+                case CAR -> carIds.add(hit.getId());
+                case MEDICAL_CHECK -> checkIds.add(hit.getId());
+            }
+        }
+        Map<Long, Driver> drivers = byId(driverRepository.findByIds(driverIds), Driver::getId);
+        Map<Long, Car> cars = byId(carRepository.findByIds(carIds), Car::getId);
+        Map<Long, MedicalCheck> checks = byId(medicalCheckRepository.findByIds(checkIds), MedicalCheck::getId);
+
+        List<Result> results = new ArrayList<>(found.getHits().size());
+        for (SearchIndex.Hit hit : found.getHits()) {
+            Object entity = switch (hit.getType()) {
+                case DRIVER -> drivers.get(hit.getId());
+                case CAR -> cars.get(hit.getId());
+                case MEDICAL_CHECK -> checks.get(hit.getId());
+            };
+            // Удален между поиском и загрузкой
+            if (entity != null) {
+                results.add(new Result(hit.getType(), hit.getScore(), entity));
+            }
+        }
+        return new SearchResults(found.getTotal(), number, size, results);
+    }
+
+    /**
+     * Номер страницы из параметра запроса; пустой или неверный - первая
+     */
+    public static int parsePage(String value) {
+        if (value == null || value.isEmpty()) {
+            return 1;
+        }
+        try {
+            return Math.max(Integer.parseInt(value), 1);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private static <T> Map<Long, T> byId(List<T> entities, Function<T, Long> id) {
+        Map<Long, T> result = new HashMap<>();
+        for (T entity : entities) {
+            result.put(id.apply(entity), entity);
+        }
+        return result;
+    }
+
+    /**
+     * Страница результатов поиска
+     */
+    public static class SearchResults {
+        private final int total;
+        private final int page;
+        private final int pageSize;
+        private final List<Result> results;
+
+        public SearchResults(int total, int page, int pageSize, List<Result> results) {
+            this.total = total;
+            this.page = page;
+            this.pageSize = pageSize;
+            this.results = results;
+        }
+
+        /**
+         * Найдено всего, на всех страницах
+         */
+        public int getTotal() { return total; }
+        public int getPage() { return page; }
+        public int getPageSize() { return pageSize; }
+        public List<Result> getResults() { return results; }
+
+        public int getPageCount() {
+            return (total + pageSize - 1) / pageSize;
+        }
+
+        public List<Driver> getDrivers() {
+            return entities(SearchIndex.Type.DRIVER, Driver.class);
+        }
+
+        public List<Car> getCars() {
+            return entities(SearchIndex.Type.CAR, Car.class);
+        }
+
+        public List<MedicalCheck> getMedicalChecks() {
+            return entities(SearchIndex.Type.MEDICAL_CHECK, MedicalCheck.class);
+        }
+
+        private <T> List<T> entities(SearchIndex.Type type, Class<T> entityClass) {
+            List<T> entities = new ArrayList<>();
+            for (Result result : results) {
+                if (result.type == type) {
+                    entities.add(entityClass.cast(result.entity));
+                }
+            }
+            return entities;
+        }
+    }
+
+    /**
+     * Найденная сущность: Driver, Car или MedicalCheck - по типу
+     */
+    public static class Result {
+        private final SearchIndex.Type type;
+        private final int score;
+        private final Object entity;
+
+        public Result(SearchIndex.Type type, int score, Object entity) {
+            this.type = type;
+            this.score = score;
+            this.entity = entity;
+        }
+
+        public SearchIndex.Type getType() { return type; }
+        public int getScore() { return score; }
+        public Object getEntity() { return entity; }
+    }
+}
@@ -5,6 +5,8 @@ import com.taxi.entity.Driver;
 import com.taxi.entity.User;
 import com.taxi.entity.Waybill;
 import com.taxi.repository.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -12,12 +14,14 @@ import java.util.List;
 
 public class ShiftService {
 
+    private static final Logger log = LoggerFactory.getLogger(ShiftService.class);
     private WaybillService waybillService;
     private MedicalCheckService medicalCheckService;
     private TechnicalInspectionService inspectionService;
     private DriverRepository driverRepository;
     private CarRepository carRepository;
     private UserRepository userRepository;
+    private final DriverEligibility eligibility = DriverEligibility.getInstance();
 
     public ShiftService() {
         this.waybillService = new WaybillService();
@@ -110,24 +114,16 @@ public class ShiftService {
      * Получить доступных для работы водителей
      */
     public List<Driver> getAvailableDrivers() {
-        List<Driver> allowedDrivers = medicalCheckService.getAllowedDrivers();
-
-        // Фильтруем водителей без активных смен
-        return allowedDrivers.stream()
-                .filter(driver -> waybillService.getActiveWaybillByDriver(driver.getId()) == null)
-                .toList();
+        // Допущенные по медосмотру и без активных смен
+        return driverRepository.findByIds(eligibility.getShiftReadyDriverIds());
     }
 
     /**
      * Получить доступные автомобили
      */
     public List<Car> getAvailableCars() {
-        List<Car> operationalCars = inspectionService.getOperationalCars();
-
-        // Фильтруем автомобили без активных смен
-        return operationalCars.stream()
-                .filter(car -> waybillService.getActiveWaybillByCar(car.getId()) == null)
-                .toList();
+        // Исправные по последнему техосмотру и без активных смен
+        return carRepository.findByIds(FleetIndex.getInstance().getShiftReadyCarIds());
     }
 
     /**
@@ -195,33 +191,26 @@ public class ShiftService {
      * Логирование открытия смены
      */
     private void logShiftOpened(Waybill waybill) {
-        System.out.println("=".repeat(50));
-        System.out.println("🚀 СМЕНА ОТКРЫТА");
-        System.out.println("=".repeat(50));
-        System.out.println("📋 Путевой лист: #" + waybill.getId());
-        System.out.println("👤 Водитель: " + waybill.getDriver().getFullName());
-        System.out.println("🚗 Автомобиль: " + waybill.getCar().getDisplayName());
-        System.out.println("🏥 Врач: " + waybill.getDoctor().getFullName());
-        System.out.println("⏰ Время начала: " + waybill.getStartTime());
-        System.out.println("📏 Начальный пробег: " + waybill.getInitialMileageKm() + " км");
-        System.out.println("=".repeat(50));
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        log.info("Смена открыта: путевой лист #{}, водитель {}, автомобиль {}, врач {}, начало {}, пробег {} км",
+                waybill.getId(), waybill.getDriver().getFullName(), waybill.getCar().getDisplayName(),
+                waybill.getDoctor().getFullName(), waybill.getStartTime(), waybill.getInitialMileageKm());
     }
 
     /**
      * Логирование закрытия смены
      */
     private void logShiftClosed(Waybill waybill) {
-        System.out.println("=".repeat(50));
-        System.out.println(" СМЕНА ЗАКРЫТА");
-        System.out.println("=".repeat(50));
-        System.out.println(" Путевой лист: #" + waybill.getId());
-        System.out.println(" Водитель: " + waybill.getDriver().getFullName());
-        System.out.println(" Автомобиль: " + waybill.getCar().getDisplayName());
-        System.out.println(" Механик: " + waybill.getMechanic().getFullName());
-        System.out.println(" Продолжительность: " + waybill.getShiftDuration());
-        System.out.println(" Пробег за смену: " + waybill.getShiftMileage() + " км");
-        System.out.println(" Заработок: " + waybill.getTotalEarnings() + " руб.");
-        System.out.println("=".repeat(50));
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        log.info("Смена закрыта: путевой лист #{}, водитель {}, автомобиль {}, механик {}, "
+                        + "продолжительность {}, пробег {} км, заработок {} руб.",
+                waybill.getId(), waybill.getDriver().getFullName(), waybill.getCar().getDisplayName(),
+                waybill.getMechanic().getFullName(), waybill.getShiftDuration(), waybill.getShiftMileage(),
+                waybill.getTotalEarnings());
     }
 
     /**
@@ -11,13 +11,17 @@ import com.taxi.util.HibernateUtil;
 
 import org.hibernate.Session;
 import org.hibernate.query.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
 import java.time.LocalDate;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class TechnicalInspectionService {
+    private static final Logger log = LoggerFactory.getLogger(TechnicalInspectionService.class);
     private TechnicalInspectionRepository inspectionRepository = new TechnicalInspectionRepository();
     private CarRepository carRepository = new CarRepository();
     private UserRepository userRepository = new UserRepository();
@@ -38,7 +42,7 @@ public class TechnicalInspectionService {
             );
             return query.list();
         } catch (Exception e) {
-            System.err.println("Ошибка при загрузке техосмотров: " + e.getMessage());
+            log.error("Ошибка при загрузке техосмотров", e);
             return List.of();
         }
     }
@@ -66,7 +70,7 @@ public class TechnicalInspectionService {
             query.setParameter("id", id);
             return query.uniqueResult();
         } catch (Exception e) {
-            System.err.println("Ошибка при поиске техосмотра: " + e.getMessage());
+            log.error("Ошибка при поиске техосмотра", e);
             return null;
         }
     }
@@ -94,11 +98,7 @@ public class TechnicalInspectionService {
      * Получить последние техосмотры
      */
     public List<TechnicalInspection> getRecentInspections(int limit) {
-        List<TechnicalInspection> allInspections = findAllWithCars();
-        return allInspections.stream()
-                .sorted((i1, i2) -> i2.getInspectionDate().compareTo(i1.getInspectionDate()))
-                .limit(limit)
-                .collect(Collectors.toList());
+        return inspectionRepository.findRecent(limit);
     }
 
     /**
@@ -117,7 +117,7 @@ public class TechnicalInspectionService {
             query.setParameter("carId", carId);
             return query.list();
         } catch (Exception e) {
-            System.err.println("Ошибка при поиске техосмотров по автомобилю: " + e.getMessage());
+            log.error("Ошибка при поиске техосмотров по автомобилю", e);
             return List.of();
         }
     }
@@ -126,25 +126,21 @@ public class TechnicalInspectionService {
      * Получить количество техосмотров
      */
     public long getTotalInspections() {
-        return findAllWithCars().size();
+        return getStatistics().total;
     }
 
     /**
      * Получить количество пройденных техосмотров
      */
     public long getPassedInspectionsCount() {
-        return findAllWithCars().stream()
-                .filter(TechnicalInspection::getIsPassed)
-                .count();
+        return getStatistics().passed;
     }
 
     /**
      * Получить количество не пройденных техосмотров
      */
     public long getFailedInspectionsCount() {
-        return findAllWithCars().stream()
-                .filter(inspection -> !inspection.getIsPassed())
-                .count();
+        return getStatistics().failed;
     }
 
     /**
@@ -188,14 +184,12 @@ public class TechnicalInspectionService {
             // Если техосмотр пройден
             car.setTechnicalStatus(TechnicalStatus.OK);
             car.setInRepair(false);
-            System.out.println(" Автомобиль " + car.getLicensePlate() +
-                    " прошел техосмотр. Статус: OK");
+            log.debug("Автомобиль {} прошел техосмотр. Статус: OK", car.getLicensePlate());
         } else {
             // Если техосмотр не пройден
             car.setTechnicalStatus(TechnicalStatus.NEEDS_REPAIR);
             car.setInRepair(true);
-            System.out.println(" Автомобиль " + car.getLicensePlate() +
-                    " не прошел техосмотр. Статус: NEEDS_REPAIR");
+            log.debug("Автомобиль {} не прошел техосмотр. Статус: NEEDS_REPAIR", car.getLicensePlate());
         }
 
         // Сохраняем изменения в автомобиле
@@ -204,10 +198,8 @@ public class TechnicalInspectionService {
         // Сохраняем техосмотр
         TechnicalInspection savedInspection = inspectionRepository.save(inspection);
 
-        System.out.println(" Техосмотр создан: #" + savedInspection.getId());
-        System.out.println(" Автомобиль: " + car.getLicensePlate());
-        System.out.println(" Механик: " + mechanic.getFullName());
-        System.out.println(" Результат: " + (isPassed ? "Пройден" : "Не пройден"));
+        log.info("Техосмотр создан: #{}, автомобиль {}, механик {}, результат: {}", savedInspection.getId(),
+                car.getLicensePlate(), mechanic.getFullName(), isPassed ? "пройден" : "не пройден");
 
         return savedInspection;
     }
@@ -239,10 +231,7 @@ public class TechnicalInspectionService {
      * Получить последний техосмотр автомобиля
      */
     public TechnicalInspection getLastInspectionForCar(Long carId) {
-        return getInspectionsByCarId(carId).stream()
-                .sorted((i1, i2) -> i2.getInspectionDate().compareTo(i1.getInspectionDate()))
-                .findFirst()
-                .orElse(null);
+        return inspectionRepository.findLatestWithDetailsByCarId(carId);
     }
 
     /**
@@ -250,23 +239,10 @@ public class TechnicalInspectionService {
      */
     public boolean isCarOperational(Long carId) {
         try {
-            List<TechnicalInspection> inspections = getInspectionsByCarId(carId);
-            if (inspections.isEmpty()) {
-                return false;
-            }
-
-            // Берем последний техосмотр
-            TechnicalInspection lastInspection = inspections.stream()
-                    .sorted((i1, i2) -> i2.getInspectionDate().compareTo(i1.getInspectionDate()))
-                    .findFirst()
-                    .orElse(null);
-
-            // Проверяем, что техосмотр пройден
-            return lastInspection != null
-                    && lastInspection.getIsPassed() != null
-                    && lastInspection.getIsPassed();
+            // Пройден ли последний техосмотр - читается только его результат
+            return Boolean.TRUE.equals(inspectionRepository.findLatestResultByCarId(carId));
         } catch (Exception e) {
-            System.err.println("Ошибка при проверке автомобиля: " + e.getMessage());
+            log.error("Ошибка при проверке автомобиля", e);
             return false;
         }
     }
@@ -275,17 +251,13 @@ public class TechnicalInspectionService {
      * Получить статистику по техосмотрам
      */
     public InspectionStats getStatistics() {
-        List<TechnicalInspection> inspections = findAllWithCars();
+        // Один агрегирующий запрос вместо загрузки всех техосмотров
+        Object[] totals = inspectionRepository.getTotals();
 
-        long total = inspections.size();
-        long passed = inspections.stream().filter(TechnicalInspection::getIsPassed).count();
+        long total = totals != null && totals[0] != null ? ((Number) totals[0]).longValue() : 0;
+        long passed = totals != null && totals[1] != null ? ((Number) totals[1]).longValue() : 0;
         long failed = total - passed;
-
-        double avgMileage = inspections.stream()
-                .filter(i -> i.getMileageKm() != null)
-                .mapToInt(TechnicalInspection::getMileageKm)
-                .average()
-                .orElse(0.0);
+        double avgMileage = totals != null && totals[2] != null ? ((Number) totals[2]).doubleValue() : 0.0;
 
         return new InspectionStats(total, passed, failed, avgMileage);
     }
@@ -325,7 +297,7 @@ public class TechnicalInspectionService {
             );
             return query.list();
         } catch (Exception e) {
-            System.err.println("Ошибка при загрузке механиков: " + e.getMessage());
+            log.error("Ошибка при загрузке механиков", e);
             return List.of();
         }
     }
@@ -334,31 +306,24 @@ public class TechnicalInspectionService {
      * Получить исправные автомобили (прошли техосмотр)
      */
     public List<Car> getOperationalCars() {
-        List<Car> allCars = carRepository.findAll();
-
-        return allCars.stream()
-                .filter(car -> {
-                    TechnicalInspection lastInspection = getLastInspectionForCar(car.getId());
-                    return lastInspection != null
-                            && lastInspection.getIsPassed() != null
-                            && lastInspection.getIsPassed();
-                })
-                .collect(Collectors.toList());
+        return getCarsByLatestResult(true);
     }
 
     /**
      * Получить неисправные автомобили (не прошли техосмотр)
      */
     public List<Car> getNonOperationalCars() {
-        List<Car> allCars = carRepository.findAll();
-
-        return allCars.stream()
-                .filter(car -> {
-                    TechnicalInspection lastInspection = getLastInspectionForCar(car.getId());
-                    return lastInspection != null
-                            && lastInspection.getIsPassed() != null
-                            && !lastInspection.getIsPassed();
-                })
+        return getCarsByLatestResult(false);
+    }
+
+    /**
+     * Автомобили, последний техосмотр которых пройден (или не пройден) - одним запросом
+     */
+    private List<Car> getCarsByLatestResult(boolean passed) {
+        return inspectionRepository.findLatestPerCar().stream()
+                .filter(inspection -> Boolean.valueOf(passed).equals(inspection.getIsPassed()))
+                .map(TechnicalInspection::getCar)
+                .sorted(Comparator.comparing(Car::getId))
                 .collect(Collectors.toList());
     }
 
@@ -366,14 +331,7 @@ public class TechnicalInspectionService {
      * Получить автомобили без техосмотра
      */
     public List<Car> getCarsWithoutInspection() {
-        List<Car> allCars = carRepository.findAll();
-
-        return allCars.stream()
-                .filter(car -> {
-                    List<TechnicalInspection> inspections = getInspectionsByCarId(car.getId());
-                    return inspections.isEmpty();
-                })
-                .collect(Collectors.toList());
+        return inspectionRepository.findCarsWithoutInspection();
     }
 
     /**
@@ -423,21 +381,30 @@ public class TechnicalInspectionService {
      * Получить количество исправных автомобилей
      */
     public long getOperationalCarsCount() {
-        return getOperationalCars().size();
+        return countCarsByLatestResult(true);
     }
 
     /**
      * Получить количество неисправных автомобилей
      */
     public long getNonOperationalCarsCount() {
-        return getNonOperationalCars().size();
+        return countCarsByLatestResult(false);
+    }
+
+    private long countCarsByLatestResult(boolean passed) {
+        for (Object[] row : inspectionRepository.countCarsByLatestResult()) {
+            if (Boolean.valueOf(passed).equals(row[0])) {
+                return ((Number) row[1]).longValue();
+            }
+        }
+        return 0;
     }
 
     /**
      * Получить количество автомобилей без техосмотра
      */
     public long getCarsWithoutInspectionCount() {
-        return getCarsWithoutInspection().size();
+        return inspectionRepository.countCarsWithoutInspection();
     }
 
     /**
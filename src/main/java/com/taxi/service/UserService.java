@@ -4,10 +4,13 @@ import com.taxi.entity.User;
 import com.taxi.repository.UserRepository;
 import com.taxi.util.HibernateUtil;
 import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
 public class UserService {
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
     private UserRepository userRepository;
 
     public UserService() {
@@ -22,11 +25,11 @@ public class UserService {
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             User user = session.get(User.class, id);
             if (user == null) {
-                System.out.println("⚠ Пользователь с ID=" + id + " не найден");
+                log.debug("Пользователь с ID={} не найден", id);
             }
             return user;
         } catch (Exception e) {
-            System.err.println(" Ошибка при поиске пользователя: " + e.getMessage());
+            log.error("Ошибка при поиске пользователя", e);
             return null;
         }
     }
@@ -1,13 +1,25 @@
 package com.taxi.service;
 
+import com.taxi.dispatch.DispatchEngine;
 import com.taxi.entity.*;
 import com.taxi.repository.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class WaybillService {
 
+    private static final Logger log = LoggerFactory.getLogger(WaybillService.class);
+
+    // Сверяются смены, начатые за столько дней: итоги старых смен уже не меняются
+    private static final int RECONCILE_DAYS = Integer.getInteger("taxi.waybill.reconcile_days", 2);
+    // Расхождение сумм меньше копейки - погрешность сложения double, а не ошибка
+    private static final double RECONCILE_TOLERANCE = 0.005;
     private WaybillRepository waybillRepository;
     private DriverRepository driverRepository;
     private CarRepository carRepository;
@@ -15,6 +27,8 @@ public class WaybillService {
     private MedicalCheckService medicalCheckService;
     private TechnicalInspectionService inspectionService;
     private OrderService orderService;
+    private final DispatchEngine dispatchEngine = DispatchEngine.getInstance();
+    private final DriverEligibility eligibility = DriverEligibility.getInstance();
 
     public WaybillService() {
         this.waybillRepository = new WaybillRepository();
@@ -61,12 +75,12 @@ public class WaybillService {
             throw new IllegalStateException("Автомобиль не исправен. Требуется техосмотр.");
         }
 
-        Waybill activeDriverWaybill = waybillRepository.findActiveByDriverId(driverId);
+        Waybill activeDriverWaybill = waybillRepository.findActiveByDriverId(driverId, FetchPlan.REPORT);
         if (activeDriverWaybill != null) {
             throw new IllegalStateException("У водителя уже есть активная смена #" + activeDriverWaybill.getId());
         }
 
-        Waybill activeCarWaybill = waybillRepository.findActiveByCarId(car.getId());
+        Waybill activeCarWaybill = waybillRepository.findActiveByCarId(car.getId(), FetchPlan.REPORT);
         if (activeCarWaybill != null) {
             throw new IllegalStateException("Автомобиль уже используется в смене #" + activeCarWaybill.getId());
         }
@@ -83,11 +97,12 @@ public class WaybillService {
 
         //  ВАЖНО: СОХРАНИТЬ В БАЗУ ДАННЫХ!
         waybill = waybillRepository.save(waybill);
+        // С открытой сменой водитель становится доступен для автоназначения
+        dispatchEngine.refreshDriver(driverId);
+        eligibility.refresh(driverId);
 
-        System.out.println(" Путевой лист создан: #" + waybill.getId());
-        System.out.println(" Водитель: " + driver.getFullName());
-        System.out.println(" Автомобиль (назначенный): " + car.getLicensePlate() + " (" + car.getModel() + ")");
-        System.out.println(" Техник: " + technician.getFullName());
+        log.info("Путевой лист создан: #{}, водитель {}, автомобиль {} ({}), техник {}", waybill.getId(),
+                driver.getFullName(), car.getLicensePlate(), car.getModel(), technician.getFullName());
 
         return waybill;
     }
@@ -97,7 +112,7 @@ public class WaybillService {
      */
     public Waybill completeWaybill(Long waybillId, Long mechanicId,
                                    Integer finalMileage, Double earnings, String notes) {
-        Waybill waybill = waybillRepository.findById(waybillId);
+        Waybill waybill = waybillRepository.findById(waybillId, FetchPlan.DETAIL);
         if (waybill == null) {
             throw new IllegalArgumentException("Путевой лист с ID " + waybillId + " не найден");
         }
@@ -117,40 +132,14 @@ public class WaybillService {
             }
         }
 
-        // Получаем заказы из путевого листа для расчета статистики
-        List<Order> waybillOrders = orderService.getOrdersByWaybillId(waybillId);
-
-        // Автоматический расчет выручки и пробега из заказов
-        Double calculatedRevenue = 0.0;
-        Double calculatedDistance = 0.0;
-
-        for (Order order : waybillOrders) {
-            if (order.getPrice() != null) {
-                calculatedRevenue += order.getPrice();
-            }
-            if (order.getDistanceKm() != null) {
-                calculatedDistance += order.getDistanceKm();
-            }
-        }
-
-        // Если не указан заработок, используем расчетный
+        // Итоги по заказам уже в путевом листе - их увеличивает каждое завершение заказа.
+        // Если не указан заработок, используем выручку
         if (earnings == null || earnings == 0.0) {
-            earnings = calculatedRevenue;
+            earnings = waybill.getTotalRevenue();
         }
 
         waybill.completeWaybill(mechanic, finalMileage, earnings, notes);
 
-        // Обновляем статистику путевого листа
-        if (calculatedRevenue > 0) {
-            waybill.setTotalRevenue(calculatedRevenue);
-        }
-        if (calculatedDistance > 0) {
-            waybill.setTotalDistance(calculatedDistance);
-        }
-        if (!waybillOrders.isEmpty()) {
-            waybill.setOrdersCount(waybillOrders.size());
-        }
-
         Car car = waybill.getCar();
         if (finalMileage != null) {
             car.setMileageKm(finalMileage);
@@ -158,11 +147,11 @@ public class WaybillService {
         }
 
         waybillRepository.update(waybill);
+        dispatchEngine.refreshDriver(waybill.getDriver().getId());
+        eligibility.refresh(waybill.getDriver().getId());
 
-        System.out.println(" Путевой лист завершен: #" + waybill.getId());
-        System.out.println(" Пробег за смену: " + waybill.getShiftMileage() + " км");
-        System.out.println(" Заработок: " + earnings + " руб.");
-        System.out.println(" Заказов в смене: " + waybillOrders.size());
+        log.info("Путевой лист завершен: #{}, пробег {} км, заработок {} руб., заказов {}", waybill.getId(),
+                waybill.getShiftMileage(), earnings, waybill.getOrdersCount());
 
         return waybill;
     }
@@ -171,21 +160,21 @@ public class WaybillService {
      * Получить все путевые листы (ВКЛЮЧАЯ АКТИВНЫЕ)
      */
     public List<Waybill> getAllWaybills() {
-        return waybillRepository.findAll();
+        return waybillRepository.findAll(FetchPlan.LIST);
     }
 
     /**
      * Получить активные путевые листы
      */
     public List<Waybill> getActiveWaybills() {
-        return waybillRepository.findActive();
+        return waybillRepository.findActive(FetchPlan.LIST);
     }
 
     /**
      * Получить завершенные путевые листы
      */
     public List<Waybill> getCompletedWaybills() {
-        List<Waybill> allWaybills = waybillRepository.findAll();
+        List<Waybill> allWaybills = waybillRepository.findAll(FetchPlan.LIST);
         return allWaybills.stream()
                 .filter(Waybill::isCompleted)
                 .sorted((w1, w2) -> {
@@ -199,35 +188,35 @@ public class WaybillService {
      * Получить путевые листы водителя
      */
     public List<Waybill> getWaybillsByDriver(Long driverId) {
-        return waybillRepository.findByDriverId(driverId);
+        return waybillRepository.findByDriverId(driverId, FetchPlan.LIST);
     }
 
     /**
      * Получить путевой лист по ID
      */
     public Waybill getWaybillById(Long waybillId) {
-        return waybillRepository.findById(waybillId);
+        return waybillRepository.findById(waybillId, FetchPlan.DETAIL);
     }
 
     /**
      * Получить активный путевой лист водителя
      */
     public Waybill getActiveWaybillByDriver(Long driverId) {
-        return waybillRepository.findActiveByDriverId(driverId);
+        return waybillRepository.findActiveByDriverId(driverId, FetchPlan.DETAIL);
     }
 
     /**
      * Получить активный путевой лист автомобиля
      */
     public Waybill getActiveWaybillByCar(Long carId) {
-        return waybillRepository.findActiveByCarId(carId);
+        return waybillRepository.findActiveByCarId(carId, FetchPlan.DETAIL);
     }
 
     /**
      * Отменить путевой лист
      */
     public void cancelWaybill(Long waybillId) {
-        Waybill waybill = waybillRepository.findById(waybillId);
+        Waybill waybill = waybillRepository.findById(waybillId, FetchPlan.DETAIL);
         if (waybill == null) {
             throw new IllegalArgumentException("Путевой лист с ID " + waybillId + " не найден");
         }
@@ -238,22 +227,24 @@ public class WaybillService {
 
         waybill.cancelWaybill("Отменено администратором");
         waybillRepository.update(waybill);
+        dispatchEngine.refreshDriver(waybill.getDriver().getId());
+        eligibility.refresh(waybill.getDriver().getId());
 
-        System.out.println(" Путевой лист отменен: #" + waybillId);
+        log.info("Путевой лист отменен: #{}", waybillId);
     }
 
     /**
      * Удалить путевой лист
      */
     public void deleteWaybill(Long waybillId) {
-        Waybill waybill = waybillRepository.findById(waybillId);
+        Waybill waybill = waybillRepository.findById(waybillId, FetchPlan.REPORT);
         if (waybill != null) {
             if (waybill.getStatus() == Waybill.WaybillStatus.ACTIVE) {
                 throw new IllegalStateException("Нельзя удалить активный путевой лист");
             }
 
             waybillRepository.delete(waybillId);
-            System.out.println("🗑 Удален путевой лист: #" + waybillId);
+            log.info("Удален путевой лист: #{}", waybillId);
         }
     }
 
@@ -261,7 +252,7 @@ public class WaybillService {
      * Обновить примечания к путевому листу
      */
     public void updateWaybillNotes(Long waybillId, String notes) {
-        Waybill waybill = waybillRepository.findById(waybillId);
+        Waybill waybill = waybillRepository.findById(waybillId, FetchPlan.REPORT);
         if (waybill == null) {
             throw new IllegalArgumentException("Путевой лист с ID " + waybillId + " не найден");
         }
@@ -269,19 +260,14 @@ public class WaybillService {
         waybill.setNotes(notes);
         waybillRepository.update(waybill);
 
-        System.out.println(" Обновлены примечания к путевому листу: #" + waybillId);
+        log.info("Обновлены примечания к путевому листу: #{}", waybillId);
     }
 
     /**
      * Проверить, можно ли водителю начать смену
      */
     public boolean canDriverStartShift(Long driverId) {
-        if (!medicalCheckService.isDriverAllowedToWork(driverId)) {
-            return false;
-        }
-
-        Waybill activeWaybill = waybillRepository.findActiveByDriverId(driverId);
-        return activeWaybill == null;
+        return eligibility.canStartShift(driverId);
     }
 
     /**
@@ -292,7 +278,7 @@ public class WaybillService {
             return false;
         }
 
-        Waybill activeWaybill = waybillRepository.findActiveByCarId(carId);
+        Waybill activeWaybill = waybillRepository.findActiveByCarId(carId, FetchPlan.REPORT);
         return activeWaybill == null;
     }
 
@@ -301,12 +287,10 @@ public class WaybillService {
      */
     public Waybill completeShift(Long waybillId, Long mechanicId, Integer finalMileage,
                                  String inspectionNotes, Double additionalEarnings) {
-        System.out.println("\n" + "=".repeat(60));
-        System.out.println(" ЗАВЕРШЕНИЕ РАБОЧЕЙ СМЕНЫ (СЦЕНАРИЙ 3)");
-        System.out.println("=".repeat(60));
+        log.info("Завершение смены по путевому листу #{}", waybillId);
 
         // 1. Получаем путевой лист
-        Waybill waybill = waybillRepository.findById(waybillId);
+        Waybill waybill = waybillRepository.findById(waybillId, FetchPlan.DETAIL);
         if (waybill == null) {
             throw new RuntimeException("Путевой лист #" + waybillId + " не найден");
         }
@@ -328,22 +312,18 @@ public class WaybillService {
         }
 
         // 4. Проверяем активные заказы водителя
-        System.out.println("\n ПРОВЕРКА АКТИВНЫХ ЗАКАЗОВ:");
         List<Order> activeOrders = orderService.getActiveOrders();
         if (!activeOrders.isEmpty()) {
-            System.out.println("⚠  Обнаружены незавершенные заказы:");
-            for (Order order : activeOrders) {
-                System.out.println("   • Заказ #" + order.getId() + " - " + order.getStatusDisplay());
+            log.warn("Смена #{} не завершена: незавершенных заказов {}", waybillId, activeOrders.size());
+            if (log.isDebugEnabled()) {
+                for (Order order : activeOrders) {
+                    log.debug("Заказ #{} - {}", order.getId(), order.getStatusDisplay());
+                }
             }
             throw new RuntimeException("Невозможно завершить смену: есть незавершенные заказы");
-        } else {
-            System.out.println(" Все заказы завершены");
         }
 
         // 5. ФИНАЛЬНЫЙ ТЕХОСМОТР
-        System.out.println("\n🔧 ШАГ 1: ФИНАЛЬНАЯ ПРОВЕРКА АВТОМОБИЛЯ");
-        System.out.println("-".repeat(40));
-
         TechnicalInspection finalInspection = inspectionService.createInspection(
                 car.getId(),
                 mechanicId,
@@ -357,58 +337,38 @@ public class WaybillService {
         car.setMileageKm(finalMileage);
         carRepository.update(car);
 
-        System.out.println(" Автомобиль проверен:");
-        System.out.println("    " + car.getDisplayName());
-        System.out.println("    Финальный пробег: " + finalMileage + " км");
-        System.out.println("    Проверил: " + mechanic.getFullName());
+        log.info("Автомобиль {} проверен: финальный пробег {} км, проверил {}", car.getDisplayName(),
+                finalMileage, mechanic.getFullName());
 
         // 6. РАСЧЕТ ЗАРАБОТКА
-        System.out.println("\n ШАГ 2: РАСЧЕТ ЗАРАБОТКА");
-        System.out.println("-".repeat(40));
 
-        // Получаем заказы из путевого листа
-        List<Order> waybillOrders = orderService.getOrdersByWaybillId(waybillId);
-
-        // Общий заработок = выручка от заказов + дополнительные доходы
-        Double totalRevenue = 0.0;
-        for (Order order : waybillOrders) {
-            if (order.getPrice() != null) {
-                totalRevenue += order.getPrice();
-            }
-        }
+        // Общий заработок = выручка от заказов (итог путевого листа) + дополнительные доходы
+        Double totalRevenue = waybill.getTotalRevenue();
 
         if (additionalEarnings != null && additionalEarnings > 0) {
             totalRevenue += additionalEarnings;
-            System.out.println("    Дополнительный доход: +" + additionalEarnings + " руб");
         }
 
         // Вычитаем комиссию таксопарка (20%)
         Double commission = totalRevenue * 0.20;
         Double driverEarnings = totalRevenue - commission;
 
-        System.out.println("    Общая выручка: " + totalRevenue + " руб");
-        System.out.println("    Комиссия таксопарка (20%): " + commission + " руб");
-        System.out.println("    Заработок водителя: " + driverEarnings + " руб");
+        log.info("Выручка {} руб. (дополнительно {}), комиссия таксопарка {} руб., заработок водителя {} руб.",
+                totalRevenue, additionalEarnings, commission, driverEarnings);
 
         // 7. ЗАКРЫТИЕ ПУТЕВОГО ЛИСТА
-        System.out.println("\n ШАГ 3: ЗАКРЫТИЕ ПУТЕВОГО ЛИСТА");
-        System.out.println("-".repeat(40));
 
         String notes = "Смена завершена.\n" +
                 "Механик: " + mechanic.getFullName() + "\n" +
                 "Пробег за смену: " + (finalMileage - waybill.getInitialMileageKm()) + " км\n" +
-                "Количество заказов: " + waybillOrders.size() + "\n" +
+                "Количество заказов: " + waybill.getOrdersCount() + "\n" +
                 (inspectionNotes != null ? "Примечания по техосмотру: " + inspectionNotes : "");
 
         waybill.completeWaybill(mechanic, finalMileage, driverEarnings, notes);
-        waybill.setTotalRevenue(totalRevenue);
-        waybill.setOrdersCount(waybillOrders.size());
 
         waybillRepository.update(waybill);
 
         // 8. ОБНОВЛЕНИЕ СТАТУСОВ
-        System.out.println("\n ШАГ 4: ОБНОВЛЕНИЕ СТАТУСОВ");
-        System.out.println("-".repeat(40));
 
         // Обновляем статус автомобиля
         car.setInRepair(false);
@@ -420,16 +380,11 @@ public class WaybillService {
         Driver driver = waybill.getDriver();
         driver.setMedicalStatus(MedicalStatus.PENDING);
         driverRepository.update(driver);
+        dispatchEngine.refreshDriver(driver.getId());
+        eligibility.refresh(driver.getId());
 
-        System.out.println("Статусы обновлены:");
-        System.out.println("   Автомобиль " + car.getLicensePlate() + " свободен");
-        System.out.println("    Технический статус: " + TechnicalStatus.OK.getDescription());
-        System.out.println("    Водитель " + driver.getFullName() + " завершил смену");
-        System.out.println("    Требуется медосмотр для следующей смены");
-
-        System.out.println("\n" + "".repeat(20));
-        System.out.println(" СМЕНА УСПЕШНО ЗАВЕРШЕНА!");
-        System.out.println("".repeat(20));
+        log.info("Смена завершена: путевой лист #{}, автомобиль {} свободен, водитель {} ждет медосмотра",
+                waybillId, car.getLicensePlate(), driver.getFullName());
 
         return waybill;
     }
@@ -438,7 +393,7 @@ public class WaybillService {
      * Получить сводку по завершенной смене
      */
     public String getShiftSummary(Long waybillId) {
-        Waybill waybill = waybillRepository.findById(waybillId);
+        Waybill waybill = waybillRepository.findById(waybillId, FetchPlan.DETAIL);
         if (waybill == null) {
             throw new RuntimeException("Путевой лист не найден");
         }
@@ -506,11 +461,63 @@ public class WaybillService {
         return summary.toString();
     }
 
+    /**
+     * Сверка итогов путевых листов (заказов, выручки, дистанции) с выполненными заказами.
+     * Итоги ведутся прибавлением при завершении заказа; разойтись с заказами они могут,
+     * если заказ правили или удаляли после завершения, или в данных до перехода на прибавление.
+     * Расхождения пишутся в лог и исправляются пересчетом. Возвращает число исправленных смен
+     */
+    public int reconcileTotals() {
+        int repaired = 0;
+        try {
+            List<Object[]> rows = waybillRepository.findTotalsWithOrderSums(
+                    LocalDateTime.now().minusDays(RECONCILE_DAYS));
+            for (Object[] row : rows) {
+                Long waybillId = (Long) row[0];
+                int ordersCount = row[1] != null ? ((Number) row[1]).intValue() : -1;
+                double totalRevenue = row[2] != null ? ((Number) row[2]).doubleValue() : Double.NaN;
+                double totalDistance = row[3] != null ? ((Number) row[3]).doubleValue() : Double.NaN;
+                int actualCount = ((Number) row[4]).intValue();
+                double actualRevenue = ((Number) row[5]).doubleValue();
+                double actualDistance = ((Number) row[6]).doubleValue();
+
+                if (ordersCount == actualCount
+                        && Math.abs(totalRevenue - actualRevenue) < RECONCILE_TOLERANCE
+                        && Math.abs(totalDistance - actualDistance) < RECONCILE_TOLERANCE) {
+                    continue;
+                }
+                log.warn("Итоги путевого листа #{} расходятся с заказами: заказов {} (по заказам {}), " +
+                                "выручка {} ({}), дистанция {} ({}) - пересчитываем",
+                        waybillId, ordersCount, actualCount, totalRevenue, actualRevenue, totalDistance, actualDistance);
+                if (waybillRepository.recalculateTotals(waybillId)) {
+                    repaired++;
+                }
+            }
+            log.debug("Сверка итогов путевых листов: проверено {}, исправлено {}", rows.size(), repaired);
+        } catch (Exception e) {
+            log.error("Ошибка сверки итогов путевых листов", e);
+        }
+        return repaired;
+    }
+
+    /**
+     * Запускает сверку итогов путевых листов раз в intervalMinutes минут в фоновом потоке
+     */
+    public void startTotalsReconciliation(long intervalMinutes) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "waybill-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcileTotals, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        log.info("Сверка итогов путевых листов включена: раз в {} мин", intervalMinutes);
+    }
+
     /**
      * Получить финальную статистику путевого листа
      */
     public String getFinalWaybillStats(Long waybillId) {
-        Waybill waybill = waybillRepository.findById(waybillId);
+        Waybill waybill = waybillRepository.findById(waybillId, FetchPlan.DETAIL);
         if (waybill == null) {
             return "Путевой лист не найден";
         }
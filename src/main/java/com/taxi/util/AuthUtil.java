@@ -5,6 +5,7 @@ import com.taxi.permission.PagePermission;
 import com.taxi.permission.PagePermission.Page;
 import com.taxi.permission.PagePermission.AccessLevel;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 
 /**
  * Утилиты для работы с аутентификацией и правами
@@ -15,7 +16,16 @@ public class AuthUtil {
      * Получает текущего пользователя из сессии
      */
     public static User getCurrentUser(HttpServletRequest request) {
-        return (User) request.getSession().getAttribute("user");
+        SessionPrincipal principal = getPrincipal(request);
+        return principal != null ? principal.toUser() : null;
+    }
+
+    /**
+     * Данные входа из сессии; новую сессию для анонимного запроса не создает
+     */
+    public static SessionPrincipal getPrincipal(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        return session != null ? (SessionPrincipal) session.getAttribute(SessionPrincipal.ATTRIBUTE) : null;
     }
 
     /**
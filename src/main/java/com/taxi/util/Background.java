@@ -0,0 +1,50 @@
+package com.taxi.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Плановые перестройки проекций в памяти (FleetIndex, DispatchEngine, DriverEligibility,
+ * SearchIndex, DashboardMetrics): между перестройками проекции обновляются точечно, а полное
+ * перечитывание подхватывает изменения в обход приложения и с других узлов.
+ *
+ * Каждая перестройка - полный проход по своим таблицам; суммарная нагрузка описана
+ * в JettyLauncher. Все перестройки отключаются -Dtaxi.rebuild.enabled=false
+ */
+public final class Background {
+
+    private static final Logger log = LoggerFactory.getLogger(Background.class);
+
+    private static final boolean REBUILD_ENABLED =
+            Boolean.parseBoolean(System.getProperty("taxi.rebuild.enabled", "true"));
+
+    private Background() {
+    }
+
+    /**
+     * Запускает rebuild раз в seconds секунд (после завершения предыдущего) в демон-потоке
+     * name-rebuild. Ошибка пишется в журнал и не останавливает расписание
+     */
+    public static void scheduleRebuild(String name, long seconds, Runnable rebuild) {
+        if (!REBUILD_ENABLED) {
+            log.info("Плановая перестройка {} отключена (taxi.rebuild.enabled=false)", name);
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                rebuild.run();
+            } catch (Exception e) {
+                log.error("Ошибка плановой перестройки {}", name, e);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,99 @@
+package com.taxi.util;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики пула соединений: размер пула, ожидание соединения, таймауты.
+ * Счетчики неблокирующие - запись идет из потоков запросов при каждой выдаче соединения.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAccumulator maxUsageMillis = new LongAccumulator(Math::max, 0);
+
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquired.increment();
+                waitNanos.add(elapsedAcquiredNanos);
+                maxWaitNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageMillis.add(elapsedBorrowedMillis);
+                maxUsageMillis.accumulate(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    public Snapshot snapshot() {
+        PoolStats stats = poolStats;
+        long acquiredCount = acquired.sum();
+        return new Snapshot(
+                stats != null ? stats.getActiveConnections() : 0,
+                stats != null ? stats.getIdleConnections() : 0,
+                stats != null ? stats.getTotalConnections() : 0,
+                stats != null ? stats.getPendingThreads() : 0,
+                stats != null ? stats.getMaxConnections() : 0,
+                acquiredCount,
+                acquiredCount > 0 ? waitNanos.sum() / acquiredCount / 1_000_000.0 : 0.0,
+                maxWaitNanos.get() / 1_000_000.0,
+                timeouts.sum(),
+                acquiredCount > 0 ? (double) usageMillis.sum() / acquiredCount : 0.0,
+                maxUsageMillis.get()
+        );
+    }
+
+    /**
+     * Состояние пула на момент запроса
+     */
+    public static class Snapshot {
+        public final int active;
+        public final int idle;
+        public final int total;
+        public final int pending;
+        public final int max;
+        public final long acquired;
+        public final double avgWaitMs;
+        public final double maxWaitMs;
+        public final long timeouts;
+        public final double avgUsageMs;
+        public final long maxUsageMs;
+
+        public Snapshot(int active, int idle, int total, int pending, int max, long acquired,
+                        double avgWaitMs, double maxWaitMs, long timeouts,
+                        double avgUsageMs, long maxUsageMs) {
+            this.active = active;
+            this.idle = idle;
+            this.total = total;
+            this.pending = pending;
+            this.max = max;
+            this.acquired = acquired;
+            this.avgWaitMs = avgWaitMs;
+            this.maxWaitMs = maxWaitMs;
+            this.timeouts = timeouts;
+            this.avgUsageMs = avgUsageMs;
+            this.maxUsageMs = maxUsageMs;
+        }
+    }
+}
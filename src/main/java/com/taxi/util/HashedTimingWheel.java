@@ -0,0 +1,184 @@
+package com.taxi.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Таймеры на колесе времени (hashed timing wheel): один поток на все таймеры.
+ *
+ * Колесо - это wheelSize ячеек, стрелка переходит на следующую раз в tickMillis.
+ * Таймер кладется в ячейку своего срока; если срок дальше одного оборота, в таймере
+ * хранится число оставшихся оборотов. Постановка и отмена - O(1) без блокировок,
+ * на каждом шаге просматривается одна ячейка. Точность - один шаг колеса, чего для
+ * таймаутов в секунды достаточно, а тысячи ожидающих таймеров не требуют тысяч потоков.
+ *
+ * Задачи выполняются в потоке колеса и должны быть короткими: долгую работу
+ * (запросы к БД) нужно передавать в свой пул
+ */
+public final class HashedTimingWheel {
+    private static final Logger log = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    // Состояния таймера
+    private static final int WAITING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final int mask;
+    // Ячейки трогает только поток колеса; новые таймеры приходят через очередь
+    private final Queue<Timeout>[] buckets;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final long startNanos;
+    private final Thread worker;
+    private volatile boolean stopped;
+    private long tick;
+
+    /**
+     * wheelSize округляется вверх до степени двойки
+     */
+    public HashedTimingWheel(String name, long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMillis и wheelSize должны быть больше нуля");
+        }
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.buckets = newBuckets(size);
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Выполнить task через delayMillis (с точностью до шага колеса)
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        if (stopped) {
+            throw new IllegalStateException("Колесо таймеров остановлено");
+        }
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout timeout = new Timeout(task, deadline);
+        pending.incrementAndGet();
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Сколько таймеров ждет срабатывания
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (!stopped) {
+            long tickDeadline = (tick + 1) * tickNanos;
+            long sleepNanos = tickDeadline - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            transferIncoming();
+            expire(buckets[(int) (tick & mask)], System.nanoTime() - startNanos);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.state.get() == CANCELLED) {
+                continue;
+            }
+            long deadlineTick = timeout.deadline / tickNanos;
+            // Таймер с уже прошедшим сроком срабатывает на текущем шаге
+            long targetTick = Math.max(deadlineTick, tick);
+            timeout.rounds = (targetTick - tick) / buckets.length;
+            buckets[(int) (targetTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Массив параметризованного типа напрямую не создать - отсюда единственное непроверяемое приведение
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Queue<Timeout>[] newBuckets(int size) {
+        Queue<Timeout>[] buckets = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        return buckets;
+    }
+
+    private void expire(Queue<Timeout> bucket, long now) {
+        for (Iterator<Timeout> it = bucket.iterator(); it.hasNext(); ) {
+            Timeout timeout = it.next();
+            if (timeout.state.get() == CANCELLED) {
+                it.remove();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else if (timeout.deadline <= now + tickNanos) {
+                it.remove();
+                if (timeout.state.compareAndSet(WAITING, EXPIRED)) {
+                    pending.decrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        log.error("Ошибка в задаче таймера", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Поставленный таймер
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private long rounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Отменяет таймер. false - он уже сработал или отменен раньше
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+}
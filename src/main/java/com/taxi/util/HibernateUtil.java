@@ -1,11 +1,18 @@
 package com.taxi.util;
 
 import com.taxi.entity.*;
+import jakarta.persistence.OptimisticLockException;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
+
 public class HibernateUtil {
     private static final Logger log = LoggerFactory.getLogger(HibernateUtil.class);
     private static final SessionFactory sessionFactory;
@@ -17,6 +24,14 @@ public class HibernateUtil {
             Configuration configuration = new Configuration();
             configuration.configure(); // Загружает hibernate.cfg.xml
 
+            // Системные свойства hibernate.* важнее файла: так бенчмарки и стенды
+            // подключаются к своей БД, не трогая hibernate.cfg.xml
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith("hibernate.")) {
+                    configuration.setProperty(name, System.getProperty(name));
+                }
+            }
+
             // Добавляем entity классы вручную (на всякий случай)
             configuration.addAnnotatedClass(com.taxi.entity.Driver.class);
             configuration.addAnnotatedClass(com.taxi.entity.Car.class);
@@ -41,6 +56,51 @@ public class HibernateUtil {
         return sessionFactory;
     }
 
+    /**
+     * Статистика Hibernate: попадания/промахи кэша второго уровня и кэша запросов
+     */
+    public static Statistics getStatistics() {
+        return sessionFactory.getStatistics();
+    }
+
+    /**
+     * Метрики пула соединений (null, если используется другой ConnectionProvider)
+     */
+    public static ConnectionPoolMetrics.Snapshot getPoolMetrics() {
+        PooledConnectionProvider pool = getPool();
+        return pool != null ? pool.getMetrics() : null;
+    }
+
+    /**
+     * Общий пул соединений (null, если используется другой ConnectionProvider)
+     */
+    public static DataSource getDataSource() {
+        PooledConnectionProvider pool = getPool();
+        return pool != null ? pool.getDataSource() : null;
+    }
+
+    private static PooledConnectionProvider getPool() {
+        ConnectionProvider provider = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (provider == null || !provider.isUnwrappableAs(PooledConnectionProvider.class)) {
+            return null;
+        }
+        return provider.unwrap(PooledConnectionProvider.class);
+    }
+
+    /**
+     * Ошибка вызвана оптимистичной блокировкой: строку уже изменил кто-то другой
+     */
+    public static boolean isOptimisticLockFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StaleStateException || cause instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static void shutdown() {
         if (sessionFactory != null) {
             sessionFactory.close();
@@ -1,6 +1,15 @@
 package com.taxi.util;
 
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.server.session.DatabaseAdaptor;
+import org.eclipse.jetty.server.session.DefaultSessionCache;
+import org.eclipse.jetty.server.session.DefaultSessionIdManager;
+import org.eclipse.jetty.server.session.JDBCSessionDataStore;
+import org.eclipse.jetty.server.session.SessionHandler;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.servlet.FilterHolder;
@@ -12,13 +21,17 @@ import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletMapping;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
+import javax.sql.DataSource;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
 
 public class JettyLauncher {
@@ -35,6 +48,39 @@ public class JettyLauncher {
             session.close();
             dbConnected = true;
             System.out.println("Подключение к БД: УСПЕШНО");
+
+            // Проекции ниже строятся при старте и затем целиком перестраиваются по расписанию
+            // (Background.scheduleRebuild), каждая - полным чтением своих таблиц:
+            //   DashboardMetrics   раз в 60 с   GROUP BY по всей таблице orders
+            //   DispatchEngine     раз в 60 с   водители с путевыми листами, медосмотрами и заказами
+            //   DriverEligibility  раз в 60 с   то же для допуска всех водителей
+            //   FleetIndex         раз в 60 с   cars и закрепления водителей, 2 запроса
+            //   SearchIndex        раз в 300 с  drivers, cars, medical_checks, 3 запроса
+            // Итого около 6 запросов по целым таблицам в минуту с каждого узла.
+            // Если данные меняются только через этот узел, перестройки можно отключить
+            // все сразу: -Dtaxi.rebuild.enabled=false (проекции обновляются точечно)
+
+            // Счетчики панели диспетчера строятся один раз при старте
+            com.taxi.service.DashboardMetrics.getInstance();
+            // Набор водителей для автоназначения тоже
+            com.taxi.dispatch.DispatchEngine.getInstance();
+            // И допуск водителей к работе
+            com.taxi.service.DriverEligibility.getInstance();
+            // И состояние автопарка
+            com.taxi.repository.FleetIndex.getInstance();
+            // И поисковый индекс
+            com.taxi.repository.SearchIndex.getInstance();
+
+            // Пакетное автоназначение новых заказов: -Dtaxi.dispatch.batch_interval_seconds=10
+            long batchInterval = Long.getLong("taxi.dispatch.batch_interval_seconds", 0L);
+            if (batchInterval > 0) {
+                new com.taxi.service.OrderService().startBatchDispatch(batchInterval);
+            }
+            // Сверка итогов путевых листов с заказами: -Dtaxi.waybill.reconcile_interval_minutes=15
+            long reconcileInterval = Long.getLong("taxi.waybill.reconcile_interval_minutes", 0L);
+            if (reconcileInterval > 0) {
+                new com.taxi.service.WaybillService().startTotalsReconciliation(reconcileInterval);
+            }
         } catch (Exception e) {
             System.out.println("Подключение к БД: ОШИБКА");
             System.out.println("Сообщение: " + e.getMessage());
@@ -42,21 +88,33 @@ public class JettyLauncher {
         }
 
         // Запуск сервера
-        int port = 8080;
-        Server server = new Server(port);
+        int port = Integer.getInteger("taxi.http.port", 8080);
+        Server server = createServer(port, System.getProperty("taxi.http.threads", "platform"));
 
         ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
         context.setContextPath("/");
+        configureSessions(server, context, System.getProperty("taxi.session.store", "memory"));
+
 
 
+        // замер задержек - первым, чтобы в него попадало и время фильтра безопасности
+        context.addFilter(asyncSupported(new FilterHolder(new MetricsFilter())), "/*", EnumSet.of(DispatcherType.REQUEST));
 
         // фильтр безопасности
-        context.addFilter(new FilterHolder(new AuthFilter()), "/*", EnumSet.of(DispatcherType.REQUEST));
+        context.addFilter(asyncSupported(new FilterHolder(new AuthFilter())), "/*", EnumSet.of(DispatcherType.REQUEST));
 
         // Регистрируем все сервлеты
         registerAllServlets(context);
 
-        server.setHandler(context);
+        // Сжатие динамических страниц. Статика уже хранится сжатой (см. StaticAssetServlet)
+        GzipHandler gzip = new GzipHandler();
+        gzip.setMinGzipSize(1024);
+        gzip.setIncludedMimeTypes("text/html", "text/plain", "text/csv", "application/json");
+        // Поток событий не сжимаем: gzip копил бы кадры в буфере до заполнения
+        gzip.setExcludedPaths("/css/*", "/js/*", "/dispatcher/events");
+        gzip.setHandler(context);
+
+        server.setHandler(gzip);
         server.start();
 
         System.out.println("\n" + "=".repeat(30));
@@ -85,6 +143,113 @@ public class JettyLauncher {
         server.join();
     }
 
+    /**
+     * Сервер с настраиваемыми пулом потоков и коннектором. Параметры - системные свойства:
+     * taxi.http.threads            platform (по умолчанию) или virtual - запросы в виртуальных потоках (Java 21+)
+     * taxi.http.max_threads        размер пула платформенных потоков, 200
+     * taxi.http.min_threads        8
+     * taxi.http.thread_idle_timeout_ms  простой лишнего потока пула до остановки, 60000
+     * taxi.http.acceptors          потоки приема соединений, -1 - по числу ядер (решает Jetty)
+     * taxi.http.selectors          потоки селекторов, -1 - по числу ядер
+     * taxi.http.idle_timeout_ms    простой соединения до закрытия, 30000
+     * taxi.http.accept_queue       очередь непринятых соединений ОС, 0 - по умолчанию системы
+     *
+     * В режиме virtual каждый запрос получает свой виртуальный поток, и ожидание JDBC
+     * не занимает поток ОС. Тогда узким местом становится пул соединений с БД -
+     * его размер задается отдельно: -Dtaxi.pool.max_size
+     */
+    public static Server createServer(int port, String threads) {
+        QueuedThreadPool threadPool = new QueuedThreadPool(
+                Integer.getInteger("taxi.http.max_threads", 200),
+                Integer.getInteger("taxi.http.min_threads", 8),
+                Integer.getInteger("taxi.http.thread_idle_timeout_ms", 60_000));
+        threadPool.setName("http");
+
+        if ("virtual".equalsIgnoreCase(threads)) {
+            if (VirtualThreads.areSupported()) {
+                threadPool.setVirtualThreadsExecutor(VirtualThreads.getDefaultVirtualThreadsExecutor());
+                System.out.println("Запросы выполняются в виртуальных потоках");
+            } else {
+                System.out.println("Виртуальные потоки недоступны в Java " + Runtime.version().feature()
+                        + " (нужна 21+), используется пул платформенных потоков");
+            }
+        }
+
+        Server server = new Server(threadPool);
+        ServerConnector connector = new ServerConnector(server,
+                Integer.getInteger("taxi.http.acceptors", -1),
+                Integer.getInteger("taxi.http.selectors", -1));
+        connector.setPort(port);
+        connector.setIdleTimeout(Long.getLong("taxi.http.idle_timeout_ms", 30_000L));
+        connector.setAcceptQueueSize(Integer.getInteger("taxi.http.accept_queue", 0));
+        server.addConnector(connector);
+        return server;
+    }
+
+    /**
+     * Хранилище HTTP-сессий. Параметры - системные свойства:
+     * taxi.session.store           memory (по умолчанию) - только в памяти узла;
+     *                              jdbc - общая таблица jettysessions в БД приложения, узлы взаимозаменяемы
+     * taxi.node.name               имя узла в идентификаторе сессии, node0
+     * taxi.session.max_inactive_sec  простой сессии до истечения (jdbc), 43200 - смена
+     * taxi.session.save_period_sec   как часто сохранять одно лишь время обращения, 60
+     * taxi.session.flush_interval_ms период фоновой записи, 1000
+     * taxi.session.evict_idle_sec    через сколько секунд простоя убрать сессию из памяти узла, 60
+     *
+     * В режиме jdbc сессия в запросе по-прежнему берется из памяти (DefaultSessionCache);
+     * из БД она читается, когда узел видит ее впервые или после вытеснения
+     */
+    public static void configureSessions(Server server, ServletContextHandler context, String store) {
+        if (!"jdbc".equalsIgnoreCase(store)) {
+            return;
+        }
+        DataSource dataSource;
+        try {
+            dataSource = HibernateUtil.getDataSource();
+        } catch (Throwable e) {
+            dataSource = null;
+        }
+        if (dataSource == null) {
+            System.out.println("Хранилище сессий в БД недоступно, сессии хранятся в памяти узла");
+            return;
+        }
+
+        DefaultSessionIdManager idManager = new DefaultSessionIdManager(server);
+        idManager.setWorkerName(System.getProperty("taxi.node.name", "node0"));
+        server.setSessionIdManager(idManager);
+
+        DatabaseAdaptor adaptor = new DatabaseAdaptor();
+        adaptor.setDatasource(dataSource);
+        JDBCSessionDataStore jdbcStore = new JDBCSessionDataStore();
+        jdbcStore.setDatabaseAdaptor(adaptor);
+        jdbcStore.setSavePeriodSec(Integer.getInteger("taxi.session.save_period_sec", 60));
+
+        SessionHandler sessionHandler = context.getSessionHandler();
+        sessionHandler.setMaxInactiveInterval(Integer.getInteger("taxi.session.max_inactive_sec", 43_200));
+
+        DefaultSessionCache cache = new DefaultSessionCache(sessionHandler);
+        cache.setSessionDataStore(new WriteBehindSessionDataStore(jdbcStore,
+                Long.getLong("taxi.session.flush_interval_ms", 1000L)));
+        // Вход записывается до отправки редиректа - следующий запрос может попасть на другой узел
+        cache.setFlushOnResponseCommit(true);
+        // Пустая сессия (зашли на /login и ушли) в БД не попадает
+        cache.setSaveOnCreate(false);
+        // Выход на другом узле удаляет строку; здесь сессия доживает в памяти не дольше этого срока
+        cache.setEvictionPolicy(Integer.getInteger("taxi.session.evict_idle_sec", 60));
+        cache.setRemoveUnloadableSessions(true);
+        sessionHandler.setSessionCache(cache);
+
+        System.out.println("Сессии хранятся в БД (узел " + idManager.getWorkerName() + ")");
+    }
+
+    /**
+     * Фильтры стоят и перед асинхронным сервлетом событий, поэтому должны это разрешать
+     */
+    private static FilterHolder asyncSupported(FilterHolder holder) {
+        holder.setAsyncSupported(true);
+        return holder;
+    }
+
     private static void registerAllServlets(ServletContextHandler context) {
         System.out.println("\nРегистрация сервлетов:");
 
@@ -142,10 +307,18 @@ public class JettyLauncher {
             context.addServlet(new ServletHolder(new com.taxi.controller.DispatcherPanelServlet()), "/dispatcher");
             context.addServlet(new ServletHolder(new com.taxi.controller.DispatcherPanelServlet()), "/dispatcher/*");
             System.out.println("   DispatcherPanelServlet -> /dispatcher, /dispatcher/*");
+            ServletHolder dispatcherEvents = new ServletHolder(new com.taxi.controller.DispatcherEventsServlet());
+            dispatcherEvents.setAsyncSupported(true);
+            context.addServlet(dispatcherEvents, "/dispatcher/events");
+            System.out.println("   DispatcherEventsServlet -> /dispatcher/events (SSE)");
 
             context.addServlet(new ServletHolder(new com.taxi.controller.DriverPanelServlet()), "/driver-panel");
             context.addServlet(new ServletHolder(new com.taxi.controller.DriverPanelServlet()), "/driver-panel/*");
             System.out.println("   DriverPanelServlet -> /driver-panel, /driver-panel/*");
+            ServletHolder driverOffers = new ServletHolder(new com.taxi.controller.DriverOfferServlet());
+            driverOffers.setAsyncSupported(true);
+            context.addServlet(driverOffers, "/driver-panel/offers");
+            System.out.println("   DriverOfferServlet -> /driver-panel/offers (long-poll)");
 
             context.addServlet(new ServletHolder(new com.taxi.controller.AdminPanelServlet()), "/admin");
 
@@ -160,6 +333,11 @@ public class JettyLauncher {
             // 11. Проверка системы
             context.addServlet(new ServletHolder(new HealthCheckServlet()), "/health");
             System.out.println("   HealthCheckServlet -> /health");
+            context.addServlet(new ServletHolder(new MetricsServlet()), "/metrics");
+            System.out.println("   MetricsServlet -> /metrics");
+            context.addServlet(new ServletHolder(new StaticAssetServlet()), "/css/*");
+            context.addServlet(new ServletHolder(new StaticAssetServlet()), "/js/*");
+            System.out.println("   StaticAssetServlet -> /css/*, /js/*");
 
             //Отчет
             context.addServlet(new ServletHolder(new com.taxi.controller.IncomeReportServlet()), "/admin/income-report/csv");
@@ -195,7 +373,7 @@ public class JettyLauncher {
             String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
 
             // Разрешенные пути без авторизации
-            if (path.equals("/login") || path.equals("/register") || path.equals("/health") ||
+            if (path.equals("/login") || path.equals("/register") || path.equals("/health") || path.equals("/metrics") ||
                     path.startsWith("/css/") || path.startsWith("/js/")) {
                 chain.doFilter(request, response);
                 return;
@@ -208,9 +386,9 @@ public class JettyLauncher {
 //            }
 
             // После проверки авторизации, перенаправляем на правильную панель
-            if (session != null && session.getAttribute("user") != null) {
-                com.taxi.entity.User user = (com.taxi.entity.User) session.getAttribute("user");
-                String userRole = user.getUserType();
+            SessionPrincipal principal = AuthUtil.getPrincipal(httpRequest);
+            if (principal != null) {
+                String userRole = principal.getUserType();
 
                 // Если пользователь пытается зайти на "/" или "/index", перенаправляем по роли
                 if (path.equals("/") || path.equals("/index")) {
@@ -223,8 +401,7 @@ public class JettyLauncher {
             }
 
             // Проверка ролей для защищенных путей
-            com.taxi.entity.User user = (com.taxi.entity.User) session.getAttribute("user");
-            String userRole = user.getUserType();
+            String userRole = principal != null ? principal.getUserType() : null;
 
             // Проверка доступа к панелям по ролям
             if (path.startsWith("/doctor") && !"DOCTOR".equals(userRole)) {
@@ -267,6 +444,171 @@ public class JettyLauncher {
         public void destroy() {}
     }
 
+    //  ФИЛЬТР МЕТРИК: количество, ошибки и задержки по сопоставлению сервлета и действию
+    public static class MetricsFilter implements Filter {
+        private static final int MAX_ACTION_LENGTH = 40;
+
+        private final LatencyMetrics metrics = LatencyMetrics.getInstance();
+
+        @Override
+        public void init(FilterConfig filterConfig) throws ServletException {}
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            long started = System.nanoTime();
+            HttpServletRequest httpRequest = (HttpServletRequest) request;
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            boolean failed = true;
+            try {
+                chain.doFilter(request, response);
+                failed = false;
+            } finally {
+                String mapping = mappingOf(httpRequest);
+                metrics.recordRequest(httpRequest.getMethod(), mapping, actionOf(httpRequest, mapping), started,
+                        failed || httpResponse.getStatus() >= 500);
+            }
+        }
+
+        private static String mappingOf(HttpServletRequest request) {
+            HttpServletMapping mapping = request.getHttpServletMapping();
+            if (mapping != null && mapping.getPattern() != null && !mapping.getPattern().isEmpty()) {
+                return mapping.getPattern();
+            }
+            return request.getServletPath();
+        }
+
+        /**
+         * Действие: первый сегмент пути после "/orders/*" (числа - это id, не действие)
+         * или параметр action из строки запроса. Тело POST здесь не читаем: getParameter
+         * разобрал бы форму до того, как сервлет выставит кодировку UTF-8
+         */
+        private static String actionOf(HttpServletRequest request, String mapping) {
+            if (mapping.endsWith("/*")) {
+                String pathInfo = request.getPathInfo();
+                if (pathInfo != null && pathInfo.length() > 1) {
+                    int end = pathInfo.indexOf('/', 1);
+                    String segment = pathInfo.substring(1, end > 0 ? end : pathInfo.length());
+                    if (!segment.isEmpty() && !Character.isDigit(segment.charAt(0))) {
+                        return truncate(segment);
+                    }
+                }
+            }
+            String query = request.getQueryString();
+            if (query == null) {
+                return "";
+            }
+            for (String pair : query.split("&")) {
+                if (pair.startsWith("action=")) {
+                    String value = pair.substring("action=".length());
+                    try {
+                        return truncate(URLDecoder.decode(value, StandardCharsets.UTF_8));
+                    } catch (IllegalArgumentException e) {
+                        return truncate(value); // битая %-последовательность вроде "%zz"
+                    }
+                }
+            }
+            return "";
+        }
+
+        private static String truncate(String action) {
+            return action.length() > MAX_ACTION_LENGTH ? action.substring(0, MAX_ACTION_LENGTH) : action;
+        }
+
+        @Override
+        public void destroy() {}
+    }
+
+    // ВЫГРУЗКА МЕТРИК ДЛЯ PROMETHEUS
+    public static class MetricsServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            resp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+            resp.setHeader("Cache-Control", "no-store");
+            LatencyMetrics.getInstance().writePrometheus(resp.getWriter());
+        }
+    }
+
+    // СТАТИКА: CSS/JS из classpath с отпечатком в имени, ETag и заранее сжатыми версиями
+    public static class StaticAssetServlet extends HttpServlet {
+        private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+        // Адрес без отпечатка (или устаревший) - браузер перепроверяет по ETag при каждом использовании
+        private static final String REVALIDATE = "no-cache";
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            String path = req.getServletPath() + (req.getPathInfo() != null ? req.getPathInfo() : "");
+            StaticAssets.Lookup found = StaticAssets.getInstance().lookup(path);
+            if (found == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            StaticAssets.Asset asset = found.asset;
+            String accepted = req.getHeader("Accept-Encoding");
+            String encoding = null;
+            byte[] body = asset.identity;
+            if (asset.brotli != null && accepts(accepted, "br")) {
+                encoding = "br";
+                body = asset.brotli;
+            } else if (asset.gzip != null && accepts(accepted, "gzip")) {
+                encoding = "gzip";
+                body = asset.gzip;
+            }
+            String etag = asset.etag(encoding);
+
+            resp.setHeader("Cache-Control", found.immutable ? IMMUTABLE : REVALIDATE);
+            resp.setHeader("ETag", etag);
+            if (asset.gzip != null || asset.brotli != null) {
+                resp.setHeader("Vary", "Accept-Encoding");
+            }
+
+            if (matches(req.getHeader("If-None-Match"), etag)) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            resp.setContentType(asset.contentType);
+            if (encoding != null) {
+                resp.setHeader("Content-Encoding", encoding);
+            }
+            resp.setContentLength(body.length);
+            resp.getOutputStream().write(body);
+        }
+
+        private static boolean accepts(String acceptEncoding, String coding) {
+            if (acceptEncoding == null) {
+                return false;
+            }
+            for (String part : acceptEncoding.split(",")) {
+                String[] params = part.trim().split(";");
+                if (params[0].trim().equalsIgnoreCase(coding)) {
+                    // "gzip;q=0" - явный отказ
+                    return params.length < 2 || !params[1].trim().matches("q=0(\\.0*)?");
+                }
+            }
+            return false;
+        }
+
+        private static boolean matches(String ifNoneMatch, String etag) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String value = candidate.trim();
+                if (value.startsWith("W/")) {
+                    value = value.substring(2);
+                }
+                if (value.equals("*") || value.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     // СТРАНИЦА ПРОВЕРКИ
     public static class HealthCheckServlet extends HttpServlet {
         @Override
@@ -281,99 +623,7 @@ public class JettyLauncher {
             out.println("<head>");
             out.println("    <title>Такси-сервис | Проверка системы</title>");
             out.println("    <meta charset='UTF-8'>");
-            out.println("    <style>");
-            out.println("        * { margin: 0; padding: 0; box-sizing: border-box; }");
-            out.println("        body { ");
-            out.println("            font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; ");
-            out.println("            background: linear-gradient(135deg, #0a0a0a 0%, #1a1a1a 100%); ");
-            out.println("            color: #e0e0e0; ");
-            out.println("            min-height: 100vh; ");
-            out.println("            padding: 40px; ");
-            out.println("            line-height: 1.6; ");
-            out.println("        }");
-            out.println("        .container { ");
-            out.println("            max-width: 1200px; ");
-            out.println("            margin: 0 auto; ");
-            out.println("            background: rgba(30, 30, 30, 0.8); ");
-            out.println("            border-radius: 15px; ");
-            out.println("            padding: 40px; ");
-            out.println("            box-shadow: 0 10px 30px rgba(0, 0, 0, 0.5); ");
-            out.println("            backdrop-filter: blur(10px); ");
-            out.println("        }");
-            out.println("        h1 { ");
-            out.println("            color: #ffffff; ");
-            out.println("            margin-bottom: 20px; ");
-            out.println("            font-size: 2.5em; ");
-            out.println("            font-weight: 300; ");
-            out.println("            border-bottom: 1px solid #444; ");
-            out.println("            padding-bottom: 15px; ");
-            out.println("        }");
-            out.println("        .status { ");
-            out.println("            padding: 15px; ");
-            out.println("            margin: 20px 0; ");
-            out.println("            border-radius: 8px; ");
-            out.println("            font-weight: 500; ");
-            out.println("        }");
-            out.println("        .success { ");
-            out.println("            background: linear-gradient(135deg, #2e7d32 0%, #1b5e20 100%); ");
-            out.println("            color: #ffffff; ");
-            out.println("            border-left: 5px solid #4caf50; ");
-            out.println("        }");
-            out.println("        .warning { ");
-            out.println("            background: linear-gradient(135deg, #f57c00 0%, #e65100 100%); ");
-            out.println("            color: #ffffff; ");
-            out.println("            border-left: 5px solid #ff9800; ");
-            out.println("        }");
-            out.println("        .endpoints { ");
-            out.println("            display: grid; ");
-            out.println("            grid-template-columns: repeat(auto-fill, minmax(200px, 1fr)); ");
-            out.println("            gap: 15px; ");
-            out.println("            margin-top: 30px; ");
-            out.println("        }");
-            out.println("        .endpoint { ");
-            out.println("            background: rgba(255, 255, 255, 0.05); ");
-            out.println("            padding: 20px; ");
-            out.println("            border-radius: 10px; ");
-            out.println("            text-align: center; ");
-            out.println("            transition: all 0.3s ease; ");
-            out.println("            text-decoration: none; ");
-            out.println("            color: #e0e0e0; ");
-            out.println("            border: 1px solid #444; ");
-            out.println("        }");
-            out.println("        .endpoint:hover { ");
-            out.println("            background: rgba(255, 255, 255, 0.1); ");
-            out.println("            transform: translateY(-5px); ");
-            out.println("            border-color: #666; ");
-            out.println("            box-shadow: 0 5px 15px rgba(0, 0, 0, 0.3); ");
-            out.println("        }");
-            out.println("        .endpoint h3 { ");
-            out.println("            color: #ffffff; ");
-            out.println("            margin-bottom: 10px; ");
-            out.println("            font-weight: 400; ");
-            out.println("        }");
-            out.println("        .info { ");
-            out.println("            margin-top: 30px; ");
-            out.println("            padding: 20px; ");
-            out.println("            background: rgba(255, 255, 255, 0.03); ");
-            out.println("            border-radius: 10px; ");
-            out.println("        }");
-            out.println("        .info p { margin: 10px 0; }");
-            out.println("        .login-link { ");
-            out.println("            display: inline-block; ");
-            out.println("            margin-top: 20px; ");
-            out.println("            padding: 12px 30px; ");
-            out.println("            background: linear-gradient(135deg, #2196f3 0%, #1976d2 100%); ");
-            out.println("            color: white; ");
-            out.println("            text-decoration: none; ");
-            out.println("            border-radius: 25px; ");
-            out.println("            transition: all 0.3s ease; ");
-            out.println("            font-weight: 500; ");
-            out.println("        }");
-            out.println("        .login-link:hover { ");
-            out.println("            background: linear-gradient(135deg, #1976d2 0%, #0d47a1 100%); ");
-            out.println("            transform: scale(1.05); ");
-            out.println("        }");
-            out.println("    </style>");
+            out.println("    <link rel='stylesheet' href='" + StaticAssets.url("/css/health.css") + "'>");
             out.println("</head>");
             out.println("<body>");
             out.println("    <div class='container'>");
@@ -389,6 +639,8 @@ public class JettyLauncher {
                 out.println("        <div class='status warning'>База данных не подключена: " + e.getMessage() + "</div>");
             }
 
+            renderPoolMetrics(out);
+
             out.println("        <div class='info'>");
             out.println("            <p><strong>Время:</strong> " + new java.util.Date() + "</p>");
             out.println("            <p><strong>Сервер:</strong> Jetty 11</p>");
@@ -409,5 +661,28 @@ public class JettyLauncher {
             out.println("</body>");
             out.println("</html>");
         }
+
+        private void renderPoolMetrics(PrintWriter out) {
+            ConnectionPoolMetrics.Snapshot pool;
+            try {
+                pool = HibernateUtil.getPoolMetrics();
+            } catch (Throwable e) {
+                return;
+            }
+            if (pool == null) {
+                return;
+            }
+
+            out.println("        <div class='info'>");
+            out.println("            <p><strong>Пул соединений:</strong></p>");
+            out.println("            <p>Активные: " + pool.active + " | Свободные: " + pool.idle +
+                    " | Всего: " + pool.total + " из " + pool.max + " | Ожидают соединения: " + pool.pending + "</p>");
+            out.println("            <p>Выдано соединений: " + pool.acquired +
+                    String.format(" | Ожидание: среднее %.2f мс, максимум %.2f мс", pool.avgWaitMs, pool.maxWaitMs) +
+                    " | Таймауты: " + pool.timeouts + "</p>");
+            out.println("            <p>" + String.format("Удержание соединения: среднее %.1f мс", pool.avgUsageMs) +
+                    ", максимум " + pool.maxUsageMs + " мс</p>");
+            out.println("        </div>");
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package com.taxi.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма задержек в духе HdrHistogram: логарифмические диапазоны, каждый поделен
+ * на SUB_BUCKETS равных корзин, поэтому относительная погрешность квантиля не больше 1/32 (~3%)
+ * на всем диапазоне от микросекунды до десятков часов.
+ *
+ * Запись без блокировок: инкремент ячейки AtomicLongArray и два LongAdder.
+ * Квантили считаются по скользящему окну - текущая и предыдущая минута, чтобы старые
+ * всплески не держались в p99 весь аптайм. Количество и сумма - с момента запуска,
+ * как того требует формат Prometheus
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Значения в микросекундах до 2^36 (около 19 часов), больше - в последнюю корзину
+    private static final int MAX_EXPONENT = 36;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+    private final AtomicReference<Window> current;
+
+    public LatencyHistogram() {
+        current = new AtomicReference<>(new Window(System.nanoTime(), null));
+    }
+
+    /**
+     * Записывает длительность операции, начатой в startNanos (System.nanoTime())
+     */
+    public void recordSince(long startNanos) {
+        long now = System.nanoTime();
+        record(now - startNanos, now);
+    }
+
+    public void record(long durationNanos, long nowNanos) {
+        long micros = Math.max(0, durationNanos / 1000);
+        count.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+        window(nowNanos).counts.incrementAndGet(bucketIndex(micros));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSumSeconds() {
+        return sumMicros.sum() / 1_000_000.0;
+    }
+
+    public double getMaxSeconds() {
+        return maxMicros.get() / 1_000_000.0;
+    }
+
+    /**
+     * Квантили за последние одну-две минуты, в секундах. Пустое окно - нули
+     */
+    public double[] quantileSeconds(double... quantiles) {
+        Window window = window(System.nanoTime());
+        long[] counts = new long[BUCKETS];
+        long total = window.addTo(counts);
+        Window previous = window.previous;
+        if (previous != null) {
+            total += previous.addTo(counts);
+        }
+
+        double[] result = new double[quantiles.length];
+        if (total == 0) {
+            return result;
+        }
+        for (int q = 0; q < quantiles.length; q++) {
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    result[q] = Math.min(bucketUpperBound(i), maxMicros.get()) / 1_000_000.0;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Текущее окно; если оно старше минуты - заводит новое, старое становится предыдущим.
+     * Гонка двух потоков за смену окна решается CAS, проигравший пишет в окно победителя
+     */
+    private Window window(long nowNanos) {
+        Window window = current.get();
+        while (nowNanos - window.startNanos >= WINDOW_NANOS) {
+            // Если простаивали дольше двух окон - предыдущее уже не в счет
+            Window previous = nowNanos - window.startNanos < 2 * WINDOW_NANOS ? window : null;
+            Window next = new Window(nowNanos, previous);
+            if (current.compareAndSet(window, next)) {
+                window.previous = null; // не держим цепочку старых окон
+                return next;
+            }
+            window = current.get();
+        }
+        return window;
+    }
+
+    static int bucketIndex(long micros) {
+        long value = Math.min(micros, MAX_VALUE);
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index - shift * SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    private static class Window {
+        final long startNanos;
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        volatile Window previous;
+
+        Window(long startNanos, Window previous) {
+            this.startNanos = startNanos;
+            this.previous = previous;
+        }
+
+        long addTo(long[] target) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long value = counts.get(i);
+                target[i] += value;
+                total += value;
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.taxi.util;
+
+import com.taxi.service.DashboardMetrics;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Задержки HTTP-запросов (по сопоставлению сервлета и действию) и методов репозиториев.
+ * Запись без блокировок, выгрузка - в текстовом формате Prometheus для /metrics
+ */
+public final class LatencyMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99", "0.999"};
+
+    // Защита от разрастания меток: новые ключи сверх лимита идут в общий "other"
+    private static final int MAX_ENDPOINTS = 300;
+    private static final String OVERFLOW_KEY = "other";
+
+    private static final LatencyMetrics INSTANCE = new LatencyMetrics();
+
+    private final ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> repositoryCalls = new ConcurrentHashMap<>();
+
+    private LatencyMetrics() {
+    }
+
+    public static LatencyMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Записывает HTTP-запрос. Ключ - "метод сопоставление действие", например "POST /orders/* assign"
+     */
+    public void recordRequest(String method, String mapping, String action, long startNanos, boolean error) {
+        String key = method + ' ' + mapping + ' ' + action;
+        EndpointStats stats = endpoints.get(key);
+        if (stats == null) {
+            stats = endpoints.size() < MAX_ENDPOINTS
+                    ? endpoints.computeIfAbsent(key, k -> new EndpointStats(method, mapping, action))
+                    : endpoints.computeIfAbsent(OVERFLOW_KEY, k -> new EndpointStats(OVERFLOW_KEY, OVERFLOW_KEY, ""));
+        }
+        stats.requests.increment();
+        if (error) {
+            stats.errors.increment();
+        }
+        stats.latency.recordSince(startNanos);
+    }
+
+    /**
+     * Таймер метода репозитория, закрывается в finally:
+     * LatencyMetrics.Timer timer = LatencyMetrics.repository("OrderRepository.findById");
+     * try (Session session = ...) { ... } finally { timer.close(); }
+     */
+    public static Timer repository(String method) {
+        LatencyHistogram histogram = INSTANCE.repositoryCalls.get(method);
+        if (histogram == null) {
+            histogram = INSTANCE.repositoryCalls.computeIfAbsent(method, m -> new LatencyHistogram());
+        }
+        return new Timer(histogram);
+    }
+
+    /**
+     * Все метрики в текстовом формате Prometheus 0.0.4
+     */
+    public void writePrometheus(PrintWriter out) {
+        writeEndpoints(out);
+        writeRepositories(out);
+        writePool(out);
+        writeOrderStatuses(out);
+    }
+
+    private void writeEndpoints(PrintWriter out) {
+        Map<String, EndpointStats> sorted = new TreeMap<>(endpoints);
+
+        out.println("# HELP taxi_http_requests_total Количество HTTP-запросов");
+        out.println("# TYPE taxi_http_requests_total counter");
+        for (EndpointStats stats : sorted.values()) {
+            out.println("taxi_http_requests_total" + stats.labels + ' ' + stats.requests.sum());
+        }
+
+        out.println("# HELP taxi_http_request_errors_total HTTP-запросы с ответом 5xx или исключением");
+        out.println("# TYPE taxi_http_request_errors_total counter");
+        for (EndpointStats stats : sorted.values()) {
+            out.println("taxi_http_request_errors_total" + stats.labels + ' ' + stats.errors.sum());
+        }
+
+        out.println("# HELP taxi_http_request_duration_seconds Время обработки запроса (квантили за 1-2 минуты)");
+        out.println("# TYPE taxi_http_request_duration_seconds summary");
+        for (EndpointStats stats : sorted.values()) {
+            writeSummary(out, "taxi_http_request_duration_seconds", stats.labelBody, stats.latency);
+        }
+    }
+
+    private void writeRepositories(PrintWriter out) {
+        out.println("# HELP taxi_repository_call_duration_seconds Время выполнения метода репозитория");
+        out.println("# TYPE taxi_repository_call_duration_seconds summary");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(repositoryCalls).entrySet()) {
+            String name = entry.getKey();
+            int dot = name.indexOf('.');
+            String labels = dot > 0
+                    ? "repository=\"" + escape(name.substring(0, dot)) + "\",method=\"" + escape(name.substring(dot + 1)) + '"'
+                    : "method=\"" + escape(name) + '"';
+            writeSummary(out, "taxi_repository_call_duration_seconds", labels, entry.getValue());
+        }
+    }
+
+    private void writePool(PrintWriter out) {
+        ConnectionPoolMetrics.Snapshot pool;
+        try {
+            pool = HibernateUtil.getPoolMetrics();
+        } catch (Throwable e) {
+            return;
+        }
+        if (pool == null) {
+            return;
+        }
+        gauge(out, "taxi_db_pool_active_connections", "Соединения, выданные потокам", pool.active);
+        gauge(out, "taxi_db_pool_idle_connections", "Свободные соединения в пуле", pool.idle);
+        gauge(out, "taxi_db_pool_pending_threads", "Потоки, ждущие соединения", pool.pending);
+        gauge(out, "taxi_db_pool_max_connections", "Максимальный размер пула", pool.max);
+        out.println("# HELP taxi_db_pool_timeouts_total Таймауты ожидания соединения");
+        out.println("# TYPE taxi_db_pool_timeouts_total counter");
+        out.println("taxi_db_pool_timeouts_total " + pool.timeouts);
+    }
+
+    private void writeOrderStatuses(PrintWriter out) {
+        Map<String, Long> counts;
+        try {
+            counts = new TreeMap<>(DashboardMetrics.getInstance().getStatusCounts());
+        } catch (Throwable e) {
+            return;
+        }
+        out.println("# HELP taxi_orders Заказы по статусам");
+        out.println("# TYPE taxi_orders gauge");
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            out.println("taxi_orders{status=\"" + escape(entry.getKey()) + "\"} " + entry.getValue());
+        }
+    }
+
+    private static void writeSummary(PrintWriter out, String name, String labels, LatencyHistogram histogram) {
+        double[] values = histogram.quantileSeconds(QUANTILES);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            out.println(name + '{' + labels + ",quantile=\"" + QUANTILE_LABELS[i] + "\"} " + format(values[i]));
+        }
+        out.println(name + "_sum{" + labels + "} " + format(histogram.getSumSeconds()));
+        out.println(name + "_count{" + labels + "} " + histogram.getCount());
+    }
+
+    private static void gauge(PrintWriter out, String name, String help, long value) {
+        out.println("# HELP " + name + ' ' + help);
+        out.println("# TYPE " + name + " gauge");
+        out.println(name + ' ' + value);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Счетчики одного HTTP-эндпоинта
+     */
+    private static class EndpointStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final String labelBody;
+        final String labels;
+
+        EndpointStats(String method, String mapping, String action) {
+            this.labelBody = "method=\"" + escape(method) + "\",endpoint=\"" + escape(mapping)
+                    + "\",action=\"" + escape(action) + '"';
+            this.labels = '{' + labelBody + '}';
+        }
+    }
+
+    /**
+     * Замер одного вызова; закрытие записывает длительность
+     */
+    public static final class Timer implements AutoCloseable {
+        private final LatencyHistogram histogram;
+        private final long startNanos = System.nanoTime();
+
+        private Timer(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void close() {
+            histogram.recordSince(startNanos);
+        }
+    }
+}
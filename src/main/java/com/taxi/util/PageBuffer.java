@@ -0,0 +1,236 @@
+package com.taxi.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Буфер страницы в UTF-8. Неизменные куски разметки кодируются один раз (Fragment),
+ * текст пишется в байты напрямую, без промежуточных String. Буферы переиспользуются
+ * между запросами: acquire() в начале, close() в конце.
+ *
+ * Пул общий и ограниченный, а не по потоку: при taxi.http.threads=virtual поток живет
+ * один запрос, и буфер потока не переиспользовался бы. Если пул пуст (много страниц
+ * собирается одновременно), создается новый буфер; лишние при возврате отбрасываются
+ */
+public final class PageBuffer implements AutoCloseable {
+
+    private static final int INITIAL_CAPACITY = 32 * 1024;
+    // Сколько свободных буферов держать: страница берет два (контент и каркас),
+    // и держит их, пока сервлет читает БД
+    private static final int POOL_SIZE = 64;
+    // Буфер, раздутый огромной страницей, в пул не возвращаем
+    private static final int MAX_POOLED_CAPACITY = 256 * 1024;
+
+    private static final ArrayBlockingQueue<PageBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length;
+    private boolean inUse;
+
+    private PageBuffer() {
+    }
+
+    /**
+     * Свободный буфер из пула или новый
+     */
+    public static PageBuffer acquire() {
+        PageBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            buffer = new PageBuffer();
+        }
+        buffer.inUse = true;
+        buffer.length = 0;
+        return buffer;
+    }
+
+    @Override
+    public void close() {
+        if (!inUse) {
+            return;
+        }
+        inUse = false;
+        length = 0;
+        if (bytes.length <= MAX_POOLED_CAPACITY) {
+            POOL.offer(this);
+        }
+    }
+
+    public PageBuffer append(Fragment fragment) {
+        ensure(fragment.bytes.length);
+        System.arraycopy(fragment.bytes, 0, bytes, length, fragment.bytes.length);
+        length += fragment.bytes.length;
+        return this;
+    }
+
+    /**
+     * Содержимое другого буфера (контент страницы внутри каркаса)
+     */
+    public PageBuffer append(PageBuffer other) {
+        ensure(other.length);
+        System.arraycopy(other.bytes, 0, bytes, length, other.length);
+        length += other.length;
+        return this;
+    }
+
+    /**
+     * Готовая разметка как есть
+     */
+    public PageBuffer appendRaw(CharSequence html) {
+        if (html == null) {
+            return this;
+        }
+        int count = html.length();
+        // Символ BMP - не больше 3 байт, суррогатная пара (2 символа) - 4
+        ensure(count * 3);
+        for (int i = 0; i < count; i++) {
+            char c = html.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else {
+                i = encode(html, i, c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Текст с экранированием &amp; &lt; &gt; и кавычек - для значений из БД и от пользователя
+     */
+    public PageBuffer appendEscaped(CharSequence text) {
+        if (text == null) {
+            return this;
+        }
+        int count = text.length();
+        ensure(count * 6); // самая длинная замена - &quot;
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': ascii("&amp;"); break;
+                case '<': ascii("&lt;"); break;
+                case '>': ascii("&gt;"); break;
+                case '"': ascii("&quot;"); break;
+                case '\'': ascii("&#39;"); break;
+                default:
+                    if (c < 0x80) {
+                        bytes[length++] = (byte) c;
+                    } else {
+                        i = encode(text, i, c);
+                    }
+            }
+        }
+        return this;
+    }
+
+    public PageBuffer append(long value) {
+        ensure(20);
+        if (value == Long.MIN_VALUE) {
+            ascii(Long.toString(value));
+            return this;
+        }
+        if (value < 0) {
+            bytes[length++] = '-';
+            value = -value;
+        }
+        int start = length;
+        do {
+            bytes[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // Цифры записаны задом наперед
+        for (int left = start, right = length - 1; left < right; left++, right--) {
+            byte swap = bytes[left];
+            bytes[left] = bytes[right];
+            bytes[right] = swap;
+        }
+        return this;
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Многобайтный символ; возвращает индекс последнего прочитанного char
+     */
+    private int encode(CharSequence text, int index, char c) {
+        if (c < 0x800) {
+            bytes[length++] = (byte) (0xC0 | (c >> 6));
+            bytes[length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(++index));
+            bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            bytes[length++] = '?'; // одиночная половина пары, как у стандартного кодировщика
+        } else {
+            bytes[length++] = (byte) (0xE0 | (c >> 12));
+            bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return index;
+    }
+
+    private void ascii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            bytes[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+    }
+
+    /**
+     * Неизменный кусок разметки, закодированный в UTF-8 при создании
+     */
+    public static final class Fragment {
+        private final byte[] bytes;
+
+        private Fragment(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public static Fragment of(String html) {
+            return new Fragment(html.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Шаблон, разрезанный по меткам {} на куски: между ними подставляются значения
+         */
+        public static Fragment[] split(String html) {
+            return split(html, "{}");
+        }
+
+        public static Fragment[] split(String html, String slot) {
+            String[] parts = html.split(Pattern.quote(slot), -1);
+            Fragment[] fragments = new Fragment[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                fragments[i] = of(parts[i]);
+            }
+            return fragments;
+        }
+
+        public int size() {
+            return bytes.length;
+        }
+    }
+}
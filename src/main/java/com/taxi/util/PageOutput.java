@@ -0,0 +1,105 @@
+package com.taxi.util;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * PrintWriter ответа, который не открывает response.getWriter() до первой записи.
+ * Пока в него ничего не писали, HtmlUtil.renderFullPage отдает страницу байтами
+ * прямо в ServletOutputStream (см. PageBuffer); остальной код работает с ним как с обычным writer
+ */
+public final class PageOutput extends PrintWriter {
+
+    private final HttpServletResponse response;
+    private final LazyWriter target;
+
+    public PageOutput(HttpServletResponse response) {
+        this(response, new LazyWriter(response));
+    }
+
+    private PageOutput(HttpServletResponse response, LazyWriter target) {
+        super(target);
+        this.response = response;
+        this.target = target;
+    }
+
+    /**
+     * В ответ еще ничего не записано - можно писать байтами
+     */
+    boolean isUnused() {
+        return target.delegate == null && target.stream == null;
+    }
+
+    /**
+     * Записывает собранную страницу. Если потом в ответ допишут текст (ошибка после
+     * отрисовки), он пойдет в тот же поток байтов
+     */
+    void writePage(PageBuffer page) {
+        try {
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            target.stream = response.getOutputStream();
+            page.writeTo(target.stream);
+        } catch (IOException e) {
+            // Как и обычный PrintWriter: ошибку записи (клиент ушел) не бросаем, а запоминаем
+            setError();
+        }
+    }
+
+    private static class LazyWriter extends Writer {
+        private final HttpServletResponse response;
+        private Writer delegate;
+        private OutputStream stream;
+
+        LazyWriter(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        private Writer delegate() throws IOException {
+            if (delegate == null) {
+                delegate = response.getWriter();
+            }
+            return delegate;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int count) throws IOException {
+            if (stream != null) {
+                stream.write(new String(buffer, offset, count).getBytes(StandardCharsets.UTF_8));
+            } else {
+                delegate().write(buffer, offset, count);
+            }
+        }
+
+        @Override
+        public void write(String value, int offset, int count) throws IOException {
+            if (stream != null) {
+                stream.write(value.substring(offset, offset + count).getBytes(StandardCharsets.UTF_8));
+            } else {
+                delegate().write(value, offset, count);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (stream != null) {
+                stream.flush();
+            } else if (delegate != null) {
+                delegate.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (stream != null) {
+                stream.close();
+            } else if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.taxi.util;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Пул соединений HikariCP для Hibernate (вместо встроенного пула hibernate.connection.pool_size).
+ *
+ * Параметры пула задаются в hibernate.cfg.xml (taxi.pool.*) и могут быть
+ * переопределены системными свойствами JVM с тем же именем, например
+ * -Dtaxi.pool.max_size=30
+ */
+public class PooledConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+    private static final Logger log = LoggerFactory.getLogger(PooledConnectionProvider.class);
+
+    public static final String MIN_IDLE = "taxi.pool.min_idle";
+    public static final String MAX_SIZE = "taxi.pool.max_size";
+    public static final String IDLE_TIMEOUT_MS = "taxi.pool.idle_timeout_ms";
+    public static final String MAX_LIFETIME_MS = "taxi.pool.max_lifetime_ms";
+    public static final String CONNECTION_TIMEOUT_MS = "taxi.pool.connection_timeout_ms";
+    public static final String LEAK_DETECTION_MS = "taxi.pool.leak_detection_ms";
+
+    private final ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+    private HikariDataSource dataSource;
+
+    @Override
+    public void configure(Map<String, Object> settings) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("taxi-pool");
+        config.setJdbcUrl(setting(settings, "hibernate.connection.url", null));
+        config.setUsername(setting(settings, "hibernate.connection.username", null));
+        config.setPassword(setting(settings, "hibernate.connection.password", null));
+
+        String driverClass = setting(settings, "hibernate.connection.driver_class", null);
+        if (driverClass != null) {
+            config.setDriverClassName(driverClass);
+        }
+
+        // Hibernate сам управляет транзакциями
+        config.setAutoCommit(false);
+
+        config.setMinimumIdle(Integer.parseInt(setting(settings, MIN_IDLE, "2")));
+        config.setMaximumPoolSize(Integer.parseInt(setting(settings, MAX_SIZE, "10")));
+        config.setIdleTimeout(Long.parseLong(setting(settings, IDLE_TIMEOUT_MS, "600000")));
+        config.setMaxLifetime(Long.parseLong(setting(settings, MAX_LIFETIME_MS, "1800000")));
+        config.setConnectionTimeout(Long.parseLong(setting(settings, CONNECTION_TIMEOUT_MS, "30000")));
+        config.setLeakDetectionThreshold(Long.parseLong(setting(settings, LEAK_DETECTION_MS, "0")));
+
+        config.setMetricsTrackerFactory(metrics);
+
+        dataSource = new HikariDataSource(config);
+
+        log.info(" Пул соединений запущен: min_idle={}, max_size={}, leak_detection={} мс",
+                config.getMinimumIdle(), config.getMaximumPoolSize(), config.getLeakDetectionThreshold());
+    }
+
+    private static String setting(Map<String, Object> settings, String name, String defaultValue) {
+        String override = System.getProperty(name);
+        if (override != null) {
+            return override;
+        }
+        Object value = settings.get(name);
+        return value != null ? value.toString() : defaultValue;
+    }
+
+    /**
+     * Снимок состояния пула для страницы /health
+     */
+    public ConnectionPoolMetrics.Snapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Сам пул - для тех, кому нужен JDBC без Hibernate (хранилище HTTP-сессий).
+     * Соединения выдаются с autoCommit=false
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return unwrapType.isAssignableFrom(PooledConnectionProvider.class)
+                || unwrapType.isAssignableFrom(HikariDataSource.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (unwrapType.isAssignableFrom(PooledConnectionProvider.class)) {
+            return (T) this;
+        }
+        if (unwrapType.isAssignableFrom(HikariDataSource.class) || DataSource.class.equals(unwrapType)) {
+            return (T) dataSource;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    @Override
+    public void stop() {
+        if (dataSource != null) {
+            dataSource.close();
+            log.info(" Пул соединений остановлен");
+        }
+    }
+}
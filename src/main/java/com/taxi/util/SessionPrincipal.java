@@ -0,0 +1,68 @@
+package com.taxi.util;
+
+import com.taxi.entity.User;
+
+import java.io.Serializable;
+
+/**
+ * Кто вошел в систему - то, что хранится в HTTP-сессии вместо сущности User.
+ * Только идентификатор, логин, роль и имя для шапки: без пароля и без связей Hibernate,
+ * поэтому сессия сериализуется в несколько сотен байт и читается на любом узле
+ */
+public final class SessionPrincipal implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String ATTRIBUTE = "user";
+
+    private final Long id;
+    private final String login;
+    private final String userType;
+    private final String fullName;
+
+    private SessionPrincipal(Long id, String login, String userType, String fullName) {
+        this.id = id;
+        this.login = login;
+        this.userType = userType;
+        this.fullName = fullName;
+    }
+
+    public static SessionPrincipal of(User user) {
+        return new SessionPrincipal(user.getId(), user.getLogin(), user.getUserType(), user.getFullName());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getUserType() {
+        return userType;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    /**
+     * Отсоединенный User для кода, который работает с сущностью: проверки прав, шапка,
+     * ссылка на оператора/механика в новых записях (Hibernate нужен только id).
+     * Пароля и кода доступа в нем нет; активным считается, пока сессия жива
+     */
+    public User toUser() {
+        User user = new User();
+        user.setId(id);
+        user.setLogin(login);
+        user.setUserType(userType);
+        user.setFullName(fullName);
+        user.setIsActive(true);
+        return user;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionPrincipal{id=" + id + ", login='" + login + "', userType='" + userType + "'}";
+    }
+}
@@ -0,0 +1,67 @@
+package com.taxi.util;
+
+import org.hibernate.stat.Statistics;
+
+import java.util.function.Supplier;
+
+/**
+ * Подсчет SQL-запросов, выполненных за время вызова, по статистике Hibernate.
+ * Статистика общая для всей фабрики сессий, поэтому точный результат получается,
+ * только когда параллельно не идут другие запросы (проверка планов загрузки, диагностика)
+ */
+public final class SqlStatementCounter {
+
+    private SqlStatementCounter() {
+    }
+
+    /**
+     * Выполняет вызов и возвращает его результат вместе с количеством запросов
+     */
+    public static <T> Measurement<T> measure(Supplier<T> call) {
+        Statistics statistics = HibernateUtil.getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+        long entityLoadsBefore = statistics.getEntityLoadCount();
+
+        T result = call.get();
+
+        return new Measurement<>(result,
+                statistics.getPrepareStatementCount() - statementsBefore,
+                statistics.getEntityLoadCount() - entityLoadsBefore);
+    }
+
+    /**
+     * Выполняет вызов и проверяет, что он уложился в заданное количество запросов
+     */
+    public static <T> T expectAtMost(long maxStatements, String description, Supplier<T> call) {
+        Measurement<T> measurement = measure(call);
+        if (measurement.getStatements() > maxStatements) {
+            throw new IllegalStateException(description + ": выполнено SQL-запросов " +
+                    measurement.getStatements() + ", ожидалось не больше " + maxStatements);
+        }
+        return measurement.getResult();
+    }
+
+    /**
+     * Результат вызова и счетчики запросов
+     */
+    public static class Measurement<T> {
+        private final T result;
+        private final long statements;
+        private final long entityLoads;
+
+        public Measurement(T result, long statements, long entityLoads) {
+            this.result = result;
+            this.statements = statements;
+            this.entityLoads = entityLoads;
+        }
+
+        public T getResult() { return result; }
+        public long getStatements() { return statements; }
+        public long getEntityLoads() { return entityLoads; }
+
+        @Override
+        public String toString() {
+            return "SQL-запросов: " + statements + ", загружено сущностей: " + entityLoads;
+        }
+    }
+}
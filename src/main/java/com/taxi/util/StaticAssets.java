@@ -0,0 +1,189 @@
+package com.taxi.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Статические CSS/JS из classpath (каталог static/). Каждый файл читается один раз:
+ * считается отпечаток содержимого для адреса вида /css/common.3f9a1c02b7de.css
+ * и заранее готовится сжатая gzip-версия. Brotli в JDK нет, поэтому br-версия
+ * берется только готовой - файлом common.css.br рядом с исходным
+ */
+public final class StaticAssets {
+    private static final Logger log = LoggerFactory.getLogger(StaticAssets.class);
+
+    private static final String ROOT = "static";
+    private static final int FINGERPRINT_LENGTH = 12;
+    private static final Pattern FINGERPRINTED = Pattern.compile("^(.+)\\.([0-9a-f]{" + FINGERPRINT_LENGTH + "})(\\.[a-z0-9]+)$");
+
+    private static final StaticAssets INSTANCE = new StaticAssets();
+
+    // Только найденные файлы: путь запроса приходит от клиента, и запоминание промахов
+    // позволило бы анонимным запросам к несуществующим адресам раздувать карту без предела
+    private final ConcurrentHashMap<String, Asset> assets = new ConcurrentHashMap<>();
+
+    private StaticAssets() {
+    }
+
+    public static StaticAssets getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Адрес файла с отпечатком для ссылок в HTML: "/css/common.css" -> "/css/common.3f9a1c02b7de.css".
+     * Если файла нет - исходный путь
+     */
+    public static String url(String path) {
+        Asset asset = INSTANCE.get(path);
+        return asset != null ? asset.fingerprintedPath : path;
+    }
+
+    /**
+     * Содержимое файла как текст (пустая строка, если файла нет)
+     */
+    public String text(String path) {
+        Asset asset = get(path);
+        return asset != null ? new String(asset.identity, StandardCharsets.UTF_8) : "";
+    }
+
+    /**
+     * Поиск по пути запроса - с отпечатком или без. Устаревший отпечаток (страница
+     * из кэша браузера после обновления) отдает текущую версию, но без долгого кэширования
+     */
+    public Lookup lookup(String requestPath) {
+        Matcher matcher = FINGERPRINTED.matcher(requestPath);
+        if (matcher.matches()) {
+            Asset asset = get(matcher.group(1) + matcher.group(3));
+            if (asset != null) {
+                return new Lookup(asset, asset.fingerprint.equals(matcher.group(2)));
+            }
+        }
+        Asset asset = get(requestPath);
+        return asset != null ? new Lookup(asset, false) : null;
+    }
+
+    private Asset get(String path) {
+        if (path == null || !path.startsWith("/") || path.contains("..")) {
+            return null;
+        }
+        // null из load не попадает в карту
+        return assets.computeIfAbsent(path, StaticAssets::load);
+    }
+
+    private static Asset load(String path) {
+        try {
+            byte[] identity = read(ROOT + path);
+            if (identity == null) {
+                return null;
+            }
+            byte[] brotli = read(ROOT + path + ".br");
+            Asset asset = new Asset(path, identity, gzip(identity), brotli);
+            if (log.isDebugEnabled()) {
+                // gzip нет у файлов, которые он не уменьшает (png, ico, совсем маленькие)
+                log.debug("Статический файл {}: {} байт, gzip {}, br {}", asset.fingerprintedPath, identity.length,
+                        asset.gzip != null ? asset.gzip.length + " байт" : "нет",
+                        brotli != null ? brotli.length + " байт" : "нет");
+            }
+            return asset;
+        } catch (IOException e) {
+            log.error("Ошибка чтения статического файла {}", path, e);
+            return null;
+        }
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        try (InputStream in = StaticAssets.class.getClassLoader().getResourceAsStream(resource)) {
+            return in != null ? in.readAllBytes() : null;
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 3 + 64);
+        // Сжимаем один раз при загрузке, поэтому можно взять максимальную степень
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(data);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Файл и его заранее подготовленные представления
+     */
+    public static final class Asset {
+        public final String path;
+        public final String fingerprint;
+        public final String fingerprintedPath;
+        public final String contentType;
+        public final byte[] identity;
+        public final byte[] gzip;
+        public final byte[] brotli;
+
+        private Asset(String path, byte[] identity, byte[] gzip, byte[] brotli) {
+            this.path = path;
+            this.fingerprint = sha256(identity).substring(0, FINGERPRINT_LENGTH);
+            int dot = path.lastIndexOf('.');
+            this.fingerprintedPath = dot > path.lastIndexOf('/')
+                    ? path.substring(0, dot) + '.' + fingerprint + path.substring(dot)
+                    : path + '.' + fingerprint;
+            this.contentType = contentType(path);
+            this.identity = identity;
+            // gzip, который не меньше исходника, не отдаем
+            this.gzip = gzip.length < identity.length ? gzip : null;
+            this.brotli = brotli;
+        }
+
+        /**
+         * Сильный ETag представления: у каждого кодирования свой, как требует RFC 9110
+         */
+        public String etag(String encoding) {
+            return encoding == null ? '"' + fingerprint + '"' : '"' + fingerprint + '-' + encoding + '"';
+        }
+
+        private static String contentType(String path) {
+            if (path.endsWith(".css")) return "text/css; charset=UTF-8";
+            if (path.endsWith(".js")) return "application/javascript; charset=UTF-8";
+            if (path.endsWith(".svg")) return "image/svg+xml";
+            if (path.endsWith(".png")) return "image/png";
+            if (path.endsWith(".ico")) return "image/x-icon";
+            return "application/octet-stream";
+        }
+    }
+
+    /**
+     * Результат поиска: файл и совпал ли отпечаток в адресе (тогда ответ можно кэшировать навсегда)
+     */
+    public static final class Lookup {
+        public final Asset asset;
+        public final boolean immutable;
+
+        private Lookup(Asset asset, boolean immutable) {
+            this.asset = asset;
+            this.immutable = immutable;
+        }
+    }
+}
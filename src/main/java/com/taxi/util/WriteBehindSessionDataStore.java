@@ -0,0 +1,130 @@
+package com.taxi.util;
+
+import org.eclipse.jetty.server.session.AbstractSessionDataStore;
+import org.eclipse.jetty.server.session.SessionContext;
+import org.eclipse.jetty.server.session.SessionData;
+import org.eclipse.jetty.server.session.SessionDataStore;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отложенная запись сессий поверх общего хранилища (JDBCSessionDataStore).
+ *
+ * Изменение атрибутов (вход, смена роли) и первая запись новой сессии уходят в БД сразу,
+ * в потоке запроса: следующий запрос может прийти на другой узел. Остальное - это только
+ * обновление времени последнего обращения; его хранилище и так пишет не чаще раза
+ * в savePeriod, а здесь и эта запись уходит из потока запроса в фоновый поток.
+ * Несколько обращений к одной сессии до сброса дают одну запись
+ */
+public class WriteBehindSessionDataStore extends ContainerLifeCycle implements SessionDataStore {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindSessionDataStore.class);
+
+    private final AbstractSessionDataStore delegate;
+    private final long flushIntervalMs;
+    // Сессии, ждущие записи; значение - живой объект из кэша, поэтому пишется самое свежее состояние
+    private final ConcurrentHashMap<String, SessionData> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    public WriteBehindSessionDataStore(AbstractSessionDataStore delegate, long flushIntervalMs) {
+        this.delegate = delegate;
+        this.flushIntervalMs = flushIntervalMs;
+        addBean(delegate, true);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        // Остаток дописываем до остановки JDBC-хранилища
+        flush();
+        super.doStop();
+    }
+
+    @Override
+    public void initialize(SessionContext context) throws Exception {
+        delegate.initialize(context);
+    }
+
+    @Override
+    public SessionData newSessionData(String id, long created, long accessed, long lastAccessed, long maxInactiveMs) {
+        return delegate.newSessionData(id, created, accessed, lastAccessed, maxInactiveMs);
+    }
+
+    @Override
+    public SessionData load(String id) throws Exception {
+        SessionData waiting = pending.get(id);
+        return waiting != null ? waiting : delegate.load(id);
+    }
+
+    @Override
+    public void store(String id, SessionData data) throws Exception {
+        if (data.isDirty() || data.isMetaDataDirty() || data.getLastSaved() <= 0) {
+            pending.remove(id);
+            delegate.store(id, data);
+        } else if (isSaveDue(data)) {
+            pending.put(id, data);
+        }
+    }
+
+    @Override
+    public boolean delete(String id) throws Exception {
+        // Ждет, если эту сессию сейчас пишет фоновый поток (см. flush), иначе запись воскресила бы строку
+        pending.remove(id);
+        return delegate.delete(id);
+    }
+
+    @Override
+    public boolean exists(String id) throws Exception {
+        return pending.containsKey(id) || delegate.exists(id);
+    }
+
+    @Override
+    public Set<String> getExpired(Set<String> candidates) {
+        return delegate.getExpired(candidates);
+    }
+
+    @Override
+    public boolean isPassivating() {
+        return delegate.isPassivating();
+    }
+
+    /**
+     * Пора ли обновить время обращения в БД - то же правило, что у самого хранилища
+     */
+    private boolean isSaveDue(SessionData data) {
+        long savePeriodMs = TimeUnit.SECONDS.toMillis(Math.max(0, delegate.getSavePeriodSec()));
+        return data.getAccessed() - data.getLastSaved() >= savePeriodMs;
+    }
+
+    private void flush() {
+        for (String id : pending.keySet()) {
+            // Запись под блокировкой ключа: параллельный delete дождется ее окончания
+            pending.computeIfPresent(id, (key, data) -> {
+                try {
+                    delegate.store(key, data);
+                } catch (Exception e) {
+                    log.warn("Не удалось сохранить сессию {}: {}", key, e.getMessage());
+                }
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,115 @@
+// Панель диспетчера: живое обновление таблицы активных заказов и счетчиков за сегодня.
+// Страница приходит целиком один раз, дальше сервер присылает только изменения (/dispatcher/events).
+(function () {
+    var table = document.getElementById('active-orders');
+    if (!table || !window.EventSource) {
+        return;
+    }
+
+    var statuses = JSON.parse(table.dataset.statuses);
+    // Новые заказы вставляем только на первую страницу - на остальных они были бы не на своем месте
+    var firstPage = table.dataset.firstPage === 'true';
+
+    var source = new EventSource('/dispatcher/events?since=' + table.dataset.seq);
+
+    source.addEventListener('order', function (event) {
+        var order = JSON.parse(event.data);
+        var row = table.querySelector("tr[data-order-id='" + order.id + "']");
+
+        if (!order.active) {
+            if (row) {
+                row.remove();
+                showEmptyRowIfNeeded();
+            }
+            return;
+        }
+        if (row) {
+            fillRow(row, order);
+        } else if (firstPage) {
+            row = document.createElement('tr');
+            row.dataset.orderId = order.id;
+            fillRow(row, order);
+            var empty = table.querySelector('tr.empty-row');
+            if (empty) {
+                empty.remove();
+            }
+            table.insertBefore(row, table.firstChild);
+        }
+    });
+
+    source.addEventListener('counters', function (event) {
+        var counters = JSON.parse(event.data);
+        setText('stat-today-orders', counters.todayOrders);
+        setText('stat-completed-today', counters.completedToday);
+        setText('stat-today-revenue', Number(counters.todayRevenue) + ' руб.');
+    });
+
+    // Пропущено слишком много изменений - проще взять страницу заново
+    source.addEventListener('resync', function () {
+        source.close();
+        window.location.reload();
+    });
+
+    function fillRow(row, order) {
+        var badge = statuses[order.status] || ['status-default', order.status];
+        row.innerHTML = '';
+        row.appendChild(cell(order.id));
+        row.appendChild(cell(order.customer || 'Не указано'));
+        row.appendChild(cell(order.pickup || 'Не указано'));
+        row.appendChild(cell(order.driver || 'Не назначен'));
+
+        var status = document.createElement('td');
+        var span = document.createElement('span');
+        span.className = 'status-badge ' + badge[0];
+        span.textContent = badge[1];
+        status.appendChild(span);
+        row.appendChild(status);
+
+        var actions = document.createElement('td');
+        actions.appendChild(link('/orders?action=edit&id=' + order.id, 'btn', 'Изменить', true));
+        actions.appendChild(link('/orders?action=complete&id=' + order.id, 'btn btn-secondary', 'Завершить', true));
+        actions.appendChild(link('/orders?action=cancel&id=' + order.id, 'btn btn-danger', 'Отменить', false));
+        row.appendChild(actions);
+    }
+
+    function cell(text) {
+        var td = document.createElement('td');
+        td.textContent = text;
+        return td;
+    }
+
+    function link(href, className, text, gap) {
+        var a = document.createElement('a');
+        a.href = href;
+        a.className = className;
+        a.textContent = text;
+        a.style.padding = '5px 10px';
+        a.style.fontSize = '12px';
+        if (gap) {
+            a.style.marginRight = '5px';
+        }
+        return a;
+    }
+
+    function showEmptyRowIfNeeded() {
+        if (table.querySelector('tr[data-order-id]')) {
+            return;
+        }
+        var row = document.createElement('tr');
+        row.className = 'empty-row';
+        var td = document.createElement('td');
+        td.colSpan = 6;
+        td.style.textAlign = 'center';
+        td.style.color = '#888';
+        td.textContent = 'Нет активных заказов';
+        row.appendChild(td);
+        table.appendChild(row);
+    }
+
+    function setText(id, value) {
+        var element = document.getElementById(id);
+        if (element) {
+            element.textContent = value;
+        }
+    }
+})();
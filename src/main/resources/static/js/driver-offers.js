@@ -0,0 +1,103 @@
+// Панель водителя: предложения заказов без перезагрузки страницы.
+// Запрос к /driver-panel/offers висит на сервере, пока предложение не сменится (long-poll),
+// ответ 204 значит "ничего нового" - спрашиваем снова.
+(function () {
+    var card = document.getElementById('order-offer');
+    if (!card || !window.fetch) {
+        return;
+    }
+
+    var message = document.getElementById('offer-message');
+    var countdown = document.getElementById('offer-countdown');
+    var current = null;
+    var expiresAt = 0;
+    var timer = null;
+
+    document.getElementById('offer-accept').addEventListener('click', function () {
+        answer('accept');
+    });
+    document.getElementById('offer-decline').addEventListener('click', function () {
+        answer('decline');
+    });
+
+    poll();
+
+    function poll() {
+        fetch('/driver-panel/offers?current=' + (current ? current.id : 0), {credentials: 'same-origin'})
+            .then(function (response) {
+                if (response.status === 204) {
+                    return undefined;
+                }
+                if (!response.ok) {
+                    throw new Error('HTTP ' + response.status);
+                }
+                return response.json();
+            })
+            .then(function (data) {
+                if (data !== undefined) {
+                    show(data.offer);
+                }
+                poll();
+            })
+            .catch(function () {
+                // Сеть или сервер недоступны - пробуем позже
+                setTimeout(poll, 5000);
+            });
+    }
+
+    function show(offer) {
+        current = offer;
+        clearInterval(timer);
+        if (!offer) {
+            card.style.display = 'none';
+            return;
+        }
+        setText('offer-pickup', offer.pickup || 'Не указано');
+        setText('offer-destination', offer.destination || 'Не указано');
+        setText('offer-distance', offer.distanceKm !== null ? 'Подача: ' + offer.distanceKm + ' км' : '');
+        setText('offer-note', offer.note || '');
+        setText('offer-message', '');
+        expiresAt = Date.now() + offer.expiresInMs;
+        tick();
+        timer = setInterval(tick, 1000);
+        card.style.display = '';
+    }
+
+    function tick() {
+        var seconds = Math.max(0, Math.ceil((expiresAt - Date.now()) / 1000));
+        countdown.textContent = seconds + ' с';
+        if (seconds === 0) {
+            clearInterval(timer); // сервер сам передаст заказ дальше и сообщит об этом
+        }
+    }
+
+    function answer(action) {
+        if (!current) {
+            return;
+        }
+        var body = new URLSearchParams();
+        body.append('action', action);
+        body.append('id', current.id);
+        fetch('/driver-panel/offers', {method: 'POST', body: body, credentials: 'same-origin'})
+            .then(function (response) {
+                return response.json();
+            })
+            .then(function (result) {
+                message.textContent = result.message;
+                if (result.ok && action === 'accept') {
+                    // Заказ назначен - панель со списком заказов нужно перечитать
+                    window.location.reload();
+                }
+            })
+            .catch(function () {
+                message.textContent = 'Не удалось отправить ответ, попробуйте еще раз';
+            });
+    }
+
+    function setText(id, value) {
+        var element = document.getElementById(id);
+        if (element) {
+            element.textContent = value;
+        }
+    }
+})();
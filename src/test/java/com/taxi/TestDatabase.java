@@ -0,0 +1,58 @@
+package com.taxi;
+
+import com.taxi.util.HibernateUtil;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.util.function.Function;
+
+/**
+ * Встроенная БД для тестов: H2 в режиме совместимости с PostgreSQL, схема создается заново
+ * при старте. Подключение задается системными свойствами hibernate.* до первого обращения
+ * к HibernateUtil, так что hibernate.cfg.xml и настоящая taxi_db не затрагиваются.
+ *
+ * Все тестовые классы одного прогона работают с одной БД, поэтому проверки опираются
+ * на собственные данные теста, а не на общее число строк
+ */
+public final class TestDatabase {
+
+    private static final String URL = "jdbc:h2:mem:taxi_test;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+            + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+
+    static {
+        System.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        System.setProperty("hibernate.connection.url", URL);
+        System.setProperty("hibernate.connection.username", "sa");
+        System.setProperty("hibernate.connection.password", "");
+        System.setProperty("hibernate.hbm2ddl.auto", "create");
+        System.setProperty("taxi.pool.leak_detection_ms", "0");
+    }
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Подключиться к тестовой БД; вызывать до любого обращения к репозиториям и сервисам
+     */
+    public static void init() {
+        HibernateUtil.getSessionFactory();
+    }
+
+    /**
+     * Выполнить работу в отдельной сессии и транзакции (подготовка данных в обход репозиториев)
+     */
+    public static <T> T inTransaction(Function<Session, T> work) {
+        init();
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            try {
+                T result = work.apply(session);
+                tx.commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                throw e;
+            }
+        }
+    }
+}
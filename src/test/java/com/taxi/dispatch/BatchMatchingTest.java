@@ -0,0 +1,84 @@
+package com.taxi.dispatch;
+
+import com.taxi.entity.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Пакетное назначение без БД: пакет заказов "на выходе со стадиона" (все точки подачи
+ * в радиусе 1.5 км) среди водителей, разбросанных по городу
+ */
+class BatchMatchingTest {
+
+    private static final double CENTER_LAT = 55.75;
+    private static final double CENTER_LON = 37.62;
+    private static final int DRIVERS = 2_000;
+    private static final int ORDERS = 150;
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void optimalMatchingAssignsEveryOrderToDistinctDrivers() {
+        Map<Order, DispatchEngine.ScoredCandidate> optimal = createEngine().matchOptimal(createBatch(), NOW);
+
+        assertEquals(ORDERS, optimal.size());
+        Set<Long> drivers = new HashSet<>();
+        for (DispatchEngine.ScoredCandidate scored : optimal.values()) {
+            assertTrue(drivers.add(scored.candidate.getDriverId()), "водитель назначен дважды");
+        }
+    }
+
+    @Test
+    void optimalMatchingIsNoWorseThanGreedy() {
+        DispatchEngine engine = createEngine();
+        List<Order> batch = createBatch();
+        Map<Order, DispatchEngine.ScoredCandidate> greedy = engine.matchGreedy(batch, NOW);
+        Map<Order, DispatchEngine.ScoredCandidate> optimal = engine.matchOptimal(batch, NOW);
+
+        assertEquals(greedy.size(), optimal.size());
+        assertTrue(total(optimal) <= total(greedy) + 1e-9,
+                "оптимально " + total(optimal) + ", жадно " + total(greedy));
+    }
+
+    private static double total(Map<Order, DispatchEngine.ScoredCandidate> matched) {
+        double total = 0;
+        for (DispatchEngine.ScoredCandidate scored : matched.values()) {
+            total += scored.score;
+        }
+        return total;
+    }
+
+    private static DispatchEngine createEngine() {
+        DispatchEngine engine = new DispatchEngine(null, null);
+        Random random = new Random(42);
+        for (long driverId = 1; driverId <= DRIVERS; driverId++) {
+            engine.addCandidate(new DispatchCandidate(driverId, driverId, driverId,
+                    NOW - random.nextInt(60) * 60_000L));
+            engine.updateDriverLocation(driverId, CENTER_LAT + (random.nextDouble() - 0.5) * 0.18,
+                    CENTER_LON + (random.nextDouble() - 0.5) * 0.324);
+        }
+        return engine;
+    }
+
+    private static List<Order> createBatch() {
+        Random random = new Random(7);
+        List<Order> batch = new ArrayList<>();
+        for (long id = 1; id <= ORDERS; id++) {
+            Order order = new Order();
+            order.setId(id);
+            order.setStatus("NEW");
+            order.setPickupLatitude(CENTER_LAT + (random.nextDouble() - 0.5) * 0.027);
+            order.setPickupLongitude(CENTER_LON + (random.nextDouble() - 0.5) * 0.048);
+            batch.add(order);
+        }
+        return batch;
+    }
+}
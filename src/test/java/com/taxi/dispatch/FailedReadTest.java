@@ -0,0 +1,55 @@
+package com.taxi.dispatch;
+
+import com.taxi.repository.DriverRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Ошибка чтения кандидатов из БД не должна опустошать набор диспетчера:
+ * полная перестройка и точечное обновление оставляют прежних кандидатов
+ */
+class FailedReadTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void rebuildKeepsCandidatesWhenReadFails() {
+        DispatchEngine engine = createEngine();
+
+        assertThrows(IllegalStateException.class, engine::rebuild);
+        assertEquals(3, engine.getCandidatesCount());
+        assertEquals(3, engine.getLocatedCandidatesCount());
+    }
+
+    @Test
+    void refreshKeepsCandidateWhenReadFails() {
+        DispatchEngine engine = createEngine();
+
+        engine.refreshDriver(2L);
+        assertEquals(3, engine.getCandidatesCount());
+        assertEquals(2L, engine.selectCandidate(55.751, 37.621, NOW, Set.of(1L, 3L))
+                .candidate.getDriverId());
+    }
+
+    private static DispatchEngine createEngine() {
+        DispatchEngine engine = new DispatchEngine(new FailingDriverRepository(), null);
+        for (long driverId = 1; driverId <= 3; driverId++) {
+            engine.addCandidate(new DispatchCandidate(driverId, driverId, driverId, NOW));
+            engine.updateDriverLocation(driverId, 55.75 + driverId * 0.001, 37.62);
+        }
+        return engine;
+    }
+
+    private static class FailingDriverRepository extends DriverRepository {
+        @Override
+        public List<Object[]> findDispatchCandidates(Long driverId, LocalDateTime medicalValidFrom) {
+            throw new IllegalStateException("БД недоступна");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.taxi.journal;
+
+import com.taxi.entity.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Журнал заказов на файлах во временном каталоге: запись, повторное открытие после
+ * недописанной или испорченной записи, смена сегментов и статистика JournalReplay
+ */
+class OrderJournalTest {
+
+    private static final int RECORDS_PER_SEGMENT = 4;
+    private static final long T0 = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void corruptedRecordEndsJournalAndStaleRecordsDoNotReturn() throws IOException {
+        OrderJournal journal = open(1000);
+        save(journal, 1, 10);
+        journal.close();
+
+        // Испорченный байт в седьмой записи: контрольная сумма не сходится
+        corrupt(segment(1), 6 * JournalRecord.SIZE + 24);
+        journal = open(1000);
+        assertEquals(6, journal.getLastSeq());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), seqs(0));
+
+        // Записи 8-10 за испорченной затерты и не оживают между новыми
+        save(journal, 101, 2);
+        journal.close();
+        journal = open(1000);
+        assertEquals(8, journal.getLastSeq());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 101L, 102L), orderIds());
+        journal.close();
+    }
+
+    @Test
+    void tornTailIsCutOff() throws IOException {
+        OrderJournal journal = open(1000);
+        save(journal, 1, 8);
+        journal.close();
+
+        // Сбой посреди шестой записи
+        try (FileChannel channel = FileChannel.open(segment(1), StandardOpenOption.WRITE)) {
+            channel.truncate(5 * JournalRecord.SIZE + 30);
+        }
+        journal = open(1000);
+        assertEquals(5, journal.getLastSeq());
+        save(journal, 6, 1);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), seqs(0));
+        journal.close();
+    }
+
+    @Test
+    void segmentsRollOverAndEmptyPreparedSegmentIsDropped() throws IOException {
+        OrderJournal journal = open(RECORDS_PER_SEGMENT);
+        save(journal, 1, 10);
+        journal.close();
+        assertEquals(10, seqs(0).size());
+
+        // Заготовка следующего сегмента, в которую ничего не успели записать
+        Path prepared = segment(13);
+        try (FileChannel channel = FileChannel.open(prepared, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(RECORDS_PER_SEGMENT * JournalRecord.SIZE));
+        }
+        journal = open(RECORDS_PER_SEGMENT);
+        assertEquals(10, journal.getLastSeq());
+        assertFalse(Files.exists(prepared));
+
+        save(journal, 11, 5);
+        journal.close();
+        assertEquals(LongStream.rangeClosed(1, 15).boxed().toList(), seqs(0));
+        assertEquals(LongStream.rangeClosed(7, 15).boxed().toList(), seqs(6));
+        assertTrue(Files.exists(segment(13)));
+    }
+
+    @Test
+    void replayStatsMeasureTransitions() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16 * JournalRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long[] seq = {0};
+        // Заказ 1: назначен через 30 с, подача через 5 мин, поездка 1000 с
+        write(buffer, seq, 1, null, "NEW", 0, Double.NaN);
+        write(buffer, seq, 1, "NEW", "ASSIGNED", 30_000, Double.NaN);
+        write(buffer, seq, 1, "ASSIGNED", "ASSIGNED", 40_000, Double.NaN);
+        write(buffer, seq, 1, "ASSIGNED", "IN_PROGRESS", 330_000, Double.NaN);
+        write(buffer, seq, 1, "IN_PROGRESS", "COMPLETED", 1_330_000, 500.0);
+        // Заказ 2: назначен через 90 с и отменен
+        write(buffer, seq, 2, null, "NEW", 10_000, Double.NaN);
+        write(buffer, seq, 2, "NEW", "ASSIGNED", 100_000, Double.NaN);
+        write(buffer, seq, 2, "ASSIGNED", "CANCELLED", 200_000, Double.NaN);
+        // Заказ 3 ждет назначения
+        write(buffer, seq, 3, null, "NEW", 20_000, Double.NaN);
+        Files.write(segment(1), buffer.array());
+
+        JournalReplay.Stats stats = JournalReplay.stats(dir, Instant.ofEpochMilli(T0), Instant.ofEpochMilli(T0 + 86_400_000));
+        assertEquals(3, stats.getCreated());
+        assertEquals(2, stats.getAssigned());
+        assertEquals(1, stats.getCompleted());
+        assertEquals(1, stats.getCancelled());
+        assertEquals(500.0, stats.getRevenue());
+        assertEquals(2, stats.getTimeToAssign().getCount());
+        assertEquals(60.0, stats.getTimeToAssign().getAverageSeconds());
+        assertEquals(30.0, stats.getTimeToAssign().getQuantileSeconds(0.5));
+        assertEquals(90.0, stats.getTimeToAssign().getQuantileSeconds(1.0));
+        assertEquals(1, stats.getTimeToPickup().getCount());
+        assertEquals(300.0, stats.getTimeToPickup().getAverageSeconds());
+        assertEquals(1000.0, stats.getTripTime().getAverageSeconds());
+        assertEquals(List.of(3L), JournalReplay.latestStates(dir).values().stream()
+                .filter(record -> "NEW".equals(record.getStatus()))
+                .map(JournalRecord::getOrderId)
+                .toList());
+    }
+
+    private OrderJournal open(int records) throws IOException {
+        // Без фонового сброса: на диск - при смене сегмента и закрытии
+        return new OrderJournal(dir, records * JournalRecord.SIZE, 0);
+    }
+
+    private static void save(OrderJournal journal, long firstOrderId, int count) {
+        for (long id = firstOrderId; id < firstOrderId + count; id++) {
+            Order order = new Order();
+            order.setId(id);
+            order.setPrice(100.0);
+            journal.orderSaved(null, order);
+        }
+    }
+
+    private static void write(ByteBuffer buffer, long[] seq, long orderId, String previousStatus, String status,
+                              long afterMillis, double price) {
+        seq[0]++;
+        new JournalRecord(JournalRecord.SAVED, previousStatus, status, seq[0], T0 + afterMillis, orderId,
+                0, 0, 0, price, Double.NaN).encode(buffer);
+    }
+
+    private static void corrupt(Path segment, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 0x5A)).rewind();
+            channel.write(one, position);
+        }
+    }
+
+    private List<Long> seqs(long afterSeq) throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        OrderJournal.replay(dir, afterSeq, record -> seqs.add(record.getSeq()));
+        return seqs;
+    }
+
+    private List<Long> orderIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        OrderJournal.replay(dir, 0, record -> ids.add(record.getOrderId()));
+        return ids;
+    }
+
+    private Path segment(long firstSeq) {
+        return dir.resolve(String.format("orders-%020d.journal", firstSeq));
+    }
+}
@@ -0,0 +1,218 @@
+package com.taxi.repository;
+
+import com.taxi.TestDatabase;
+import com.taxi.entity.Car;
+import com.taxi.entity.Driver;
+import com.taxi.entity.Order;
+import com.taxi.entity.User;
+import com.taxi.entity.Waybill;
+import com.taxi.util.HibernateUtil;
+import com.taxi.util.SqlStatementCounter;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Планы загрузки: каждый поиск заказов и путевых листов - ровно один SQL-запрос при любом плане,
+ * связи из графа плана доступны после закрытия сессии, связи вне графа не загружаются.
+ * Лишний запрос на строку (N+1) или на связь роняет сборку
+ */
+class FetchPlanStatementCountTest {
+
+    private static final int DRIVERS = 3;
+    private static final int ORDERS = 12;
+
+    private static final OrderRepository orderRepository = new OrderRepository();
+    private static final WaybillRepository waybillRepository = new WaybillRepository();
+
+    private static long driverId;
+    private static long carId;
+    private static long orderId;
+    private static long completedWaybillId;
+    private static LocalDateTime from;
+    private static LocalDateTime to;
+
+    @BeforeAll
+    static void createData() {
+        from = LocalDateTime.now().minusDays(1);
+        TestDatabase.inTransaction(session -> {
+            User operator = new User("Оператор", "fetch_plan_operator", "x", "OPERATOR", null);
+            User doctor = new User("Врач", "fetch_plan_doctor", "x", "DOCTOR", null);
+            User mechanic = new User("Механик", "fetch_plan_mechanic", "x", "MECHANIC", null);
+            session.persist(operator);
+            session.persist(doctor);
+            session.persist(mechanic);
+
+            List<Driver> drivers = new ArrayList<>();
+            List<Car> cars = new ArrayList<>();
+            for (int i = 0; i < DRIVERS; i++) {
+                // Закрепленный автомобиль не встречается в заказах: иначе он попадет в сессию
+                // через order.car и пропуск driver.currentCar в плане останется незамеченным
+                Car assigned = new Car("Škoda", "Rapid", "FPA" + i, "FPAVIN" + i);
+                session.persist(assigned);
+                Car car = new Car("Škoda", "Octavia", "FP" + i, "FPVIN" + i);
+                session.persist(car);
+                Driver driver = new Driver("Водитель " + i, "FP-L" + i, "+7 900 000000" + i);
+                driver.setCurrentCar(assigned);
+                session.persist(driver);
+                drivers.add(driver);
+                cars.add(car);
+            }
+
+            Waybill active = new Waybill(drivers.get(0), cars.get(0), doctor, 1000);
+            active.setMechanic(mechanic);
+            session.persist(active);
+            Waybill completed = new Waybill(drivers.get(1), cars.get(1), doctor, 2000);
+            completed.setMechanic(mechanic);
+            completed.setStatus(Waybill.WaybillStatus.COMPLETED);
+            completed.setEndTime(LocalDateTime.now());
+            session.persist(completed);
+
+            Order last = null;
+            for (int i = 0; i < ORDERS; i++) {
+                Order order = new Order(operator, "Клиент " + i, "+7 911 000000" + i, "Откуда", "Куда");
+                order.setStatus(i % 2 == 0 ? "ASSIGNED" : "COMPLETED");
+                order.setPrice(100.0 + i);
+                order.setDriver(drivers.get(i % DRIVERS));
+                order.setCar(cars.get(i % DRIVERS));
+                order.setWaybill(i % 2 == 0 ? active : completed);
+                session.persist(order);
+                last = order;
+            }
+
+            driverId = drivers.get(0).getId();
+            carId = cars.get(0).getId();
+            orderId = last.getId();
+            completedWaybillId = completed.getId();
+            return null;
+        });
+        to = LocalDateTime.now().plusDays(1);
+    }
+
+    // ЗАКАЗЫ
+
+    @ParameterizedTest
+    @EnumSource(FetchPlan.class)
+    void orderFindAll(FetchPlan plan) {
+        assertOrders(plan, single(() -> orderRepository.findAll(plan)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(FetchPlan.class)
+    void orderFindPage(FetchPlan plan) {
+        OrderRepository.OrderFilter filter = new OrderRepository.OrderFilter();
+        assertOrders(plan, single(() -> orderRepository.findPage(filter, null, null, false, 10, plan)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(FetchPlan.class)
+    void orderFindById(FetchPlan plan) {
+        Order order = single(() -> orderRepository.findById(orderId, plan));
+        assertNotNull(order);
+        assertOrders(plan, List.of(order));
+        assertEquals(plan == FetchPlan.DETAIL, Hibernate.isInitialized(order.getOperator()));
+        assertEquals(plan == FetchPlan.DETAIL, Hibernate.isInitialized(order.getWaybill()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(FetchPlan.class)
+    void orderFindByWaybillId(FetchPlan plan) {
+        assertOrders(plan, single(() -> orderRepository.findByWaybillId(completedWaybillId, plan)));
+    }
+
+    // ПУТЕВЫЕ ЛИСТЫ
+
+    @ParameterizedTest
+    @EnumSource(FetchPlan.class)
+    void waybillFindAll(FetchPlan plan) {
+        assertWaybills(plan, single(() -> waybillRepository.findAll(plan)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(FetchPlan.class)
+    void waybillFindById(FetchPlan plan) {
+        Waybill waybill = single(() -> waybillRepository.findById(completedWaybillId, plan));
+        assertNotNull(waybill);
+        assertWaybills(plan, List.of(waybill));
+    }
+
+    @ParameterizedTest
+    @EnumSource(FetchPlan.class)
+    void waybillFindActiveByDriverAndCar(FetchPlan plan) {
+        Waybill byDriver = single(() -> waybillRepository.findActiveByDriverId(driverId, plan));
+        Waybill byCar = single(() -> waybillRepository.findActiveByCarId(carId, plan));
+        assertNotNull(byDriver);
+        assertNotNull(byCar);
+        assertWaybills(plan, List.of(byDriver, byCar));
+    }
+
+    @ParameterizedTest
+    @EnumSource(FetchPlan.class)
+    void waybillFindLists(FetchPlan plan) {
+        assertWaybills(plan, single(() -> waybillRepository.findByDriverId(driverId, plan)));
+        assertWaybills(plan, single(() -> waybillRepository.findActive(plan)));
+        assertWaybills(plan, single(() -> waybillRepository.findCompleted(plan)));
+        assertWaybills(plan, single(() -> waybillRepository.findByPeriod(from, to, plan)));
+        assertWaybills(plan, single(() -> waybillRepository.findByDriverAndPeriod(driverId, from, to, plan)));
+    }
+
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+
+    /**
+     * Вызов должен уложиться в один SQL-запрос. Кэш второго уровня очищается,
+     * иначе связь, пропущенная планом, дочитывается из кэша без запроса и проверка ее не видит
+     */
+    private static <T> T single(Supplier<T> call) {
+        HibernateUtil.getSessionFactory().getCache().evictAllRegions();
+        SqlStatementCounter.Measurement<T> measurement = SqlStatementCounter.measure(call);
+        assertEquals(1, measurement.getStatements(), measurement.toString());
+        return measurement.getResult();
+    }
+
+    /**
+     * Связи из графа читаются без сессии (иначе LazyInitializationException), отчетный план их не загружает
+     */
+    private static void assertOrders(FetchPlan plan, List<Order> orders) {
+        assertFalse(orders.isEmpty(), "пустой результат");
+        for (Order order : orders) {
+            boolean associations = plan != FetchPlan.REPORT;
+            assertEquals(associations, Hibernate.isInitialized(order.getDriver()));
+            assertEquals(associations, Hibernate.isInitialized(order.getCar()));
+            if (associations) {
+                assertNotNull(order.getDriver().getFullName());
+                assertNotNull(order.getDriver().getCurrentCar().getLicensePlate());
+                assertNotNull(order.getCar().getLicensePlate());
+            }
+        }
+    }
+
+    private static void assertWaybills(FetchPlan plan, List<Waybill> waybills) {
+        assertFalse(waybills.isEmpty(), "пустой результат");
+        for (Waybill waybill : waybills) {
+            boolean associations = plan != FetchPlan.REPORT;
+            assertEquals(associations, Hibernate.isInitialized(waybill.getDriver()));
+            assertEquals(associations, Hibernate.isInitialized(waybill.getCar()));
+            assertEquals(plan == FetchPlan.DETAIL, Hibernate.isInitialized(waybill.getDoctor()));
+            assertEquals(plan == FetchPlan.DETAIL, Hibernate.isInitialized(waybill.getMechanic()));
+            if (associations) {
+                assertNotNull(waybill.getDriver().getFullName());
+                assertNotNull(waybill.getDriver().getCurrentCar().getLicensePlate());
+                assertNotNull(waybill.getCar().getLicensePlate());
+            }
+            if (plan == FetchPlan.DETAIL) {
+                assertTrue(waybill.getDoctor().getFullName() != null && waybill.getMechanic().getFullName() != null);
+            }
+        }
+    }
+}
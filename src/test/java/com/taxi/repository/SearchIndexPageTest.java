@@ -0,0 +1,108 @@
+package com.taxi.repository;
+
+import com.taxi.TestDatabase;
+import com.taxi.entity.Driver;
+import com.taxi.entity.MedicalCheck;
+import com.taxi.entity.User;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Страница поиска отбирается с отсечением по верхней оценке ранга: она должна совпадать
+ * с соответствующим куском полного ранжирования (без ограничения числа результатов отсечения нет),
+ * и число найденных - тоже. Много равных рангов и документы, перечитанные после перестройки
+ * (их номера в индексе уже не растут вместе с id), проверяют порядок при равенстве
+ */
+class SearchIndexPageTest {
+
+    private static final int PAGE = 7;
+    private static final String[] LAST_NAMES = {"Петров", "Иванов", "Попова", "Степанов", "Овечкин"};
+    private static final String[] FIRST_NAMES = {"Петр", "Анна", "Иван", "Андрей"};
+    private static final String[] NOTES = {"Давление", "Давление в норме", "Повышенное давление", "Жалоб нет"};
+
+    private final SearchIndex index = SearchIndex.getInstance();
+
+    @BeforeAll
+    static void createData() {
+        List<Long> driverIds = new ArrayList<>();
+        TestDatabase.inTransaction(session -> {
+            User doctor = new User("Петрова Анна", "search_page_doctor", "x", "DOCTOR", null);
+            session.persist(doctor);
+            for (int i = 0; i < 80; i++) {
+                // Первые водители - фамилия без имени, совпадение с полем целиком
+                String name = i < 8 ? "Петров" : LAST_NAMES[i % LAST_NAMES.length] + " " + FIRST_NAMES[i % FIRST_NAMES.length];
+                Driver driver = new Driver(name, "SP-" + i, "+7 923 00000" + i);
+                session.persist(driver);
+                driverIds.add(driver.getId());
+                if (i % 2 == 0) {
+                    MedicalCheck check = new MedicalCheck(driver, doctor, true);
+                    // Лучшие совпадения (поле целиком) - у меньших id: при обходе по убыванию
+                    // они приходят, когда страница уже заполнена, и должны пройти порог
+                    check.setNotes(NOTES[i < 30 ? 0 : 1 + i / 2 % 3]);
+                    session.persist(check);
+                }
+            }
+            return null;
+        });
+        SearchIndex.getInstance().rebuild();
+
+        // Часть водителей перечитывается после перестройки и получает последние номера
+        TestDatabase.inTransaction(session -> {
+            for (int i = 20; i < 40; i++) {
+                Driver driver = session.get(Driver.class, driverIds.get(i));
+                driver.setFullName("Петров Андрей");
+            }
+            return null;
+        });
+        for (int i = 20; i < 40; i++) {
+            SearchIndex.getInstance().refreshDriver(driverIds.get(i));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"петр", "петров", "ов", "ов ан", "давление", "петров андрей", "а", "sp"})
+    void pageMatchesFullRanking(String query) {
+        for (Set<SearchIndex.Type> types : List.of(EnumSet.allOf(SearchIndex.Type.class),
+                EnumSet.of(SearchIndex.Type.DRIVER), EnumSet.of(SearchIndex.Type.MEDICAL_CHECK))) {
+            List<SearchIndex.Hit> all = index.search(query, types, 0, Integer.MAX_VALUE).getHits();
+            if (types.size() > 1) {
+                assertTrue(all.size() > 3 * PAGE, query + ": мало данных для проверки");
+            }
+            for (int offset = 0; offset < 3 * PAGE; offset += PAGE) {
+                SearchIndex.Page page = index.search(query, types, offset, PAGE);
+                assertEquals(all.size(), page.getTotal(), query + " " + types);
+                List<SearchIndex.Hit> expected = offset < all.size()
+                        ? all.subList(offset, Math.min(offset + PAGE, all.size())) : List.of();
+                assertEquals(describe(expected), describe(page.getHits()), query + " " + types + " со смещением " + offset);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"петр", "ов", "ан"})
+    void fieldPageMatchesFullRanking(String query) {
+        for (SearchIndex.Field field : List.of(SearchIndex.Field.DRIVER_NAME, SearchIndex.Field.CHECK_DOCTOR)) {
+            List<SearchIndex.Hit> all = index.search(query, field, 0, Integer.MAX_VALUE).getHits();
+            SearchIndex.Page page = index.search(query, field, 0, PAGE);
+            assertEquals(all.size(), page.getTotal(), query + " " + field);
+            assertEquals(describe(all.subList(0, Math.min(PAGE, all.size()))), describe(page.getHits()), query + " " + field);
+        }
+    }
+
+    private static List<String> describe(List<SearchIndex.Hit> hits) {
+        List<String> result = new ArrayList<>();
+        for (SearchIndex.Hit hit : hits) {
+            result.add(hit.getType() + "#" + hit.getId() + "=" + hit.getScore());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+package com.taxi.service;
+
+import com.taxi.TestDatabase;
+import com.taxi.dispatch.DispatchEngine;
+import com.taxi.entity.Car;
+import com.taxi.entity.Driver;
+import com.taxi.entity.MedicalCheck;
+import com.taxi.entity.Order;
+import com.taxi.entity.User;
+import com.taxi.entity.Waybill;
+import com.taxi.repository.FetchPlan;
+import com.taxi.repository.OrderRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Пакетное автоназначение: три свободных водителя на четыре новых заказа - назначены три заказа,
+ * каждый своему водителю, с путевым листом; счетчики панели и события диспетчеру получают
+ * полностью загруженные заказы (с именем водителя), а не сущности-заглушки с одним id
+ */
+class BatchDispatchTest {
+
+    private static final List<Long> driverIds = new ArrayList<>();
+    private static final List<String> driverNames = new ArrayList<>();
+    private static final List<Long> orderIds = new ArrayList<>();
+
+    private final OrderService orderService = new OrderService();
+    private final OrderRepository orderRepository = new OrderRepository();
+
+    @BeforeAll
+    static void createData() {
+        // Отдельная точка на карте, далеко от водителей других тестов
+        double[][] pickups = {{59.900, 30.30}, {59.910, 30.30}, {59.850, 30.30}, {59.900, 30.30}};
+        double[][] locations = {{59.905, 30.30}, {59.912, 30.30}, {59.855, 30.30}};
+        TestDatabase.inTransaction(session -> {
+            // Новые заказы других тестов ушли бы тем же водителям
+            session.createMutationQuery("UPDATE Order o SET o.status = 'CANCELLED' WHERE o.status = 'NEW'")
+                    .executeUpdate();
+            User operator = new User("Оператор", "batch_operator", "x", "OPERATOR", null);
+            User doctor = new User("Врач", "batch_doctor", "x", "DOCTOR", null);
+            session.persist(operator);
+            session.persist(doctor);
+            for (int i = 0; i < locations.length; i++) {
+                Car car = new Car("Kia", "Rio", "BD" + i, "BDVIN" + i);
+                session.persist(car);
+                Driver driver = new Driver("Пакетный водитель " + i, "BD-L" + i, "+7 921 000000" + i);
+                driver.setCurrentCar(car);
+                session.persist(driver);
+                session.persist(new Waybill(driver, car, doctor, 1000));
+                session.persist(new MedicalCheck(driver, doctor, true));
+                driverIds.add(driver.getId());
+                driverNames.add(driver.getFullName());
+            }
+            for (double[] pickup : pickups) {
+                Order order = new Order(operator, "Клиент", "+7 911 0000000", "Откуда", "Куда");
+                order.setStatus("NEW");
+                order.setPickupLatitude(pickup[0]);
+                order.setPickupLongitude(pickup[1]);
+                session.persist(order);
+                orderIds.add(order.getId());
+            }
+            return null;
+        });
+
+        DispatchEngine engine = DispatchEngine.getInstance();
+        for (int i = 0; i < driverIds.size(); i++) {
+            engine.refreshDriver(driverIds.get(i));
+            engine.updateDriverLocation(driverIds.get(i), locations[i][0], locations[i][1]);
+        }
+    }
+
+    @Test
+    void assignsFullyLoadedOrders() throws InterruptedException {
+        DashboardMetrics metrics = DashboardMetrics.getInstance();
+        metrics.rebuild(); // данные тестов пишутся мимо сервиса
+        long assignedBefore = metrics.getCountByStatus("ASSIGNED");
+        OrderEventHub events = OrderEventHub.getInstance();
+        StringBuffer published = new StringBuffer();
+        OrderEventHub.Subscriber subscriber = events.subscribe(new OrderEventHub.Sink() {
+            @Override
+            public void write(List<byte[]> frames) {
+                for (byte[] frame : frames) {
+                    published.append(new String(frame, StandardCharsets.UTF_8));
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        }, events.getLastSeq());
+
+        try {
+            assertEquals(3, orderService.runBatchDispatch());
+
+            Set<Long> assignedDrivers = new HashSet<>();
+            for (Long orderId : orderIds) {
+                Order order = orderRepository.findById(orderId, FetchPlan.LIST);
+                if ("ASSIGNED".equals(order.getStatus())) {
+                    assertTrue(driverIds.contains(order.getDriver().getId()));
+                    assertNotNull(order.getCar());
+                    assertNotNull(order.getWaybill());
+                    assignedDrivers.add(order.getDriver().getId());
+                }
+            }
+            assertEquals(3, assignedDrivers.size(), "каждый водитель получает один заказ");
+            assertEquals(assignedBefore + 3, metrics.getCountByStatus("ASSIGNED"));
+
+            // Кадры уходят подписчику из пула - ждем, пока придут все три
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!containsAll(published, driverNames) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(containsAll(published, driverNames), published.toString());
+        } finally {
+            events.unsubscribe(subscriber);
+        }
+    }
+
+    private static boolean containsAll(StringBuffer published, List<String> names) {
+        String text = published.toString();
+        for (String name : names) {
+            if (!text.contains(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,211 @@
+package com.taxi.service;
+
+import com.taxi.TestDatabase;
+import com.taxi.entity.Car;
+import com.taxi.entity.Driver;
+import com.taxi.entity.Order;
+import com.taxi.entity.User;
+import com.taxi.repository.FetchPlan;
+import com.taxi.repository.OrderRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Параллельные переходы статусов: 16 потоков по 150 операций над общими заказами.
+ * Каждый примененный переход увеличивает версию ровно на единицу, последнее примененное
+ * изменение остается в БД, а инкрементальные счетчики панели совпадают с полным пересчетом
+ */
+class OrderTransitionStressTest {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 150;
+    private static final int DRIVERS = 5;
+    private static final int ORDERS = 60;
+
+    // Статусы по порядку прохождения: переходы допустимы только вперед
+    private static final List<String> STATUS_ORDER = List.of("NEW", "ASSIGNED", "IN_PROGRESS", "COMPLETED", "CANCELLED");
+    private static final List<String> REPOSITORY_STATUSES = List.of("NEW", "ASSIGNED", "IN_PROGRESS");
+
+    private static final List<Long> driverIds = new ArrayList<>();
+    private static final List<Long> serviceOrderIds = new ArrayList<>();
+    private static final List<Long> repositoryOrderIds = new ArrayList<>();
+
+    private final OrderService orderService = new OrderService();
+    private final OrderRepository orderRepository = new OrderRepository();
+
+    @BeforeAll
+    static void createData() {
+        TestDatabase.inTransaction(session -> {
+            User operator = new User("Оператор", "stress_operator", "x", "OPERATOR", null);
+            session.persist(operator);
+            for (int i = 0; i < DRIVERS; i++) {
+                Car car = new Car("Lada", "Vesta", "ST" + i, "STVIN" + i);
+                session.persist(car);
+                Driver driver = new Driver("Водитель нагрузки " + i, "ST-L" + i, "+7 922 000000" + i);
+                driver.setCurrentCar(car);
+                session.persist(driver);
+                driverIds.add(driver.getId());
+            }
+            for (int i = 0; i < ORDERS; i++) {
+                Order order = new Order(operator, "Клиент " + i, "+7 911 000000" + i, "Откуда", "Куда");
+                session.persist(order);
+                serviceOrderIds.add(order.getId());
+                Order direct = new Order(operator, "Клиент " + i, "+7 911 000000" + i, "Откуда", "Куда");
+                session.persist(direct);
+                repositoryOrderIds.add(direct.getId());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Условный UPDATE напрямую: любой статус из любого, примечание - метка записи.
+     * Версия после успешной записи однозначно задает порядок изменений
+     */
+    @Test
+    void updateIfUnchangedKeepsLastWrite() throws Exception {
+        Map<Long, Long> initialVersions = new TreeMap<>();
+        for (Long orderId : repositoryOrderIds) {
+            initialVersions.put(orderId, orderRepository.findById(orderId, FetchPlan.REPORT).getVersion());
+        }
+        // id заказа -> (версия после записи -> записанный статус и примечание)
+        Map<Long, Map<Long, String[]>> writes = new ConcurrentHashMap<>();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        runConcurrently(random -> {
+            Long orderId = repositoryOrderIds.get(random.nextInt(repositoryOrderIds.size()));
+            Order order = orderRepository.findById(orderId, FetchPlan.REPORT);
+            String expectedStatus = order.getStatus();
+            String status = REPOSITORY_STATUSES.get(random.nextInt(REPOSITORY_STATUSES.size()));
+            String notes = Thread.currentThread().getName() + ":" + random.nextLong();
+            order.setStatus(status);
+            order.setNotes(notes);
+            if (orderRepository.updateIfUnchanged(order, expectedStatus)) {
+                String[] previous = writes.computeIfAbsent(orderId, id -> new ConcurrentHashMap<>())
+                        .put(order.getVersion(), new String[]{status, notes});
+                assertEquals(null, previous, "две записи получили одну версию заказа #" + orderId);
+            } else {
+                conflicts.incrementAndGet();
+            }
+        });
+
+        assertTrue(conflicts.get() > 0, "потоки не пересекались - проверка ничего не доказывает");
+        for (Long orderId : repositoryOrderIds) {
+            Order order = orderRepository.findById(orderId, FetchPlan.REPORT);
+            Map<Long, String[]> applied = writes.getOrDefault(orderId, Map.of());
+            long initialVersion = initialVersions.get(orderId);
+            assertEquals(initialVersion + applied.size(), order.getVersion(), "версия заказа #" + orderId);
+            if (!applied.isEmpty()) {
+                String[] last = applied.get(Collections.max(applied.keySet()));
+                assertEquals(last[0], order.getStatus(), "статус заказа #" + orderId);
+                assertEquals(last[1], order.getNotes(), "примечание заказа #" + orderId);
+            }
+        }
+    }
+
+    /**
+     * Переходы через OrderService. Переходы идут только вперед, поэтому порядок примененных
+     * восстанавливается по статусу: последним был самый дальний от NEW
+     */
+    @Test
+    void serviceTransitionsMatchStoredStateAndCounters() throws Exception {
+        DashboardMetrics metrics = DashboardMetrics.getInstance();
+        metrics.rebuild(); // другие тесты пишут в БД мимо сервиса
+
+        Map<Long, List<String>> applied = new ConcurrentHashMap<>();
+        AtomicInteger conflicts = new AtomicInteger();
+        List<String> rejected = Collections.synchronizedList(new ArrayList<>());
+
+        runConcurrently(random -> {
+            Long orderId = serviceOrderIds.get(random.nextInt(serviceOrderIds.size()));
+            String status = STATUS_ORDER.get(1 + random.nextInt(STATUS_ORDER.size() - 1));
+            OrderService.TransitionResult result = switch (status) {
+                case "ASSIGNED" -> orderService.assignOrderToDriver(orderId,
+                        driverIds.get(random.nextInt(driverIds.size())), null, null);
+                case "IN_PROGRESS" -> orderService.startOrderExecution(orderId);
+                case "COMPLETED" -> orderService.completeOrder(orderId, 1.0 + random.nextInt(20),
+                        100.0 + random.nextInt(100), null);
+                default -> orderService.cancelOrder(orderId, "нагрузочный тест");
+            };
+            if (result.isApplied()) {
+                applied.computeIfAbsent(orderId, id -> Collections.synchronizedList(new ArrayList<>())).add(status);
+            } else if (result.isConflict()) {
+                conflicts.incrementAndGet();
+            } else {
+                rejected.add(result.getMessage());
+            }
+        });
+
+        assertEquals(List.of(), rejected, "кроме конфликтов переходы не должны отклоняться");
+        assertTrue(conflicts.get() > 0, "потоки не пересекались - проверка ничего не доказывает");
+        for (Long orderId : serviceOrderIds) {
+            Order order = orderRepository.findById(orderId, FetchPlan.REPORT);
+            List<String> statuses = new ArrayList<>(applied.getOrDefault(orderId, List.of()));
+            statuses.sort(Comparator.comparingInt(STATUS_ORDER::indexOf));
+            assertEquals(statuses.size(), order.getVersion().intValue(), "версия заказа #" + orderId);
+
+            String previous = "NEW";
+            for (String status : statuses) {
+                assertTrue(Order.isTransitionAllowed(previous, status),
+                        "заказ #" + orderId + ": применены переходы " + statuses);
+                previous = status;
+            }
+            assertEquals(previous, order.getStatus(), "статус заказа #" + orderId);
+        }
+
+        Map<String, Long> incremental = new TreeMap<>(metrics.getStatusCounts());
+        long incrementalTotal = metrics.getTotalOrders();
+        double incrementalRevenue = metrics.getTotalRevenue();
+        metrics.rebuild();
+        assertEquals(new TreeMap<>(metrics.getStatusCounts()), incremental);
+        assertEquals(metrics.getTotalOrders(), incrementalTotal);
+        assertEquals(metrics.getTotalRevenue(), incrementalRevenue, 0.001);
+    }
+
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+
+    private interface Operation {
+        void run(ThreadLocalRandom random);
+    }
+
+    /**
+     * THREADS потоков выполняют операцию по OPERATIONS_PER_THREAD раз.
+     * Ошибка любого потока (в том числе проваленная проверка) роняет тест
+     */
+    private static void runConcurrently(Operation operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        operation.run(random);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}